@@ -0,0 +1,129 @@
+package com.whiteboard.widgets.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whiteboard.widgets.WidgetsApplication;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetOperation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same 10,000 creations, with colliding z-indexes, sent over HTTP one request at a time and as batches of 500,
+ * each iteration onto an empty board.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int OPERATIONS = 10_000;
+    private static final int BATCH_SIZE = 500;
+
+    private ConfigurableApplicationContext context;
+    private WidgetService widgetService;
+    private HttpClient client;
+    private URI create;
+    private URI batch;
+    private final List<String> creations = new ArrayList<>(OPERATIONS);
+    private final List<String> batches = new ArrayList<>(OPERATIONS / BATCH_SIZE);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = SpringApplication.run(WidgetsApplication.class, "--server.port=0", "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN");
+        widgetService = context.getBean(WidgetService.class);
+        ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        create = URI.create("http://localhost:" + port + "/widgets");
+        batch = URI.create("http://localhost:" + port + "/widgets:batch");
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        Random random = new Random(1);
+        List<WidgetOperation> operations = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < OPERATIONS; i++) {
+            WidgetContent content = WidgetContent.builder()
+                    .coordinates(Coordinates.builder().x(random.nextInt(10_000)).y(random.nextInt(10_000)).build())
+                    .width(100)
+                    .height(100)
+                    .z(Optional.of(random.nextInt(1_000)))
+                    .build();
+            creations.add(objectMapper.writeValueAsString(content));
+            operations.add(WidgetOperation.builder().type(WidgetOperation.Type.CREATE).content(content).build());
+            if (operations.size() == BATCH_SIZE) {
+                batches.add(objectMapper.writeValueAsString(operations));
+                operations.clear();
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        widgetService.importWidgets(List.of());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public int oneByOne() throws IOException, InterruptedException {
+        int sent = 0;
+        for (String creation : creations) {
+            sent += post(create, creation);
+        }
+        return sent;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public int batches() throws IOException, InterruptedException {
+        int sent = 0;
+        for (String operations : batches) {
+            sent += post(batch, operations);
+        }
+        return sent;
+    }
+
+    private int post(URI uri, String body) throws IOException, InterruptedException {
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(uri)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("POST " + uri + " answered " + response.statusCode());
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.ChangeLogFactory;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.repository.WidgetStorage;
+import com.whiteboard.widgets.service.BoardRegistry;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creations from one, four and eight threads, all to the same board or each to a board of its own, through a
+ * {@link BoardRegistry} whose boards are new for each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardScalingBenchmark {
+    private static final int Z_RANGE = 50_000;
+
+    @Param({"shared", "own"})
+    String boards;
+
+    private BoardRegistry boardRegistry;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        boardRegistry = new BoardRegistry(new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(1), ChangeLog.NONE),
+                ChangeLogFactory.none(WidgetStorage.OBJECTS), 1, Duration.ofHours(1));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        boardRegistry.close();
+    }
+
+    /**
+     * Board written by a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class Board {
+        Optional<String> id;
+
+        @Setup
+        public void setUp(BoardScalingBenchmark benchmark) {
+            id = Optional.of(benchmark.boards.equals("shared")
+                    ? "shared"
+                    : "board-" + benchmark.threads.getAndIncrement());
+        }
+    }
+
+    @Benchmark
+    public Widget create(Board board) {
+        return create(board.id);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Widget create_4threads(Board board) {
+        return create(board.id);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Widget create_8threads(Board board) {
+        return create(board.id);
+    }
+
+    private Widget create(Optional<String> boardId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        WidgetContent content = WidgetContent.builder()
+                .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                .z(Optional.of(random.nextInt(Z_RANGE)))
+                .width(100)
+                .height(100)
+                .build();
+        return boardRegistry.withBoard(boardId, widgetService -> widgetService.create(content));
+    }
+}
@@ -0,0 +1,155 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.WidgetsApplication;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A change to the board until all of 1,000 clients subscribed to its server-sent events over HTTP have received it.
+ * Sampled, so that the percentiles are those of the fan-out latency. Clients run in the same JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ChangeFeedBenchmark {
+    private static final long CONNECT_TIMEOUT_SECONDS = 60;
+    private static final long RECEIVED_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Param({"1000"})
+    int subscribers;
+
+    private ConfigurableApplicationContext context;
+    private WidgetService widgetService;
+    private final AtomicInteger received = new AtomicInteger();
+    private volatile long target = Long.MAX_VALUE;
+    private volatile Throwable failure;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        context = SpringApplication.run(WidgetsApplication.class, "--server.port=0", "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN");
+        widgetService = context.getBean(WidgetService.class);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        URI uri = URI.create("http://localhost:" + port + "/widgets/changes?since=" + widgetService.version());
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        CountDownLatch connected = new CountDownLatch(subscribers);
+        for (int i = 0; i < subscribers; i++) {
+            client.sendAsync(HttpRequest.newBuilder(uri).header("Accept", "text/event-stream").build(),
+                    HttpResponse.BodyHandlers.fromLineSubscriber(new Subscriber(connected)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CONNECT_TIMEOUT_SECONDS);
+        do {
+            create();
+            checkFailure();
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException(connected.getCount() + " of " + subscribers + " clients not connected");
+            }
+        } while (!connected.await(1, TimeUnit.SECONDS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int change() {
+        received.set(0);
+        target = widgetService.version() + 1;
+        create();
+        long deadline = System.nanoTime() + RECEIVED_TIMEOUT_NANOS;
+        while (received.get() < subscribers) {
+            checkFailure();
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException(received.get() + " of " + subscribers + " clients received version "
+                        + target);
+            }
+            LockSupport.parkNanos(10_000);
+        }
+        return received.get();
+    }
+
+    private void create() {
+        widgetService.create(WidgetContent.builder().z(Optional.empty()).width(10).height(10).build());
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("A client lost its stream", failure);
+        }
+    }
+
+    /**
+     * Counts the first {@code id:} line of each client at or after the version awaited.
+     */
+    private final class Subscriber implements Flow.Subscriber<String> {
+        private final CountDownLatch connected;
+        private boolean first = true;
+        private long counted;
+
+        Subscriber(CountDownLatch connected) {
+            this.connected = connected;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (!line.startsWith("id:")) {
+                return;
+            }
+            if (first) {
+                first = false;
+                connected.countDown();
+            }
+            long sequence = Long.parseLong(line.substring(3).trim());
+            long expected = target;
+            if (sequence >= expected && counted < expected) {
+                counted = expected;
+                received.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failure = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
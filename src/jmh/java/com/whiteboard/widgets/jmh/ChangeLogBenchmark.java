@@ -0,0 +1,206 @@
+package com.whiteboard.widgets.jmh;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.MappedChangeLog;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetOperation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of creations under each fsync policy of the mapped change log, and without a log, on one thread and on
+ * eight; and the time to restore a board of 1M widgets from the log alone, as after a crash, and from a snapshot.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeLogBenchmark {
+    private static final int Z_RANGE = 20_000;
+    private static final int WIDGETS = 1_000_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    /**
+     * Empty board written through a log of the given fsync policy, or through none, new for each iteration.
+     */
+    @State(Scope.Benchmark)
+    public static class Writes {
+        @Param({"none", "COMMIT", "INTERVAL", "NONE"})
+        String log;
+
+        private Path directory;
+        private ChangeLog changeLog;
+        private WidgetService widgetService;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            if (log.equals("none")) {
+                changeLog = ChangeLog.NONE;
+            } else {
+                directory = Files.createTempDirectory("widgets");
+                changeLog = MappedChangeLog.open(MappedChangeLog.Settings.builder()
+                        .directory(directory)
+                        .fsyncPolicy(MappedChangeLog.FsyncPolicy.valueOf(log))
+                        .build());
+            }
+            widgetService = new WidgetService(changeLog.recovered(), new ChangeFeed(1), changeLog);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            widgetService.close();
+            changeLog.close();
+            if (directory != null) {
+                MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+            }
+        }
+    }
+
+    /**
+     * Log of 1M widgets, written once per trial and copied for each iteration as left by a crash, before any
+     * snapshot, or as left by a clean shutdown, with a snapshot.
+     */
+    @State(Scope.Benchmark)
+    public static class Restore {
+        @Param({"log", "snapshot"})
+        String from;
+
+        private Path template;
+        private Path directory;
+        private MappedChangeLog restored;
+
+        @Setup(Level.Trial)
+        public void fill() throws IOException {
+            template = Files.createTempDirectory("widgets");
+            Path written = Files.createTempDirectory("widgets");
+            MappedChangeLog log = MappedChangeLog.open(settings(written));
+            WidgetService widgetService = new WidgetService(log.recovered(), new ChangeFeed(1), log);
+            Random random = new Random(1);
+            for (int i = 0; i < WIDGETS; i += BATCH_SIZE) {
+                List<WidgetOperation> operations = new ArrayList<>(BATCH_SIZE);
+                for (int j = 0; j < BATCH_SIZE; j++) {
+                    operations.add(WidgetOperation.builder().type(WidgetOperation.Type.CREATE)
+                            .content(content(random, Optional.empty())).build());
+                }
+                widgetService.apply(operations);
+            }
+            if (from.equals("log")) {
+                copy(written, template);
+            }
+            widgetService.close();
+            log.close();
+            if (from.equals("snapshot")) {
+                copy(written, template);
+            }
+            MoreFiles.deleteRecursively(written, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+
+        @Setup(Level.Iteration)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("widgets");
+            copy(template, directory);
+            System.gc();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws IOException {
+            int size = restored.recovered().size();
+            restored.close();
+            MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+            if (size != WIDGETS) {
+                throw new IllegalStateException("Restored " + size + " of " + WIDGETS + " widgets");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            MoreFiles.deleteRecursively(template, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+
+        private static MappedChangeLog.Settings settings(Path directory) {
+            return MappedChangeLog.Settings.builder()
+                    .directory(directory)
+                    .fsyncPolicy(MappedChangeLog.FsyncPolicy.NONE)
+                    .snapshotEvery(Long.MAX_VALUE)
+                    .build();
+        }
+
+        private static void copy(Path source, Path target) throws IOException {
+            try (Stream<Path> paths = Files.walk(source)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    Path copy = target.resolve(source.relativize(path).toString());
+                    if (Files.isDirectory(path)) {
+                        Files.createDirectories(copy);
+                    } else {
+                        Files.copy(path, copy);
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Widget create(Writes writes) {
+        return create(writes.widgetService);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Widget create_8threads(Writes writes) {
+        return create(writes.widgetService);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public MappedChangeLog restore(Restore restore) throws IOException {
+        restore.restored = MappedChangeLog.open(Restore.settings(restore.directory));
+        return restore.restored;
+    }
+
+    private static Widget create(WidgetService widgetService) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return widgetService.create(content(random, Optional.of(random.nextInt(Z_RANGE))));
+    }
+
+    private static WidgetContent content(Random random, Optional<Integer> z) {
+        return WidgetContent.builder()
+                .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                .z(z)
+                .width(100)
+                .height(100)
+                .build();
+    }
+}
@@ -0,0 +1,100 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetPatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drags: moves of a random widget by a few units, keeping its z-index and size, on boards of contiguous z-indexes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DragBenchmark {
+    @Param({"10000", "100000"})
+    int boardSize;
+
+    private WidgetService widgetService;
+    private String[] ids;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<Widget> widgets = new ArrayList<>(boardSize);
+        ids = new String[boardSize];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int z = 0; z < boardSize; z++) {
+            ids[z] = UUID.randomUUID().toString();
+            widgets.add(Widget.builder()
+                    .id(ids[z])
+                    .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                    .z(z)
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        widgetService = new WidgetService(WidgetBoard.of(widgets, 0), new ChangeFeed(1_024), ChangeLog.NONE);
+    }
+
+    /**
+     * Drag sent as a full replacement, as clients had to before {@code PATCH}.
+     */
+    @Benchmark
+    public Optional<Widget> put() {
+        Widget widget = widgetService.get(randomId()).orElseThrow();
+        return widgetService.update(widget.getId(), WidgetContent.builder()
+                .coordinates(dragged(widget.getCoordinates()))
+                .z(Optional.of(widget.getZ()))
+                .width(widget.getWidth())
+                .height(widget.getHeight())
+                .build());
+    }
+
+    @Benchmark
+    public Optional<Widget> patch() {
+        Widget widget = widgetService.get(randomId()).orElseThrow();
+        return widgetService.patch(widget.getId(), WidgetPatch.builder()
+                .coordinates(Optional.of(dragged(widget.getCoordinates())))
+                .build());
+    }
+
+    private String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(boardSize)];
+    }
+
+    private static Coordinates dragged(Coordinates coordinates) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Coordinates.builder()
+                .x(coordinates.getX() + random.nextInt(-5, 6))
+                .y(coordinates.getY() + random.nextInt(-5, 6))
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.repository.WidgetStorage;
+import com.whiteboard.widgets.service.WidgetIds;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups of random widgets by id, with string keys ({@link WidgetStorage#OBJECTS}) and with ids held as two longs
+ * ({@link WidgetStorage#COLUMNS}). Ids are copied before every lookup, as they arrive in requests, so their hash is
+ * not cached yet. {@link StorageBenchmark} measures the heap of each storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdLookupBenchmark {
+    @Param({"100000"})
+    int boardSize;
+
+    @Param({"OBJECTS", "COLUMNS"})
+    WidgetStorage storage;
+
+    private WidgetBoard board;
+    private String[] ids;
+
+    @Setup
+    public void setUp() {
+        ids = new String[boardSize];
+        List<Widget> widgets = new ArrayList<>(boardSize);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int z = 0; z < boardSize; z++) {
+            String id = WidgetIds.next();
+            ids[z] = new String(id.toCharArray());
+            widgets.add(Widget.builder()
+                    .id(id)
+                    .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                    .z(z)
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        board = WidgetBoard.of(widgets, 0, storage);
+    }
+
+    @Benchmark
+    public Optional<Widget> get() {
+        return board.get(new String(ids[ThreadLocalRandom.current().nextInt(boardSize)]));
+    }
+}
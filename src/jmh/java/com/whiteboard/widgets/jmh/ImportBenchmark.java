@@ -0,0 +1,109 @@
+package com.whiteboard.widgets.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.whiteboard.widgets.api.WidgetStreamReader;
+import com.whiteboard.widgets.api.WidgetStreamWriter;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports of a board of widgets at random z-indexes from newline delimited JSON, parsing included, against parsing
+ * alone and against creating the same widgets one by one. Each import or creation starts from an empty board.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ImportBenchmark {
+    @Param({"1000000"})
+    int widgets;
+
+    private ObjectMapper objectMapper;
+    private List<Widget> exported;
+    private byte[] stream;
+    private WidgetService widgetService;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper()
+                .registerModule(new Jdk8Module())
+                .registerModule(new JavaTimeModule())
+                .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        Random random = new Random(1);
+        exported = new ArrayList<>(widgets);
+        for (int i = 0; i < widgets; i++) {
+            exported.add(Widget.builder()
+                    .id(UUID.randomUUID().toString())
+                    .z(random.nextInt(widgets))
+                    .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new WidgetStreamWriter(objectMapper).write(exported.stream(), output);
+        stream = output.toByteArray();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpService() {
+        widgetService = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(1_024), ChangeLog.NONE);
+    }
+
+    @Benchmark
+    public long importWidgets() throws IOException {
+        return widgetService.importWidgets(new WidgetStreamReader(objectMapper).read(new ByteArrayInputStream(stream)));
+    }
+
+    @Benchmark
+    public List<Widget> parse() throws IOException {
+        return new WidgetStreamReader(objectMapper).read(new ByteArrayInputStream(stream));
+    }
+
+    @Benchmark
+    public long createOneByOne() {
+        for (Widget widget : exported) {
+            widgetService.create(WidgetContent.builder()
+                    .z(Optional.of(widget.getZ()))
+                    .coordinates(widget.getCoordinates())
+                    .width(widget.getWidth())
+                    .height(widget.getHeight())
+                    .build());
+        }
+        return widgetService.version();
+    }
+}
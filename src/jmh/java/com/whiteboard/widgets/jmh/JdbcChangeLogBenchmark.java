@@ -0,0 +1,229 @@
+package com.whiteboard.widgets.jmh;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.JdbcChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates of widgets written into a file-backed H2 database served over TCP on this machine, so that every statement
+ * costs a round trip as with any database server. One operation is a whole workload, until all of its changes are
+ * in the database: written behind in batches, committed in batches with writers waiting, or with one statement per
+ * row and per widget shifted, each committed on its own, as a repository mapping rows one by one would. The tables
+ * are checked to hold the board after each operation.
+ *
+ * <p>Three workloads: 20,000 widgets created on top of the others, without shifts; 20,000 created at random among
+ * 50,000 z-indexes, shifting a few widgets now and then; 2,000 created at random among 2,000 z-indexes, shifting
+ * hundreds of widgets each. The creates are spread over one or four writer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JdbcChangeLogBenchmark {
+    @Param({"onTop", "sparse", "dense"})
+    String workload;
+
+    @Param({"behind", "committed", "rows"})
+    String log;
+
+    @Param({"1", "4"})
+    int writers;
+
+    private Path directory;
+    private Server server;
+    private ExecutorService executor;
+    private int iteration;
+    private String url;
+    private ChangeLog changeLog;
+    private WidgetService widgetService;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory(Paths.get("target"), "jdbc-benchmark").toAbsolutePath();
+        server = Server.createTcpServer("-tcpPort", "0", "-baseDir", directory.toString(), "-ifNotExists").start();
+        executor = Executors.newFixedThreadPool(writers);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        executor.shutdown();
+        server.stop();
+        MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws Exception {
+        url = "jdbc:h2:tcp://localhost:" + server.getPort() + "/" + workload + "-" + log + "-" + iteration++;
+        JdbcChangeLog.Settings.SettingsBuilder settings = JdbcChangeLog.Settings.builder().url(url);
+        switch (log) {
+            case "behind":
+                changeLog = JdbcChangeLog.open(settings.build(), "");
+                break;
+            case "committed":
+                changeLog = JdbcChangeLog.open(settings.writeBehind(false).build(), "");
+                break;
+            default:
+                JdbcChangeLog.open(settings.build(), "").close();
+                changeLog = new PerRowChangeLog(url);
+        }
+        widgetService = new WidgetService(changeLog.recovered(), new ChangeFeed(1_000), changeLog);
+    }
+
+    @TearDown(Level.Iteration)
+    public void check() throws IOException {
+        try (JdbcChangeLog reopened = JdbcChangeLog.open(JdbcChangeLog.Settings.builder().url(url).build(), "")) {
+            if (!widgetService.list().equals(reopened.recovered().list())) {
+                throw new IllegalStateException("Tables of " + url + " do not hold the board");
+            }
+        }
+    }
+
+    @Benchmark
+    public long write() throws Exception {
+        int writes = workload.equals("dense") ? 2_000 : 20_000;
+        int zRange = workload.equals("onTop") ? 0 : workload.equals("sparse") ? 50_000 : 2_000;
+        List<Future<?>> running = new ArrayList<>(writers);
+        for (int writer = 0; writer < writers; writer++) {
+            Random random = new Random(writer);
+            running.add(executor.submit(() -> {
+                for (int i = 0; i < writes / writers; i++) {
+                    widgetService.create(WidgetContent.builder()
+                            .coordinates(Coordinates.builder().x(random.nextInt(1_000)).y(random.nextInt(1_000))
+                                    .build())
+                            .z(zRange == 0 ? Optional.empty() : Optional.of(random.nextInt(zRange)))
+                            .width(10)
+                            .height(10)
+                            .build());
+                }
+            }));
+        }
+        for (Future<?> writer : running) {
+            writer.get();
+        }
+        changeLog.close();
+        return widgetService.version();
+    }
+
+    /**
+     * Writes every change as soon as it is appended, one row per statement and one statement per widget shifted,
+     * each committed on its own.
+     */
+    private static final class PerRowChangeLog implements ChangeLog {
+        private final Connection connection;
+        private final PreparedStatement delete;
+        private final PreparedStatement insert;
+        private final PreparedStatement moveOne;
+        private final PreparedStatement version;
+        private WidgetBoard previous = WidgetBoard.EMPTY;
+
+        PerRowChangeLog(String url) throws SQLException {
+            connection = DriverManager.getConnection(url);
+            delete = connection.prepareStatement("DELETE FROM widget WHERE board = '' AND id = ?");
+            insert = connection.prepareStatement("INSERT INTO widget (board, id, z, x, y, width, height, "
+                    + "last_modification) VALUES ('', ?, ?, ?, ?, ?, ?, ?)");
+            moveOne = connection.prepareStatement("UPDATE widget SET z = ? WHERE board = '' AND id = ?");
+            version = connection.prepareStatement("UPDATE widget_board SET version = ? WHERE board = ''");
+        }
+
+        @Override
+        public WidgetBoard recovered() {
+            return WidgetBoard.EMPTY;
+        }
+
+        @Override
+        public void append(List<WidgetChange> changes, WidgetBoard board) {
+            try {
+                for (WidgetChange change : changes) {
+                    switch (change.getType()) {
+                        case CREATED:
+                        case UPDATED:
+                            Widget widget = change.getWidget();
+                            delete.setString(1, widget.getId());
+                            delete.executeUpdate();
+                            insert.setString(1, widget.getId());
+                            insert.setInt(2, widget.getZ());
+                            insert.setInt(3, widget.getCoordinates().getX());
+                            insert.setInt(4, widget.getCoordinates().getY());
+                            insert.setInt(5, widget.getWidth());
+                            insert.setInt(6, widget.getHeight());
+                            insert.setObject(7, widget.getLastModification(), Types.TIMESTAMP);
+                            insert.executeUpdate();
+                            break;
+                        case DELETED:
+                            delete.setString(1, change.getId());
+                            delete.executeUpdate();
+                            break;
+                        case SHIFTED:
+                            for (Widget shifted : previous.listBetween(change.getFromZ(), change.getToZ())) {
+                                moveOne.setInt(1, shifted.getZ() + 1);
+                                moveOne.setString(2, shifted.getId());
+                                moveOne.executeUpdate();
+                            }
+                            break;
+                    }
+                }
+                version.setLong(1, board.version());
+                version.executeUpdate();
+            } catch (SQLException e) {
+                throw new UncheckedIOException(new IOException(e));
+            }
+            previous = board;
+        }
+
+        @Override
+        public void sync() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
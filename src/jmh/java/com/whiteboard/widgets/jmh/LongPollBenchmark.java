@@ -0,0 +1,230 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.WidgetsApplication;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A change to the board until all of 2,000 clients watching it over HTTP have seen it, the clients either parked on
+ * {@code GET /widgets?wait=30} or polling {@code GET /widgets} every second with {@code If-None-Match}. The
+ * {@code served} counter holds the requests answered in each iteration. {@code footprint} reports, in a single
+ * iteration once all clients are watching, the requests open, the live threads beyond those before the server started
+ * and the heap per client. Clients run in the same JVM on four threads, so threads and heap include theirs; a request
+ * failing fails the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LongPollBenchmark {
+    private static final int CLIENT_THREADS = 4;
+    private static final int WAIT_SECONDS = 30;
+    private static final long POLL_INTERVAL_MILLIS = 1_000;
+    private static final long SEEN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(WAIT_SECONDS + 5);
+
+    @Param({"wait", "poll"})
+    String mode;
+
+    @Param({"2000"})
+    int clients;
+
+    private ConfigurableApplicationContext context;
+    private WidgetService widgetService;
+    private ExecutorService clientExecutor;
+    private HttpClient client;
+    private URI uri;
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger seen = new AtomicInteger();
+    private final AtomicLong served = new AtomicLong();
+    private volatile long target;
+    private volatile boolean running;
+    private volatile Throwable failure;
+    private long heapBefore;
+    private int threadsBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        heapBefore = usedHeap();
+        threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        context = SpringApplication.run(WidgetsApplication.class, "--server.port=0", "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN");
+        widgetService = context.getBean(WidgetService.class);
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        uri = URI.create("http://localhost:" + port + "/widgets"
+                + (mode.equals("wait") ? "?wait=" + WAIT_SECONDS : ""));
+        clientExecutor = Executors.newFixedThreadPool(CLIENT_THREADS);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientExecutor)
+                .build();
+        running = true;
+        target = widgetService.version();
+        Executor pollDelay = CompletableFuture.delayedExecutor(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < clients; i++) {
+            new Watcher(pollDelay).request("\"" + target + "\"");
+        }
+        LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        running = false;
+        create();
+        for (int attempt = 0; attempt < 100 && open.get() > 0; attempt++) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        context.close();
+        clientExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int change(Requests requests) {
+        seen.set(0);
+        target = widgetService.version() + 1;
+        create();
+        long deadline = System.nanoTime() + SEEN_TIMEOUT_NANOS;
+        while (seen.get() < clients) {
+            if (failure != null) {
+                throw new IllegalStateException("A client request failed", failure);
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException(seen.get() + " of " + clients + " clients saw version " + target);
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        requests.served += served.getAndSet(0);
+        return seen.get();
+    }
+
+    /**
+     * Takes the figures of {@link Footprint}; the score is the time to collect the garbage before the heap is read.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public long footprint(Footprint footprint) {
+        if (failure != null) {
+            throw new IllegalStateException("A client request failed", failure);
+        }
+        footprint.openRequests = open.get();
+        footprint.threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        footprint.heapBytesPerClient = (usedHeap() - heapBefore) / clients;
+        return footprint.openRequests;
+    }
+
+    /**
+     * Requests answered while measuring, summed by JMH over each iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Requests {
+        public long served;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            served = 0;
+        }
+    }
+
+    /**
+     * Requests open, threads started and heap retained per client once all clients are watching, taken in the single
+     * measured iteration so that JMH has nothing to sum.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long openRequests;
+        public long threads;
+        public long heapBytesPerClient;
+    }
+
+    private void create() {
+        widgetService.create(WidgetContent.builder().z(Optional.empty()).width(10).height(10).build());
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Client requesting the board again as soon as it answers when waiting, or a second later when polling.
+     */
+    private final class Watcher {
+        private final Executor pollDelay;
+        private long counted;
+
+        Watcher(Executor pollDelay) {
+            this.pollDelay = pollDelay;
+        }
+
+        void request(String etag) {
+            if (!running) {
+                return;
+            }
+            open.incrementAndGet();
+            client.sendAsync(HttpRequest.newBuilder(uri).header("If-None-Match", etag).build(),
+                    HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        open.decrementAndGet();
+                        if (!running) {
+                            return;
+                        }
+                        if (error != null) {
+                            failure = error;
+                            return;
+                        }
+                        served.incrementAndGet();
+                        String tag = response.headers().firstValue("ETag").orElse(etag);
+                        long version = Long.parseLong(tag.replace("\"", ""));
+                        long expected = target;
+                        if (version >= expected && counted < expected) {
+                            counted = expected;
+                            seen.incrementAndGet();
+                        }
+                        if (mode.equals("wait")) {
+                            request(tag);
+                        } else {
+                            pollDelay.execute(() -> request(tag));
+                        }
+                    });
+        }
+    }
+}
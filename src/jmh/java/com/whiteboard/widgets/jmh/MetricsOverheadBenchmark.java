@@ -0,0 +1,107 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetMetrics;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes of {@link WidgetService} without metrics and with every meter of {@link WidgetMetrics} recording into a
+ * registry, on a board of 10,000 contiguous z-indexes. The difference is the cost of the metrics to an in-memory
+ * write, which is meant to stay within a few percent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class MetricsOverheadBenchmark {
+    private static final int BOARD_SIZE = 10_000;
+
+    @Param({"none", "micrometer"})
+    String metrics;
+
+    private WidgetService widgetService;
+    private String[] ids;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<Widget> widgets = new ArrayList<>(BOARD_SIZE);
+        ids = new String[BOARD_SIZE];
+        for (int z = 0; z < BOARD_SIZE; z++) {
+            ids[z] = UUID.randomUUID().toString();
+            widgets.add(Widget.builder()
+                    .id(ids[z])
+                    .coordinates(coordinates())
+                    .z(z)
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        WidgetMetrics widgetMetrics = metrics.equals("none")
+                ? WidgetMetrics.NONE
+                : new WidgetMetrics(new SimpleMeterRegistry());
+        widgetService = new WidgetService(WidgetBoard.of(widgets, 0), new ChangeFeed(1_024), ChangeLog.NONE,
+                widgetMetrics);
+    }
+
+    @Benchmark
+    public void createAndDelete_colliding() {
+        int z = ThreadLocalRandom.current().nextInt(BOARD_SIZE);
+        widgetService.delete(widgetService.create(content(Optional.of(z))).getId());
+    }
+
+    @Benchmark
+    public Optional<Widget> update_sameZ() {
+        String id = ids[ThreadLocalRandom.current().nextInt(BOARD_SIZE)];
+        return widgetService.update(id, content(widgetService.get(id).map(Widget::getZ)));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<Widget> update_sameZ_4threads() {
+        return update_sameZ();
+    }
+
+    private static WidgetContent content(Optional<Integer> z) {
+        return WidgetContent.builder()
+                .coordinates(coordinates())
+                .z(z)
+                .width(100)
+                .height(100)
+                .build();
+    }
+
+    private static Coordinates coordinates() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build();
+    }
+}
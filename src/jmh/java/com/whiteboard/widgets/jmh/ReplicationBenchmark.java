@@ -0,0 +1,219 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.WidgetsApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A leader and two followers started as separate JVMs on this machine, with 10,000 widgets loaded on the leader.
+ * {@code lag} is the time from a create answered by the leader to the widget being readable on both followers,
+ * polled every millisecond. {@code read} is {@code GET /widgets/{id}} of random widgets from 8 threads, sent to the
+ * leader alone or spread over all three instances at random, while the leader takes 50 creates per second.
+ *
+ * <p>All JVMs share the machine, so aggregate throughput only grows with instances when cores are left idle by one.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplicationBenchmark {
+    private static final String MAX_HEAP = "-Xmx512m";
+    private static final int WIDGETS = 10_000;
+    private static final int FOLLOWERS = 2;
+    private static final long WRITE_INTERVAL_MILLIS = 20;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final List<Process> processes = new ArrayList<>();
+    private URI leader;
+    private final List<URI> followers = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>(WIDGETS);
+
+    @Setup
+    public void setUp() throws Exception {
+        leader = start(null);
+        for (int i = 0; i < FOLLOWERS; i++) {
+            followers.add(start(leader));
+        }
+        load();
+        for (URI follower : followers) {
+            awaitWidget(follower, ids.get(ids.size() - 1));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        processes.forEach(Process::destroy);
+        for (Process process : processes) {
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String lag() throws Exception {
+        String id = create(client, leader);
+        for (URI follower : followers) {
+            awaitWidget(follower, id);
+        }
+        return id;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(8)
+    public int read(Readers readers) throws Exception {
+        List<URI> instances = readers.instances;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        URI instance = instances.get(random.nextInt(instances.size()));
+        HttpResponse<Void> response = client.send(
+                HttpRequest.newBuilder(instance.resolve("/widgets/" + ids.get(random.nextInt(ids.size())))).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(instance + " answered " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+
+    /**
+     * Instances taking the reads, and the creates the leader takes meanwhile.
+     */
+    @State(Scope.Benchmark)
+    public static class Readers {
+        @Param({"leader", "all"})
+        String reads;
+
+        List<URI> instances;
+        private Thread writer;
+
+        @Setup
+        public void setUp(ReplicationBenchmark cluster) {
+            instances = new ArrayList<>(List.of(cluster.leader));
+            if (reads.equals("all")) {
+                instances.addAll(cluster.followers);
+            }
+            HttpClient writerClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            writer = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        create(writerClient, cluster.leader);
+                        Thread.sleep(WRITE_INTERVAL_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "leader-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            writer.interrupt();
+            writer.join();
+        }
+    }
+
+    private URI start(URI leader) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>(List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                MAX_HEAP,
+                "-cp", System.getProperty("java.class.path"),
+                WidgetsApplication.class.getName(),
+                "--server.port=" + port,
+                "--logging.level.root=WARN"));
+        if (leader != null) {
+            command.add("--widgets.replication.leader=" + leader);
+        }
+        processes.add(new ProcessBuilder(command).inheritIO().start());
+        URI uri = URI.create("http://localhost:" + port);
+        for (int attempt = 0; attempt < 600; attempt++) {
+            try {
+                if (client.send(HttpRequest.newBuilder(uri.resolve("/widgets?limit=1")).build(),
+                        HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return uri;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Instance on port " + port + " did not start");
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private void load() throws Exception {
+        StringBuilder body = new StringBuilder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int z = 0; z < WIDGETS; z++) {
+            String id = UUID.randomUUID().toString();
+            ids.add(id);
+            body.append("{\"id\":\"").append(id).append("\",\"z\":").append(z)
+                    .append(",\"coordinates\":{\"x\":").append(random.nextInt(100_000))
+                    .append(",\"y\":").append(random.nextInt(100_000))
+                    .append("},\"width\":100,\"height\":100}\n");
+        }
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(leader.resolve("/widgets:import"))
+                        .header("Content-Type", "application/x-ndjson")
+                        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 204) {
+            throw new IllegalStateException("Leader answered " + response.statusCode() + " to the import");
+        }
+    }
+
+    private static String create(HttpClient client, URI leader) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(leader.resolve("/widgets"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"width\":10,\"height\":10}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Leader answered " + response.statusCode() + " to a create");
+        }
+        String body = response.body();
+        int start = body.indexOf("\"id\":\"") + "\"id\":\"".length();
+        return body.substring(start, body.indexOf('"', start));
+    }
+
+    private void awaitWidget(URI instance, String id) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(instance.resolve("/widgets/" + id)).build();
+        while (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+}
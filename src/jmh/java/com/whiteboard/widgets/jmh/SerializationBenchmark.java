@@ -0,0 +1,87 @@
+package com.whiteboard.widgets.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes widget lists as {@code GET /widgets} does, with an object mapper built the way Spring Boot builds it
+ * from the modules of {@code SerializationConfig}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"100", "10000"})
+    int listSize;
+
+    private ObjectWriter listWriter;
+    private ObjectWriter widgetWriter;
+    private List<Widget> widgets;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .modules(new Jdk8Module(), new JavaTimeModule())
+                .build();
+        listWriter = objectMapper.writerFor(TypeFactory.defaultInstance()
+                .constructCollectionType(List.class, Widget.class));
+        widgetWriter = objectMapper.writerFor(Widget.class);
+        Random random = new Random(1);
+        widgets = new ArrayList<>(listSize);
+        for (int z = 0; z < listSize; z++) {
+            widgets.add(Widget.builder()
+                    .id(UUID.randomUUID().toString())
+                    .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                    .z(z)
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public byte[] writeList() throws IOException {
+        return listWriter.writeValueAsBytes(widgets);
+    }
+
+    @Benchmark
+    public byte[] writeWidget() throws IOException {
+        return widgetWriter.writeValueAsBytes(widgets.get(0));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] writeList_4threads() throws IOException {
+        return writeList();
+    }
+}
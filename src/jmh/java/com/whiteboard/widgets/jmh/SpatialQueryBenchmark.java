@@ -0,0 +1,124 @@
+package com.whiteboard.widgets.jmh;
+
+import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Viewport and hit-test queries through the spatial index, compared with scanning and filtering the whole board,
+ * at random points of the plane. The setup checks that both give the same widgets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialQueryBenchmark {
+    private static final int PLANE = 100_000;
+    private static final int VIEWPORT_WIDTH = 1920;
+    private static final int VIEWPORT_HEIGHT = 1080;
+    private static final int POINTS = 1_024;
+
+    @Param({"10000", "100000", "1000000"})
+    int boardSize;
+
+    private WidgetBoard board;
+    private final int[] xs = new int[POINTS];
+    private final int[] ys = new int[POINTS];
+    private int query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(boardSize);
+        WidgetBoard board = WidgetBoard.EMPTY;
+        for (int z = 0; z < boardSize; z++) {
+            board = board.insert(Widget.builder()
+                    .id("w" + z)
+                    .z(z)
+                    .coordinates(Coordinates.builder().x(random.nextInt(PLANE)).y(random.nextInt(PLANE)).build())
+                    .width(10 + random.nextInt(200))
+                    .height(10 + random.nextInt(200))
+                    .build());
+        }
+        this.board = board;
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = random.nextInt(PLANE);
+            ys[i] = random.nextInt(PLANE);
+        }
+        for (int i = 0; i < POINTS; i++) {
+            if (!viewportIndex(xs[i], ys[i]).equals(viewportScan(xs[i], ys[i]))
+                    || !topmostIndex(xs[i], ys[i]).equals(topmostScan(xs[i], ys[i]))) {
+                throw new IllegalStateException("Index and scan differ at " + xs[i] + "," + ys[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Widget> viewportIndex() {
+        int point = query++ & POINTS - 1;
+        return viewportIndex(xs[point], ys[point]);
+    }
+
+    @Benchmark
+    public List<Widget> viewportScan() {
+        int point = query++ & POINTS - 1;
+        return viewportScan(xs[point], ys[point]);
+    }
+
+    @Benchmark
+    public Optional<Widget> topmostIndex() {
+        int point = query++ & POINTS - 1;
+        return topmostIndex(xs[point], ys[point]);
+    }
+
+    @Benchmark
+    public Optional<Widget> topmostScan() {
+        int point = query++ & POINTS - 1;
+        return topmostScan(xs[point], ys[point]);
+    }
+
+    private List<Widget> viewportIndex(int x, int y) {
+        return board.findIntersecting(x, y, x + VIEWPORT_WIDTH, y + VIEWPORT_HEIGHT);
+    }
+
+    private List<Widget> viewportScan(int x, int y) {
+        return board.list().stream()
+                .filter(widget -> intersects(widget, x, y, x + VIEWPORT_WIDTH, y + VIEWPORT_HEIGHT))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    private Optional<Widget> topmostIndex(int x, int y) {
+        return board.findTopmostAt(x, y);
+    }
+
+    private Optional<Widget> topmostScan(int x, int y) {
+        return board.list().stream()
+                .filter(widget -> intersects(widget, x, y, x, y))
+                .max(Comparator.comparingInt(Widget::getZ));
+    }
+
+    private static boolean intersects(Widget widget, int x1, int y1, int x2, int y2) {
+        long x = widget.getCoordinates().getX();
+        long y = widget.getCoordinates().getY();
+        return x <= x2 && x + widget.getWidth() >= x1 && y <= y2 && y + widget.getHeight() >= y1;
+    }
+}
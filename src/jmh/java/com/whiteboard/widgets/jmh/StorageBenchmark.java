@@ -0,0 +1,201 @@
+package com.whiteboard.widgets.jmh;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.repository.WidgetStorage;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The heap retained by 1M widgets in each {@link WidgetStorage}, and in the {@code HashMap}/{@code TreeMap} storage
+ * the board replaced; and the latency and GC pauses of sustained updates on such a board.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    private static final int WIDGETS = 1_000_000;
+
+    /**
+     * Layout of the widgets whose footprint is measured.
+     */
+    @State(Scope.Benchmark)
+    public static class Layout {
+        @Param({"maps", "OBJECTS", "COLUMNS"})
+        String layout;
+    }
+
+    /**
+     * Heap retained by the widgets built in the single measured iteration, once the garbage of building them is
+     * collected, in bytes per widget.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerWidget;
+    }
+
+    /**
+     * Board of 1M widgets of the given storage, updated through a service.
+     */
+    @State(Scope.Benchmark)
+    public static class Updates {
+        @Param({"OBJECTS", "COLUMNS"})
+        WidgetStorage storage;
+
+        private WidgetService widgetService;
+        private String[] ids;
+        private final AtomicLong pauses = new AtomicLong();
+        private final AtomicLong pauseMillis = new AtomicLong();
+        private final NotificationListener listener = (notification, handback) -> {
+            if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                pauses.incrementAndGet();
+                pauseMillis.addAndGet(GarbageCollectionNotificationInfo
+                        .from((CompositeData) notification.getUserData()).getGcInfo().getDuration());
+            }
+        };
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            WidgetBoard board = WidgetBoard.of(widgets(), 0, storage);
+            ids = board.stream().map(Widget::getId).toArray(String[]::new);
+            widgetService = new WidgetService(board, new ChangeFeed(1), ChangeLog.NONE);
+            usedHeapAfterGc();
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws ListenerNotFoundException {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).removeNotificationListener(listener);
+            }
+        }
+    }
+
+    /**
+     * GC pauses reported by the collectors during each iteration, and their total duration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class GcPauses {
+        public long gcPauses;
+        public long gcMillis;
+        private long pausesBefore;
+        private long millisBefore;
+
+        @Setup(Level.Iteration)
+        public void reset(Updates updates) {
+            gcPauses = 0;
+            gcMillis = 0;
+            pausesBefore = updates.pauses.get();
+            millisBefore = updates.pauseMillis.get();
+        }
+    }
+
+    /**
+     * Builds the widgets in the layout; the score is the time to build them and collect the garbage three times.
+     * The first build of a layout retains a few dozen MB more than the following ones, hence a warmup iteration.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 1)
+    public Object footprint(Layout layout, Footprint footprint) {
+        long before = usedHeapAfterGc();
+        Object built = layout.layout.equals("maps")
+                ? maps()
+                : WidgetBoard.of(widgets(), 0, WidgetStorage.valueOf(layout.layout));
+        footprint.bytesPerWidget = (usedHeapAfterGc() - before) / WIDGETS;
+        return built;
+    }
+
+    @Benchmark
+    public Optional<Widget> update(Updates updates, GcPauses pauses) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Optional<Widget> updated = updates.widgetService.update(updates.ids[random.nextInt(WIDGETS)],
+                WidgetContent.builder()
+                        .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                        .z(Optional.of(random.nextInt(WIDGETS)))
+                        .width(100)
+                        .height(100)
+                        .build());
+        pauses.gcPauses = updates.pauses.get() - pauses.pausesBefore;
+        pauses.gcMillis = updates.pauseMillis.get() - pauses.millisBefore;
+        return updated;
+    }
+
+    private static Object maps() {
+        Map<String, Widget> widgetsById = new HashMap<>();
+        TreeMap<Integer, Widget> widgetsByZIndex = new TreeMap<>();
+        for (Widget widget : widgets()) {
+            widgetsById.put(widget.getId(), widget);
+            widgetsByZIndex.put(widget.getZ(), widget);
+        }
+        return new Object[]{widgetsById, widgetsByZIndex};
+    }
+
+    private static List<Widget> widgets() {
+        Random random = new Random(1);
+        List<Widget> widgets = new ArrayList<>(WIDGETS);
+        for (int z = 0; z < WIDGETS; z++) {
+            widgets.add(Widget.builder()
+                    .id(UUID.randomUUID().toString())
+                    .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                    .z(z)
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        return widgets;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
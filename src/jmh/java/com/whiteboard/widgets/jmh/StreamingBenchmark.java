@@ -0,0 +1,94 @@
+package com.whiteboard.widgets.jmh;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.whiteboard.widgets.api.WidgetStreamWriter;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a board of 1M widgets as NDJSON in a JVM whose heap leaves little room beyond the board itself, and as the
+ * buffered JSON list for comparison, which needs a larger heap than that. Both return the bytes written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StreamingBenchmark {
+    private static final int WIDGETS = 1_000_000;
+
+    private ObjectMapper objectMapper;
+    private WidgetBoard board;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper()
+                .registerModule(new Jdk8Module())
+                .registerModule(new JavaTimeModule())
+                .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        Random random = new Random(1);
+        WidgetBoard board = WidgetBoard.EMPTY;
+        for (int z = 0; z < WIDGETS; z++) {
+            board = board.insert(Widget.builder()
+                    .id(UUID.randomUUID().toString())
+                    .z(z)
+                    .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        this.board = board;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+    public long stream() throws IOException {
+        CountingOutputStream output = new CountingOutputStream();
+        new WidgetStreamWriter(objectMapper).write(board.stream(), output);
+        return output.count;
+    }
+
+    @Benchmark
+    public long list() throws IOException {
+        CountingOutputStream output = new CountingOutputStream();
+        output.write(objectMapper.writeValueAsBytes(board.list()));
+        return output.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
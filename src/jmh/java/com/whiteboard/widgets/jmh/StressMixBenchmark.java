@@ -0,0 +1,133 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetPatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The operation mix of {@code WidgetServiceConcurrencyTest} on one service from 1, 2, 4, 8, 16, 32 and 64 threads:
+ * 30% creations, 10% each of updates, patches and deletions, and 40% reads. Ids are drawn from the last 4,096
+ * created, so that picking one costs the same however many threads create them; the board is new for each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StressMixBenchmark {
+    private static final int RECENT_IDS = 4_096;
+
+    private WidgetService widgetService;
+    private AtomicReferenceArray<String> ids;
+    private final AtomicLong created = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        widgetService = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(1), ChangeLog.NONE);
+        ids = new AtomicReferenceArray<>(RECENT_IDS);
+        created.set(0);
+    }
+
+    @Benchmark
+    public Object mix_1thread() {
+        return operation();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Object mix_2threads() {
+        return operation();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object mix_4threads() {
+        return operation();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object mix_8threads() {
+        return operation();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object mix_16threads() {
+        return operation();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Object mix_32threads() {
+        return operation();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object mix_64threads() {
+        return operation();
+    }
+
+    private Object operation() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int operation = random.nextInt(10);
+        String id = operation < 3 ? null : randomId(random);
+        if (id == null) {
+            String createdId = widgetService.create(content(random)).getId();
+            ids.set((int) (created.getAndIncrement() % RECENT_IDS), createdId);
+            return createdId;
+        } else if (operation < 4) {
+            return widgetService.update(id, content(random));
+        } else if (operation < 5) {
+            return widgetService.patch(id, WidgetPatch.builder()
+                    .coordinates(Optional.of(Coordinates.builder().x(random.nextInt(10_000)).build()))
+                    .build());
+        } else if (operation < 6) {
+            widgetService.delete(id);
+            return id;
+        } else {
+            return widgetService.get(id);
+        }
+    }
+
+    /**
+     * One of the recently created ids, or null before a creation has stored its id in the slot drawn.
+     */
+    private String randomId(ThreadLocalRandom random) {
+        long stored = Math.min(created.get(), RECENT_IDS);
+        return stored == 0 ? null : ids.get(random.nextInt((int) stored));
+    }
+
+    private static WidgetContent content(ThreadLocalRandom random) {
+        return WidgetContent.builder()
+                .coordinates(Coordinates.builder().x(random.nextInt(10_000)).y(random.nextInt(10_000)).build())
+                .width(100)
+                .height(100)
+                .z(random.nextBoolean() ? Optional.empty() : Optional.of(random.nextInt(1_000)))
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations of {@link WidgetService} on boards of contiguous z-indexes, where any z-index below the top collides
+ * with a widget and shifts every widget above it. Creations are paired with a deletion to keep the board size
+ * constant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WidgetServiceBenchmark {
+    @Param({"1000", "100000"})
+    int boardSize;
+
+    private WidgetService widgetService;
+    private String[] ids;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        List<Widget> widgets = new ArrayList<>(boardSize);
+        ids = new String[boardSize];
+        for (int z = 0; z < boardSize; z++) {
+            ids[z] = UUID.randomUUID().toString();
+            widgets.add(Widget.builder()
+                    .id(ids[z])
+                    .coordinates(coordinates())
+                    .z(z)
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        widgetService = new WidgetService(WidgetBoard.of(widgets, 0), new ChangeFeed(1_024), ChangeLog.NONE);
+    }
+
+    @Benchmark
+    public void createAndDelete_onTop() {
+        widgetService.delete(widgetService.create(content(Optional.empty())).getId());
+    }
+
+    @Benchmark
+    public void createAndDelete_colliding() {
+        widgetService.delete(widgetService.create(content(Optional.of(randomZ()))).getId());
+    }
+
+    @Benchmark
+    public Optional<Widget> update_sameZ() {
+        String id = randomId();
+        return widgetService.update(id, content(widgetService.get(id).map(Widget::getZ)));
+    }
+
+    @Benchmark
+    public Optional<Widget> update_colliding() {
+        return widgetService.update(randomId(), content(Optional.of(randomZ())));
+    }
+
+    @Benchmark
+    public Optional<Widget> get() {
+        return widgetService.get(randomId());
+    }
+
+    @Benchmark
+    public List<Widget> list() {
+        return widgetService.list();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void createAndDelete_colliding_4threads() {
+        createAndDelete_colliding();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(2)
+    public Optional<Widget> readWrite_update() {
+        return update_colliding();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(2)
+    public Optional<Widget> readWrite_get() {
+        return get();
+    }
+
+    private String randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(boardSize)];
+    }
+
+    private int randomZ() {
+        return ThreadLocalRandom.current().nextInt(boardSize);
+    }
+
+    private static WidgetContent content(Optional<Integer> z) {
+        return WidgetContent.builder()
+                .coordinates(coordinates())
+                .z(z)
+                .width(100)
+                .height(100)
+                .build();
+    }
+
+    private static Coordinates coordinates() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build();
+    }
+}
@@ -0,0 +1,123 @@
+package com.whiteboard.widgets.jmh;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes a list of 10,000 widgets in each format of the API, with object mappers configured like those
+ * of {@code SerializationConfig}. The size of the payload is the {@code payloadBytes} counter of {@link #payload}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+    private static final int WIDGETS = 10_000;
+
+    @Param({"json", "smile", "cbor"})
+    String format;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private List<Widget> widgets;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = builder(format)
+                .modules(new Jdk8Module(), new JavaTimeModule())
+                .build();
+        JavaType listType = TypeFactory.defaultInstance().constructCollectionType(List.class, Widget.class);
+        writer = objectMapper.writerFor(listType);
+        reader = objectMapper.readerFor(listType);
+        Random random = new Random(1);
+        widgets = new ArrayList<>(WIDGETS);
+        for (int z = 0; z < WIDGETS; z++) {
+            widgets.add(Widget.builder()
+                    .id(UUID.randomUUID().toString())
+                    .coordinates(Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build())
+                    .z(z)
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        encoded = writer.writeValueAsBytes(widgets);
+    }
+
+    private static Jackson2ObjectMapperBuilder builder(String format) {
+        switch (format) {
+            case "smile":
+                return Jackson2ObjectMapperBuilder.smile()
+                        .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+            case "cbor":
+                return Jackson2ObjectMapperBuilder.cbor()
+                        .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+            default:
+                return Jackson2ObjectMapperBuilder.json();
+        }
+    }
+
+    /**
+     * Size of the encoded widgets, in bytes.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+        public long payloadBytes;
+    }
+
+    /**
+     * A single encoding, whose size is reported once.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public byte[] payload(Payload payload) throws IOException {
+        byte[] bytes = writer.writeValueAsBytes(widgets);
+        payload.payloadBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return writer.writeValueAsBytes(widgets);
+    }
+
+    @Benchmark
+    public List<Widget> decode() throws IOException {
+        return reader.readValue(encoded);
+    }
+}
@@ -0,0 +1,127 @@
+package com.whiteboard.widgets.jmh;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.MappedChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetMetrics;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.WritePipeline;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetPatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bursts of writes from 16 threads to one board of 10,000 widgets, through the service monitor or through the write
+ * pipeline, with no change log or with a memory-mapped log flushed on every commit. Writes are drags of one of the
+ * 100 most recent widgets, plus one in five updates to a colliding z-index.
+ *
+ * <p>Throughput comes from the {@code thrpt} runs, tail latencies from the percentiles of the {@code sample} runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class WritePipelineBenchmark {
+    private static final int BOARD_SIZE = 10_000;
+    private static final int HOT_WIDGETS = 100;
+
+    @Param({"monitor", "pipeline"})
+    String writes;
+
+    @Param({"none", "mapped"})
+    String log;
+
+    private Path directory;
+    private ChangeLog changeLog;
+    private WidgetService widgetService;
+    private String[] ids;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        List<Widget> widgets = new ArrayList<>(BOARD_SIZE);
+        ids = new String[BOARD_SIZE];
+        for (int z = 0; z < BOARD_SIZE; z++) {
+            ids[z] = UUID.randomUUID().toString();
+            widgets.add(Widget.builder()
+                    .id(ids[z])
+                    .coordinates(coordinates())
+                    .z(z)
+                    .width(100)
+                    .height(100)
+                    .lastModification(LocalDateTime.now())
+                    .build());
+        }
+        WidgetBoard board = WidgetBoard.of(widgets, 0);
+        if (log.equals("mapped")) {
+            directory = Files.createTempDirectory("widgets");
+            changeLog = MappedChangeLog.open(MappedChangeLog.Settings.builder().directory(directory).build());
+        } else {
+            changeLog = ChangeLog.NONE;
+        }
+        Optional<WritePipeline.Settings> pipeline = writes.equals("pipeline")
+                ? Optional.of(WritePipeline.Settings.builder().build())
+                : Optional.empty();
+        widgetService = new WidgetService(board, new ChangeFeed(1_024), changeLog, WidgetMetrics.NONE, pipeline);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        widgetService.close();
+        changeLog.close();
+        if (directory != null) {
+            MoreFiles.deleteRecursively(directory, RecursiveDeleteOption.ALLOW_INSECURE);
+        }
+    }
+
+    @Benchmark
+    public Optional<Widget> write() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id = ids[BOARD_SIZE - 1 - random.nextInt(HOT_WIDGETS)];
+        if (random.nextInt(5) == 0) {
+            return widgetService.update(id, WidgetContent.builder()
+                    .coordinates(coordinates())
+                    .z(Optional.of(random.nextInt(BOARD_SIZE)))
+                    .width(100)
+                    .height(100)
+                    .build());
+        }
+        return widgetService.patch(id, WidgetPatch.builder().coordinates(Optional.of(coordinates())).build());
+    }
+
+    private static Coordinates coordinates() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Coordinates.builder().x(random.nextInt(100_000)).y(random.nextInt(100_000)).build();
+    }
+}
@@ -0,0 +1,85 @@
+package com.whiteboard.widgets.jmh;
+
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts at z=0 into boards of contiguous z-indexes, comparing {@link WidgetBoard} with the cascading
+ * {@code HashMap}/{@code TreeMap} storage it replaced. Each insert into the board is into the same board of
+ * {@code boardSize} widgets; the maps keep the widgets inserted during an iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZIndexInsertBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int boardSize;
+
+    private WidgetBoard board;
+    private Map<String, Widget> widgetsById;
+    private SortedMap<Integer, Widget> widgetsByZIndex;
+    private int inserted;
+
+    @Setup
+    public void setUp() {
+        WidgetBoard board = WidgetBoard.EMPTY;
+        for (int z = 0; z < boardSize; z++) {
+            board = board.insert(widget("w" + z, z));
+        }
+        this.board = board;
+    }
+
+    @Setup(Level.Iteration)
+    public void fillMaps() {
+        widgetsById = new HashMap<>();
+        widgetsByZIndex = new TreeMap<>();
+        for (int z = 0; z < boardSize; z++) {
+            Widget widget = widget("w" + z, z);
+            widgetsById.put(widget.getId(), widget);
+            widgetsByZIndex.put(z, widget);
+        }
+    }
+
+    @Benchmark
+    public WidgetBoard board() {
+        return board.insert(widget("new" + inserted++, 0));
+    }
+
+    @Benchmark
+    public int cascadingMaps() {
+        Widget inserting = widget("new" + inserted++, 0);
+        int moved = 0;
+        while (inserting != null) {
+            widgetsById.put(inserting.getId(), inserting);
+            Widget replaced = widgetsByZIndex.put(inserting.getZ(), inserting);
+            inserting = replaced == null ? null : replaced.toBuilder().z(replaced.getZ() + 1).build();
+            moved++;
+        }
+        return moved;
+    }
+
+    private static Widget widget(String id, int z) {
+        return Widget.builder().id(id).z(z).width(10).height(10).build();
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * JMH benchmarks of the widget service and of the JSON serialization of its responses.
+ *
+ * <p>Run with {@code mvn verify -P jmh}, or a subset with {@code -Djmh.include=<regexp>}. Results are written to
+ * {@code target/jmh-result.json}; {@code src/jmh/baseline/jmh-result.json} holds those of the current code, to be
+ * compared with a new run (e.g. on https://jmh.morethan.net) and replaced along with changes that move them.
+ */
+package com.whiteboard.widgets.jmh;
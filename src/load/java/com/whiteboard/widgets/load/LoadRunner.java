@@ -0,0 +1,268 @@
+package com.whiteboard.widgets.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs scenarios against an instance, each on a board of its own named after it.
+ */
+final class LoadRunner {
+    private static final int SIZE = 100;
+    private static final int AREA = 100_000;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final URI target;
+
+    LoadRunner(URI target) {
+        this.target = target;
+    }
+
+    /**
+     * Results of the requests due after the warmup, per operation. Throughput counts until the last of them is
+     * answered, so it falls below the rate when the instance cannot keep up.
+     */
+    Map<Operation, OperationResults> run(Scenario scenario) throws Exception {
+        URI board = target.resolve("/boards/load-" + scenario.getName() + "-" + System.currentTimeMillis() + "/");
+        Widgets widgets = preload(board, scenario.getBoardSize());
+        Operation[] operations = weighted(scenario.getMix());
+        long intervalNanos = scenario.getClients() * 1_000_000_000L / scenario.getRate();
+        long start = System.nanoTime();
+        long measuredFrom = start + scenario.getWarmup().toNanos();
+        long end = measuredFrom + scenario.getDuration().toNanos();
+
+        ExecutorService executor = Executors.newFixedThreadPool(scenario.getClients());
+        List<Future<Map<Operation, OperationResults>>> clients = new ArrayList<>();
+        for (int i = 0; i < scenario.getClients(); i++) {
+            long first = start + intervalNanos * i / scenario.getClients();
+            Client client = new Client(board, scenario, widgets);
+            clients.add(executor.submit(() -> client.run(operations, first, intervalNanos, measuredFrom, end)));
+        }
+        Map<Operation, OperationResults> results = new EnumMap<>(Operation.class);
+        for (Future<Map<Operation, OperationResults>> client : clients) {
+            client.get().forEach((operation, recorded) ->
+                    results.computeIfAbsent(operation, key -> new OperationResults()).add(recorded));
+        }
+        executor.shutdown();
+        long finished = System.nanoTime();
+        results.values().forEach(recorded -> recorded.measuredNanos = finished - measuredFrom);
+        return results;
+    }
+
+    /**
+     * Imports widgets at every other z-index, so that some creates find a free z-index and others shift widgets.
+     */
+    private Widgets preload(URI board, int size) throws IOException, InterruptedException {
+        Widgets widgets = new Widgets();
+        StringBuilder body = new StringBuilder();
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            String id = UUID.randomUUID().toString();
+            widgets.add(new Known(id, i * 2));
+            body.append("{\"id\":\"").append(id).append("\",\"z\":").append(i * 2)
+                    .append(",\"coordinates\":{\"x\":").append(random.nextInt(AREA))
+                    .append(",\"y\":").append(random.nextInt(AREA))
+                    .append("},\"width\":").append(SIZE).append(",\"height\":").append(SIZE).append("}\n");
+        }
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(board.resolve("./widgets:import"))
+                        .header("Content-Type", "application/x-ndjson")
+                        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 204) {
+            throw new IllegalStateException("Import answered " + response.statusCode() + ": " + response.body());
+        }
+        return widgets;
+    }
+
+    /**
+     * Operations repeated by weight, to be picked uniformly.
+     */
+    private static Operation[] weighted(Map<Operation, Integer> mix) {
+        List<Operation> operations = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                operations.add(operation);
+            }
+        });
+        return operations.toArray(new Operation[0]);
+    }
+
+    private static String content(Random random, Optional<Integer> z) {
+        return "{\"coordinates\":{\"x\":" + random.nextInt(AREA) + ",\"y\":" + random.nextInt(AREA) + "},"
+                + z.map(value -> "\"z\":" + value + ",").orElse("")
+                + "\"width\":" + SIZE + ",\"height\":" + SIZE + "}";
+    }
+
+    /**
+     * Sends requests at a fixed pace, each picked at random from the mix.
+     */
+    private final class Client {
+        private final URI board;
+        private final Scenario scenario;
+        private final Widgets widgets;
+        private final Random random = new Random();
+        private final Map<Operation, OperationResults> results = new EnumMap<>(Operation.class);
+        private String etag;
+
+        Client(URI board, Scenario scenario, Widgets widgets) {
+            this.board = board;
+            this.scenario = scenario;
+            this.widgets = widgets;
+        }
+
+        Map<Operation, OperationResults> run(Operation[] operations, long first, long intervalNanos,
+                                             long measuredFrom, long end) {
+            for (long due = first; due < end; due += intervalNanos) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Operation operation = operations[random.nextInt(operations.length)];
+                int status;
+                boolean failed;
+                try {
+                    status = send(operation);
+                    failed = !succeeded(operation, status);
+                } catch (IOException e) {
+                    status = 0;
+                    failed = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (due >= measuredFrom) {
+                    results.computeIfAbsent(operation, key -> new OperationResults())
+                            .record(System.nanoTime() - due, status, failed);
+                }
+            }
+            return results;
+        }
+
+        /**
+         * Sends the request, keeping track of the widgets it changes, and answers its status.
+         */
+        private int send(Operation operation) throws IOException, InterruptedException {
+            switch (operation) {
+                case DRAG: {
+                    Known dragged = widgets.random(random);
+                    HttpResponse<String> response = client.send(json(board.resolve("widgets/" + dragged.id))
+                                    .PUT(HttpRequest.BodyPublishers.ofString(
+                                            content(random, Optional.of(dragged.z))))
+                                    .build(),
+                            HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200) {
+                        dragged.z = objectMapper.readTree(response.body()).get("z").asInt();
+                    }
+                    return response.statusCode();
+                }
+                case CREATE: {
+                    HttpResponse<String> response = client.send(json(board.resolve("widgets"))
+                                    .POST(HttpRequest.BodyPublishers.ofString(
+                                            content(random, Optional.of(widgets.random(random).z))))
+                                    .build(),
+                            HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200) {
+                        JsonNode created = objectMapper.readTree(response.body());
+                        widgets.add(new Known(created.get("id").asText(), created.get("z").asInt()));
+                    }
+                    return response.statusCode();
+                }
+                case DELETE: {
+                    StringBuilder body = new StringBuilder("[");
+                    for (Known deleted : widgets.removeRandom(random, scenario.getDeleteBatch())) {
+                        body.append(body.length() > 1 ? "," : "")
+                                .append("{\"type\":\"DELETE\",\"id\":\"").append(deleted.id).append("\"}");
+                    }
+                    return client.send(json(board.resolve("./widgets:batch"))
+                                    .POST(HttpRequest.BodyPublishers.ofString(body.append("]").toString()))
+                                    .build(),
+                            HttpResponse.BodyHandlers.discarding())
+                            .statusCode();
+                }
+                default: {
+                    HttpRequest.Builder request = HttpRequest.newBuilder(board.resolve("widgets"))
+                            .header("Accept", "application/json");
+                    if (etag != null) {
+                        request.header("If-None-Match", etag);
+                    }
+                    HttpResponse<Void> response = client.send(request.build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    response.headers().firstValue("ETag").ifPresent(value -> etag = value);
+                    return response.statusCode();
+                }
+            }
+        }
+
+        /**
+         * Whether the status is a success, 404 included for writes to widgets another client deleted meanwhile.
+         */
+        private boolean succeeded(Operation operation, int status) {
+            return status == 200 || status == 204 || (operation == Operation.POLL && status == 304)
+                    || (operation != Operation.POLL && status == 404);
+        }
+
+        private HttpRequest.Builder json(URI uri) {
+            return HttpRequest.newBuilder(uri).header("Content-Type", "application/json");
+        }
+    }
+
+    /**
+     * Widget as last seen by the clients.
+     */
+    private static final class Known {
+        final String id;
+        volatile int z;
+
+        Known(String id, int z) {
+            this.id = id;
+            this.z = z;
+        }
+    }
+
+    /**
+     * Widgets the clients know of, picked at random in O(1).
+     */
+    private static final class Widgets {
+        private final List<Known> known = new ArrayList<>();
+
+        synchronized void add(Known widget) {
+            known.add(widget);
+        }
+
+        synchronized Known random(Random random) {
+            return known.get(random.nextInt(known.size()));
+        }
+
+        /**
+         * Forgets widgets picked at random, as many as asked but leaving at least one.
+         */
+        synchronized List<Known> removeRandom(Random random, int count) {
+            List<Known> removed = new ArrayList<>();
+            while (removed.size() < count && known.size() > 1) {
+                int index = random.nextInt(known.size());
+                removed.add(known.get(index));
+                known.set(index, known.get(known.size() - 1));
+                known.remove(known.size() - 1);
+            }
+            return removed;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.whiteboard.widgets.load;
+
+import com.whiteboard.widgets.WidgetsApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runs the configured scenarios one after the other, prints their results and exits with status 1 if any missed
+ * an objective. Starts the application in this JVM unless {@code target} names a running instance.
+ */
+public final class LoadTest {
+    private static final Path REPORTS = Paths.get("target", "load");
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties properties = new Properties();
+        try (InputStream defaults = LoadTest.class.getResourceAsStream("/load.properties")) {
+            properties.load(defaults);
+        }
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            properties.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        ConfigurableApplicationContext application = null;
+        URI target;
+        if (properties.getProperty("target", "").isEmpty()) {
+            List<String> applicationArgs = new ArrayList<>(List.of("--server.port=0", "--logging.level.root=WARN",
+                    "--spring.main.banner-mode=off"));
+            String extraArgs = properties.getProperty("application-args", "").trim();
+            if (!extraArgs.isEmpty()) {
+                applicationArgs.addAll(List.of(extraArgs.split(",")));
+            }
+            application = SpringApplication.run(WidgetsApplication.class, applicationArgs.toArray(new String[0]));
+            target = URI.create("http://localhost:" + application.getEnvironment().getProperty("local.server.port"));
+        } else {
+            target = URI.create(properties.getProperty("target"));
+        }
+        List<String> violations = new ArrayList<>();
+        try {
+            LoadRunner runner = new LoadRunner(target);
+            for (String name : properties.getProperty("scenarios").split(",")) {
+                Scenario scenario = Scenario.of(name.trim(), properties);
+                Map<Operation, OperationResults> results = runner.run(scenario);
+                print(scenario, results);
+                write(scenario, results);
+                for (Slo slo : scenario.getSlos()) {
+                    OperationResults recorded = results.get(slo.getOperation());
+                    if (recorded == null) {
+                        violations.add(scenario.getName() + ": no " + slo.getOperation().endpoint + " sent");
+                    } else {
+                        slo.violation(recorded).ifPresent(violation ->
+                                violations.add(scenario.getName() + ": " + violation));
+                    }
+                }
+            }
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+
+        if (!violations.isEmpty()) {
+            System.out.println("Objectives missed:");
+            violations.forEach(violation -> System.out.println("  " + violation));
+            System.exit(1);
+        }
+        System.out.println("All objectives met");
+        System.exit(0);
+    }
+
+    private static void print(Scenario scenario, Map<Operation, OperationResults> results) {
+        System.out.printf("%n%s: %,d widgets, %,d requests/s from %d clients for %s after %s of warmup%n",
+                scenario.getName(), scenario.getBoardSize(), scenario.getRate(), scenario.getClients(),
+                scenario.getDuration(), scenario.getWarmup());
+        System.out.printf("  %-20s %9s %9s %9s %9s %9s %9s %7s %7s  %s%n", "endpoint", "served", "req/s",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors", "shed", "statuses");
+        results.forEach((operation, recorded) -> System.out.printf(
+                "  %-20s %,9d %,9.1f %9.2f %9.2f %9.2f %9.2f %7d %7d  %s%n",
+                operation.endpoint, recorded.count(), recorded.throughput(), recorded.percentileMillis(50),
+                recorded.percentileMillis(99), recorded.percentileMillis(99.9), recorded.maxMillis(),
+                recorded.errors, recorded.shed, recorded.statuses));
+    }
+
+    /**
+     * Writes the latency distribution of every operation in milliseconds, in the format HdrHistogram plotters read.
+     */
+    private static void write(Scenario scenario, Map<Operation, OperationResults> results) throws IOException {
+        Files.createDirectories(REPORTS);
+        for (Map.Entry<Operation, OperationResults> entry : results.entrySet()) {
+            Path file = REPORTS.resolve(scenario.getName() + "-" + entry.getKey().key() + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                entry.getValue().latencies.outputPercentileDistribution(out, 1_000.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.whiteboard.widgets.load;
+
+import java.util.Locale;
+
+/**
+ * Requests a load test sends, one endpoint each.
+ */
+enum Operation {
+    /**
+     * Moves a widget, keeping the z-index it had when last seen: clients whose view is stale send a z-index taken
+     * since, which shifts the widgets above.
+     */
+    DRAG("PUT /widgets/{id}"),
+    /**
+     * Creates a widget at the z-index of another, bringing the new widget in front of it and shifting those above.
+     */
+    CREATE("POST /widgets"),
+    /**
+     * Deletes a batch of widgets at once.
+     */
+    DELETE("POST /widgets:batch"),
+    /**
+     * Reads the whole board, with the ETag of the last board read.
+     */
+    POLL("GET /widgets");
+
+    final String endpoint;
+
+    Operation(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Name of the operation in the configuration.
+     */
+    String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    static Operation of(String key) {
+        return valueOf(key.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,77 @@
+package com.whiteboard.widgets.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencies and statuses of the requests of one operation, recorded by one client or merged from all of them.
+ * Status 0 stands for requests which got no response.
+ *
+ * <p>Requests answered 503 were shed by the admission control of the instance: they are counted apart, neither as
+ * errors nor in the latencies and throughput, which describe the requests served.
+ */
+final class OperationResults {
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final int SHED = 503;
+
+    /**
+     * Latencies in microseconds.
+     */
+    final Histogram latencies = new Histogram(SIGNIFICANT_DIGITS);
+    final Map<Integer, Long> statuses = new TreeMap<>();
+    long errors;
+    long shed;
+    long measuredNanos;
+
+    void record(long latencyNanos, int status, boolean failed) {
+        statuses.merge(status, 1L, Long::sum);
+        if (status == SHED) {
+            shed++;
+            return;
+        }
+        latencies.recordValue(Math.max(1, latencyNanos / 1_000));
+        if (failed) {
+            errors++;
+        }
+    }
+
+    void add(OperationResults other) {
+        latencies.add(other.latencies);
+        other.statuses.forEach((status, count) -> statuses.merge(status, count, Long::sum));
+        errors += other.errors;
+        shed += other.shed;
+    }
+
+    /**
+     * Requests served, shed ones excluded.
+     */
+    long count() {
+        return latencies.getTotalCount();
+    }
+
+    long sent() {
+        return count() + shed;
+    }
+
+    double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1_000.0;
+    }
+
+    double maxMillis() {
+        return latencies.getMaxValue() / 1_000.0;
+    }
+
+    double throughput() {
+        return measuredNanos == 0 ? 0 : count() * 1e9 / measuredNanos;
+    }
+
+    double errorRate() {
+        return count() == 0 ? 0 : (double) errors / count();
+    }
+
+    double shedRate() {
+        return sent() == 0 ? 0 : (double) shed / sent();
+    }
+}
@@ -0,0 +1,84 @@
+package com.whiteboard.widgets.load;
+
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Mix of operations sent at a fixed rate to a board preloaded with widgets, and the objectives its results must meet.
+ *
+ * <p>Every setting is read as {@code scenario.<name>.<key>}, falling back to {@code <key>} shared by all scenarios.
+ */
+@Value
+@Builder
+class Scenario {
+    String name;
+    /**
+     * Widgets imported before the run, at every other z-index.
+     */
+    int boardSize;
+    /**
+     * Requests per second sent in all, spread evenly over the clients whatever the latency: a client which falls
+     * behind sends its next request at once, and its latency counts from when it was due.
+     */
+    int rate;
+    int clients;
+    Duration warmup;
+    Duration duration;
+    /**
+     * Widgets deleted by every {@link Operation#DELETE}.
+     */
+    int deleteBatch;
+    /**
+     * Relative weight of each operation, given as {@code drag:70,create:20,...}.
+     */
+    Map<Operation, Integer> mix;
+    List<Slo> slos;
+
+    static Scenario of(String name, Properties properties) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String weight : setting(name, properties, "mix").split(",")) {
+            String[] parts = weight.trim().split(":");
+            mix.put(Operation.of(parts[0]), Integer.parseInt(parts[1]));
+        }
+        List<Slo> slos = new ArrayList<>();
+        for (Operation operation : mix.keySet()) {
+            for (String metric : List.of("p50", "p99", "p999", "throughput", "error-rate")) {
+                String limit = optionalSetting(name, properties, "slo." + operation.key() + "." + metric);
+                if (limit != null) {
+                    slos.add(Slo.of(operation, metric, limit));
+                }
+            }
+        }
+        return Scenario.builder()
+                .name(name)
+                .boardSize(Integer.parseInt(setting(name, properties, "board-size")))
+                .rate(Integer.parseInt(setting(name, properties, "rate")))
+                .clients(Integer.parseInt(setting(name, properties, "clients")))
+                .warmup(DurationStyle.detectAndParse(setting(name, properties, "warmup")))
+                .duration(DurationStyle.detectAndParse(setting(name, properties, "duration")))
+                .deleteBatch(Integer.parseInt(setting(name, properties, "delete-batch")))
+                .mix(mix)
+                .slos(slos)
+                .build();
+    }
+
+    private static String setting(String name, Properties properties, String key) {
+        String value = optionalSetting(name, properties, key);
+        if (value == null) {
+            throw new IllegalArgumentException("No " + key + " for scenario " + name);
+        }
+        return value;
+    }
+
+    private static String optionalSetting(String name, Properties properties, String key) {
+        return properties.getProperty("scenario." + name + "." + key, properties.getProperty(key));
+    }
+}
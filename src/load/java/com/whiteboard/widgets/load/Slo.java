@@ -0,0 +1,89 @@
+package com.whiteboard.widgets.load;
+
+import lombok.Value;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.util.Optional;
+
+/**
+ * Bound one operation of a scenario must stay within, configured as {@code slo.<operation>.<metric>=<limit>}:
+ * {@code p50}, {@code p99} and {@code p999} take a duration such as {@code 20ms}, {@code throughput} the least number
+ * of requests served per second, {@code error-rate} the largest fraction of requests served failing and
+ * {@code shed-rate} the largest fraction of requests sent answered 503.
+ */
+@Value
+class Slo {
+    Operation operation;
+    Metric metric;
+    double limit;
+
+    static Slo of(Operation operation, String metric, String limit) {
+        switch (metric) {
+            case "p50":
+                return new Slo(operation, Metric.P50, millis(limit));
+            case "p99":
+                return new Slo(operation, Metric.P99, millis(limit));
+            case "p999":
+                return new Slo(operation, Metric.P999, millis(limit));
+            case "throughput":
+                return new Slo(operation, Metric.THROUGHPUT, Double.parseDouble(limit));
+            case "error-rate":
+                return new Slo(operation, Metric.ERROR_RATE, Double.parseDouble(limit));
+            case "shed-rate":
+                return new Slo(operation, Metric.SHED_RATE, Double.parseDouble(limit));
+            default:
+                throw new IllegalArgumentException("Unknown SLO metric " + metric);
+        }
+    }
+
+    /**
+     * Description of how the results miss this objective, if they do.
+     */
+    Optional<String> violation(OperationResults results) {
+        double value;
+        switch (metric) {
+            case P50:
+                value = results.percentileMillis(50);
+                break;
+            case P99:
+                value = results.percentileMillis(99);
+                break;
+            case P999:
+                value = results.percentileMillis(99.9);
+                break;
+            case THROUGHPUT:
+                value = results.throughput();
+                break;
+            case ERROR_RATE:
+                value = results.errorRate();
+                break;
+            default:
+                value = results.shedRate();
+                break;
+        }
+        boolean missed = metric == Metric.THROUGHPUT ? value < limit : value > limit;
+        return missed
+                ? Optional.of(String.format("%s %s %s %.3f, limit %.3f", operation.endpoint, metric.description,
+                metric == Metric.THROUGHPUT ? "fell to" : "rose to", value, limit))
+                : Optional.empty();
+    }
+
+    private static double millis(String limit) {
+        return DurationStyle.detectAndParse(limit).toNanos() / 1e6;
+    }
+
+    enum Metric {
+        P50("p50 latency (ms)"),
+        P99("p99 latency (ms)"),
+        P999("p99.9 latency (ms)"),
+        THROUGHPUT("throughput (requests/s)"),
+        ERROR_RATE("error rate"),
+        SHED_RATE("shed rate");
+
+        final String description;
+
+        Metric(String description) {
+            this.description = description;
+        }
+    }
+}
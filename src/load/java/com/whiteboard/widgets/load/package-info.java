@@ -0,0 +1,11 @@
+/**
+ * Load tests replaying whiteboard workloads over HTTP against a preloaded board, reporting throughput and latency
+ * percentiles per endpoint and failing when a service level objective is missed.
+ *
+ * <p>Run with {@code mvn verify -P load}, which starts the application in the same JVM. Options given as
+ * {@code -Dload.args="--name=value ..."} override those of {@code src/load/resources/load.properties}, e.g.
+ * {@code --scenarios=mixed --target=http://host:8081} to load an instance running elsewhere, and
+ * {@code -Dload.jvmArgs=...} sets the options of the JVM. Latency distributions are written to
+ * {@code target/load/<scenario>-<operation>.hgrm}.
+ */
+package com.whiteboard.widgets.load;
@@ -0,0 +1,60 @@
+package com.whiteboard.widgets.api;
+
+import com.whiteboard.widgets.service.ConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Separate budgets of reads and writes reaching the board services, so that writes waiting for a board monitor
+ * cannot take the request threads reads need, which never wait for it. Requests over budget are answered 503 with
+ * {@code Retry-After}.
+ */
+public class AdmissionControl implements MeterBinder {
+    /**
+     * Admits every request.
+     */
+    public static final AdmissionControl NONE = new AdmissionControl(null, null, Duration.ofSeconds(1));
+
+    private final ConcurrencyLimiter reads;
+    private final ConcurrencyLimiter writes;
+    private final Duration retryAfter;
+
+    public AdmissionControl(ConcurrencyLimiter reads, ConcurrencyLimiter writes, Duration retryAfter) {
+        this.reads = reads;
+        this.writes = writes;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Delay clients are asked to wait before retrying a rejected request.
+     */
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @throws RejectedExecutionException if the read budget is exhausted
+     */
+    <T> T read(Supplier<T> action) {
+        return reads == null ? action.get() : reads.call(action);
+    }
+
+    /**
+     * @throws RejectedExecutionException if the write budget is exhausted
+     */
+    <T> T write(Supplier<T> action) {
+        return writes == null ? action.get() : writes.call(action);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (reads != null) {
+            reads.bindTo(registry);
+            writes.bindTo(registry);
+        }
+    }
+}
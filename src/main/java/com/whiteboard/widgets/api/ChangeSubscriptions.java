@@ -0,0 +1,226 @@
+package com.whiteboard.widgets.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.whiteboard.widgets.model.WidgetChange;
+import com.whiteboard.widgets.service.WidgetService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-sent event streams of board changes.
+ *
+ * <p>Writers only schedule a subscription when they publish changes; a small pool shared by all boards then sends
+ * each subscriber what it has not received yet, read from the change feed, in a single write. Each change is
+ * rendered as an event once and the bytes are shared by all subscribers of the board. A subscriber falling so far
+ * behind that the feed no longer has its next change is disconnected, and gets {@code 410 Gone} when it resumes from
+ * there.
+ *
+ * <p>The first write ends with the comment {@link #CURRENT}: the subscriber has then received every change made so
+ * far, and receives the following ones as they are published.
+ *
+ * <p>Streams last {@code widgets.changes.timeout}, forever by default, rather than the timeout of asynchronous
+ * requests, which would have subscribers such as followers reconnect and catch up every 30 seconds or so. Every
+ * {@code widgets.changes.heartbeat}, a subscription sent nothing since the last one gets the comment {@link #PING},
+ * so that subscribers can tell a quiet board from a lost connection, and subscribers gone are dropped.
+ */
+@Component
+public class ChangeSubscriptions {
+    /**
+     * Comment line sent once the changes the subscriber missed have all been sent.
+     */
+    public static final String CURRENT = ":current";
+    /**
+     * Comment line sent to subscriptions with nothing else to send for a heartbeat.
+     */
+    public static final String PING = ":ping";
+
+    private static final int RENDERED_EVENTS = 1_024;
+    private static final byte[] CURRENT_COMMENT = (CURRENT + "\n\n").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PING_COMMENT = (PING + "\n\n").getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectWriter changeWriter;
+    private final long timeoutMillis;
+    private final LoadingCache<WidgetService, Event[]> events = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(() -> new Event[RENDERED_EVENTS]));
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactoryBuilder().setNameFormat("change-feed-%d").setDaemon(true).build());
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("change-feed-heartbeat").setDaemon(true).build());
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    public ChangeSubscriptions(ObjectMapper objectMapper, @Value("${widgets.changes.timeout:0}") Duration timeout,
+                               @Value("${widgets.changes.heartbeat:1s}") Duration heartbeat) {
+        this.changeWriter = objectMapper.writerFor(WidgetChange.class);
+        this.timeoutMillis = timeout.toMillis();
+        heartbeats.scheduleWithFixedDelay(() -> subscriptions.forEach(Subscription::ping),
+                heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stream of the changes following the board with the given version, or empty if they are no longer all kept.
+     */
+    public Optional<ResponseBodyEmitter> subscribe(WidgetService widgetService, long version) {
+        if (widgetService.changesSince(version).isEmpty()) {
+            return Optional.empty();
+        }
+        Subscription subscription = new Subscription(widgetService, version);
+        subscriptions.add(subscription);
+        widgetService.addChangeListener(subscription.listener);
+        subscription.changed();
+        return Optional.of(subscription.emitter);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Change as an event of the stream, rendered by the first subscriber sending it.
+     */
+    private byte[] render(Event[] events, WidgetChange change) {
+        int index = (int) Math.floorMod(change.getSequence(), (long) RENDERED_EVENTS);
+        Event event = events[index];
+        if (event == null || event.sequence != change.getSequence()) {
+            try {
+                event = new Event(change.getSequence(), ("id:" + change.getSequence() + "\ndata:"
+                        + changeWriter.writeValueAsString(change) + "\n\n").getBytes(StandardCharsets.UTF_8));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+            events[index] = event;
+        }
+        return event.bytes;
+    }
+
+    private static final class Event {
+        final long sequence;
+        final byte[] bytes;
+
+        Event(long sequence, byte[] bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+    }
+
+    private final class Subscription {
+        private final WidgetService widgetService;
+        private final ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMillis);
+        private final Runnable listener = this::changed;
+        /**
+         * Notifications not handled yet; the subscription is scheduled while it is positive, so that a single thread
+         * at a time sends its changes in order.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+        /**
+         * Whether nothing was sent since the last heartbeat; a ping is then sent along with any changes.
+         */
+        private final AtomicBoolean idle = new AtomicBoolean();
+        private long sequence;
+        /**
+         * Whether anything has been written yet: the first write sends the response headers, even without changes.
+         */
+        private boolean opened;
+
+        Subscription(WidgetService widgetService, long version) {
+            this.widgetService = widgetService;
+            this.sequence = version;
+            emitter.onCompletion(this::close);
+            emitter.onTimeout(this::close);
+            emitter.onError(error -> close());
+        }
+
+        void ping() {
+            if (idle.getAndSet(true)) {
+                changed();
+            }
+        }
+
+        void changed() {
+            if (pending.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    emitter.complete();
+                }
+            }
+        }
+
+        private void drain() {
+            int handled;
+            do {
+                handled = pending.get();
+                if (!send()) {
+                    return;
+                }
+            } while (pending.addAndGet(-handled) != 0);
+        }
+
+        private boolean send() {
+            Optional<List<WidgetChange>> changes = widgetService.changesSince(sequence);
+            if (changes.isEmpty()) {
+                emitter.complete();
+                return false;
+            }
+            boolean ping = idle.getAndSet(false);
+            if (changes.get().isEmpty() && opened && !ping) {
+                return true;
+            }
+            Event[] rendered = events.getUnchecked(widgetService);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            for (WidgetChange change : changes.get()) {
+                output.writeBytes(render(rendered, change));
+            }
+            if (!opened) {
+                output.writeBytes(CURRENT_COMMENT);
+            } else if (output.size() == 0) {
+                output.writeBytes(PING_COMMENT);
+            }
+            try {
+                emitter.send(output.toByteArray(), MediaType.APPLICATION_OCTET_STREAM);
+            } catch (IOException | IllegalStateException e) {
+                close();
+                return false;
+            }
+            opened = true;
+            if (!changes.get().isEmpty()) {
+                sequence = changes.get().get(changes.get().size() - 1).getSequence();
+            }
+            return true;
+        }
+
+        private void close() {
+            subscriptions.remove(this);
+            widgetService.removeChangeListener(listener);
+        }
+    }
+}
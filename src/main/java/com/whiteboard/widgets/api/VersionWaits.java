@@ -0,0 +1,64 @@
+package com.whiteboard.widgets.api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.whiteboard.widgets.service.WidgetService;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Requests parked until a board moves past a version, holding a connection but no request thread while they wait.
+ *
+ * <p>Writers only schedule a waiting request when they publish changes; a small pool shared by all boards then
+ * computes its response, so the writer never serializes anything. Waiting requests answering the same version share
+ * its serialized copy through the {@link WidgetListCache}.
+ */
+@Component
+public class VersionWaits {
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactoryBuilder().setNameFormat("version-wait-%d").setDaemon(true).build());
+
+    /**
+     * Result set to the changed response as soon as the board version differs from the given one, or to the
+     * unchanged response once the timeout elapses.
+     */
+    public <T> DeferredResult<T> await(WidgetService widgetService, long version, Duration timeout,
+                                       Supplier<T> changed, T unchanged) {
+        DeferredResult<T> result = new DeferredResult<>(timeout.toMillis(), unchanged);
+        AtomicBoolean scheduled = new AtomicBoolean();
+        Runnable listener = () -> {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(() -> {
+                        try {
+                            result.setResult(changed.get());
+                        } catch (RuntimeException e) {
+                            result.setErrorResult(e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    result.setResult(unchanged);
+                }
+            }
+        };
+        result.onCompletion(() -> widgetService.removeChangeListener(listener));
+        widgetService.addChangeListener(listener);
+        if (widgetService.version() != version) {
+            listener.run();
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
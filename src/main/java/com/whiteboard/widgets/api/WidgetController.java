@@ -1,44 +1,408 @@
 package com.whiteboard.widgets.api;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.primitives.Longs;
+import com.whiteboard.widgets.model.BoardStats;
 import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetPage;
+import com.whiteboard.widgets.service.BoardRegistry;
+import com.whiteboard.widgets.service.Versioned;
+import com.whiteboard.widgets.service.WidgetMetrics;
 import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.Area;
 import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetOperation;
+import com.whiteboard.widgets.service.request.WidgetPatch;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+/**
+ * Every endpoint serves the default board under {@code /widgets}, and the named boards of the
+ * {@link BoardRegistry} under {@code /boards/{boardId}/widgets}.
+ *
+ * <p>Widgets are read and written as JSON, Smile or CBOR, as negotiated through the {@code Accept} and
+ * {@code Content-Type} headers. The binary formats write dates as numbers.
+ *
+ * <p>Calls to the board services count against the read or write budget of the {@link AdmissionControl}; a request
+ * finding its budget exhausted is answered 503 with {@code Retry-After}. Streams and long polls only count while
+ * they are set up.
+ */
 @RestController
 @AllArgsConstructor
 public class WidgetController {
-    private final WidgetService widgetService;
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
 
-    @PostMapping("/widgets")
-    public Widget create(@RequestBody WidgetContent input) {
-        return widgetService.create(input);
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private static final int MAX_WAIT_SECONDS = 60;
+
+    private final BoardRegistry boardRegistry;
+    private final WidgetStreamWriter widgetStreamWriter;
+    private final WidgetStreamReader widgetStreamReader;
+    private final WidgetListCache widgetListCache;
+    private final ChangeSubscriptions changeSubscriptions;
+    private final VersionWaits versionWaits;
+    private final WidgetMetrics metrics;
+    private final AdmissionControl admissionControl;
+
+    @PostMapping({"/widgets", "/boards/{boardId}/widgets"})
+    public Widget create(@PathVariable Optional<String> boardId, @RequestBody WidgetContent input) {
+        return writeOnBoard(boardId, widgetService -> widgetService.create(input));
+    }
+
+    @PutMapping({"/widgets/{id}", "/boards/{boardId}/widgets/{id}"})
+    public Widget update(@PathVariable Optional<String> boardId, @PathVariable String id,
+                         @RequestBody WidgetContent input) {
+        return writeOnBoard(boardId, widgetService -> widgetService.update(id, input))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Changes the fields present in the body, keeping the others. Moving or resizing a widget without changing its
+     * z-index leaves the other widgets untouched.
+     */
+    @PatchMapping({"/widgets/{id}", "/boards/{boardId}/widgets/{id}"})
+    public Widget patch(@PathVariable Optional<String> boardId, @PathVariable String id,
+                        @RequestBody WidgetPatch patch) {
+        return writeOnBoard(boardId, widgetService -> widgetService.patch(id, patch))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
 
-    @PutMapping("/widgets/{id}")
-    public Widget update(@PathVariable String id, @RequestBody WidgetContent input) {
-        return widgetService.update(id, input)
+    @PostMapping({"/widgets:batch", "/boards/{boardId}/widgets:batch"})
+    public List<Widget> apply(@PathVariable Optional<String> boardId, @RequestBody List<WidgetOperation> operations) {
+        if (!operations.stream().allMatch(WidgetOperation::isValid)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        }
+        return writeOnBoard(boardId, widgetService -> widgetService.apply(operations))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
 
-    @DeleteMapping("/widgets/{id}")
-    public void delete(@PathVariable String id) {
-        widgetService.delete(id);
+    @DeleteMapping({"/widgets/{id}", "/boards/{boardId}/widgets/{id}"})
+    public void delete(@PathVariable Optional<String> boardId, @PathVariable String id) {
+        writeOnBoard(boardId, widgetService -> {
+            widgetService.delete(id);
+            return null;
+        });
+    }
+
+    /**
+     * Whole board as a JSON list, tagged with the board version and served from the serialized copy of that
+     * version. The same list is served as Smile and CBOR below.
+     */
+    @GetMapping({"/widgets", "/boards/{boardId}/widgets"})
+    public ResponseEntity<byte[]> list(@PathVariable Optional<String> boardId, ServletWebRequest request) {
+        return list(boardId, request, MediaType.APPLICATION_JSON);
+    }
+
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, produces = APPLICATION_SMILE_VALUE)
+    public ResponseEntity<byte[]> listSmile(@PathVariable Optional<String> boardId, ServletWebRequest request) {
+        return list(boardId, request, APPLICATION_SMILE);
+    }
+
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, produces = MediaType.APPLICATION_CBOR_VALUE)
+    public ResponseEntity<byte[]> listCbor(@PathVariable Optional<String> boardId, ServletWebRequest request) {
+        return list(boardId, request, MediaType.APPLICATION_CBOR);
+    }
+
+    /**
+     * Compares the board version with {@code If-None-Match} before serializing the board, so that answering 304 never
+     * costs a serialization.
+     */
+    private ResponseEntity<byte[]> list(Optional<String> boardId, ServletWebRequest request, MediaType mediaType) {
+        Optional<Versioned<byte[]>> widgets = onBoard(boardId, widgetService ->
+                request.checkNotModified(etag(widgetService.version()))
+                        ? Optional.empty()
+                        : Optional.of(widgetListCache.get(widgetService, mediaType)));
+        if (widgets.isEmpty()) {
+            return null;
+        }
+        // A write may have come in since the version was compared: tag the list with its own
+        request.getResponse().setHeader(HttpHeaders.ETAG, etag(widgets.get().getVersion()));
+        metrics.responded(widgets.get().getValue().length);
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(widgets.get().getValue());
+    }
+
+    /**
+     * Whole board as a JSON list once its version differs from the one in {@code If-None-Match}, waiting up to
+     * {@code wait} seconds before answering 304. Clients polling for changes park here without holding a request
+     * thread, so idle clients only cost a connection. 404 for a named board never written to.
+     */
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, params = "wait")
+    public DeferredResult<ResponseEntity<byte[]>> await(@PathVariable Optional<String> boardId,
+                                                        @RequestParam int wait,
+                                                        @RequestHeader(HttpHeaders.IF_NONE_MATCH)
+                                                                Optional<String> ifNoneMatch) {
+        if (wait < 1 || wait > MAX_WAIT_SECONDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        }
+        long version = ifNoneMatch.flatMap(WidgetController::version).orElse(-1L);
+        return onExistingBoard(boardId, widgetService -> versionWaits.await(widgetService, version, Duration.ofSeconds(wait),
+                () -> {
+                    Versioned<byte[]> widgets = widgetListCache.get(widgetService, MediaType.APPLICATION_JSON);
+                    metrics.responded(widgets.getValue().length);
+                    return ResponseEntity.ok()
+                            .eTag(etag(widgets.getVersion()))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(widgets.getValue());
+                },
+                ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag(version)).build()));
+    }
+
+    /**
+     * Whole board as newline delimited JSON, written from the board as it was when the request arrived.
+     */
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream(@PathVariable Optional<String> boardId) {
+        Stream<Widget> widgets = onBoard(boardId, WidgetService::stream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(output -> {
+                    CountingOutputStream counting = new CountingOutputStream(output);
+                    widgetStreamWriter.write(widgets, counting);
+                    metrics.responded(counting.getCount());
+                });
+    }
+
+    /**
+     * Whole board as newline delimited JSON, to be imported again.
+     */
+    @GetMapping(value = {"/widgets:export", "/boards/{boardId}/widgets:export"},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable Optional<String> boardId) {
+        return stream(boardId);
+    }
+
+    /**
+     * Replaces the widgets of the board by those of the body, newline delimited JSON as exported or a JSON list,
+     * built into a board at once. Answers the version of the imported board as ETag; 400 if two widgets share an
+     * id.
+     */
+    @PostMapping(value = {"/widgets:import", "/boards/{boardId}/widgets:import"},
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Void> importWidgets(@PathVariable Optional<String> boardId, InputStream body)
+            throws IOException {
+        List<Widget> widgets;
+        try {
+            widgets = widgetStreamReader.read(body);
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getOriginalMessage(), e);
+        }
+        long version = writeOnBoard(boardId, widgetService -> {
+            try {
+                return widgetService.importWidgets(widgets);
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+            }
+        });
+        return ResponseEntity.noContent().eTag(etag(version)).build();
+    }
+
+    /**
+     * Server-sent events carrying the changes following the board with version {@code since}, as found in the ETag
+     * of {@code GET /widgets}, or following the last event received when reconnecting. Without either, only changes
+     * made from now on are sent. The comment {@link ChangeSubscriptions#CURRENT} follows the changes already made.
+     * 404 for a named board never written to.
+     */
+    @GetMapping(value = {"/widgets/changes", "/boards/{boardId}/widgets/changes"},
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> changes(@PathVariable Optional<String> boardId,
+                                                       @RequestParam Optional<Long> since,
+                                                       @RequestHeader("Last-Event-ID") Optional<Long> lastEventId) {
+        Optional<ResponseBodyEmitter> subscribed = onExistingBoard(boardId, widgetService -> {
+            long version = lastEventId.or(() -> since).orElseGet(widgetService::version);
+            return changeSubscriptions.subscribe(widgetService, version);
+        });
+        return subscribed
+                .map(emitter -> ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE));
+    }
+
+    /**
+     * Whole board as it was at the given version, as found in ETags, while the board keeps it: 404 for a version
+     * not reached yet, 410 for one no longer kept.
+     */
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, params = "version")
+    public ResponseEntity<List<Widget>> listAt(@PathVariable Optional<String> boardId, @RequestParam long version) {
+        Optional<List<Widget>> widgets = onBoard(boardId, widgetService -> {
+            if (version < 0 || version > widgetService.version()) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            }
+            return widgetService.listAt(version);
+        });
+        return widgets
+                .map(found -> ResponseEntity.ok().eTag(etag(version)).body(found))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE));
+    }
+
+    /**
+     * Publishes again the board as it was at the given version, or before the last write without one, answering
+     * the restored widgets tagged with the new version. 410 if the board no longer keeps that version.
+     */
+    @PostMapping({"/widgets:undo", "/boards/{boardId}/widgets:undo"})
+    public ResponseEntity<List<Widget>> undo(@PathVariable Optional<String> boardId,
+                                             @RequestParam Optional<Long> version) {
+        Optional<Versioned<List<Widget>>> restored = writeOnBoard(boardId, widgetService -> {
+            if (version.isPresent() && (version.get() < 0 || version.get() > widgetService.version())) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            }
+            return version.map(widgetService::restore).orElseGet(widgetService::undo);
+        });
+        return restored
+                .map(widgets -> ResponseEntity.ok().eTag(etag(widgets.getVersion())).body(widgets.getValue()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE));
     }
 
-    @GetMapping("/widgets")
-    public List<Widget> list() {
-        return widgetService.list();
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, params = "limit")
+    public WidgetPage list(@PathVariable Optional<String> boardId, @RequestParam int limit,
+                           @RequestParam Optional<String> after) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        }
+        return onBoard(boardId, widgetService -> widgetService.list(after, limit))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST));
     }
 
-    @GetMapping("/widgets/{id}")
-    public Widget get(@PathVariable String id) {
-        return widgetService.get(id)
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, params = {"x1", "y1", "x2", "y2"})
+    public List<Widget> list(@PathVariable Optional<String> boardId, @RequestParam int x1, @RequestParam int y1,
+                             @RequestParam int x2, @RequestParam int y2) {
+        Area area = Area.builder().x1(x1).y1(y1).x2(x2).y2(y2).build();
+        return onBoard(boardId, widgetService -> widgetService.list(area));
+    }
+
+    /**
+     * Widgets with z-indexes from {@code zFrom} to {@code zTo}, bounds included, in z order, tagged with the board
+     * version. Either bound may be left out.
+     */
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, params = "zFrom")
+    public ResponseEntity<List<Widget>> listBetween(@PathVariable Optional<String> boardId, @RequestParam int zFrom,
+                                                    @RequestParam Optional<Integer> zTo) {
+        return listBetween(boardId, zFrom, zTo.orElse(Integer.MAX_VALUE));
+    }
+
+    @GetMapping(value = {"/widgets", "/boards/{boardId}/widgets"}, params = {"!zFrom", "zTo"})
+    public ResponseEntity<List<Widget>> listBelow(@PathVariable Optional<String> boardId, @RequestParam int zTo) {
+        return listBetween(boardId, Integer.MIN_VALUE, zTo);
+    }
+
+    private ResponseEntity<List<Widget>> listBetween(Optional<String> boardId, int zFrom, int zTo) {
+        Versioned<List<Widget>> widgets = onBoard(boardId, widgetService -> widgetService.listBetween(zFrom, zTo));
+        return ResponseEntity.ok().eTag(etag(widgets.getVersion())).body(widgets.getValue());
+    }
+
+    /**
+     * Widget count, lowest and highest z-index and bounding box of the board, without reading its widgets.
+     */
+    @GetMapping({"/widgets/stats", "/boards/{boardId}/widgets/stats"})
+    public BoardStats stats(@PathVariable Optional<String> boardId, WebRequest request) {
+        BoardStats stats = onBoard(boardId, WidgetService::stats);
+        return request.checkNotModified(etag(stats.getVersion())) ? null : stats;
+    }
+
+    @GetMapping({"/widgets:topmost", "/boards/{boardId}/widgets:topmost"})
+    public Widget findTopmostAt(@PathVariable Optional<String> boardId, @RequestParam int x, @RequestParam int y) {
+        return onBoard(boardId, widgetService -> widgetService.findTopmostAt(x, y))
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
     }
+
+    /**
+     * Widget tagged with the board version, which changes whenever any widget does.
+     */
+    @GetMapping({"/widgets/{id}", "/boards/{boardId}/widgets/{id}"})
+    public Widget get(@PathVariable Optional<String> boardId, @PathVariable String id, WebRequest request) {
+        Versioned<Optional<Widget>> widget = onBoard(boardId, widgetService -> widgetService.getVersioned(id));
+        Widget found = widget.getValue()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        return request.checkNotModified(etag(widget.getVersion())) ? null : found;
+    }
+
+    /**
+     * Reads from the service of the board within the read budget, answering 503 if it is exhausted. A board which
+     * does not exist reads as empty, without being created.
+     */
+    private <T> T onBoard(Optional<String> boardId, Function<WidgetService, T> action) {
+        return admitted(boardId, () -> boardRegistry.readBoard(boardId, action), false);
+    }
+
+    /**
+     * Reads from the service of the board as {@link #onBoard}, answering 404 if the board does not exist.
+     */
+    private <T> T onExistingBoard(Optional<String> boardId, Function<WidgetService, T> action) {
+        return admitted(boardId, () -> boardRegistry.withExistingBoard(boardId, action, () -> {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }), false);
+    }
+
+    /**
+     * Writes through the service of the board, created if needed, within the write budget, answering 503 if it is
+     * exhausted or if the board cannot take more writes now.
+     */
+    private <T> T writeOnBoard(Optional<String> boardId, Function<WidgetService, T> action) {
+        return admitted(boardId, () -> boardRegistry.withBoard(boardId, action), true);
+    }
+
+    private <T> T admitted(Optional<String> boardId, Supplier<T> call, boolean write) {
+        if (boardId.isPresent() && !BoardRegistry.isValidId(boardId.get())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            return write ? admissionControl.write(call) : admissionControl.read(call);
+        } catch (RejectedExecutionException e) {
+            throw new UnavailableException(e, admissionControl.retryAfter());
+        }
+    }
+
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    private static Optional<Long> version(String etag) {
+        return Optional.of(etag)
+                .filter(tag -> tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\""))
+                .map(tag -> Longs.tryParse(tag.substring(1, tag.length() - 1)));
+    }
+
+    /**
+     * 503 asking the client to retry after a delay.
+     */
+    private static final class UnavailableException extends ResponseStatusException {
+        private static final long serialVersionUID = 1L;
+
+        private final Duration retryAfter;
+
+        UnavailableException(RejectedExecutionException cause, Duration retryAfter) {
+            super(HttpStatus.SERVICE_UNAVAILABLE, cause.getMessage(), cause);
+            this.retryAfter = retryAfter;
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, retryAfter.toSeconds())));
+            return headers;
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package com.whiteboard.widgets.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.service.Versioned;
+import com.whiteboard.widgets.service.WidgetMetrics;
+import com.whiteboard.widgets.service.WidgetService;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * List of all widgets of each board, serialized once per board version in each of the formats of the API: JSON,
+ * Smile and CBOR.
+ *
+ * <p>Concurrent readers missing the cache may each serialize the board; the most recent version is kept. Entries
+ * go away with the services of evicted boards.
+ */
+@Component
+public class WidgetListCache {
+    private final Map<MediaType, Format> formats;
+    private final WidgetMetrics metrics;
+
+    public WidgetListCache(ObjectMapper objectMapper, MappingJackson2SmileHttpMessageConverter smileConverter,
+                           MappingJackson2CborHttpMessageConverter cborConverter, WidgetMetrics metrics) {
+        this.formats = Map.of(
+                MediaType.APPLICATION_JSON, new Format(objectMapper),
+                WidgetController.APPLICATION_SMILE, new Format(smileConverter.getObjectMapper()),
+                MediaType.APPLICATION_CBOR, new Format(cborConverter.getObjectMapper()));
+        this.metrics = metrics;
+    }
+
+    /**
+     * Widgets of the board serialized in one of the formats of the API.
+     *
+     * @throws IllegalArgumentException if the media type is not a format of the API
+     */
+    public Versioned<byte[]> get(WidgetService widgetService, MediaType mediaType) {
+        Format format = formats.get(mediaType);
+        if (format == null) {
+            throw new IllegalArgumentException("Unsupported media type " + mediaType);
+        }
+        Versioned<byte[]> current = format.cached.getIfPresent(widgetService);
+        if (current != null && current.getVersion() == widgetService.version()) {
+            return current;
+        }
+        Versioned<List<Widget>> widgets = widgetService.listVersioned();
+        Versioned<byte[]> serialized = new Versioned<>(widgets.getVersion(), serialize(format, widgets.getValue()));
+        format.cached.asMap().merge(widgetService, serialized,
+                (kept, added) -> kept.getVersion() < added.getVersion() ? added : kept);
+        return serialized;
+    }
+
+    private byte[] serialize(Format format, List<Widget> widgets) {
+        long start = System.nanoTime();
+        try {
+            byte[] serialized = format.listWriter.writeValueAsBytes(widgets);
+            metrics.serialized(start);
+            return serialized;
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Format {
+        final ObjectWriter listWriter;
+        final Cache<WidgetService, Versioned<byte[]>> cached = CacheBuilder.newBuilder().weakKeys().build();
+
+        Format(ObjectMapper objectMapper) {
+            this.listWriter = objectMapper.writerFor(TypeFactory.defaultInstance()
+                    .constructCollectionType(List.class, Widget.class));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.whiteboard.widgets.api;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.whiteboard.widgets.model.Widget;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads widgets one at a time from newline delimited JSON, as written by {@link WidgetStreamWriter}, or from a JSON
+ * list, without holding the text of more than one widget.
+ */
+@Component
+public class WidgetStreamReader {
+    private final ObjectReader widgetReader;
+
+    public WidgetStreamReader(ObjectMapper objectMapper) {
+        this.widgetReader = objectMapper.readerFor(Widget.class);
+    }
+
+    public List<Widget> read(InputStream input) throws IOException {
+        List<Widget> widgets = new ArrayList<>();
+        try (MappingIterator<Widget> iterator = widgetReader.readValues(input)) {
+            while (iterator.hasNextValue()) {
+                widgets.add(iterator.nextValue());
+            }
+        }
+        return widgets;
+    }
+}
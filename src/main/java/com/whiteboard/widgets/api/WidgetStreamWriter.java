@@ -0,0 +1,40 @@
+package com.whiteboard.widgets.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.whiteboard.widgets.model.Widget;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes widgets as newline delimited JSON, one widget per line, through a fixed size buffer.
+ */
+@Component
+public class WidgetStreamWriter {
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter widgetWriter;
+
+    public WidgetStreamWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.widgetWriter = objectMapper.writerFor(Widget.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public void write(Stream<Widget> widgets, OutputStream output) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            Iterator<Widget> iterator = widgets.iterator();
+            while (iterator.hasNext()) {
+                widgetWriter.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+            }
+        }
+    }
+}
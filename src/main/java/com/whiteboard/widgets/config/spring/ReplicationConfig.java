@@ -0,0 +1,62 @@
+package com.whiteboard.widgets.config.spring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whiteboard.widgets.replication.Follower;
+import com.whiteboard.widgets.replication.FollowerInterceptor;
+import com.whiteboard.widgets.repository.ChangeLogFactory;
+import com.whiteboard.widgets.service.WidgetService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Makes this instance a follower of the leader at {@code widgets.replication.leader}: the default board replicates
+ * the leader's and only serves reads. Named boards are not replicated.
+ */
+@Configuration
+@ConditionalOnProperty("widgets.replication.leader")
+public class ReplicationConfig {
+
+    @Bean
+    public Follower.Settings followerSettings(
+            @Value("${widgets.replication.leader}") URI leader,
+            @Value("${widgets.replication.reconnect-delay:1s}") Duration reconnectDelay,
+            @Value("${widgets.replication.max-staleness:5s}") Duration maxStaleness) {
+        return Follower.Settings.builder()
+                .leader(leader)
+                .reconnectDelay(reconnectDelay)
+                .maxStaleness(maxStaleness)
+                .build();
+    }
+
+    /**
+     * Follower of the leader, which resets the board to its snapshots: the board of a follower has no change log.
+     */
+    @Bean(destroyMethod = "close")
+    public Follower follower(WidgetService widgetService, ObjectMapper objectMapper, Follower.Settings settings,
+                             ChangeLogFactory changeLogFactory) {
+        if (changeLogFactory.isDurable()) {
+            throw new IllegalStateException("A follower keeps no change log, unset widgets.persistence");
+        }
+        Follower follower = new Follower(widgetService, objectMapper, settings);
+        follower.start();
+        return follower;
+    }
+
+    @Bean
+    public WebMvcConfigurer followerInterceptorConfigurer(Follower follower) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new FollowerInterceptor(follower))
+                        .addPathPatterns("/widgets*", "/widgets/**");
+            }
+        };
+    }
+}
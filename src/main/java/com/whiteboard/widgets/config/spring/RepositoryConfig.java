@@ -1,22 +1,78 @@
 package com.whiteboard.widgets.config.spring;
 
-import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.ChangeLogFactory;
+import com.whiteboard.widgets.repository.JdbcChangeLog;
+import com.whiteboard.widgets.repository.MappedChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.repository.WidgetStorage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
 
+@Configuration
 public class RepositoryConfig {
 
+    /**
+     * Logs under {@code widgets.persistence.directory}, or in the database at {@code widgets.persistence.jdbc.url},
+     * or none if neither is set, in which case boards start empty.
+     */
     @Bean
-    public Map<String, Widget> widgetsById() {
-        return new HashMap<>();
+    public ChangeLogFactory changeLogFactory(
+            @Value("${widgets.persistence.directory:}") String directory,
+            @Value("${widgets.persistence.fsync:commit}") MappedChangeLog.FsyncPolicy fsyncPolicy,
+            @Value("${widgets.persistence.fsync-interval:10ms}") Duration fsyncInterval,
+            @Value("${widgets.persistence.sync-timeout:1s}") Duration syncTimeout,
+            @Value("${widgets.persistence.segment-size:67108864}") int segmentSize,
+            @Value("${widgets.persistence.snapshot-every:100000}") long snapshotEvery,
+            @Value("${widgets.persistence.jdbc.url:}") String jdbcUrl,
+            @Value("${widgets.persistence.jdbc.user:}") String jdbcUser,
+            @Value("${widgets.persistence.jdbc.password:}") String jdbcPassword,
+            @Value("${widgets.persistence.jdbc.write-behind:true}") boolean writeBehind,
+            @Value("${widgets.persistence.jdbc.flush-interval:10ms}") Duration flushInterval,
+            @Value("${widgets.storage:objects}") WidgetStorage storage) {
+        if (!directory.isEmpty() && !jdbcUrl.isEmpty()) {
+            throw new IllegalStateException(
+                    "Set either widgets.persistence.directory or widgets.persistence.jdbc.url, not both");
+        }
+        if (!jdbcUrl.isEmpty()) {
+            return ChangeLogFactory.jdbc(JdbcChangeLog.Settings.builder()
+                    .url(jdbcUrl)
+                    .user(jdbcUser)
+                    .password(jdbcPassword)
+                    .writeBehind(writeBehind)
+                    .flushInterval(flushInterval)
+                    .storage(storage)
+                    .build());
+        }
+        if (directory.isEmpty()) {
+            return ChangeLogFactory.none(storage);
+        }
+        return ChangeLogFactory.mapped(MappedChangeLog.Settings.builder()
+                .directory(Paths.get(directory))
+                .fsyncPolicy(fsyncPolicy)
+                .fsyncInterval(fsyncInterval)
+                .syncTimeout(syncTimeout)
+                .segmentSize(segmentSize)
+                .snapshotEvery(snapshotEvery)
+                .storage(storage)
+                .build());
+    }
+
+    /**
+     * Log of the board served under {@code /widgets}, directly in the log directory.
+     */
+    @Bean(destroyMethod = "close")
+    public ChangeLog changeLog(ChangeLogFactory changeLogFactory) throws IOException {
+        return changeLogFactory.open(Paths.get(""));
     }
 
     @Bean
-    public SortedMap<Integer, Widget> widgetsByZIndex() {
-        return new TreeMap<>();
+    public WidgetBoard widgetBoard(ChangeLog changeLog) {
+        return changeLog.recovered();
     }
 }
@@ -0,0 +1,65 @@
+package com.whiteboard.widgets.config.spring;
+
+import com.whiteboard.widgets.api.AdmissionControl;
+import com.whiteboard.widgets.service.ConcurrencyLimiter;
+import com.whiteboard.widgets.service.WritePipeline;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class ServiceConfig {
+
+    /**
+     * Write pipeline of every board, if {@code widgets.writes.pipeline.enabled} is set; writers lock the board
+     * otherwise.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "widgets.writes.pipeline.enabled", havingValue = "true")
+    public WritePipeline.Settings writePipelineSettings(
+            @Value("${widgets.writes.pipeline.capacity:4096}") int capacity,
+            @Value("${widgets.writes.pipeline.batch-size:256}") int batchSize) {
+        return WritePipeline.Settings.builder()
+                .capacity(capacity)
+                .batchSize(batchSize)
+                .build();
+    }
+
+    /**
+     * Budgets of concurrent reads and writes, under {@code widgets.limits.reads} and {@code widgets.limits.writes},
+     * unless {@code widgets.limits.enabled} is false. Writes to a board wait for its monitor, so the write budget
+     * stays below the request threads to leave some to reads. Both floors sit well below the initial limits, so that
+     * either budget shrinks while its calls slow down.
+     */
+    @Bean
+    public AdmissionControl admissionControl(
+            @Value("${widgets.limits.enabled:true}") boolean enabled,
+            @Value("${widgets.limits.queue-wait:100ms}") Duration queueWait,
+            @Value("${widgets.limits.retry-after:1s}") Duration retryAfter,
+            @Value("${widgets.limits.reads.initial:100}") int readsInitial,
+            @Value("${widgets.limits.reads.min:32}") int readsMin,
+            @Value("${widgets.limits.reads.max:180}") int readsMax,
+            @Value("${widgets.limits.writes.initial:64}") int writesInitial,
+            @Value("${widgets.limits.writes.min:16}") int writesMin,
+            @Value("${widgets.limits.writes.max:150}") int writesMax) {
+        if (!enabled) {
+            return AdmissionControl.NONE;
+        }
+        ConcurrencyLimiter.Settings reads = ConcurrencyLimiter.Settings.builder()
+                .initialLimit(readsInitial)
+                .minLimit(readsMin)
+                .maxLimit(readsMax)
+                .queueWait(queueWait)
+                .build();
+        ConcurrencyLimiter.Settings writes = reads.toBuilder()
+                .initialLimit(writesInitial)
+                .minLimit(writesMin)
+                .maxLimit(writesMax)
+                .build();
+        return new AdmissionControl(new ConcurrencyLimiter("reads", reads), new ConcurrencyLimiter("writes", writes),
+                retryAfter);
+    }
+}
@@ -0,0 +1,25 @@
+package com.whiteboard.widgets.model;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+@Value
+@Builder
+@Jacksonized
+public class BoardStats {
+    /**
+     * Version of the board the figures were read from.
+     */
+    long version;
+    int count;
+    /**
+     * Lowest and highest z-index, null on an empty board.
+     */
+    Integer minZ;
+    Integer maxZ;
+    /**
+     * Rectangle covering every widget with coordinates, null if there is none.
+     */
+    BoundingBox bounds;
+}
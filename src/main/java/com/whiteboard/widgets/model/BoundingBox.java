@@ -0,0 +1,52 @@
+package com.whiteboard.widgets.model;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * Smallest rectangle covering widgets, borders included. Edges are longs since a widget may reach past the int
+ * range its coordinates are in.
+ */
+@Value
+@Builder
+@Jacksonized
+public class BoundingBox {
+    long minX;
+    long minY;
+    long maxX;
+    long maxY;
+
+    /**
+     * Rectangle covered by the widget, null if it has no coordinates.
+     */
+    public static BoundingBox of(Widget widget) {
+        if (widget.getCoordinates() == null) {
+            return null;
+        }
+        long x = widget.getCoordinates().getX();
+        long y = widget.getCoordinates().getY();
+        return new BoundingBox(x, y, x + widget.getWidth(), y + widget.getHeight());
+    }
+
+    /**
+     * Smallest rectangle covering both, either of which may be null.
+     */
+    public static BoundingBox union(BoundingBox first, BoundingBox second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null || first.contains(second)) {
+            return first;
+        }
+        if (second.contains(first)) {
+            return second;
+        }
+        return new BoundingBox(Math.min(first.minX, second.minX), Math.min(first.minY, second.minY),
+                Math.max(first.maxX, second.maxX), Math.max(first.maxY, second.maxY));
+    }
+
+    private boolean contains(BoundingBox other) {
+        return minX <= other.minX && minY <= other.minY && maxX >= other.maxX && maxY >= other.maxY;
+    }
+}
@@ -0,0 +1,43 @@
+package com.whiteboard.widgets.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * Change of the board, numbered by a sequence which increases by one with every change. Applying the changes in
+ * order to the board with the version preceding the first one gives the current board.
+ */
+@Value
+@Builder(toBuilder = true)
+@Jacksonized
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WidgetChange {
+    long sequence;
+    Type type;
+    /**
+     * Stored widget, for {@link Type#CREATED} and {@link Type#UPDATED}.
+     */
+    Widget widget;
+    /**
+     * Id of the deleted widget, for {@link Type#DELETED}.
+     */
+    String id;
+    /**
+     * Z-index range moved one step up, bounds included, for {@link Type#SHIFTED}.
+     */
+    Integer fromZ;
+    Integer toZ;
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        /**
+         * Widgets from {@code fromZ} to {@code toZ} moved one step up to make room for the widget of the following
+         * change.
+         */
+        SHIFTED
+    }
+}
@@ -0,0 +1,18 @@
+package com.whiteboard.widgets.model;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.util.List;
+
+@Value
+@Builder
+@Jacksonized
+public class WidgetPage {
+    List<Widget> widgets;
+    /**
+     * Cursor of the following page, null on the last page.
+     */
+    String next;
+}
@@ -0,0 +1,254 @@
+package com.whiteboard.widgets.replication;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.whiteboard.widgets.api.ChangeSubscriptions;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+import com.whiteboard.widgets.service.WidgetService;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the board of a {@link WidgetService} a replica of the default board of a leader instance, which alone takes
+ * writes.
+ *
+ * <p>The follower reads the leader's change stream, {@code GET /widgets/changes}, and replicates every change with
+ * the sequence the leader gave it, so versions and ETags mean the same on every instance. It starts from a snapshot,
+ * {@code GET /widgets} and its ETag, and takes a new one whenever the leader no longer keeps the changes it missed.
+ * When the stream ends, it resumes after the last change it has, a {@link Settings#getReconnectDelay() reconnect
+ * delay} later.
+ *
+ * <p>The replica is current from the moment the leader marks the stream {@link ChangeSubscriptions#CURRENT}, the
+ * changes it missed having all been replicated, until the stream is lost: changes reach it as soon as the leader
+ * publishes them. Otherwise its {@link #staleness()} is the time since the last line of the stream. The leader
+ * sends {@link ChangeSubscriptions#PING} on quiet streams, so a stream silent for longer than
+ * {@link Settings#getMaxStaleness() the maximum staleness} is taken as lost, as after a partition, and closed to
+ * reconnect.
+ */
+@Slf4j
+public class Follower implements Closeable {
+    private final WidgetService widgetService;
+    private final Settings settings;
+    private final HttpClient client;
+    private final ObjectReader widgetsReader;
+    private final ObjectReader changeReader;
+    private final Thread thread;
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("widget-follower-watchdog").setDaemon(true).build());
+    private volatile boolean closed;
+    private volatile boolean snapshotTaken;
+    private volatile boolean streaming;
+    /**
+     * When the stream was last lost.
+     */
+    private volatile long lostNanos;
+    /**
+     * When the last line of the stream was received.
+     */
+    private volatile long lineNanos;
+    private volatile Stream<String> lines;
+
+    public Follower(WidgetService widgetService, ObjectMapper objectMapper, Settings settings) {
+        this.widgetService = widgetService;
+        this.settings = settings;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(settings.getReconnectDelay().multipliedBy(10))
+                .build();
+        this.widgetsReader = objectMapper.readerFor(new TypeReference<List<Widget>>() {
+        });
+        this.changeReader = objectMapper.readerFor(WidgetChange.class);
+        this.thread = new Thread(this::run, "widget-follower");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+        long period = Math.max(settings.getMaxStaleness().toMillis() / 4, 1);
+        watchdog.scheduleWithFixedDelay(this::closeIfSilent, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Settings settings() {
+        return settings;
+    }
+
+    /**
+     * Zero while the changes of the leader stream in as they are published, and the time since the last line of the
+     * stream once it is silent for longer than the maximum staleness or lost. Longer than any bound until the first
+     * snapshot is taken.
+     */
+    public Duration staleness() {
+        if (streaming) {
+            Duration silence = Duration.ofNanos(System.nanoTime() - lineNanos);
+            return silence.compareTo(settings.getMaxStaleness()) > 0 ? silence : Duration.ZERO;
+        }
+        return snapshotTaken ? Duration.ofNanos(System.nanoTime() - lostNanos) : Duration.ofNanos(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        watchdog.shutdownNow();
+        thread.interrupt();
+        Stream<String> open = lines;
+        if (open != null) {
+            open.close();
+        }
+    }
+
+    /**
+     * Closes the stream if nothing came for longer than the maximum staleness, the connection being lost without
+     * the follower knowing.
+     */
+    private void closeIfSilent() {
+        Stream<String> open = lines;
+        if (open != null && streaming && staleness().compareTo(settings.getMaxStaleness()) > 0) {
+            log.warn("Leader {} silent for {}, reconnecting", settings.getLeader(), staleness());
+            open.close();
+        }
+    }
+
+    private void run() {
+        boolean snapshotNeeded = true;
+        while (!closed) {
+            try {
+                if (snapshotNeeded) {
+                    snapshot();
+                    snapshotNeeded = false;
+                }
+                if (follow()) {
+                    Thread.sleep(settings.getReconnectDelay().toMillis());
+                } else {
+                    snapshotNeeded = true;
+                }
+            } catch (IllegalStateException e) {
+                log.warn("Replica of {} out of step, taking a new snapshot: {}", settings.getLeader(), e.getMessage());
+                snapshotNeeded = true;
+            } catch (IOException | UncheckedIOException e) {
+                if (closed) {
+                    return;
+                }
+                log.warn("Lost leader {}: {}", settings.getLeader(), e.toString());
+                try {
+                    Thread.sleep(settings.getReconnectDelay().toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Replaces the replica by the board of the leader.
+     */
+    private void snapshot() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(
+                HttpRequest.newBuilder(settings.getLeader().resolve("/widgets"))
+                        .header("Accept", "application/json")
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        Long version = response.headers().firstValue("ETag")
+                .map(etag -> Longs.tryParse(etag.replace("\"", "")))
+                .orElse(null);
+        if (response.statusCode() != 200 || version == null) {
+            throw new IOException("Leader answered " + response.statusCode() + " to a snapshot");
+        }
+        List<Widget> widgets = widgetsReader.readValue(response.body());
+        widgetService.reset(widgets, version);
+        if (!snapshotTaken) {
+            lostNanos = System.nanoTime();
+            snapshotTaken = true;
+        }
+        log.info("Replica of {} reset to version {} with {} widgets", settings.getLeader(), version, widgets.size());
+    }
+
+    /**
+     * Replicates the changes following the replica until the stream ends. Returns false if the leader no longer
+     * keeps them all.
+     */
+    private boolean follow() throws IOException, InterruptedException {
+        URI changes = settings.getLeader().resolve("/widgets/changes?since=" + widgetService.version());
+        HttpResponse<Stream<String>> response = client.send(
+                HttpRequest.newBuilder(changes)
+                        .header("Accept", "text/event-stream")
+                        .build(),
+                HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> body = response.body()) {
+            if (response.statusCode() == 410) {
+                return false;
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException("Leader answered " + response.statusCode() + " to a subscription");
+            }
+            lineNanos = System.nanoTime();
+            lines = body;
+            if (closed) {
+                return true;
+            }
+            Iterator<String> iterator = body.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                lineNanos = System.nanoTime();
+                if (line.startsWith("data:")) {
+                    WidgetChange change = changeReader.readValue(line.substring("data:".length()));
+                    widgetService.replicate(List.of(change));
+                } else if (line.equals(ChangeSubscriptions.CURRENT)) {
+                    streaming = true;
+                }
+            }
+            return true;
+        } finally {
+            if (streaming) {
+                lostNanos = lineNanos;
+                streaming = false;
+            }
+            lines = null;
+        }
+    }
+
+    @Value
+    @Builder
+    public static class Settings {
+        /**
+         * Base URI of the leader, such as {@code http://leader:8081}.
+         */
+        @NonNull
+        URI leader;
+        /**
+         * Wait before reconnecting to a leader which could not be reached or ended the stream.
+         */
+        @NonNull
+        @Builder.Default
+        Duration reconnectDelay = Duration.ofSeconds(1);
+        /**
+         * Staleness beyond which the replica refuses reads, and silence of the stream beyond which it is taken as
+         * lost; longer than two heartbeats of the leader, {@code widgets.changes.heartbeat}.
+         */
+        @NonNull
+        @Builder.Default
+        Duration maxStaleness = Duration.ofSeconds(5);
+    }
+}
@@ -0,0 +1,41 @@
+package com.whiteboard.widgets.replication;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Guards the replicated board of a {@link Follower}: writes are redirected to the leader with {@code 307}, which
+ * keeps their method and body, and reads are refused with {@code 503} while the replica is staler than allowed.
+ */
+public class FollowerInterceptor implements HandlerInterceptor {
+    private final Follower follower;
+
+    public FollowerInterceptor(Follower follower) {
+        this.follower = follower;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        Follower.Settings settings = follower.settings();
+        if (method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.OPTIONS) {
+            String query = request.getQueryString();
+            response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+            response.setHeader(HttpHeaders.LOCATION, settings.getLeader().resolve(request.getRequestURI()
+                    + (query == null ? "" : "?" + query)).toString());
+            return false;
+        }
+        if (follower.staleness().compareTo(settings.getMaxStaleness()) > 0) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER,
+                    Long.toString(Math.max(1, settings.getReconnectDelay().toSeconds())));
+            return false;
+        }
+        return true;
+    }
+}
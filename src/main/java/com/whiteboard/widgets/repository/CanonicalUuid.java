@@ -0,0 +1,70 @@
+package com.whiteboard.widgets.repository;
+
+/**
+ * Ids written as UUIDs in canonical form, lower case, which {@link WidgetStorage#COLUMNS} holds as their two halves:
+ * less than half the memory of the string. Ids are parsed in place, so that comparing a requested id with a stored
+ * one allocates nothing.
+ */
+final class CanonicalUuid {
+    private static final int LENGTH = 36;
+    /**
+     * First character of the low half, after the third dash.
+     */
+    private static final int LOW_START = 19;
+
+    private CanonicalUuid() {
+    }
+
+    static boolean isCanonical(String id) {
+        if (id.length() != LENGTH) {
+            return false;
+        }
+        for (int index = 0; index < LENGTH; index++) {
+            char c = id.charAt(index);
+            if (index == 8 || index == 13 || index == 18 || index == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (digit(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * High half of a canonical id.
+     */
+    static long high(String id) {
+        return half(id, 0, LOW_START - 1);
+    }
+
+    /**
+     * Low half of a canonical id.
+     */
+    static long low(String id) {
+        return half(id, LOW_START, LENGTH);
+    }
+
+    /**
+     * Whether the id is the canonical form of the UUID with these halves.
+     */
+    static boolean matches(String id, long high, long low) {
+        return isCanonical(id) && high(id) == high && low(id) == low;
+    }
+
+    private static long half(String id, int from, int to) {
+        long half = 0;
+        for (int index = from; index < to; index++) {
+            char c = id.charAt(index);
+            if (c != '-') {
+                half = half << 4 | digit(c);
+            }
+        }
+        return half;
+    }
+
+    private static int digit(char c) {
+        return c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+    }
+}
@@ -0,0 +1,175 @@
+package com.whiteboard.widgets.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Compact binary form of widgets and changes shared by the log and the snapshots.
+ */
+final class ChangeCodec {
+    private static final byte HAS_COORDINATES = 1;
+    private static final byte HAS_LAST_MODIFICATION = 2;
+
+    private static final WidgetChange.Type[] TYPES = WidgetChange.Type.values();
+
+    private ChangeCodec() {
+    }
+
+    static int size(List<WidgetChange> changes) {
+        int size = Integer.BYTES;
+        for (WidgetChange change : changes) {
+            size += size(change);
+        }
+        return size;
+    }
+
+    static void write(ByteBuffer buffer, List<WidgetChange> changes) {
+        buffer.putInt(changes.size());
+        changes.forEach(change -> write(buffer, change));
+    }
+
+    static List<WidgetChange> readChanges(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid change count " + count);
+        }
+        ImmutableList.Builder<WidgetChange> changes = ImmutableList.builderWithExpectedSize(count);
+        for (int i = 0; i < count; i++) {
+            changes.add(readChange(buffer));
+        }
+        return changes.build();
+    }
+
+    static int size(Widget widget) {
+        return Integer.BYTES + utf8Length(widget.getId()) + Byte.BYTES
+                + (widget.getCoordinates() == null ? 0 : 2 * Integer.BYTES)
+                + 3 * Integer.BYTES
+                + (widget.getLastModification() == null ? 0 : Long.BYTES + Integer.BYTES);
+    }
+
+    static void write(ByteBuffer buffer, Widget widget) {
+        writeString(buffer, widget.getId());
+        buffer.put((byte) ((widget.getCoordinates() == null ? 0 : HAS_COORDINATES)
+                | (widget.getLastModification() == null ? 0 : HAS_LAST_MODIFICATION)));
+        if (widget.getCoordinates() != null) {
+            buffer.putInt(widget.getCoordinates().getX());
+            buffer.putInt(widget.getCoordinates().getY());
+        }
+        buffer.putInt(widget.getZ());
+        buffer.putInt(widget.getWidth());
+        buffer.putInt(widget.getHeight());
+        if (widget.getLastModification() != null) {
+            buffer.putLong(widget.getLastModification().toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(widget.getLastModification().getNano());
+        }
+    }
+
+    static Widget readWidget(ByteBuffer buffer) {
+        Widget.WidgetBuilder widget = Widget.builder().id(readString(buffer));
+        byte flags = buffer.get();
+        if ((flags & HAS_COORDINATES) != 0) {
+            widget.coordinates(Coordinates.builder().x(buffer.getInt()).y(buffer.getInt()).build());
+        }
+        widget.z(buffer.getInt()).width(buffer.getInt()).height(buffer.getInt());
+        if ((flags & HAS_LAST_MODIFICATION) != 0) {
+            widget.lastModification(LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC));
+        }
+        return widget.build();
+    }
+
+    private static int size(WidgetChange change) {
+        int size = Byte.BYTES + Long.BYTES;
+        switch (change.getType()) {
+            case CREATED:
+            case UPDATED:
+                return size + size(change.getWidget());
+            case DELETED:
+                return size + Integer.BYTES + utf8Length(change.getId());
+            default:
+                return size + 2 * Integer.BYTES;
+        }
+    }
+
+    private static void write(ByteBuffer buffer, WidgetChange change) {
+        buffer.put((byte) change.getType().ordinal());
+        buffer.putLong(change.getSequence());
+        switch (change.getType()) {
+            case CREATED:
+            case UPDATED:
+                write(buffer, change.getWidget());
+                break;
+            case DELETED:
+                writeString(buffer, change.getId());
+                break;
+            case SHIFTED:
+                buffer.putInt(change.getFromZ());
+                buffer.putInt(change.getToZ());
+                break;
+        }
+    }
+
+    private static WidgetChange readChange(ByteBuffer buffer) {
+        int type = buffer.get();
+        if (type < 0 || type >= TYPES.length) {
+            throw new IllegalArgumentException("Invalid change type " + type);
+        }
+        WidgetChange.WidgetChangeBuilder change = WidgetChange.builder()
+                .type(TYPES[type])
+                .sequence(buffer.getLong());
+        switch (TYPES[type]) {
+            case CREATED:
+            case UPDATED:
+                return change.widget(readWidget(buffer)).build();
+            case DELETED:
+                return change.id(readString(buffer)).build();
+            default:
+                return change.fromZ(buffer.getInt()).toZ(buffer.getInt()).build();
+        }
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // replaced by '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
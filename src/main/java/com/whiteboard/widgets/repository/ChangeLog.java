@@ -0,0 +1,58 @@
+package com.whiteboard.widgets.repository;
+
+import com.whiteboard.widgets.model.WidgetChange;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Durable record of the changes made to the board.
+ */
+public interface ChangeLog extends Closeable {
+    /**
+     * Log keeping nothing: the board starts empty every time.
+     */
+    ChangeLog NONE = none(WidgetStorage.OBJECTS);
+
+    /**
+     * Log keeping nothing, whose board starts empty and laid out as {@code storage}.
+     */
+    static ChangeLog none(WidgetStorage storage) {
+        WidgetBoard empty = WidgetBoard.empty(storage);
+        return new ChangeLog() {
+            @Override
+            public WidgetBoard recovered() {
+                return empty;
+            }
+
+            @Override
+            public void append(List<WidgetChange> changes, WidgetBoard board) {
+            }
+
+            @Override
+            public void sync() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Board restored when the log was opened.
+     */
+    WidgetBoard recovered();
+
+    /**
+     * Records the changes leading to {@code board}, which must follow the changes appended before without a gap.
+     * Called by one writer at a time, before the board is published.
+     */
+    void append(List<WidgetChange> changes, WidgetBoard board);
+
+    /**
+     * Waits until the changes appended so far are as durable as the log guarantees. Called without holding the
+     * writer lock, so that concurrent writers share the wait.
+     */
+    void sync();
+}
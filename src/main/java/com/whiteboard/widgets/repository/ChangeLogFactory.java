@@ -0,0 +1,94 @@
+package com.whiteboard.widgets.repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Opens the change logs of the boards, each in its own directory.
+ */
+public interface ChangeLogFactory {
+    /**
+     * Factory of logs keeping nothing, whose boards start empty and laid out as {@code storage}.
+     */
+    static ChangeLogFactory none(WidgetStorage storage) {
+        return new ChangeLogFactory() {
+            @Override
+            public ChangeLog open(Path directory) {
+                return ChangeLog.none(storage);
+            }
+
+            @Override
+            public boolean exists(Path directory) {
+                return false;
+            }
+
+            @Override
+            public boolean isDurable() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * {@link MappedChangeLog}s with the given settings, in directories resolved against the one of the settings.
+     */
+    static ChangeLogFactory mapped(MappedChangeLog.Settings settings) {
+        return new ChangeLogFactory() {
+            @Override
+            public ChangeLog open(Path directory) throws IOException {
+                return MappedChangeLog.open(settings.toBuilder()
+                        .directory(settings.getDirectory().resolve(directory))
+                        .build());
+            }
+
+            @Override
+            public boolean exists(Path directory) {
+                return Files.isDirectory(settings.getDirectory().resolve(directory));
+            }
+
+            @Override
+            public boolean isDurable() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * {@link JdbcChangeLog}s with the given settings, all in the same tables, each board under the path of its
+     * directory.
+     */
+    static ChangeLogFactory jdbc(JdbcChangeLog.Settings settings) {
+        return new ChangeLogFactory() {
+            @Override
+            public ChangeLog open(Path directory) throws IOException {
+                return JdbcChangeLog.open(settings, directory.toString());
+            }
+
+            @Override
+            public boolean exists(Path directory) throws IOException {
+                return JdbcChangeLog.exists(settings, directory.toString());
+            }
+
+            @Override
+            public boolean isDurable() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Log in the directory, relative to the location of the logs, with the board it restored.
+     */
+    ChangeLog open(Path directory) throws IOException;
+
+    /**
+     * Whether a log was ever opened in the directory, without opening one.
+     */
+    boolean exists(Path directory) throws IOException;
+
+    /**
+     * Whether closing a log and opening it again gives back the same board.
+     */
+    boolean isDurable();
+}
@@ -0,0 +1,590 @@
+package com.whiteboard.widgets.repository;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Change log keeping the widgets of a board as rows of a SQL table, one per widget, and the version of the board as
+ * a row of another. The statements are plain SQL understood by H2 and PostgreSQL alike.
+ *
+ * <p>The board itself stays in memory, published by its service; the table is written behind it. Changes appended
+ * wait in a queue, and are written in one transaction per batch, with as few statements as possible. The z-index
+ * shifts of a batch are merged first: together they move each widget up by a number of places which only changes
+ * between ranges of z-indexes, and a single {@code UPDATE ... SET z = z + CASE ...} moves every range at once. Then
+ * every widget created, updated or deleted by the batch is written once, as it is on the board the batch leads to,
+ * which already accounts for the shifts: the old rows are deleted and the new ones inserted with multi-row statements
+ * of at most {@code rowsPerStatement} rows or ranges. Statements are prepared once for each power of two rows, and a
+ * chunk of any other size is split along them. The table matches the board at the end of every transaction.
+ *
+ * <p>With {@code writeBehind}, a single thread writes a batch every {@code flushInterval} and writers never wait, so
+ * a crash loses the changes of the last interval. Otherwise writers wait until their changes are committed: the
+ * first one to wait writes the changes appended so far itself, and those appended during its transaction share the
+ * next one, written by one of the writers waiting for them. A batch which could not be written stays queued and is
+ * tried again, after {@code flushInterval} behind writers and by the next writer otherwise.
+ */
+public final class JdbcChangeLog implements ChangeLog {
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS widget_board (board VARCHAR(255) PRIMARY KEY, version BIGINT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS widget (board VARCHAR(255) NOT NULL, id VARCHAR(255) NOT NULL, "
+                    + "z INT NOT NULL, x INT, y INT, width INT NOT NULL, height INT NOT NULL, "
+                    + "last_modification TIMESTAMP, PRIMARY KEY (board, id))",
+            "CREATE INDEX IF NOT EXISTS widget_z ON widget (board, z)"
+    };
+    private static final String INSERT_ROW = "(?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SHIFT_RANGE = "WHEN z BETWEEN ? AND ? THEN ?";
+
+    private final Settings settings;
+    private final String board;
+    private final Connection connection;
+    private final WidgetBoard recovered;
+    private final PreparedStatement version;
+    private final Map<Integer, PreparedStatement> shifts = new HashMap<>();
+    private final Map<Integer, PreparedStatement> deletes = new HashMap<>();
+    private final Map<Integer, PreparedStatement> inserts = new HashMap<>();
+    private final Object flushLock = new Object();
+    /**
+     * Thread writing the batches with {@code writeBehind}, null without.
+     */
+    private final Thread flusher;
+    /**
+     * Changes appended and not written yet with the board they lead to, the sequence of the last change appended,
+     * the sequence of the last change committed with the error of the last batch if it failed, and whether a batch
+     * is being written; guarded by {@link #flushLock}.
+     */
+    private List<WidgetChange> pending = new ArrayList<>();
+    private WidgetBoard pendingBoard;
+    private long appended;
+    private long flushed;
+    private RuntimeException flushFailure;
+    private boolean writing;
+    private volatile boolean closed;
+
+    private JdbcChangeLog(Settings settings, String board, Connection connection, WidgetBoard recovered)
+            throws SQLException {
+        this.settings = settings;
+        this.board = board;
+        this.connection = connection;
+        this.recovered = recovered;
+        this.appended = recovered.version();
+        this.flushed = recovered.version();
+        this.version = connection.prepareStatement("UPDATE widget_board SET version = ? WHERE board = ?");
+        if (settings.isWriteBehind()) {
+            flusher = new Thread(this::flush, "change-log-flush");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Opens the log of the board, creating the tables if needed, and restores the board from them.
+     */
+    public static JdbcChangeLog open(Settings settings, String board) throws IOException {
+        Connection connection = null;
+        try {
+            connection = DriverManager.getConnection(settings.getUrl(), settings.getUser(), settings.getPassword());
+            try (Statement statement = connection.createStatement()) {
+                for (String table : SCHEMA) {
+                    statement.execute(table);
+                }
+            }
+            connection.setAutoCommit(false);
+            long version = recoverVersion(connection, board);
+            List<Widget> widgets = new ArrayList<>();
+            try (PreparedStatement select = connection.prepareStatement("SELECT id, z, x, y, width, height, "
+                    + "last_modification FROM widget WHERE board = ? ORDER BY z")) {
+                select.setString(1, board);
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        widgets.add(widget(rows));
+                    }
+                }
+            }
+            connection.commit();
+            return new JdbcChangeLog(settings, board, connection,
+                    WidgetBoard.of(widgets, version, settings.getStorage()));
+        } catch (SQLException e) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException closing) {
+                    e.addSuppressed(closing);
+                }
+            }
+            throw new IOException("Could not open the log of board '" + board + "'", e);
+        }
+    }
+
+    /**
+     * Whether the log of the board was ever opened, without creating the tables.
+     */
+    public static boolean exists(Settings settings, String board) throws IOException {
+        try (Connection connection = DriverManager.getConnection(settings.getUrl(), settings.getUser(),
+                settings.getPassword())) {
+            try (ResultSet tables = connection.getMetaData().getTables(null, null, "%", new String[]{"TABLE"})) {
+                boolean found = false;
+                while (!found && tables.next()) {
+                    found = tables.getString("TABLE_NAME").equalsIgnoreCase("widget_board");
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT 1 FROM widget_board WHERE board = ?")) {
+                select.setString(1, board);
+                try (ResultSet rows = select.executeQuery()) {
+                    return rows.next();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not look up the log of board '" + board + "'", e);
+        }
+    }
+
+    @Override
+    public WidgetBoard recovered() {
+        return recovered;
+    }
+
+    @Override
+    public void append(List<WidgetChange> changes, WidgetBoard board) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        synchronized (flushLock) {
+            pending.addAll(changes);
+            pendingBoard = board;
+            appended = changes.get(changes.size() - 1).getSequence();
+        }
+    }
+
+    @Override
+    public void sync() {
+        if (settings.isWriteBehind()) {
+            return;
+        }
+        long target;
+        synchronized (flushLock) {
+            target = appended;
+        }
+        while (true) {
+            synchronized (flushLock) {
+                while (writing && flushed < target) {
+                    try {
+                        flushLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedIOException(new InterruptedIOException());
+                    }
+                }
+                if (flushed >= target) {
+                    return;
+                }
+                writing = true;
+            }
+            if (!writeExclusively()) {
+                synchronized (flushLock) {
+                    throw flushFailure;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops flushing, writes what is left and closes the connection.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            closed = true;
+            flushLock.notifyAll();
+        }
+        boolean interrupted = false;
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        synchronized (flushLock) {
+            while (writing) {
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            writing = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        boolean written = writeExclusively();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        if (!written) {
+            throw new IOException("Changes of board '" + board + "' could not be written", flushFailure);
+        }
+    }
+
+    /**
+     * Writes batches behind the writers until the log is closed, which wakes it.
+     */
+    private void flush() {
+        while (!closed) {
+            try {
+                synchronized (flushLock) {
+                    flushLock.wait(Math.max(1, settings.getFlushInterval().toMillis()));
+                    while (writing) {
+                        flushLock.wait();
+                    }
+                    writing = true;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            writeExclusively();
+        }
+    }
+
+    /**
+     * Writes the changes queued so far after setting {@link #writing}, which it clears; returns false if it failed.
+     */
+    private boolean writeExclusively() {
+        try {
+            return writePending();
+        } finally {
+            synchronized (flushLock) {
+                writing = false;
+                flushLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes the changes queued so far in one transaction; returns false, queueing them again, if it failed.
+     */
+    private boolean writePending() {
+        List<WidgetChange> batch;
+        WidgetBoard written;
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return true;
+            }
+            batch = pending;
+            written = pendingBoard;
+            pending = new ArrayList<>();
+        }
+        try {
+            write(batch, written);
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollback) {
+                e.addSuppressed(rollback);
+            }
+            synchronized (flushLock) {
+                batch.addAll(pending);
+                pending = batch;
+                flushFailure = new IllegalStateException("Could not write changes of board '" + board + "'", e);
+                flushLock.notifyAll();
+            }
+            return false;
+        }
+        synchronized (flushLock) {
+            flushed = batch.get(batch.size() - 1).getSequence();
+            flushFailure = null;
+            flushLock.notifyAll();
+        }
+        return true;
+    }
+
+    private void write(List<WidgetChange> batch, WidgetBoard written) throws SQLException {
+        Map<String, Boolean> stored = new LinkedHashMap<>();
+        ShiftRanges shifted = new ShiftRanges();
+        for (WidgetChange change : batch) {
+            switch (change.getType()) {
+                case CREATED:
+                case UPDATED:
+                    stored.putIfAbsent(change.getWidget().getId(), change.getType() == WidgetChange.Type.UPDATED);
+                    break;
+                case DELETED:
+                    stored.putIfAbsent(change.getId(), true);
+                    break;
+                case SHIFTED:
+                    shifted.shift(change.getFromZ(), change.getToZ());
+                    break;
+            }
+        }
+        writeShifts(shifted.moved());
+        List<String> rows = new ArrayList<>();
+        List<Widget> widgets = new ArrayList<>();
+        stored.forEach((id, hasRow) -> {
+            if (hasRow) {
+                rows.add(id);
+            }
+            written.get(id).ifPresent(widgets::add);
+        });
+        for (int from = 0; from < rows.size(); ) {
+            int chunk = chunk(rows.size() - from);
+            PreparedStatement delete = statement(deletes, chunk, JdbcChangeLog::delete);
+            int parameter = 1;
+            delete.setString(parameter++, board);
+            for (int end = from + chunk; from < end; from++) {
+                delete.setString(parameter++, rows.get(from));
+            }
+            delete.executeUpdate();
+        }
+        for (int from = 0; from < widgets.size(); ) {
+            int chunk = chunk(widgets.size() - from);
+            PreparedStatement insert = statement(inserts, chunk, JdbcChangeLog::insert);
+            int parameter = 1;
+            for (int end = from + chunk; from < end; from++) {
+                Widget widget = widgets.get(from);
+                insert.setString(parameter++, board);
+                insert.setString(parameter++, widget.getId());
+                insert.setInt(parameter++, widget.getZ());
+                setCoordinate(insert, parameter++, widget.getCoordinates(), true);
+                setCoordinate(insert, parameter++, widget.getCoordinates(), false);
+                insert.setInt(parameter++, widget.getWidth());
+                insert.setInt(parameter++, widget.getHeight());
+                insert.setObject(parameter++, widget.getLastModification(), Types.TIMESTAMP);
+            }
+            insert.executeUpdate();
+        }
+        version.setLong(1, batch.get(batch.size() - 1).getSequence());
+        version.setString(2, board);
+        version.executeUpdate();
+    }
+
+    /**
+     * Moves the rows of each range by its offset, one statement per chunk of ranges. Chunks are written from the top,
+     * so that no row moved by a statement is in the ranges of a later one.
+     */
+    private void writeShifts(List<long[]> ranges) throws SQLException {
+        for (int end = ranges.size(); end > 0; ) {
+            int chunk = chunk(end);
+            int from = end - chunk;
+            PreparedStatement shift = statement(shifts, chunk, JdbcChangeLog::shift);
+            int parameter = 1;
+            for (int index = from; index < end; index++) {
+                long[] range = ranges.get(index);
+                shift.setLong(parameter++, range[0]);
+                shift.setLong(parameter++, range[1]);
+                shift.setInt(parameter++, (int) range[2]);
+            }
+            shift.setString(parameter++, board);
+            shift.setLong(parameter++, ranges.get(from)[0]);
+            shift.setLong(parameter, ranges.get(end - 1)[1]);
+            shift.executeUpdate();
+            end = from;
+        }
+    }
+
+    /**
+     * Rows of the next statement: {@code rowsPerStatement} of the remaining rows, or the largest power of two not
+     * above their number.
+     */
+    private int chunk(int remaining) {
+        return remaining >= settings.getRowsPerStatement() ? settings.getRowsPerStatement()
+                : Integer.highestOneBit(remaining);
+    }
+
+    private PreparedStatement statement(Map<Integer, PreparedStatement> statements, int rows,
+                                        IntFunction<String> sql) throws SQLException {
+        PreparedStatement statement = statements.get(rows);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql.apply(rows));
+            statements.put(rows, statement);
+        }
+        return statement;
+    }
+
+    private static void setCoordinate(PreparedStatement statement, int parameter, Coordinates coordinates, boolean x)
+            throws SQLException {
+        if (coordinates == null) {
+            statement.setNull(parameter, Types.INTEGER);
+        } else {
+            statement.setInt(parameter, x ? coordinates.getX() : coordinates.getY());
+        }
+    }
+
+    private static long recoverVersion(Connection connection, String board) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT version FROM widget_board WHERE board = ?")) {
+            select.setString(1, board);
+            try (ResultSet rows = select.executeQuery()) {
+                if (rows.next()) {
+                    return rows.getLong(1);
+                }
+            }
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO widget_board (board, version) VALUES (?, 0)")) {
+            insert.setString(1, board);
+            insert.executeUpdate();
+        }
+        return 0;
+    }
+
+    private static Widget widget(ResultSet rows) throws SQLException {
+        int x = rows.getInt(3);
+        boolean positioned = !rows.wasNull();
+        return Widget.builder()
+                .id(rows.getString(1))
+                .z(rows.getInt(2))
+                .coordinates(positioned ? Coordinates.builder().x(x).y(rows.getInt(4)).build() : null)
+                .width(rows.getInt(5))
+                .height(rows.getInt(6))
+                .lastModification(rows.getObject(7, LocalDateTime.class))
+                .build();
+    }
+
+    private static String shift(int ranges) {
+        StringBuilder sql = new StringBuilder("UPDATE widget SET z = z + CASE");
+        for (int i = 0; i < ranges; i++) {
+            sql.append(' ').append(SHIFT_RANGE);
+        }
+        return sql.append(" ELSE 0 END WHERE board = ? AND z BETWEEN ? AND ?").toString();
+    }
+
+    private static String delete(int rows) {
+        StringBuilder sql = new StringBuilder("DELETE FROM widget WHERE board = ? AND id IN (");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    private static String insert(int rows) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO widget (board, id, z, x, y, width, height, last_modification) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? INSERT_ROW : ", " + INSERT_ROW);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Places each z-index moves up by through a sequence of shifts, as ranges of the z-indexes before the first one.
+     *
+     * <p>A shift moves up by one the widgets between two z-indexes. It never moves a z-index above a higher one, so
+     * the z-indexes a later shift moves were a single range before the first one, found from the offsets so far. No
+     * z-index has moved up by more than the largest offset, so a shift only looks at the ranges within that distance
+     * below its z-indexes.
+     */
+    static final class ShiftRanges {
+        /**
+         * Offset of the z-indexes from each key to the next one; the first key is below any z-index.
+         */
+        private final TreeMap<Long, Integer> offsets = new TreeMap<>(Map.of(Long.MIN_VALUE, 0));
+        private int maxOffset;
+
+        /**
+         * Moves up by one the widgets now between the two z-indexes.
+         */
+        void shift(int fromZ, int toZ) {
+            long first = Long.MAX_VALUE;
+            long lowest = offsets.floorKey((long) fromZ - maxOffset);
+            for (Map.Entry<Long, Integer> range : offsets.tailMap(lowest, true).entrySet()) {
+                Long next = offsets.higherKey(range.getKey());
+                if (next == null || next - 1 + range.getValue() >= fromZ) {
+                    first = Math.max(range.getKey(), fromZ - range.getValue());
+                    break;
+                }
+            }
+            long last = Long.MIN_VALUE;
+            for (Map.Entry<Long, Integer> range : offsets.headMap((long) toZ, true).descendingMap().entrySet()) {
+                if (range.getKey() + range.getValue() <= toZ) {
+                    Long next = offsets.higherKey(range.getKey());
+                    last = next == null ? toZ - range.getValue() : Math.min(next - 1, toZ - range.getValue());
+                    break;
+                }
+            }
+            if (first > last) {
+                return;
+            }
+            offsets.putIfAbsent(first, offsets.floorEntry(first).getValue());
+            offsets.putIfAbsent(last + 1, offsets.floorEntry(last + 1).getValue());
+            for (Map.Entry<Long, Integer> range : offsets.subMap(first, last + 1).entrySet()) {
+                range.setValue(range.getValue() + 1);
+                maxOffset = Math.max(maxOffset, range.getValue());
+            }
+        }
+
+        /**
+         * Ranges of z-indexes which move, in order, each as its first and last z-index and its offset.
+         */
+        List<long[]> moved() {
+            List<long[]> moved = new ArrayList<>();
+            for (Map.Entry<Long, Integer> range : offsets.entrySet()) {
+                if (range.getValue() != 0) {
+                    moved.add(new long[]{range.getKey(), offsets.higherKey(range.getKey()) - 1, range.getValue()});
+                }
+            }
+            return moved;
+        }
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Settings {
+        /**
+         * JDBC URL of the database, such as {@code jdbc:h2:file:./widgets}; its driver must be on the class path.
+         */
+        @NonNull
+        String url;
+        @Builder.Default
+        String user = "";
+        @Builder.Default
+        String password = "";
+        /**
+         * Whether writers go on without waiting for their changes to be committed.
+         */
+        @Builder.Default
+        boolean writeBehind = true;
+        /**
+         * Time between two batches written behind, and before trying again a batch which failed.
+         */
+        @Builder.Default
+        Duration flushInterval = Duration.ofMillis(10);
+        @Builder.Default
+        int rowsPerStatement = 256;
+        /**
+         * Layout of the recovered board.
+         */
+        @Builder.Default
+        WidgetStorage storage = WidgetStorage.OBJECTS;
+    }
+}
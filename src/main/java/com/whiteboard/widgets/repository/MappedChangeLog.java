@@ -0,0 +1,545 @@
+package com.whiteboard.widgets.repository;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.whiteboard.widgets.model.WidgetChange;
+import lombok.Builder;
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Change log kept in a directory of memory-mapped segment files and board snapshots.
+ *
+ * <p>Each commit is one record: the length of its payload, a CRC32C checksum of it, and the encoded changes.
+ * Records are copied into the mapped segment, so appending never waits for the disk; when a segment is full, the
+ * next one is created, named after the first sequence it holds. When writes reach the disk is set by the
+ * {@link FsyncPolicy}.
+ *
+ * <p>Every {@code snapshotEvery} changes, and on close, the board is written to a snapshot in the background,
+ * after which the segments it covers are deleted. Opening the log loads the newest valid snapshot and replays the
+ * records following it. Replay stops at the first record which is incomplete, damaged or out of sequence, as left
+ * by a crash in the middle of a write; whatever follows is erased and the log continues from there.
+ */
+public final class MappedChangeLog implements ChangeLog {
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "log-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final int SCRATCH_SIZE = 4096;
+    /**
+     * Largest encoding buffer kept between appends; larger batches, such as imports, get one of their own.
+     */
+    private static final int MAX_RETAINED_SCRATCH_SIZE = 1 << 20;
+
+    private final Settings settings;
+    private final WidgetBoard recovered;
+    private final ExecutorService snapshots = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("change-log-snapshot").setDaemon(true).build());
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final Thread flusher;
+    /**
+     * Flushes a segment to the disk for the flusher.
+     */
+    private final Consumer<MappedByteBuffer> force;
+    private ByteBuffer scratch = ByteBuffer.allocate(SCRATCH_SIZE);
+    private volatile Segment current;
+    private volatile WidgetBoard latest;
+    private volatile long snapshotVersion;
+    /**
+     * Sequence of the last change appended, written after the record.
+     */
+    private volatile long appended;
+    /**
+     * Sequence of the last change flushed to the disk, and the error of the last flush if it failed, cleared by the
+     * next one to succeed; guarded by {@link #flushLock}.
+     */
+    private long flushed;
+    private RuntimeException flushFailure;
+    private volatile boolean closed;
+
+    private MappedChangeLog(Settings settings, WidgetBoard recovered, Segment current, long snapshotVersion,
+                            Consumer<MappedByteBuffer> force) {
+        this.settings = settings;
+        this.force = force;
+        this.recovered = recovered;
+        this.latest = recovered;
+        this.current = current;
+        this.snapshotVersion = snapshotVersion;
+        this.appended = recovered.version();
+        this.flushed = recovered.version();
+        if (settings.getFsyncPolicy() == FsyncPolicy.NONE) {
+            flusher = null;
+        } else {
+            flusher = new Thread(this::flush, "change-log-flush");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Opens the log in the directory of the settings, creating it if needed, and restores the board it holds.
+     */
+    public static MappedChangeLog open(Settings settings) throws IOException {
+        return open(settings, MappedByteBuffer::force);
+    }
+
+    /**
+     * Opens the log as {@link #open(Settings)}, with the flusher writing segments to the disk through {@code force}.
+     */
+    static MappedChangeLog open(Settings settings, Consumer<MappedByteBuffer> force) throws IOException {
+        Path directory = settings.getDirectory();
+        Files.createDirectories(directory);
+        WidgetBoard board = WidgetBoard.empty(settings.getStorage());
+        for (Path snapshot : files(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX, Comparator.reverseOrder())) {
+            Optional<WidgetBoard> read = SnapshotFile.read(snapshot, settings.getStorage());
+            if (read.isPresent()) {
+                board = read.get();
+                break;
+            }
+        }
+        long snapshotVersion = board.version();
+
+        List<Path> segments = files(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX, Comparator.naturalOrder());
+        int first = segments.size() - 1;
+        while (first >= 0 && firstSequence(segments.get(first)) > snapshotVersion + 1) {
+            first--;
+        }
+        if (first < 0 && !segments.isEmpty()) {
+            throw new IllegalStateException("Change log starts at " + firstSequence(segments.get(0))
+                    + ", after the snapshot of version " + snapshotVersion);
+        }
+        for (int i = 0; i < first; i++) {
+            Files.delete(segments.get(i));
+        }
+
+        Segment segment = null;
+        long expected = first < 0 ? snapshotVersion + 1 : firstSequence(segments.get(first));
+        for (int i = Math.max(first, 0); i < segments.size(); i++) {
+            if (firstSequence(segments.get(i)) != expected) {
+                Files.delete(segments.get(i));
+                continue;
+            }
+            if (segment != null) {
+                segment.close();
+            }
+            segment = Segment.open(segments.get(i), 0);
+            Replay replay = new Replay(board, expected);
+            boolean complete = replay.run(segment.buffer);
+            board = replay.board;
+            expected = replay.expected;
+            if (!complete) {
+                segment.erase();
+                for (int j = i + 1; j < segments.size(); j++) {
+                    Files.delete(segments.get(j));
+                }
+                break;
+            }
+        }
+        if (segment == null || expected <= board.version()) {
+            // the log ends before the snapshot: start afresh after it
+            if (segment != null) {
+                segment.close();
+                for (Path path : files(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX, Comparator.naturalOrder())) {
+                    Files.delete(path);
+                }
+            }
+            segment = Segment.open(segmentPath(directory, board.version() + 1), settings.getSegmentSize());
+        }
+        return new MappedChangeLog(settings, board, segment, snapshotVersion, force);
+    }
+
+    @Override
+    public WidgetBoard recovered() {
+        return recovered;
+    }
+
+    @Override
+    public void append(List<WidgetChange> changes, WidgetBoard board) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        int size = ChangeCodec.size(changes);
+        if (scratch.capacity() < size) {
+            scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        ChangeCodec.write(scratch, changes);
+        scratch.flip();
+        CRC32C checksum = new CRC32C();
+        checksum.update(scratch.duplicate());
+
+        Segment segment = current;
+        if (segment.buffer.remaining() < RECORD_HEADER_SIZE + size) {
+            segment = roll(changes.get(0).getSequence(), RECORD_HEADER_SIZE + size);
+        }
+        segment.buffer.putInt(size).putInt((int) checksum.getValue()).put(scratch);
+        if (scratch.capacity() > MAX_RETAINED_SCRATCH_SIZE) {
+            scratch = ByteBuffer.allocate(SCRATCH_SIZE);
+        }
+        appended = changes.get(changes.size() - 1).getSequence();
+        latest = board;
+        if (settings.getFsyncPolicy() == FsyncPolicy.COMMIT) {
+            synchronized (flushLock) {
+                flushLock.notifyAll();
+            }
+        }
+        if (board.version() - snapshotVersion >= settings.getSnapshotEvery()
+                && snapshotting.compareAndSet(false, true)) {
+            snapshots.execute(() -> snapshot(board));
+        }
+    }
+
+    /**
+     * Waits for the changes appended so far to be flushed, through the retries of failed flushes for up to
+     * {@code syncTimeout} after the first failure seen, and then fails with the error of the last one.
+     */
+    @Override
+    public void sync() {
+        if (settings.getFsyncPolicy() != FsyncPolicy.COMMIT) {
+            return;
+        }
+        long target = appended;
+        long deadline = 0;
+        boolean failing = false;
+        synchronized (flushLock) {
+            while (flushed < target) {
+                try {
+                    if (flushFailure == null) {
+                        flushLock.wait();
+                        continue;
+                    }
+                    if (!failing) {
+                        failing = true;
+                        deadline = System.nanoTime() + settings.getSyncTimeout().toNanos();
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw flushFailure;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(flushLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops flushing, flushes what is left and writes a snapshot of the last board if the latest one is older.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (flusher != null) {
+            synchronized (flushLock) {
+                flushLock.notifyAll();
+            }
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        snapshots.shutdown();
+        try {
+            snapshots.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        current.buffer.force();
+        synchronized (flushLock) {
+            flushed = appended;
+            flushLock.notifyAll();
+        }
+        if (latest.version() > snapshotVersion) {
+            snapshot(latest);
+        }
+        current.close();
+    }
+
+    /**
+     * Continues the log in a new segment, large enough for the next record, once the current one is on disk.
+     */
+    private Segment roll(long firstSequence, int recordSize) {
+        Segment previous = current;
+        try {
+            Segment next = Segment.open(segmentPath(settings.getDirectory(), firstSequence),
+                    Math.max(settings.getSegmentSize(), recordSize));
+            if (settings.getFsyncPolicy() != FsyncPolicy.NONE) {
+                previous.buffer.force();
+            }
+            current = next;
+            previous.close();
+            return next;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() {
+        while (!closed) {
+            long target;
+            if (settings.getFsyncPolicy() == FsyncPolicy.COMMIT) {
+                synchronized (flushLock) {
+                    while (appended <= flushed && !closed) {
+                        try {
+                            flushLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    target = appended;
+                }
+            } else {
+                try {
+                    Thread.sleep(settings.getFsyncInterval().toMillis());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                target = appended;
+            }
+            RuntimeException failure = null;
+            try {
+                force.accept(current.buffer);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            synchronized (flushLock) {
+                if (failure == null) {
+                    flushed = Math.max(flushed, target);
+                    flushFailure = null;
+                } else {
+                    flushFailure = failure;
+                }
+                flushLock.notifyAll();
+            }
+            if (failure != null) {
+                // retry once the disk had a moment to recover, rather than spin on the failure
+                try {
+                    Thread.sleep(settings.getFsyncInterval().toMillis());
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void snapshot(WidgetBoard board) {
+        try {
+            Path directory = settings.getDirectory();
+            Path written = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, board.version(),
+                    SNAPSHOT_SUFFIX));
+            SnapshotFile.write(written, board);
+            snapshotVersion = board.version();
+            for (Path snapshot : files(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX, Comparator.naturalOrder())) {
+                if (!snapshot.equals(written)) {
+                    Files.delete(snapshot);
+                }
+            }
+            List<Path> segments = files(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX, Comparator.naturalOrder());
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                if (firstSequence(segments.get(i + 1)) <= board.version() + 1
+                        && !segments.get(i).equals(current.path)) {
+                    Files.delete(segments.get(i));
+                }
+            }
+        } catch (IOException e) {
+            // the log still holds every change; the next snapshot will try again
+        } finally {
+            snapshotting.set(false);
+        }
+    }
+
+    private static Path segmentPath(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Files of the directory with the prefix and suffix, ordered by name, which orders them by sequence.
+     */
+    private static List<Path> files(Path directory, String prefix, String suffix, Comparator<String> order)
+            throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(prefix)
+                            && path.getFileName().toString().endsWith(suffix))
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString(), order))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public enum FsyncPolicy {
+        /**
+         * Writers wait until their changes are on disk; the changes appended during a flush share the next one.
+         */
+        COMMIT,
+        /**
+         * Flushes in the background every {@code fsyncInterval}, so a power loss loses at most that much.
+         */
+        INTERVAL,
+        /**
+         * Leaves flushing to the operating system, which survives a crash of the process but not a power loss.
+         */
+        NONE
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Settings {
+        Path directory;
+        @Builder.Default
+        FsyncPolicy fsyncPolicy = FsyncPolicy.COMMIT;
+        @Builder.Default
+        Duration fsyncInterval = Duration.ofMillis(10);
+        /**
+         * How long writers wait through failed flushes, retried every {@code fsyncInterval}, before failing.
+         */
+        @Builder.Default
+        Duration syncTimeout = Duration.ofSeconds(1);
+        @Builder.Default
+        int segmentSize = 64 << 20;
+        @Builder.Default
+        long snapshotEvery = 100_000;
+        /**
+         * Layout of the recovered board.
+         */
+        @Builder.Default
+        WidgetStorage storage = WidgetStorage.OBJECTS;
+    }
+
+    /**
+     * Applies the records of a segment to the board, from the beginning of the segment to its last valid record.
+     */
+    private static final class Replay {
+        private WidgetBoard board;
+        private long expected;
+
+        Replay(WidgetBoard board, long expected) {
+            this.board = board;
+            this.expected = expected;
+        }
+
+        /**
+         * Returns whether the segment ends cleanly, leaving the buffer after the last valid record.
+         */
+        boolean run(ByteBuffer buffer) {
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int start = buffer.position();
+                int size = buffer.getInt();
+                if (size == 0) {
+                    buffer.position(start);
+                    return isZero(buffer);
+                }
+                int checksum = buffer.getInt();
+                if (size < 0 || size > buffer.remaining()) {
+                    buffer.position(start);
+                    return false;
+                }
+                ByteBuffer payload = buffer.slice().limit(size);
+                CRC32C actual = new CRC32C();
+                actual.update(payload.duplicate());
+                List<WidgetChange> changes;
+                try {
+                    changes = (int) actual.getValue() == checksum ? ChangeCodec.readChanges(payload) : List.of();
+                } catch (IllegalArgumentException | BufferUnderflowException e) {
+                    changes = List.of();
+                }
+                if (changes.isEmpty()) {
+                    buffer.position(start);
+                    return false;
+                }
+                for (WidgetChange change : changes) {
+                    if (change.getSequence() != expected) {
+                        buffer.position(start);
+                        return false;
+                    }
+                    expected++;
+                }
+                changes.forEach(this::apply);
+                buffer.position(start + RECORD_HEADER_SIZE + size);
+            }
+            return isZero(buffer);
+        }
+
+        private void apply(WidgetChange change) {
+            if (change.getSequence() <= board.version()) {
+                return;
+            }
+            board = board.apply(change);
+        }
+
+        private static boolean isZero(ByteBuffer buffer) {
+            for (int i = buffer.position(); i < buffer.limit(); i++) {
+                if (buffer.get(i) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Maps the segment file, growing it to {@code size} bytes if it is smaller.
+         */
+        static Segment open(Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long length = Math.max(channel.size(), size);
+            return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+
+        /**
+         * Zeroes the segment from the current position, so that nothing after it can be mistaken for a record.
+         */
+        void erase() {
+            for (int i = buffer.position(); i < buffer.limit(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.whiteboard.widgets.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash array mapped trie. Updates copy the path to the changed entry, O(log32 n) nodes, and share the
+ * rest with the original map. Keys and values must not be null.
+ */
+final class PersistentHashMap<K, V> {
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Either null, an {@link Entry}, a {@link BitmapNode} or a {@link CollisionNode}.
+     */
+    private final Object root;
+    private final int size;
+
+    private PersistentHashMap(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(K key) {
+        int hash = hash(key);
+        Object node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            if (node instanceof Entry) {
+                Entry entry = (Entry) node;
+                return entry.hash == hash && entry.key.equals(key) ? (V) entry.value : null;
+            }
+            if (node instanceof CollisionNode) {
+                return (V) ((CollisionNode) node).get(key);
+            }
+            BitmapNode bitmapNode = (BitmapNode) node;
+            int bit = bit(hash, shift);
+            if ((bitmapNode.bitmap & bit) == 0) {
+                return null;
+            }
+            node = bitmapNode.children[bitmapNode.index(bit)];
+        }
+        return null;
+    }
+
+    boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    PersistentHashMap<K, V> put(K key, V value) {
+        Object updated = put(root, new Entry(hash(key), key, value), 0);
+        return updated == root ? this : new PersistentHashMap<>(updated, containsKey(key) ? size : size + 1);
+    }
+
+    PersistentHashMap<K, V> remove(K key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        return new PersistentHashMap<>(remove(root, key, hash(key), 0), size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(root, (BiConsumer<Object, Object>) action);
+    }
+
+    private static Object put(Object node, Entry entry, int shift) {
+        if (node == null) {
+            return entry;
+        }
+        if (node instanceof Entry) {
+            Entry existing = (Entry) node;
+            if (existing.hash == entry.hash && existing.key.equals(entry.key)) {
+                return existing.value == entry.value ? existing : entry;
+            }
+            return combine(existing, entry, shift);
+        }
+        if (node instanceof CollisionNode) {
+            CollisionNode collisionNode = (CollisionNode) node;
+            if (collisionNode.hash == entry.hash) {
+                return collisionNode.put(entry);
+            }
+            return put(new BitmapNode(bit(collisionNode.hash, shift), new Object[]{collisionNode}), entry, shift);
+        }
+        BitmapNode bitmapNode = (BitmapNode) node;
+        int bit = bit(entry.hash, shift);
+        int index = bitmapNode.index(bit);
+        if ((bitmapNode.bitmap & bit) == 0) {
+            Object[] children = new Object[bitmapNode.children.length + 1];
+            System.arraycopy(bitmapNode.children, 0, children, 0, index);
+            children[index] = entry;
+            System.arraycopy(bitmapNode.children, index, children, index + 1, bitmapNode.children.length - index);
+            return new BitmapNode(bitmapNode.bitmap | bit, children);
+        }
+        Object child = bitmapNode.children[index];
+        Object updated = put(child, entry, shift + BITS);
+        return updated == child ? bitmapNode : bitmapNode.with(index, updated);
+    }
+
+    private static Object combine(Entry first, Entry second, int shift) {
+        if (first.hash == second.hash) {
+            return new CollisionNode(first.hash, new Entry[]{first, second});
+        }
+        int firstBit = bit(first.hash, shift);
+        int secondBit = bit(second.hash, shift);
+        if (firstBit == secondBit) {
+            return new BitmapNode(firstBit, new Object[]{combine(first, second, shift + BITS)});
+        }
+        Object[] children = Integer.compareUnsigned(firstBit, secondBit) < 0
+                ? new Object[]{first, second}
+                : new Object[]{second, first};
+        return new BitmapNode(firstBit | secondBit, children);
+    }
+
+    /**
+     * Removes a key known to be present. Returns null when nothing is left, and pulls single entries up so that
+     * lookups stay short after removals.
+     */
+    private static Object remove(Object node, Object key, int hash, int shift) {
+        if (node instanceof Entry) {
+            return null;
+        }
+        if (node instanceof CollisionNode) {
+            return ((CollisionNode) node).remove(key);
+        }
+        BitmapNode bitmapNode = (BitmapNode) node;
+        int bit = bit(hash, shift);
+        int index = bitmapNode.index(bit);
+        Object updated = remove(bitmapNode.children[index], key, hash, shift + BITS);
+        if (updated != null) {
+            if (updated instanceof Entry && bitmapNode.children.length == 1) {
+                return updated;
+            }
+            return bitmapNode.with(index, updated);
+        }
+        if (bitmapNode.children.length == 1) {
+            return null;
+        }
+        Object[] children = new Object[bitmapNode.children.length - 1];
+        System.arraycopy(bitmapNode.children, 0, children, 0, index);
+        System.arraycopy(bitmapNode.children, index + 1, children, index, children.length - index);
+        if (children.length == 1 && children[0] instanceof Entry) {
+            return children[0];
+        }
+        return new BitmapNode(bitmapNode.bitmap & ~bit, children);
+    }
+
+    private static void forEach(Object node, BiConsumer<Object, Object> action) {
+        if (node == null) {
+            return;
+        }
+        if (node instanceof Entry) {
+            Entry entry = (Entry) node;
+            action.accept(entry.key, entry.value);
+        } else if (node instanceof CollisionNode) {
+            for (Entry entry : ((CollisionNode) node).entries) {
+                action.accept(entry.key, entry.value);
+            }
+        } else {
+            for (Object child : ((BitmapNode) node).children) {
+                forEach(child, action);
+            }
+        }
+    }
+
+    /**
+     * Builds the trie of all entries at once: they are partitioned level by level on their hash bits, so every
+     * node is allocated once instead of being copied by each put.
+     */
+    private static Object build(Entry[] entries, Entry[] scratch, int from, int to, int shift, int[] size) {
+        if (to - from == 1) {
+            size[0]++;
+            return entries[from];
+        }
+        boolean sameHash = true;
+        for (int i = from + 1; i < to && sameHash; i++) {
+            sameHash = entries[i].hash == entries[from].hash;
+        }
+        if (sameHash) {
+            Object node = entries[from];
+            for (int i = from + 1; i < to; i++) {
+                node = put(node, entries[i], shift);
+            }
+            size[0] += node instanceof Entry ? 1 : ((CollisionNode) node).entries.length;
+            return node;
+        }
+        int[] starts = new int[MASK + 2];
+        for (int i = from; i < to; i++) {
+            starts[((entries[i].hash >>> shift) & MASK) + 1]++;
+        }
+        int bitmap = 0;
+        int childCount = 0;
+        for (int index = 0; index <= MASK; index++) {
+            if (starts[index + 1] > 0) {
+                bitmap |= 1 << index;
+                childCount++;
+            }
+            starts[index + 1] += starts[index];
+        }
+        int[] next = Arrays.copyOf(starts, MASK + 1);
+        for (int i = from; i < to; i++) {
+            scratch[from + next[(entries[i].hash >>> shift) & MASK]++] = entries[i];
+        }
+        System.arraycopy(scratch, from, entries, from, to - from);
+        Object[] children = new Object[childCount];
+        int child = 0;
+        for (int index = 0; index <= MASK; index++) {
+            if (starts[index + 1] > starts[index]) {
+                children[child++] = build(entries, scratch, from + starts[index], from + starts[index + 1],
+                        shift + BITS, size);
+            }
+        }
+        return new BitmapNode(bitmap, children);
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Collects entries to build a map in one pass; a later entry replaces an earlier one with an equal key.
+     */
+    static final class Builder<K, V> {
+        private final List<Entry> entries = new ArrayList<>();
+
+        Builder<K, V> put(K key, V value) {
+            entries.add(new Entry(hash(key), key, value));
+            return this;
+        }
+
+        PersistentHashMap<K, V> build() {
+            if (entries.isEmpty()) {
+                return empty();
+            }
+            Entry[] array = entries.toArray(new Entry[0]);
+            int[] size = {0};
+            Object root = PersistentHashMap.build(array, new Entry[array.length], 0, array.length, 0, size);
+            return new PersistentHashMap<>(root, size[0]);
+        }
+    }
+
+    private static final class Entry {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Entry(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class BitmapNode {
+        final int bitmap;
+        final Object[] children;
+
+        BitmapNode(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        BitmapNode with(int index, Object child) {
+            Object[] copy = children.clone();
+            copy[index] = child;
+            return new BitmapNode(bitmap, copy);
+        }
+    }
+
+    /**
+     * Entries whose keys have the same hash.
+     */
+    private static final class CollisionNode {
+        final int hash;
+        final Entry[] entries;
+
+        CollisionNode(int hash, Entry[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        Object get(Object key) {
+            for (Entry entry : entries) {
+                if (entry.key.equals(key)) {
+                    return entry.value;
+                }
+            }
+            return null;
+        }
+
+        CollisionNode put(Entry entry) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i].key.equals(entry.key)) {
+                    Entry[] copy = entries.clone();
+                    copy[i] = entry;
+                    return new CollisionNode(hash, copy);
+                }
+            }
+            Entry[] copy = Arrays.copyOf(entries, entries.length + 1);
+            copy[entries.length] = entry;
+            return new CollisionNode(hash, copy);
+        }
+
+        Object remove(Object key) {
+            if (entries.length == 2) {
+                return entries[0].key.equals(key) ? entries[1] : entries[0];
+            }
+            Entry[] copy = new Entry[entries.length - 1];
+            int index = 0;
+            for (Entry entry : entries) {
+                if (!entry.key.equals(key)) {
+                    copy[index++] = entry;
+                }
+            }
+            return new CollisionNode(hash, copy);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.whiteboard.widgets.repository;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Persistent sorted set of non-negative longs: a B+ tree whose leaves are sorted {@code long[]} of at most
+ * {@link #MAX_LEAF} elements. An element takes about ten bytes, where a {@link PersistentHashMap} entry of boxed
+ * values takes fifty.
+ *
+ * <p>Adding or removing an element copies its leaf and the branches above it, O(log n) arrays of at most a few
+ * hundred bytes. Leaves left less than a quarter full by removals are merged with a neighbour when both fit in one.
+ */
+final class PersistentLongSet {
+    static final PersistentLongSet EMPTY = new PersistentLongSet(null, 0);
+
+    private static final int MAX_LEAF = 32;
+    private static final int MAX_CHILDREN = 32;
+
+    /**
+     * Leaf {@code long[]} or {@link Branch}, null if the set is empty.
+     */
+    private final Object root;
+    private final int size;
+
+    private PersistentLongSet(Object root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Set of the values, built level by level from full leaves. Sorts the array.
+     */
+    static PersistentLongSet of(long[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (count == 0 || values[i] != values[count - 1]) {
+                values[count++] = checked(values[i]);
+            }
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+        Object[] level = new Object[(count + MAX_LEAF - 1) / MAX_LEAF];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = Arrays.copyOfRange(values, i * MAX_LEAF, Math.min(count, (i + 1) * MAX_LEAF));
+        }
+        while (level.length > 1) {
+            Object[] parents = new Object[(level.length + MAX_CHILDREN - 1) / MAX_CHILDREN];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = Branch.of(Arrays.copyOfRange(level, i * MAX_CHILDREN,
+                        Math.min(level.length, (i + 1) * MAX_CHILDREN)));
+            }
+            level = parents;
+        }
+        return new PersistentLongSet(level[0], count);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean contains(long value) {
+        return ceiling(value) == value;
+    }
+
+    /**
+     * Smallest element greater than or equal to the value, -1 if there is none.
+     */
+    long ceiling(long value) {
+        return ceiling(root, value);
+    }
+
+    PersistentLongSet add(long value) {
+        checked(value);
+        if (root == null) {
+            return new PersistentLongSet(new long[]{value}, 1);
+        }
+        Object added = add(root, value);
+        if (added == root) {
+            return this;
+        }
+        if (added instanceof Object[]) {
+            added = Branch.of((Object[]) added);
+        }
+        return new PersistentLongSet(added, size + 1);
+    }
+
+    PersistentLongSet remove(long value) {
+        if (root == null) {
+            return this;
+        }
+        Object removed = remove(root, value);
+        if (removed == root) {
+            return this;
+        }
+        while (removed instanceof Branch && ((Branch) removed).children.length == 1) {
+            removed = ((Branch) removed).children[0];
+        }
+        return new PersistentLongSet(removed, size - 1);
+    }
+
+    void forEach(LongConsumer action) {
+        forEach(root, action);
+    }
+
+    private static long checked(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative element " + value);
+        }
+        return value;
+    }
+
+    private static long ceiling(Object node, long value) {
+        if (node == null) {
+            return -1;
+        }
+        if (node instanceof long[]) {
+            long[] leaf = (long[]) node;
+            int index = Arrays.binarySearch(leaf, value);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < leaf.length ? leaf[index] : -1;
+        }
+        Branch branch = (Branch) node;
+        for (int index = branch.indexOf(value); index < branch.children.length; index++) {
+            long found = ceiling(branch.children[index], value);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Node with the value added: the node itself if it already holds the value, a pair of nodes in an
+     * {@code Object[]} if it had to be split.
+     */
+    private static Object add(Object node, long value) {
+        if (node instanceof long[]) {
+            long[] leaf = (long[]) node;
+            int index = Arrays.binarySearch(leaf, value);
+            if (index >= 0) {
+                return leaf;
+            }
+            index = -index - 1;
+            long[] added = new long[leaf.length + 1];
+            System.arraycopy(leaf, 0, added, 0, index);
+            added[index] = value;
+            System.arraycopy(leaf, index, added, index + 1, leaf.length - index);
+            if (added.length <= MAX_LEAF) {
+                return added;
+            }
+            return new Object[]{Arrays.copyOfRange(added, 0, added.length / 2),
+                    Arrays.copyOfRange(added, added.length / 2, added.length)};
+        }
+        Branch branch = (Branch) node;
+        int index = branch.indexOf(value);
+        Object child = add(branch.children[index], value);
+        if (child == branch.children[index]) {
+            return branch;
+        }
+        if (!(child instanceof Object[])) {
+            return branch.with(index, child);
+        }
+        Object[] halves = (Object[]) child;
+        Object[] children = new Object[branch.children.length + 1];
+        System.arraycopy(branch.children, 0, children, 0, index);
+        children[index] = halves[0];
+        children[index + 1] = halves[1];
+        System.arraycopy(branch.children, index + 1, children, index + 2, branch.children.length - index - 1);
+        if (children.length <= MAX_CHILDREN) {
+            return Branch.of(children);
+        }
+        return new Object[]{Branch.of(Arrays.copyOfRange(children, 0, children.length / 2)),
+                Branch.of(Arrays.copyOfRange(children, children.length / 2, children.length))};
+    }
+
+    /**
+     * Node without the value: the node itself if it does not hold the value, null if nothing is left.
+     */
+    private static Object remove(Object node, long value) {
+        if (node instanceof long[]) {
+            long[] leaf = (long[]) node;
+            int index = Arrays.binarySearch(leaf, value);
+            if (index < 0) {
+                return leaf;
+            }
+            if (leaf.length == 1) {
+                return null;
+            }
+            long[] removed = new long[leaf.length - 1];
+            System.arraycopy(leaf, 0, removed, 0, index);
+            System.arraycopy(leaf, index + 1, removed, index, removed.length - index);
+            return removed;
+        }
+        Branch branch = (Branch) node;
+        int index = branch.indexOf(value);
+        Object child = remove(branch.children[index], value);
+        if (child == branch.children[index]) {
+            return branch;
+        }
+        if (child == null) {
+            if (branch.children.length == 1) {
+                return null;
+            }
+            Object[] children = new Object[branch.children.length - 1];
+            System.arraycopy(branch.children, 0, children, 0, index);
+            System.arraycopy(branch.children, index + 1, children, index, children.length - index);
+            return Branch.of(children);
+        }
+        if (width(child) < maxWidth(child) / 4 && branch.children.length > 1) {
+            int neighbour = index == 0 ? 1 : index - 1;
+            if (width(child) + width(branch.children[neighbour]) <= maxWidth(child)) {
+                int first = Math.min(index, neighbour);
+                Object[] children = new Object[branch.children.length - 1];
+                System.arraycopy(branch.children, 0, children, 0, first);
+                children[first] = index < neighbour
+                        ? concat(child, branch.children[neighbour])
+                        : concat(branch.children[neighbour], child);
+                System.arraycopy(branch.children, first + 2, children, first + 1, children.length - first - 1);
+                return Branch.of(children);
+            }
+        }
+        return branch.with(index, child);
+    }
+
+    private static int width(Object node) {
+        return node instanceof long[] ? ((long[]) node).length : ((Branch) node).children.length;
+    }
+
+    private static int maxWidth(Object node) {
+        return node instanceof long[] ? MAX_LEAF : MAX_CHILDREN;
+    }
+
+    /**
+     * Node holding the elements of two nodes of the same height, all those of {@code low} being lower.
+     */
+    private static Object concat(Object low, Object high) {
+        if (low instanceof long[]) {
+            long[] lowLeaf = (long[]) low;
+            long[] highLeaf = (long[]) high;
+            long[] leaf = Arrays.copyOf(lowLeaf, lowLeaf.length + highLeaf.length);
+            System.arraycopy(highLeaf, 0, leaf, lowLeaf.length, highLeaf.length);
+            return leaf;
+        }
+        Object[] lowChildren = ((Branch) low).children;
+        Object[] highChildren = ((Branch) high).children;
+        Object[] children = Arrays.copyOf(lowChildren, lowChildren.length + highChildren.length);
+        System.arraycopy(highChildren, 0, children, lowChildren.length, highChildren.length);
+        return Branch.of(children);
+    }
+
+    private static long first(Object node) {
+        return node instanceof long[] ? ((long[]) node)[0] : ((Branch) node).firsts[0];
+    }
+
+    private static void forEach(Object node, LongConsumer action) {
+        if (node == null) {
+            return;
+        }
+        if (node instanceof long[]) {
+            for (long value : (long[]) node) {
+                action.accept(value);
+            }
+            return;
+        }
+        for (Object child : ((Branch) node).children) {
+            forEach(child, action);
+        }
+    }
+
+    private static final class Branch {
+        /**
+         * Smallest element of each child.
+         */
+        final long[] firsts;
+        final Object[] children;
+
+        private Branch(long[] firsts, Object[] children) {
+            this.firsts = firsts;
+            this.children = children;
+        }
+
+        static Branch of(Object[] children) {
+            long[] firsts = new long[children.length];
+            for (int i = 0; i < children.length; i++) {
+                firsts[i] = first(children[i]);
+            }
+            return new Branch(firsts, children);
+        }
+
+        /**
+         * Child which holds the value if any does: the last one starting at or below it, or the first one.
+         */
+        int indexOf(long value) {
+            int index = Arrays.binarySearch(firsts, value);
+            return index >= 0 ? index : Math.max(0, -index - 2);
+        }
+
+        Branch with(int index, Object child) {
+            Object[] children = this.children.clone();
+            children[index] = child;
+            long[] firsts = this.firsts;
+            if (firsts[index] != first(child)) {
+                firsts = firsts.clone();
+                firsts[index] = first(child);
+            }
+            return new Branch(firsts, children);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.whiteboard.widgets.repository;
+
+import com.whiteboard.widgets.model.Widget;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+/**
+ * Board written in z order: a header with the version and the widget count, the widgets, and a checksum of
+ * everything before it. The file is written aside and moved in place once complete, so a snapshot is either whole
+ * or missing; the checksum catches later damage. A snapshot too large to be mapped back is never moved in place, so
+ * that it cannot replace a readable one.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x57534e50;
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private SnapshotFile() {
+    }
+
+    static void write(Path file, WidgetBoard board) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C checksum = new CRC32C();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putLong(board.version()).putInt(board.size());
+            Iterator<Widget> widgets = board.stream().iterator();
+            while (widgets.hasNext()) {
+                Widget widget = widgets.next();
+                int size = ChangeCodec.size(widget);
+                if (buffer.remaining() < size) {
+                    flush(channel, buffer, checksum);
+                    if (buffer.capacity() < size) {
+                        buffer = ByteBuffer.allocate(size);
+                    }
+                }
+                ChangeCodec.write(buffer, widget);
+            }
+            flush(channel, buffer, checksum);
+            buffer.putInt((int) checksum.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot of version " + board.version() + " takes " + channel.size()
+                        + " bytes, more than can be read back");
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        // the rename is only durable once the directory is
+        try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    /**
+     * Board read from the file and laid out as {@code storage}, or empty if the file is damaged.
+     */
+    static Optional<WidgetBoard> read(Path file, WidgetStorage storage) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + Integer.BYTES || size > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C checksum = new CRC32C();
+            checksum.update(buffer.duplicate().limit((int) size - Integer.BYTES));
+            if (buffer.getInt((int) size - Integer.BYTES) != (int) checksum.getValue() || buffer.getInt() != MAGIC) {
+                return Optional.empty();
+            }
+            long version = buffer.getLong();
+            int count = buffer.getInt();
+            List<Widget> widgets = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                widgets.add(ChangeCodec.readWidget(buffer));
+            }
+            return Optional.of(WidgetBoard.of(widgets, version, storage));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer, CRC32C checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
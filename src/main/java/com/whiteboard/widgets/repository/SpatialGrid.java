@@ -0,0 +1,218 @@
+package com.whiteboard.widgets.repository;
+
+import com.whiteboard.widgets.model.Widget;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over the board plane mapping each cell to the {@link WidgetStore} slots of the widgets overlapping it.
+ *
+ * <p>A widget covers the closed rectangle {@code [x, x + width] × [y, y + height]}; widgets without coordinates
+ * are not indexed. Widgets spanning more than {@link #MAX_CELLS_PER_WIDGET} cells are kept aside and returned as
+ * candidates of every query, so a few huge widgets cannot blow up the grid.
+ *
+ * <p>The grid is immutable; cells are a persistent map, and their slots {@link PersistentLongSet}s, a few bytes per
+ * slot.
+ */
+final class SpatialGrid {
+    static final SpatialGrid EMPTY = new SpatialGrid(PersistentHashMap.empty(), PersistentLongSet.EMPTY);
+
+    private static final int CELL_SIZE = 256;
+    private static final int MAX_CELLS_PER_WIDGET = 64;
+    private static final long KEY_MIX = 0x9e3779b9L;
+
+    private final PersistentHashMap<Long, PersistentLongSet> slotsByCell;
+    private final PersistentLongSet oversized;
+
+    private SpatialGrid(PersistentHashMap<Long, PersistentLongSet> slotsByCell, PersistentLongSet oversized) {
+        this.slotsByCell = slotsByCell;
+        this.oversized = oversized;
+    }
+
+    /**
+     * Grid of the widgets, the widget at index i being in slot i, with the slots of each cell gathered first so that
+     * every slot set is built once.
+     */
+    static SpatialGrid of(List<Widget> widgets) {
+        Map<Long, Slots> slotsByCell = new HashMap<>();
+        Slots oversized = new Slots();
+        for (int slot = 0; slot < widgets.size(); slot++) {
+            Widget widget = widgets.get(slot);
+            if (widget.getCoordinates() == null) {
+                continue;
+            }
+            if (cellCount(widget) > MAX_CELLS_PER_WIDGET) {
+                oversized.add(slot);
+                continue;
+            }
+            for (long cell : cells(widget)) {
+                slotsByCell.computeIfAbsent(cell, any -> new Slots()).add(slot);
+            }
+        }
+        PersistentHashMap.Builder<Long, PersistentLongSet> cells = new PersistentHashMap.Builder<>();
+        slotsByCell.forEach((cell, slots) -> cells.put(cell, slots.build()));
+        return new SpatialGrid(cells.build(), oversized.build());
+    }
+
+    SpatialGrid add(int slot, Widget widget) {
+        if (widget.getCoordinates() == null) {
+            return this;
+        }
+        if (cellCount(widget) > MAX_CELLS_PER_WIDGET) {
+            return new SpatialGrid(slotsByCell, oversized.add(slot));
+        }
+        PersistentHashMap<Long, PersistentLongSet> cells = slotsByCell;
+        for (long cell : cells(widget)) {
+            PersistentLongSet slots = cells.get(cell);
+            cells = cells.put(cell, (slots == null ? PersistentLongSet.EMPTY : slots).add(slot));
+        }
+        return new SpatialGrid(cells, oversized);
+    }
+
+    /**
+     * Grid with the widget moved or resized, unchanged if it still covers the same cells.
+     */
+    SpatialGrid move(int slot, Widget from, Widget to) {
+        if (isIndexedByCell(from) && isIndexedByCell(to) && Arrays.equals(cells(from), cells(to))) {
+            return this;
+        }
+        return remove(slot, from).add(slot, to);
+    }
+
+    private static boolean isIndexedByCell(Widget widget) {
+        return widget.getCoordinates() != null && cellCount(widget) <= MAX_CELLS_PER_WIDGET;
+    }
+
+    SpatialGrid remove(int slot, Widget widget) {
+        if (widget.getCoordinates() == null) {
+            return this;
+        }
+        if (cellCount(widget) > MAX_CELLS_PER_WIDGET) {
+            return new SpatialGrid(slotsByCell, oversized.remove(slot));
+        }
+        PersistentHashMap<Long, PersistentLongSet> cells = slotsByCell;
+        for (long cell : cells(widget)) {
+            PersistentLongSet slots = cells.get(cell).remove(slot);
+            cells = slots.isEmpty() ? cells.remove(cell) : cells.put(cell, slots);
+        }
+        return new SpatialGrid(cells, oversized);
+    }
+
+    /**
+     * Slots of the widgets which may overlap the area, each reported once. Visits the cells of the area, or the
+     * occupied cells if there are fewer of them.
+     */
+    int[] candidates(int x1, int y1, int x2, int y2) {
+        Slots candidates = new Slots();
+        oversized.forEach(candidates::add);
+        long fromX = cell(x1);
+        long toX = cell(x2);
+        long fromY = cell(y1);
+        long toY = cell(y2);
+        if ((toX - fromX + 1) * (toY - fromY + 1) > slotsByCell.size()) {
+            slotsByCell.forEach((cell, slots) -> {
+                long cellX = cellX(cell);
+                long cellY = cellY(cell);
+                if (cellX >= fromX && cellX <= toX && cellY >= fromY && cellY <= toY) {
+                    slots.forEach(candidates::add);
+                }
+            });
+        } else {
+            for (long cellX = fromX; cellX <= toX; cellX++) {
+                for (long cellY = fromY; cellY <= toY; cellY++) {
+                    PersistentLongSet slots = slotsByCell.get(key(cellX, cellY));
+                    if (slots != null) {
+                        slots.forEach(candidates::add);
+                    }
+                }
+            }
+        }
+        return candidates.distinct();
+    }
+
+    static boolean intersects(Widget widget, int x1, int y1, int x2, int y2) {
+        if (widget.getCoordinates() == null) {
+            return false;
+        }
+        long x = widget.getCoordinates().getX();
+        long y = widget.getCoordinates().getY();
+        return x <= x2 && x + widget.getWidth() >= x1 && y <= y2 && y + widget.getHeight() >= y1;
+    }
+
+    private static long[] cells(Widget widget) {
+        long x = widget.getCoordinates().getX();
+        long y = widget.getCoordinates().getY();
+        long[] cells = new long[(int) cellCount(widget)];
+        int index = 0;
+        for (long cellX = cell(x); cellX <= cell(x + widget.getWidth()); cellX++) {
+            for (long cellY = cell(y); cellY <= cell(y + widget.getHeight()); cellY++) {
+                cells[index++] = key(cellX, cellY);
+            }
+        }
+        return cells;
+    }
+
+    private static long cellCount(Widget widget) {
+        long x = widget.getCoordinates().getX();
+        long y = widget.getCoordinates().getY();
+        return Math.max(0, cell(x + widget.getWidth()) - cell(x) + 1)
+                * Math.max(0, cell(y + widget.getHeight()) - cell(y) + 1);
+    }
+
+    private static long cell(long coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+
+    /**
+     * Packs the cell coordinates, scrambling the low half with the high one: {@link Long#hashCode()} folds the
+     * halves together, so plain packing would give nearby cells only a few hundred distinct hashes.
+     */
+    private static long key(long cellX, long cellY) {
+        return cellX << 32 | ((cellY ^ cellX * KEY_MIX) & 0xffffffffL);
+    }
+
+    private static long cellX(long key) {
+        return key >> 32;
+    }
+
+    private static long cellY(long key) {
+        return (int) (key ^ cellX(key) * KEY_MIX);
+    }
+
+    /**
+     * Growable array of slots.
+     */
+    private static final class Slots {
+        private long[] slots = new long[8];
+        private int size;
+
+        void add(long slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        PersistentLongSet build() {
+            return PersistentLongSet.of(Arrays.copyOf(slots, size));
+        }
+
+        /**
+         * The slots in increasing order, without duplicates.
+         */
+        int[] distinct() {
+            Arrays.sort(slots, 0, size);
+            int[] distinct = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (count == 0 || distinct[count - 1] != slots[i]) {
+                    distinct[count++] = (int) slots[i];
+                }
+            }
+            return Arrays.copyOf(distinct, count);
+        }
+    }
+}
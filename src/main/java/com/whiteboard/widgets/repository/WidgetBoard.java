@@ -0,0 +1,304 @@
+package com.whiteboard.widgets.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.BoundingBox;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable snapshot of the widgets of the board, indexed by id and by z-index.
+ *
+ * <p>Widgets are addressed by their slot in the {@link WidgetStore} of the {@link ZOrderTree}. The id index is a
+ * {@link PersistentLongSet} of the hash of each id next to the slot of its widget: ids are compared with the stored
+ * widgets themselves, so the index holds no key objects and costs about ten bytes per widget.
+ *
+ * <p>Storing a widget at an occupied z-index moves the widgets above it one step up, as far as the first free
+ * z-index. The shift is applied lazily by {@link ZOrderTree}, so it costs O(log n) however many widgets move.
+ *
+ * <p>Area queries go through a {@link SpatialGrid}, which only depends on positions and is therefore untouched by
+ * z-index shifts.
+ *
+ * <p>Every index is a persistent structure: updates return a new board sharing most of its data with the
+ * previous one, which stays valid, so a board can be read from any thread without locking.
+ *
+ * <p>The widgets themselves are laid out according to a {@link WidgetStorage}.
+ *
+ * <p>The version is a label for the owner of the board to tell snapshots apart; updates keep it unchanged.
+ */
+public final class WidgetBoard {
+    public static final WidgetBoard EMPTY = empty(WidgetStorage.OBJECTS);
+
+    private static final int HASH_MIX = 0x9e3779b9;
+
+    /**
+     * Id hashes in the high half, slots in the low half.
+     */
+    private final PersistentLongSet slotsById;
+    private final ZOrderTree widgetsByZIndex;
+    private final SpatialGrid spatialGrid;
+    private final long version;
+
+    private WidgetBoard(PersistentLongSet slotsById, ZOrderTree widgetsByZIndex, SpatialGrid spatialGrid,
+                        long version) {
+        this.slotsById = slotsById;
+        this.widgetsByZIndex = widgetsByZIndex;
+        this.spatialGrid = spatialGrid;
+        this.version = version;
+    }
+
+    public static WidgetBoard empty(WidgetStorage storage) {
+        return new WidgetBoard(PersistentLongSet.EMPTY, ZOrderTree.empty(storage), SpatialGrid.EMPTY, 0);
+    }
+
+    public static WidgetBoard of(List<Widget> widgets, long version) {
+        return of(widgets, version, WidgetStorage.OBJECTS);
+    }
+
+    /**
+     * Board holding widgets with distinct ids given in increasing z order, built without any shifting.
+     */
+    public static WidgetBoard of(List<Widget> widgets, long version, WidgetStorage storage) {
+        long[] entries = new long[widgets.size()];
+        for (int slot = 0; slot < entries.length; slot++) {
+            entries[slot] = idEntry(widgets.get(slot).getId(), slot);
+        }
+        Arrays.sort(entries);
+        for (int from = 0, to; from < entries.length; from = to) {
+            for (to = from + 1; to < entries.length && hash(entries[to]) == hash(entries[from]); to++) {
+                for (int other = from; other < to; other++) {
+                    if (widgets.get(slot(entries[to])).getId().equals(widgets.get(slot(entries[other])).getId())) {
+                        throw new IllegalArgumentException("Duplicate widget ids");
+                    }
+                }
+            }
+        }
+        return new WidgetBoard(PersistentLongSet.of(entries), ZOrderTree.of(widgets, storage),
+                SpatialGrid.of(widgets), version);
+    }
+
+    public Optional<Widget> get(String id) {
+        int slot = slotOf(id);
+        return slot < 0 ? Optional.empty() : Optional.of(widgetsByZIndex.get(slot));
+    }
+
+    public List<Widget> list() {
+        ImmutableList.Builder<Widget> widgets = ImmutableList.builderWithExpectedSize(widgetsByZIndex.size());
+        widgetsByZIndex.forEach(widgets::add);
+        return widgets.build();
+    }
+
+    /**
+     * Widgets in z order, read lazily from this board.
+     */
+    public Stream<Widget> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(widgetsByZIndex.iterator(), widgetsByZIndex.size(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * At most {@code limit} widgets from z-index {@code fromZ} upwards, in z order.
+     */
+    public List<Widget> listFrom(int fromZ, int limit) {
+        if (limit <= 0) {
+            return ImmutableList.of();
+        }
+        ImmutableList.Builder<Widget> widgets = ImmutableList.builderWithExpectedSize(Math.min(limit, size()));
+        int[] remaining = {limit};
+        widgetsByZIndex.forEachFrom(fromZ, widget -> {
+            widgets.add(widget);
+            return --remaining[0] > 0;
+        });
+        return widgets.build();
+    }
+
+    /**
+     * Widgets with z-indexes from {@code fromZ} to {@code toZ}, bounds included, in z order.
+     */
+    public List<Widget> listBetween(int fromZ, int toZ) {
+        ImmutableList.Builder<Widget> widgets = ImmutableList.builder();
+        widgetsByZIndex.forEachFrom(fromZ, widget -> {
+            if (widget.getZ() > toZ) {
+                return false;
+            }
+            widgets.add(widget);
+            return true;
+        });
+        return widgets.build();
+    }
+
+    /**
+     * Widgets overlapping the area between the two corners, in z order.
+     */
+    public List<Widget> findIntersecting(int x1, int y1, int x2, int y2) {
+        int minX = Math.min(x1, x2);
+        int minY = Math.min(y1, y2);
+        int maxX = Math.max(x1, x2);
+        int maxY = Math.max(y1, y2);
+        return candidates(minX, minY, maxX, maxY)
+                .filter(widget -> SpatialGrid.intersects(widget, minX, minY, maxX, maxY))
+                .sorted(Comparator.comparingInt(Widget::getZ))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Widget with the highest z-index covering the point.
+     */
+    public Optional<Widget> findTopmostAt(int x, int y) {
+        return candidates(x, y, x, y)
+                .filter(widget -> SpatialGrid.intersects(widget, x, y, x, y))
+                .max(Comparator.comparingInt(Widget::getZ));
+    }
+
+    private Stream<Widget> candidates(int x1, int y1, int x2, int y2) {
+        return Arrays.stream(spatialGrid.candidates(x1, y1, x2, y2))
+                .mapToObj(widgetsByZIndex::get);
+    }
+
+    public int size() {
+        return widgetsByZIndex.size();
+    }
+
+    public boolean isEmpty() {
+        return widgetsByZIndex.isEmpty();
+    }
+
+    /**
+     * Lowest z-index on the board, which must not be empty.
+     */
+    public int firstZ() {
+        return widgetsByZIndex.firstZ();
+    }
+
+    /**
+     * Highest z-index on the board, which must not be empty.
+     */
+    public int lastZ() {
+        return widgetsByZIndex.lastZ();
+    }
+
+    /**
+     * Rectangle covering every widget with coordinates, kept up to date by every update.
+     */
+    public Optional<BoundingBox> bounds() {
+        return Optional.ofNullable(widgetsByZIndex.bounds());
+    }
+
+    /**
+     * Number of widgets at z-indexes {@code z}, {@code z + 1}, ... without a gap: those inserting a widget at
+     * {@code z} moves one step up.
+     */
+    public int contiguousFrom(int z) {
+        return widgetsByZIndex.contiguousFrom(z);
+    }
+
+    public WidgetStorage storage() {
+        return widgetsByZIndex.storage();
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public WidgetBoard withVersion(long version) {
+        return new WidgetBoard(slotsById, widgetsByZIndex, spatialGrid, version);
+    }
+
+    /**
+     * Board with a widget whose id is not on this board yet.
+     */
+    public WidgetBoard insert(Widget widget) {
+        int slot = widgetsByZIndex.vacantSlot();
+        return new WidgetBoard(slotsById.add(idEntry(widget.getId(), slot)), widgetsByZIndex.insert(widget),
+                spatialGrid.add(slot, widget), version);
+    }
+
+    /**
+     * Board with a widget instead of the widget with the same id and z-index, which must be on this board. Neither
+     * the id index nor the z order change, and the grid only if the widget covers other cells.
+     */
+    public WidgetBoard replace(Widget widget) {
+        int slot = slotOf(widget.getId());
+        if (slot < 0) {
+            throw new IllegalArgumentException("No widget " + widget.getId());
+        }
+        Widget replaced = widgetsByZIndex.get(slot);
+        if (replaced.getZ() != widget.getZ()) {
+            throw new IllegalArgumentException("Widget " + widget.getId() + " moved from z-index " + replaced.getZ()
+                    + " to " + widget.getZ());
+        }
+        return new WidgetBoard(slotsById, widgetsByZIndex.replace(slot, widget),
+                spatialGrid.move(slot, replaced, widget), version);
+    }
+
+    /**
+     * Board without the widget, or this board if there is no widget with the id.
+     */
+    public WidgetBoard remove(String id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return this;
+        }
+        Widget removed = widgetsByZIndex.get(slot);
+        return new WidgetBoard(slotsById.remove(idEntry(id, slot)), widgetsByZIndex.remove(slot),
+                spatialGrid.remove(slot, removed), version);
+    }
+
+    /**
+     * Board with a change recorded by the owner of this board applied, labelled with its sequence: replaying the
+     * changes following a board in order rebuilds the boards published after it. A shift is made by the insertion
+     * following it, so it only moves the version.
+     */
+    public WidgetBoard apply(WidgetChange change) {
+        WidgetBoard applied = this;
+        switch (change.getType()) {
+            case CREATED:
+            case UPDATED:
+                applied = remove(change.getWidget().getId()).insert(change.getWidget());
+                break;
+            case DELETED:
+                applied = remove(change.getId());
+                break;
+            case SHIFTED:
+                break;
+        }
+        return applied.withVersion(change.getSequence());
+    }
+
+    /**
+     * Slot of the widget with the id, -1 if there is none. Visits the entries with the hash of the id, usually one.
+     */
+    private int slotOf(String id) {
+        long first = idEntry(id, 0);
+        for (long entry = slotsById.ceiling(first); entry >= 0 && hash(entry) == hash(first);
+             entry = slotsById.ceiling(entry + 1)) {
+            if (widgetsByZIndex.hasId(slot(entry), id)) {
+                return slot(entry);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Entry of the id index: a 31-bit hash of the id, keeping entries non-negative, and the slot.
+     */
+    private static long idEntry(String id, int slot) {
+        return (long) ((id.hashCode() * HASH_MIX) >>> 1) << 32 | slot;
+    }
+
+    private static int hash(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int slot(long entry) {
+        return (int) entry;
+    }
+}
@@ -0,0 +1,250 @@
+package com.whiteboard.widgets.repository;
+
+import com.whiteboard.widgets.model.BoundingBox;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Layout of the chunks of {@link WidgetStore#CHUNK_SIZE} widgets a {@link WidgetBoard} is made of. Chunks are never
+ * modified once built; storing a widget copies its chunk.
+ */
+public enum WidgetStorage {
+    /**
+     * Widget objects as they were stored.
+     */
+    OBJECTS {
+        @Override
+        Object chunkOf(List<Widget> widgets) {
+            return widgets.toArray(new Widget[WidgetStore.CHUNK_SIZE]);
+        }
+
+        @Override
+        Object with(Object chunk, int index, Widget widget) {
+            Widget[] copy = chunk == null ? new Widget[WidgetStore.CHUNK_SIZE] : ((Widget[]) chunk).clone();
+            copy[index] = widget;
+            return copy;
+        }
+
+        @Override
+        Widget get(Object chunk, int index, int z) {
+            Widget widget = ((Widget[]) chunk)[index];
+            return widget.getZ() == z ? widget : widget.toBuilder().z(z).build();
+        }
+
+        @Override
+        boolean hasId(Object chunk, int index, String id) {
+            return ((Widget[]) chunk)[index].getId().equals(id);
+        }
+
+        @Override
+        BoundingBox bounds(Object chunk) {
+            BoundingBox bounds = null;
+            for (Widget widget : (Widget[]) chunk) {
+                if (widget != null) {
+                    bounds = BoundingBox.union(bounds, BoundingBox.of(widget));
+                }
+            }
+            return bounds;
+        }
+    },
+
+    /**
+     * Fields packed into one {@code long[]} per chunk, 48 bytes per widget instead of half a dozen objects, and a
+     * single array to copy when a widget is stored. Widgets are created when read, and their z-index is not stored:
+     * it is kept by {@link ZOrderTree} anyway. Ids written as UUIDs are held as two longs, see {@link CanonicalUuid}.
+     */
+    COLUMNS {
+        @Override
+        Object chunkOf(List<Widget> widgets) {
+            Columns columns = new Columns();
+            for (int index = 0; index < widgets.size(); index++) {
+                columns.set(index, widgets.get(index));
+            }
+            return columns;
+        }
+
+        @Override
+        Object with(Object chunk, int index, Widget widget) {
+            Columns copy = chunk == null ? new Columns() : ((Columns) chunk).copy();
+            copy.set(index, widget);
+            return copy;
+        }
+
+        @Override
+        Widget get(Object chunk, int index, int z) {
+            return ((Columns) chunk).get(index, z);
+        }
+
+        @Override
+        boolean hasId(Object chunk, int index, String id) {
+            return ((Columns) chunk).hasId(index, id);
+        }
+
+        @Override
+        BoundingBox bounds(Object chunk) {
+            return ((Columns) chunk).bounds();
+        }
+    };
+
+    /**
+     * Chunk holding the widgets, at most {@link WidgetStore#CHUNK_SIZE} of them, from index 0.
+     */
+    abstract Object chunkOf(List<Widget> widgets);
+
+    /**
+     * Copy of the chunk, or of an empty chunk if it is null, with the widget at the index; a null widget clears it.
+     */
+    abstract Object with(Object chunk, int index, Widget widget);
+
+    abstract Widget get(Object chunk, int index, int z);
+
+    /**
+     * Whether the widget at the index, which must be occupied, has the id.
+     */
+    abstract boolean hasId(Object chunk, int index, String id);
+
+    /**
+     * Rectangle covering the widgets of the chunk which have coordinates, null if none has.
+     */
+    abstract BoundingBox bounds(Object chunk);
+
+    private static final class Columns {
+        private static final int ID_HIGH = 0;
+        private static final int ID_LOW = 1;
+        /**
+         * x in the high half, y in the low half; likewise for width and height.
+         */
+        private static final int POSITION = 2;
+        private static final int SIZE = 3;
+        /**
+         * Last modification as UTC epoch seconds, and its nanoseconds in the high half of the flags field.
+         */
+        private static final int SECONDS = 4;
+        private static final int FLAGS = 5;
+        private static final int FIELDS = 6;
+
+        private static final long HAS_COORDINATES = 1;
+        private static final long HAS_LAST_MODIFICATION = 2;
+        private static final long HAS_UUID = 4;
+
+        /**
+         * {@link #FIELDS} values per widget.
+         */
+        final long[] fields;
+        /**
+         * Ids not written as UUIDs, null as long as the chunk has none.
+         */
+        String[] ids;
+
+        Columns() {
+            this(new long[WidgetStore.CHUNK_SIZE * FIELDS], null);
+        }
+
+        private Columns(long[] fields, String[] ids) {
+            this.fields = fields;
+            this.ids = ids;
+        }
+
+        Columns copy() {
+            return new Columns(fields.clone(), ids == null ? null : ids.clone());
+        }
+
+        void set(int index, Widget widget) {
+            int at = index * FIELDS;
+            if (ids != null) {
+                ids[index] = null;
+            }
+            if (widget == null) {
+                fields[at + FLAGS] = 0;
+                return;
+            }
+            long flags = 0;
+            if (CanonicalUuid.isCanonical(widget.getId())) {
+                flags |= HAS_UUID;
+                fields[at + ID_HIGH] = CanonicalUuid.high(widget.getId());
+                fields[at + ID_LOW] = CanonicalUuid.low(widget.getId());
+            } else {
+                if (ids == null) {
+                    ids = new String[WidgetStore.CHUNK_SIZE];
+                }
+                ids[index] = widget.getId();
+            }
+            if (widget.getCoordinates() != null) {
+                flags |= HAS_COORDINATES;
+                fields[at + POSITION] = pack(widget.getCoordinates().getX(), widget.getCoordinates().getY());
+            }
+            fields[at + SIZE] = pack(widget.getWidth(), widget.getHeight());
+            if (widget.getLastModification() != null) {
+                flags |= HAS_LAST_MODIFICATION;
+                fields[at + SECONDS] = widget.getLastModification().toEpochSecond(ZoneOffset.UTC);
+                flags |= (long) widget.getLastModification().getNano() << 32;
+            }
+            fields[at + FLAGS] = flags;
+        }
+
+        boolean hasId(int index, String id) {
+            int at = index * FIELDS;
+            if ((fields[at + FLAGS] & HAS_UUID) == 0) {
+                return ids[index].equals(id);
+            }
+            return CanonicalUuid.matches(id, fields[at + ID_HIGH], fields[at + ID_LOW]);
+        }
+
+        BoundingBox bounds() {
+            long minX = Long.MAX_VALUE;
+            long minY = Long.MAX_VALUE;
+            long maxX = Long.MIN_VALUE;
+            long maxY = Long.MIN_VALUE;
+            for (int at = 0; at < fields.length; at += FIELDS) {
+                if ((fields[at + FLAGS] & HAS_COORDINATES) != 0) {
+                    int x = high(fields[at + POSITION]);
+                    int y = low(fields[at + POSITION]);
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, (long) x + high(fields[at + SIZE]));
+                    maxY = Math.max(maxY, (long) y + low(fields[at + SIZE]));
+                }
+            }
+            return minX > maxX ? null : BoundingBox.builder().minX(minX).minY(minY).maxX(maxX).maxY(maxY).build();
+        }
+
+        Widget get(int index, int z) {
+            int at = index * FIELDS;
+            long flags = fields[at + FLAGS];
+            return Widget.builder()
+                    .id((flags & HAS_UUID) == 0
+                            ? ids[index]
+                            : new UUID(fields[at + ID_HIGH], fields[at + ID_LOW]).toString())
+                    .coordinates((flags & HAS_COORDINATES) == 0
+                            ? null
+                            : Coordinates.builder()
+                                    .x(high(fields[at + POSITION]))
+                                    .y(low(fields[at + POSITION]))
+                                    .build())
+                    .z(z)
+                    .width(high(fields[at + SIZE]))
+                    .height(low(fields[at + SIZE]))
+                    .lastModification((flags & HAS_LAST_MODIFICATION) == 0
+                            ? null
+                            : LocalDateTime.ofEpochSecond(fields[at + SECONDS], high(flags), ZoneOffset.UTC))
+                    .build();
+        }
+
+        private static long pack(int high, int low) {
+            return (long) high << 32 | (low & 0xffffffffL);
+        }
+
+        private static int high(long packed) {
+            return (int) (packed >>> 32);
+        }
+
+        private static int low(long packed) {
+            return (int) packed;
+        }
+    }
+}
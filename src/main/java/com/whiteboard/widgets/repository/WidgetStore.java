@@ -0,0 +1,227 @@
+package com.whiteboard.widgets.repository;
+
+import com.whiteboard.widgets.model.BoundingBox;
+import com.whiteboard.widgets.model.Widget;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent array of widgets indexed by slot, laid out according to a {@link WidgetStorage}. Chunks of
+ * {@link #CHUNK_SIZE} slots hang off a trie of the same width, so storing a widget copies one chunk and
+ * O(log32 n) trie nodes.
+ *
+ * <p>Slots of removed widgets are reused first, keeping the array as dense as the board.
+ *
+ * <p>Each slot also holds the {@link ZOrderTree} label of its widget, next to its chunk, so a widget found by slot
+ * is found in the tree without another index.
+ *
+ * <p>Every trie node keeps the bounding box of each of its subtrees, so the box of all widgets is known at any time
+ * and storing a widget recomputes it from O(log32 n) nodes of {@link #CHUNK_SIZE} boxes, plus its chunk.
+ */
+final class WidgetStore {
+    static final int CHUNK_SIZE = 32;
+
+    private static final int BITS = 5;
+    private static final int MASK = CHUNK_SIZE - 1;
+
+    private final WidgetStorage storage;
+    /**
+     * {@link Chunk} when {@link #shift} is 0, array of {@link #CHUNK_SIZE} subtrees otherwise, followed by the array
+     * of their bounding boxes; null if nothing is stored below.
+     */
+    private final Object root;
+    private final int shift;
+    /**
+     * Slots from this one on have never been used.
+     */
+    private final int end;
+    private final FreeSlot free;
+    private final BoundingBox bounds;
+
+    private WidgetStore(WidgetStorage storage, Object root, int shift, int end, FreeSlot free, BoundingBox bounds) {
+        this.storage = storage;
+        this.root = root;
+        this.shift = shift;
+        this.end = end;
+        this.free = free;
+        this.bounds = bounds;
+    }
+
+    static WidgetStore empty(WidgetStorage storage) {
+        return new WidgetStore(storage, null, 0, 0, null, null);
+    }
+
+    /**
+     * Store holding the widgets in slots 0, 1, ... in order, with the labels at the same index, built chunk by chunk.
+     */
+    static WidgetStore of(WidgetStorage storage, List<Widget> widgets, long[] labels) {
+        WidgetStore store = empty(storage);
+        for (int from = 0; from < widgets.size(); from += CHUNK_SIZE) {
+            int to = Math.min(widgets.size(), from + CHUNK_SIZE);
+            store = store.withChunk(from, new Chunk(storage.chunkOf(widgets.subList(from, to)),
+                    Arrays.copyOfRange(labels, from, from + CHUNK_SIZE)));
+        }
+        return new WidgetStore(storage, store.root, store.shift, widgets.size(), null, store.bounds);
+    }
+
+    WidgetStorage storage() {
+        return storage;
+    }
+
+    /**
+     * Rectangle covering the stored widgets which have coordinates, null if none has.
+     */
+    BoundingBox bounds() {
+        return bounds;
+    }
+
+    /**
+     * Slot the next added widget goes to.
+     */
+    int vacantSlot() {
+        return free == null ? end : free.slot;
+    }
+
+    WidgetStore add(Widget widget, long label) {
+        int slot = vacantSlot();
+        Chunk chunk = chunk(slot);
+        long[] labels = chunk == null ? new long[CHUNK_SIZE] : chunk.labels.clone();
+        labels[slot & MASK] = label;
+        WidgetStore stored = withChunk(slot, new Chunk(storage.with(widgets(chunk), slot & MASK, widget), labels));
+        return free == null
+                ? new WidgetStore(storage, stored.root, stored.shift, end + 1, null, stored.bounds)
+                : new WidgetStore(storage, stored.root, stored.shift, end, free.next, stored.bounds);
+    }
+
+    /**
+     * Store with the widget in an occupied slot instead of the widget held there.
+     */
+    WidgetStore set(int slot, Widget widget) {
+        Chunk chunk = chunk(slot);
+        return withChunk(slot, new Chunk(storage.with(chunk.widgets, slot & MASK, widget), chunk.labels));
+    }
+
+    /**
+     * Store with another label for the widget in the slot.
+     */
+    WidgetStore relabel(int slot, long label) {
+        Chunk chunk = chunk(slot);
+        long[] labels = chunk.labels.clone();
+        labels[slot & MASK] = label;
+        return withChunk(slot, new Chunk(chunk.widgets, labels));
+    }
+
+    WidgetStore remove(int slot) {
+        Chunk chunk = chunk(slot);
+        WidgetStore cleared = withChunk(slot, new Chunk(storage.with(chunk.widgets, slot & MASK, null),
+                chunk.labels));
+        return new WidgetStore(storage, cleared.root, cleared.shift, end, new FreeSlot(slot, free), cleared.bounds);
+    }
+
+    /**
+     * Widget in the slot, with the given z-index.
+     */
+    Widget get(int slot, int z) {
+        return storage.get(chunk(slot).widgets, slot & MASK, z);
+    }
+
+    long label(int slot) {
+        return chunk(slot).labels[slot & MASK];
+    }
+
+    /**
+     * Whether the widget in the occupied slot has the id.
+     */
+    boolean hasId(int slot, String id) {
+        return storage.hasId(chunk(slot).widgets, slot & MASK, id);
+    }
+
+    private Chunk chunk(int slot) {
+        if (slot >>> shift >>> BITS != 0) {
+            return null;
+        }
+        Object node = root;
+        for (int level = shift; level > 0 && node != null; level -= BITS) {
+            node = ((Object[]) node)[(slot >>> level) & MASK];
+        }
+        return (Chunk) node;
+    }
+
+    private static Object widgets(Chunk chunk) {
+        return chunk == null ? null : chunk.widgets;
+    }
+
+    private WidgetStore withChunk(int slot, Chunk chunk) {
+        Object grown = root;
+        int grownShift = shift;
+        while (slot >>> grownShift >>> BITS != 0) {
+            Object[] parent = new Object[CHUNK_SIZE + 1];
+            BoundingBox[] childBounds = new BoundingBox[CHUNK_SIZE];
+            parent[0] = grown;
+            childBounds[0] = bounds;
+            parent[CHUNK_SIZE] = childBounds;
+            grown = parent;
+            grownShift += BITS;
+        }
+        Object updated = withChunk(grown, grownShift, slot, chunk);
+        return new WidgetStore(storage, updated, grownShift, end, free, bounds(updated, grownShift));
+    }
+
+    private Object withChunk(Object node, int level, int slot, Chunk chunk) {
+        if (level == 0) {
+            return chunk;
+        }
+        Object[] children;
+        BoundingBox[] childBounds;
+        if (node == null) {
+            children = new Object[CHUNK_SIZE + 1];
+            childBounds = new BoundingBox[CHUNK_SIZE];
+        } else {
+            children = ((Object[]) node).clone();
+            childBounds = ((BoundingBox[]) children[CHUNK_SIZE]).clone();
+        }
+        int index = (slot >>> level) & MASK;
+        children[index] = withChunk(children[index], level - BITS, slot, chunk);
+        childBounds[index] = bounds(children[index], level - BITS);
+        children[CHUNK_SIZE] = childBounds;
+        return children;
+    }
+
+    private BoundingBox bounds(Object node, int level) {
+        if (node == null) {
+            return null;
+        }
+        if (level == 0) {
+            return storage.bounds(((Chunk) node).widgets);
+        }
+        BoundingBox union = null;
+        for (BoundingBox childBounds : (BoundingBox[]) ((Object[]) node)[CHUNK_SIZE]) {
+            union = BoundingBox.union(union, childBounds);
+        }
+        return union;
+    }
+
+    /**
+     * Widgets of {@link #CHUNK_SIZE} slots as laid out by the {@link WidgetStorage}, and their labels.
+     */
+    private static final class Chunk {
+        final Object widgets;
+        final long[] labels;
+
+        Chunk(Object widgets, long[] labels) {
+            this.widgets = widgets;
+            this.labels = labels;
+        }
+    }
+
+    private static final class FreeSlot {
+        final int slot;
+        final FreeSlot next;
+
+        FreeSlot(int slot, FreeSlot next) {
+            this.slot = slot;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package com.whiteboard.widgets.repository;
+
+import com.whiteboard.widgets.model.BoundingBox;
+import com.whiteboard.widgets.model.Widget;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Persistent treap holding widgets in z order.
+ *
+ * <p>Nodes are keyed by an internal label which follows z order but does not change when a widget is shifted,
+ * so a widget can still be found after an insertion below it moved it up. Moving a contiguous run of widgets one
+ * step up is recorded as a pending shift on the root of the run's subtree, which makes inserting in the middle of
+ * the board O(log n) no matter how many widgets end up one higher.
+ *
+ * <p>Nodes only hold the slot of their widget in a {@link WidgetStore}, which is updated along with the tree and
+ * holds the label of each slot in turn: widgets are addressed by slot, which no shift or relabelling changes.
+ *
+ * <p>Nodes are never modified: every operation returns a new tree sharing the untouched subtrees with the old one.
+ */
+final class ZOrderTree {
+    /**
+     * Label distance left between widgets appended to either end of the board.
+     */
+    private static final long LABEL_STEP = 1L << 32;
+
+    /**
+     * Never assigned to a widget: bounds of the label space and marker for "no free label".
+     */
+    private static final long NO_LABEL = Long.MIN_VALUE;
+    private static final long MAX_LABEL = Long.MAX_VALUE;
+
+    private final Node root;
+    private final WidgetStore store;
+
+    private ZOrderTree(Node root, WidgetStore store) {
+        this.root = root;
+        this.store = store;
+    }
+
+    static ZOrderTree empty(WidgetStorage storage) {
+        return new ZOrderTree(null, WidgetStore.empty(storage));
+    }
+
+    /**
+     * Tree of widgets given in increasing z order, built in linear time. The widget at index i goes to slot i.
+     */
+    static ZOrderTree of(List<Widget> widgets, WidgetStorage storage) {
+        int count = widgets.size();
+        if (count == 0) {
+            return empty(storage);
+        }
+        int[] priorities = new int[count];
+        int[] left = new int[count];
+        int[] right = new int[count];
+        int[] spine = new int[count];
+        int depth = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && widgets.get(i).getZ() <= widgets.get(i - 1).getZ()) {
+                throw new IllegalArgumentException("Widgets not in increasing z order at " + i);
+            }
+            priorities[i] = ThreadLocalRandom.current().nextInt();
+            int last = -1;
+            while (depth > 0 && priorities[spine[depth - 1]] < priorities[i]) {
+                last = spine[--depth];
+            }
+            left[i] = last;
+            right[i] = -1;
+            if (depth > 0) {
+                right[spine[depth - 1]] = i;
+            }
+            spine[depth++] = i;
+        }
+        long spacing = Math.min(LABEL_STEP, MAX_LABEL / (count / 2 + 1));
+        long[] labels = new long[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = (i - count / 2) * spacing;
+        }
+        Builder builder = new Builder(widgets, labels, priorities, left, right);
+        return new ZOrderTree(builder.build(spine[0]), WidgetStore.of(storage, widgets, labels));
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    WidgetStorage storage() {
+        return store.storage();
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    BoundingBox bounds() {
+        return store.bounds();
+    }
+
+    int firstZ() {
+        if (root == null) {
+            throw new IllegalStateException("Empty tree");
+        }
+        int offset = 0;
+        Node node = root;
+        while (node.left != null) {
+            offset += node.shift;
+            node = node.left;
+        }
+        return node.z + offset;
+    }
+
+    int lastZ() {
+        if (root == null) {
+            throw new IllegalStateException("Empty tree");
+        }
+        int offset = 0;
+        Node node = root;
+        while (node.right != null) {
+            offset += node.shift;
+            node = node.right;
+        }
+        return node.z + offset;
+    }
+
+    /**
+     * Slot the next inserted widget goes to.
+     */
+    int vacantSlot() {
+        return store.vacantSlot();
+    }
+
+    /**
+     * Widget in the occupied slot.
+     */
+    Widget get(int slot) {
+        long label = store.label(slot);
+        int offset = 0;
+        Node node = root;
+        while (node != null) {
+            if (label == node.label) {
+                return store.get(slot, node.z + offset);
+            }
+            offset += node.shift;
+            node = label < node.label ? node.left : node.right;
+        }
+        throw new IllegalStateException("No widget in slot " + slot);
+    }
+
+    /**
+     * Whether the widget in the occupied slot has the id.
+     */
+    boolean hasId(int slot, String id) {
+        return store.hasId(slot, id);
+    }
+
+    void forEach(Consumer<Widget> action) {
+        forEach(root, 0, store, action);
+    }
+
+    /**
+     * Iterates in z order, holding only the path to the current widget.
+     */
+    Iterator<Widget> iterator() {
+        return new InOrderIterator(root, store);
+    }
+
+    /**
+     * Passes the widgets from z-index {@code fromZ} upwards to {@code action}, in z order, until it returns false.
+     * Costs O(log n) plus the number of widgets visited.
+     */
+    void forEachFrom(int fromZ, Predicate<Widget> action) {
+        forEachFrom(root, 0, fromZ, store, action);
+    }
+
+    /**
+     * Number of widgets occupying {@code z}, {@code z + 1}, ... without a gap, which an insertion at {@code z} moves
+     * one step up.
+     */
+    int contiguousFrom(int z) {
+        int below = 0;
+        int offset = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.z + offset < z) {
+                below += size(node.left) + 1;
+                offset += node.shift;
+                node = node.right;
+            } else {
+                offset += node.shift;
+                node = node.left;
+            }
+        }
+        // z(i) - i never decreases with the rank i and equals z - below along the run
+        int count = 0;
+        offset = 0;
+        node = root;
+        while (node != null) {
+            int rank = count + size(node.left);
+            if (node.z + offset - rank <= z - below) {
+                count = rank + 1;
+                offset += node.shift;
+                node = node.right;
+            } else {
+                offset += node.shift;
+                node = node.left;
+            }
+        }
+        return count - below;
+    }
+
+    /**
+     * Inserts a widget at its z-index, in {@link #vacantSlot()}, moving the contiguous run of widgets starting at
+     * that z-index one step up.
+     */
+    ZOrderTree insert(Widget widget) {
+        int z = widget.getZ();
+        Node[] parts = splitByZ(root, z);
+        long label = labelBetween(last(parts[0]), first(parts[1]));
+        if (label == NO_LABEL) {
+            return relabelAround(size(parts[0])).insert(widget);
+        }
+        Node[] run = splitByRank(parts[1], contiguousRun(parts[1], z));
+        Node inserted = new Node(label, ThreadLocalRandom.current().nextInt(), store.vacantSlot(), z, 0, null,
+                null);
+        return new ZOrderTree(merge(merge(parts[0], inserted), merge(shifted(run[0], 1), run[1])),
+                store.add(widget, label));
+    }
+
+    /**
+     * Replaces the widget in the occupied slot by a widget at the same z-index, leaving the tree itself untouched.
+     */
+    ZOrderTree replace(int slot, Widget widget) {
+        return new ZOrderTree(root, store.set(slot, widget));
+    }
+
+    ZOrderTree remove(int slot) {
+        Node[] parts = splitByLabel(root, store.label(slot));
+        Node[] removed = splitByRank(parts[1], 1);
+        return new ZOrderTree(merge(parts[0], removed[1]), store.remove(slot));
+    }
+
+    /**
+     * Number of widgets at the beginning of {@code node} occupying {@code z}, {@code z + 1}, ... without a gap.
+     * Since z-indexes are distinct, {@code z(i) - i} never decreases with the rank {@code i}, so the run is found
+     * by a single descent.
+     */
+    private static int contiguousRun(Node node, int z) {
+        int count = 0;
+        int offset = 0;
+        while (node != null) {
+            int rank = count + size(node.left);
+            if (node.z + offset == z + rank) {
+                count = rank + 1;
+                offset += node.shift;
+                node = node.right;
+            } else {
+                offset += node.shift;
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static long labelBetween(Node before, Node after) {
+        if (before == null && after == null) {
+            return 0;
+        }
+        long low = before == null ? NO_LABEL : before.label;
+        long high = after == null ? MAX_LABEL : after.label;
+        long gap = high - low;
+        if (before == null && Long.compareUnsigned(gap, LABEL_STEP) > 0) {
+            return high - LABEL_STEP;
+        }
+        if (after == null && Long.compareUnsigned(gap, LABEL_STEP) > 0) {
+            return low + LABEL_STEP;
+        }
+        return Long.compareUnsigned(gap, 1) > 0 ? low + (gap >>> 1) : NO_LABEL;
+    }
+
+    /**
+     * Spreads the labels around {@code rank} evenly so that a new label fits in before it. The window is doubled
+     * until its labels can be at least as far apart as it has widgets, so crowded areas get relabelled with enough
+     * room for the following insertions.
+     */
+    private ZOrderTree relabelAround(int rank) {
+        int size = size(root);
+        for (int half = 1; ; half <<= 1) {
+            int from = Math.max(0, rank - half);
+            int to = Math.min(size, rank + half);
+            long low = from == 0 ? NO_LABEL : labelAt(root, from - 1);
+            long high = to == size ? MAX_LABEL : labelAt(root, to);
+            long spacing = Long.divideUnsigned(high - low, to - from + 2);
+            if (Long.compareUnsigned(spacing, Math.max(2, to - from)) >= 0 || (from == 0 && to == size)) {
+                Node[] head = splitByRank(root, from);
+                Node[] window = splitByRank(head[1], to - from);
+                Relabeler relabeler = new Relabeler(low, spacing, store);
+                Node relabelled = relabeler.relabel(window[0]);
+                return new ZOrderTree(merge(head[0], merge(relabelled, window[1])), relabeler.store);
+            }
+        }
+    }
+
+    /**
+     * Gives the nodes of a subtree evenly spaced labels, recording them in a copy of the store.
+     */
+    private static final class Relabeler {
+        private final long spacing;
+        private WidgetStore store;
+        private long next;
+
+        Relabeler(long low, long spacing, WidgetStore store) {
+            this.spacing = spacing;
+            this.store = store;
+            this.next = low + spacing;
+        }
+
+        Node relabel(Node node) {
+            if (node == null) {
+                return null;
+            }
+            node = push(node);
+            Node left = relabel(node.left);
+            long label = next;
+            next += spacing;
+            store = store.relabel(node.slot, label);
+            return new Node(label, node.priority, node.slot, node.z, 0, left, relabel(node.right));
+        }
+    }
+
+    /**
+     * Creates the nodes of a tree whose shape has been computed, children first. The widget at index i goes to
+     * slot i.
+     */
+    private static final class Builder {
+        private final List<Widget> widgets;
+        private final long[] labels;
+        private final int[] priorities;
+        private final int[] left;
+        private final int[] right;
+
+        Builder(List<Widget> widgets, long[] labels, int[] priorities, int[] left, int[] right) {
+            this.widgets = widgets;
+            this.labels = labels;
+            this.priorities = priorities;
+            this.left = left;
+            this.right = right;
+        }
+
+        Node build(int index) {
+            if (index < 0) {
+                return null;
+            }
+            return new Node(labels[index], priorities[index], index, widgets.get(index).getZ(), 0,
+                    build(left[index]), build(right[index]));
+        }
+    }
+
+    private static final class InOrderIterator implements Iterator<Widget> {
+        private final WidgetStore store;
+        private Node[] nodes = new Node[64];
+        private int[] offsets = new int[64];
+        private int depth;
+
+        InOrderIterator(Node root, WidgetStore store) {
+            this.store = store;
+            pushLeftPath(root, 0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public Widget next() {
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            depth--;
+            Node node = nodes[depth];
+            int offset = offsets[depth];
+            nodes[depth] = null;
+            pushLeftPath(node.right, offset + node.shift);
+            return store.get(node.slot, node.z + offset);
+        }
+
+        private void pushLeftPath(Node node, int offset) {
+            while (node != null) {
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    offsets = Arrays.copyOf(offsets, depth * 2);
+                }
+                nodes[depth] = node;
+                offsets[depth] = offset;
+                depth++;
+                offset += node.shift;
+                node = node.left;
+            }
+        }
+    }
+
+    private static void forEach(Node node, int offset, WidgetStore store, Consumer<Widget> action) {
+        if (node == null) {
+            return;
+        }
+        forEach(node.left, offset + node.shift, store, action);
+        action.accept(store.get(node.slot, node.z + offset));
+        forEach(node.right, offset + node.shift, store, action);
+    }
+
+    private static boolean forEachFrom(Node node, int offset, int fromZ, WidgetStore store,
+                                       Predicate<Widget> action) {
+        if (node == null) {
+            return true;
+        }
+        int z = node.z + offset;
+        if (z < fromZ) {
+            return forEachFrom(node.right, offset + node.shift, fromZ, store, action);
+        }
+        return forEachFrom(node.left, offset + node.shift, fromZ, store, action)
+                && action.test(store.get(node.slot, z))
+                && forEachFrom(node.right, offset + node.shift, fromZ, store, action);
+    }
+
+    private static long labelAt(Node node, int rank) {
+        while (true) {
+            int leftSize = size(node.left);
+            if (rank == leftSize) {
+                return node.label;
+            }
+            if (rank < leftSize) {
+                node = node.left;
+            } else {
+                rank -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static Node first(Node node) {
+        while (node != null && node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private static Node last(Node node) {
+        while (node != null && node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    private static Node[] splitByZ(Node node, int z) {
+        if (node == null) {
+            return new Node[2];
+        }
+        node = push(node);
+        if (node.z < z) {
+            Node[] parts = splitByZ(node.right, z);
+            return new Node[]{node.withChildren(node.left, parts[0]), parts[1]};
+        }
+        Node[] parts = splitByZ(node.left, z);
+        return new Node[]{parts[0], node.withChildren(parts[1], node.right)};
+    }
+
+    private static Node[] splitByLabel(Node node, long label) {
+        if (node == null) {
+            return new Node[2];
+        }
+        node = push(node);
+        if (node.label < label) {
+            Node[] parts = splitByLabel(node.right, label);
+            return new Node[]{node.withChildren(node.left, parts[0]), parts[1]};
+        }
+        Node[] parts = splitByLabel(node.left, label);
+        return new Node[]{parts[0], node.withChildren(parts[1], node.right)};
+    }
+
+    private static Node[] splitByRank(Node node, int rank) {
+        if (node == null) {
+            return new Node[2];
+        }
+        node = push(node);
+        int leftSize = size(node.left);
+        if (leftSize < rank) {
+            Node[] parts = splitByRank(node.right, rank - leftSize - 1);
+            return new Node[]{node.withChildren(node.left, parts[0]), parts[1]};
+        }
+        Node[] parts = splitByRank(node.left, rank);
+        return new Node[]{parts[0], node.withChildren(parts[1], node.right)};
+    }
+
+    private static Node merge(Node low, Node high) {
+        if (low == null) {
+            return high;
+        }
+        if (high == null) {
+            return low;
+        }
+        if (low.priority > high.priority) {
+            low = push(low);
+            return low.withChildren(low.left, merge(low.right, high));
+        }
+        high = push(high);
+        return high.withChildren(merge(low, high.left), high.right);
+    }
+
+    private static Node push(Node node) {
+        if (node.shift == 0) {
+            return node;
+        }
+        return new Node(node.label, node.priority, node.slot, node.z, 0,
+                shifted(node.left, node.shift), shifted(node.right, node.shift));
+    }
+
+    private static Node shifted(Node node, int shift) {
+        if (node == null || shift == 0) {
+            return node;
+        }
+        return new Node(node.label, node.priority, node.slot, node.z + shift, node.shift + shift,
+                node.left, node.right);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static final class Node {
+        final long label;
+        final int priority;
+        /**
+         * Slot of the widget in the {@link WidgetStore}, which does not follow z-index shifts.
+         */
+        final int slot;
+        /**
+         * Z-index of this node, not counting the pending shifts of its ancestors.
+         */
+        final int z;
+        /**
+         * Pending shift of the z-indexes of both subtrees.
+         */
+        final int shift;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(long label, int priority, int slot, int z, int shift, Node left, Node right) {
+            this.label = label;
+            this.priority = priority;
+            this.slot = slot;
+            this.z = z;
+            this.shift = shift;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+
+        Node withChildren(Node left, Node right) {
+            return new Node(label, priority, slot, z, 0, left, right);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.whiteboard.widgets.service;
+
+import com.whiteboard.widgets.repository.WidgetBoard;
+
+import java.util.Optional;
+
+/**
+ * Ring buffer of the most recent boards published by a service, in increasing version order.
+ *
+ * <p>Boards share most of their data with each other, so each one only costs the parts its successor rewrote:
+ * about as many widgets as were written to publish the successor. The history keeps at most {@code capacity}
+ * boards, and drops the oldest ones while those it keeps cost more than {@code maxWidgets} in total, so a board
+ * replaced as a whole, by an import or a reset, is released soon after. The last two boards are always kept, so
+ * that the latest publication can be undone.
+ */
+final class BoardHistory {
+    private final WidgetBoard[] boards;
+    /**
+     * Widgets written to publish the board following each one.
+     */
+    private final long[] costs;
+    private final long maxWidgets;
+    private long first;
+    private long added;
+    /**
+     * Sum of the costs of the boards kept.
+     */
+    private long retained;
+
+    BoardHistory(int capacity, long maxWidgets) {
+        this.boards = new WidgetBoard[Math.max(capacity, 2)];
+        this.costs = new long[boards.length];
+        this.maxWidgets = maxWidgets;
+    }
+
+    /**
+     * Adds the board published after the last one added, by writing the given number of widgets.
+     */
+    synchronized void add(WidgetBoard board, long written) {
+        if (added > first) {
+            costs[index(added - 1)] = written;
+            retained += written;
+        }
+        if (added - first == boards.length) {
+            dropFirst();
+        }
+        boards[index(added++)] = board;
+        while (added - first > 2 && retained > maxWidgets) {
+            dropFirst();
+        }
+    }
+
+    /**
+     * Board with the given version, if it is still kept.
+     */
+    synchronized Optional<WidgetBoard> get(long version) {
+        int found = search(version);
+        return found < 0 ? Optional.empty() : Optional.of(boards[index(first + found)]);
+    }
+
+    /**
+     * Board published before the one with the given version, if both are still kept.
+     */
+    synchronized Optional<WidgetBoard> before(long version) {
+        int found = search(version);
+        return found <= 0 ? Optional.empty() : Optional.of(boards[index(first + found - 1)]);
+    }
+
+    private void dropFirst() {
+        retained -= costs[index(first)];
+        boards[index(first)] = null;
+        first++;
+    }
+
+    /**
+     * Position of the board with the version from the oldest one kept, or -1.
+     */
+    private int search(long version) {
+        int low = 0;
+        int high = (int) (added - first) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = boards[index(first + middle)].version();
+            if (found == version) {
+                return middle;
+            }
+            if (found < version) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int index(long position) {
+        return (int) (position % boards.length);
+    }
+}
@@ -0,0 +1,274 @@
+package com.whiteboard.widgets.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.ChangeLogFactory;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Named boards, besides the board of the {@link WidgetService} bean which is used when no board is named.
+ *
+ * <p>Each board has its own {@link WidgetService}, hence its own monitor, indexes, z-indexes, change feed and change
+ * log, so writers to different boards never wait for each other. A board is created by its first write, restored
+ * from its log if there is one, and dropped from memory once unused for {@code widgets.boards.idle-timeout}. Boards
+ * with change subscribers are kept, and so are non-empty boards whose log would not restore them. Reads never create
+ * a board: a board neither in memory nor in a log reads as empty.
+ *
+ * <p>Named boards record into the {@link WidgetMetrics} of the default board, and have their own write pipeline if
+ * it has one.
+ */
+@Slf4j
+@Service
+public class BoardRegistry {
+    private static final Pattern BOARD_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final Path BOARDS_DIRECTORY = Paths.get("boards");
+
+    private final WidgetService defaultBoard;
+    private final ChangeLogFactory changeLogFactory;
+    private final int changesCapacity;
+    private final long idleNanos;
+    private final WidgetService emptyBoard =
+            new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(1), ChangeLog.NONE);
+    private final ConcurrentHashMap<String, Board> boards = new ConcurrentHashMap<>();
+    /**
+     * Boards removed from {@link #boards} whose log is being closed, which a board of the same id waits for before
+     * opening it again.
+     */
+    private final ConcurrentHashMap<String, Board> closing = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("board-eviction").setDaemon(true).build());
+
+    public BoardRegistry(WidgetService widgetService, ChangeLogFactory changeLogFactory,
+                         @Value("${widgets.changes.capacity:10000}") int changesCapacity,
+                         @Value("${widgets.boards.idle-timeout:10m}") Duration idleTimeout) {
+        this.defaultBoard = widgetService;
+        this.changeLogFactory = changeLogFactory;
+        this.changesCapacity = changesCapacity;
+        this.idleNanos = idleTimeout.toNanos();
+        long period = Math.max(idleTimeout.toMillis() / 2, 1_000);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Whether the id can name a board: letters, digits, '-' and '_', at most 64 of them.
+     */
+    public static boolean isValidId(String boardId) {
+        return BOARD_ID.matcher(boardId).matches();
+    }
+
+    /**
+     * Applies the action to the service of the named board, created if it does not exist and not evicted meanwhile,
+     * or to the service of the default board if no board is named.
+     *
+     * @throws IllegalArgumentException if the board id is not valid
+     */
+    public <T> T withBoard(Optional<String> boardId, Function<WidgetService, T> action) {
+        if (boardId.isEmpty()) {
+            return action.apply(defaultBoard);
+        }
+        return use(acquire(validId(boardId.get())), action);
+    }
+
+    /**
+     * Applies the action to the service of the named board if it is in memory or in a log, without creating it, or
+     * to the service of the default board if no board is named; gives the fallback otherwise.
+     *
+     * @throws IllegalArgumentException if the board id is not valid
+     */
+    public <T> T withExistingBoard(Optional<String> boardId, Function<WidgetService, T> action,
+                                   Supplier<T> otherwise) {
+        if (boardId.isEmpty()) {
+            return action.apply(defaultBoard);
+        }
+        String id = validId(boardId.get());
+        Board board = boards.computeIfPresent(id, (key, existing) -> existing.acquire());
+        if (board == null) {
+            boolean stored;
+            try {
+                stored = changeLogFactory.exists(BOARDS_DIRECTORY.resolve(id));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!stored) {
+                return otherwise.get();
+            }
+            board = acquire(id);
+        }
+        return use(board, action);
+    }
+
+    /**
+     * Applies the action to the service of the named board if it exists, as {@link #withExistingBoard}, and to an
+     * empty board otherwise.
+     *
+     * @throws IllegalArgumentException if the board id is not valid
+     */
+    public <T> T readBoard(Optional<String> boardId, Function<WidgetService, T> action) {
+        return withExistingBoard(boardId, action, () -> action.apply(emptyBoard));
+    }
+
+    private static String validId(String boardId) {
+        if (!isValidId(boardId)) {
+            throw new IllegalArgumentException("Invalid board id " + boardId);
+        }
+        return boardId;
+    }
+
+    private Board acquire(String id) {
+        return boards.compute(id, (key, existing) -> (existing == null ? new Board(key) : existing).acquire());
+    }
+
+    private static <T> T use(Board board, Function<WidgetService, T> action) {
+        try {
+            return action.apply(board.service());
+        } finally {
+            board.lastUsed = System.nanoTime();
+            board.users.decrementAndGet();
+        }
+    }
+
+    /**
+     * Number of named boards in memory.
+     */
+    public int size() {
+        return boards.size();
+    }
+
+    /**
+     * Drops the boards which can be evicted, closing their logs once out of the map so that requests to other boards
+     * never wait for the files. A board of the same id waits for its log to be closed before opening it again; a
+     * board whose log fails to close is put back unless one has taken its place.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        for (String id : boards.keySet()) {
+            Board[] evicted = new Board[1];
+            boards.computeIfPresent(id, (key, board) -> {
+                if (!board.isEvictable(now)) {
+                    return board;
+                }
+                closing.put(key, board);
+                evicted[0] = board;
+                return null;
+            });
+            if (evicted[0] != null) {
+                close(evicted[0], true);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        evictor.shutdownNow();
+        for (Map.Entry<String, Board> entry : boards.entrySet()) {
+            closing.put(entry.getKey(), entry.getValue());
+            if (boards.remove(entry.getKey(), entry.getValue())) {
+                close(entry.getValue(), false);
+            } else {
+                closing.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void close(Board board, boolean keepOnFailure) {
+        try {
+            board.close();
+        } catch (UncheckedIOException e) {
+            log.warn("Could not close the log of board {}", board.id, e);
+            if (keepOnFailure) {
+                boards.putIfAbsent(board.id, board);
+            }
+        } finally {
+            closing.remove(board.id, board);
+            board.closed.countDown();
+        }
+    }
+
+    private final class Board {
+        final String id;
+        final AtomicInteger users = new AtomicInteger();
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile long lastUsed = System.nanoTime();
+        private WidgetService service;
+        private ChangeLog changeLog;
+
+        Board(String id) {
+            this.id = id;
+        }
+
+        Board acquire() {
+            users.incrementAndGet();
+            return this;
+        }
+
+        /**
+         * Service of the board, opening its log on first use, once the board it replaces has closed it.
+         */
+        synchronized WidgetService service() {
+            if (service == null) {
+                Board previous = closing.get(id);
+                try {
+                    if (previous != null && previous != this) {
+                        previous.closed.await();
+                    }
+                    changeLog = changeLogFactory.open(BOARDS_DIRECTORY.resolve(id));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while board " + id + " was closed", e);
+                }
+                service = new WidgetService(changeLog.recovered(), new ChangeFeed(changesCapacity), changeLog,
+                        defaultBoard.metrics(), defaultBoard.pipelineSettings());
+            }
+            return service;
+        }
+
+        boolean isEvictable(long now) {
+            if (users.get() > 0 || now - lastUsed < idleNanos) {
+                return false;
+            }
+            synchronized (this) {
+                return service == null
+                        || !service.hasChangeListeners() && (changeLogFactory.isDurable() || service.isEmpty());
+            }
+        }
+
+        /**
+         * Closes the service and the log, if they were opened.
+         */
+        synchronized void close() {
+            if (service != null) {
+                service.close();
+            }
+            if (changeLog != null) {
+                try {
+                    changeLog.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.whiteboard.widgets.service;
+
+import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.WidgetChange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ring buffer of the most recent board changes, from which subscribers catch up after being notified.
+ *
+ * <p>Listeners are called on the writing thread and are expected to hand the work over to another thread.
+ */
+@Component
+public class ChangeFeed {
+    private final WidgetChange[] changes;
+    private final Set<Runnable> listeners = ConcurrentHashMap.newKeySet();
+    /**
+     * Sequence of the last change appended, or the initial board version.
+     */
+    private long lastSequence;
+    private int count;
+
+    public ChangeFeed(@Value("${widgets.changes.capacity:10000}") int capacity) {
+        this.changes = new WidgetChange[capacity];
+    }
+
+    /**
+     * Starts the feed after the board with the given version, dropping any change kept, then notifies the listeners,
+     * which find the changes they were behind on dropped.
+     */
+    public void reset(long version) {
+        synchronized (this) {
+            lastSequence = version;
+            count = 0;
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Appends changes which must follow the last one without a gap, then notifies the listeners.
+     */
+    public void append(List<WidgetChange> appended) {
+        synchronized (this) {
+            for (WidgetChange change : appended) {
+                if (change.getSequence() != lastSequence + 1) {
+                    throw new IllegalArgumentException("Expected change " + (lastSequence + 1) + ", got "
+                            + change.getSequence());
+                }
+                lastSequence = change.getSequence();
+                changes[index(lastSequence)] = change;
+                count = Math.min(count + 1, changes.length);
+            }
+        }
+        listeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Changes following the one with the given sequence, or empty if some of them have been dropped already or the
+     * sequence is ahead of the feed.
+     */
+    public synchronized Optional<List<WidgetChange>> since(long sequence) {
+        if (sequence > lastSequence || sequence < lastSequence - count) {
+            return Optional.empty();
+        }
+        ImmutableList.Builder<WidgetChange> result =
+                ImmutableList.builderWithExpectedSize((int) (lastSequence - sequence));
+        for (long next = sequence + 1; next <= lastSequence; next++) {
+            result.add(changes[index(next)]);
+        }
+        return Optional.of(result.build());
+    }
+
+    /**
+     * Number of changes kept.
+     */
+    public int capacity() {
+        return changes.length;
+    }
+
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    private int index(long sequence) {
+        return (int) Math.floorMod(sequence, (long) changes.length);
+    }
+}
@@ -0,0 +1,266 @@
+package com.whiteboard.widgets.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the calls running at once to a limit adapted to their latency, in the manner of the gradient algorithm of
+ * Netflix's concurrency-limits: the limit shrinks while calls take longer than they usually do, which happens once
+ * they queue for a resource such as the service monitor, and grows back by about its square root per call while
+ * they do not.
+ *
+ * <p>Every call updates two averages of its latency: a short one, over about {@link #SHORT_WINDOW} calls, and a long
+ * one, over about {@link #LONG_WINDOW}. The limit moves towards {@code limit * gradient + sqrt(limit)}, where the
+ * gradient is {@code tolerance * long / short} bounded to [0.5, 1]. It only grows while at least half of it is used,
+ * so that a quiet period does not leave it far above what was ever tried.
+ *
+ * <p>A call within the limit is admitted by a compare-and-set of the calls in flight, without locking, so that
+ * limiters shared by every board neither serialize their reads nor tie the boards together. The averages and the
+ * limit are updated by one finishing call at a time, without waiting: a call finishing while another updates them
+ * is left out of the sample.
+ *
+ * <p>A call beyond the limit waits up to {@link Settings#getQueueWait()}, among at most as many waiting calls as the
+ * largest limit, then is rejected: under overload excess calls fail fast instead of holding threads in an unbounded
+ * queue. Only waiting calls, and the calls finishing while some wait, take the monitor of the waiting calls.
+ */
+public final class ConcurrencyLimiter implements MeterBinder {
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 600;
+    private static final double SMOOTHING = 0.2;
+
+    private final String name;
+    private final Settings settings;
+    private final long queueWaitNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Object waiting = new Object();
+    /**
+     * Set by the finishing call updating the averages and the limit, which only it writes.
+     */
+    private final AtomicBoolean sampling = new AtomicBoolean();
+    private volatile double limit;
+    private double shortNanos;
+    private double longNanos;
+    private Counter admitted;
+    private Counter delayed;
+    private Counter rejected;
+    private Timer queueWait;
+
+    public ConcurrencyLimiter(String name, Settings settings) {
+        if (settings.getMinLimit() < 1 || settings.getMinLimit() > settings.getInitialLimit()
+                || settings.getInitialLimit() > settings.getMaxLimit()) {
+            throw new IllegalArgumentException("Limits of " + name + " not within 1 <= min <= initial <= max");
+        }
+        this.name = name;
+        this.settings = settings;
+        this.queueWaitNanos = settings.getQueueWait().toNanos();
+        this.limit = settings.getInitialLimit();
+    }
+
+    /**
+     * Meters tagged with the name of the limiter: {@code widgets.limiter.limit}, {@code widgets.limiter.in.flight}
+     * and {@code widgets.limiter.queued}, {@code widgets.limiter.calls} by outcome (admitted at once, after waiting,
+     * or rejected), and {@code widgets.limiter.queue.wait}.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("widgets.limiter.limit", this, ConcurrencyLimiter::limit)
+                .description("Calls allowed to run at once")
+                .tag("limiter", name)
+                .register(registry);
+        Gauge.builder("widgets.limiter.in.flight", this, ConcurrencyLimiter::inFlight)
+                .description("Calls running")
+                .tag("limiter", name)
+                .register(registry);
+        Gauge.builder("widgets.limiter.queued", this, ConcurrencyLimiter::queued)
+                .description("Calls waiting to run")
+                .tag("limiter", name)
+                .register(registry);
+        admitted = calls(registry, "admitted");
+        delayed = calls(registry, "delayed");
+        rejected = calls(registry, "rejected");
+        queueWait = Timer.builder("widgets.limiter.queue.wait")
+                .description("Time calls waited to run, rejected ones included")
+                .tag("limiter", name)
+                .register(registry);
+    }
+
+    private Counter calls(MeterRegistry registry, String outcome) {
+        return Counter.builder("widgets.limiter.calls")
+                .description("Calls by outcome")
+                .tag("limiter", name)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * Runs the action once fewer calls than the limit run.
+     *
+     * @throws RejectedExecutionException if the limit was not freed within the queue wait
+     */
+    public <T> T call(Supplier<T> action) {
+        acquire();
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            release(System.nanoTime() - start);
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    private void acquire() {
+        if (tryAcquire()) {
+            count(admitted);
+            return;
+        }
+        long start = System.nanoTime();
+        if (queued.incrementAndGet() > settings.getMaxLimit()) {
+            queued.decrementAndGet();
+            reject(start);
+        }
+        boolean acquired = false;
+        try {
+            synchronized (waiting) {
+                long remaining = queueWaitNanos;
+                while (!(acquired = tryAcquire()) && remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(waiting, remaining);
+                    remaining = queueWaitNanos - (System.nanoTime() - start);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queued.decrementAndGet();
+        }
+        if (!acquired) {
+            reject(start);
+        }
+        count(delayed);
+        if (queueWait != null) {
+            queueWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Counts the call in flight if fewer than the limit are.
+     */
+    private boolean tryAcquire() {
+        while (true) {
+            int running = inFlight.get();
+            if (running >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(running, running + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void reject(long start) {
+        count(rejected);
+        if (queueWait != null) {
+            queueWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        throw new RejectedExecutionException(name + " limit of " + (int) limit + " reached");
+    }
+
+    private static void count(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private void release(long latencyNanos) {
+        boolean used = inFlight.getAndDecrement() >= limit / 2;
+        int previous = (int) limit;
+        if (sampling.compareAndSet(false, true)) {
+            try {
+                sample(latencyNanos, used);
+            } finally {
+                sampling.set(false);
+            }
+        }
+        // Waiting calls count themselves before they check the limit, so one is either seen here or sees the release
+        if (queued.get() > 0) {
+            synchronized (waiting) {
+                if ((int) limit > previous) {
+                    waiting.notifyAll();
+                } else {
+                    waiting.notify();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the latency of a call to the averages and moves the limit; called by one thread at a time.
+     */
+    private void sample(long latencyNanos, boolean used) {
+        double latency = Math.max(1, latencyNanos);
+        if (longNanos == 0) {
+            shortNanos = latency;
+            longNanos = latency;
+        } else {
+            shortNanos += (latency - shortNanos) / SHORT_WINDOW;
+            longNanos += (latency - longNanos) / LONG_WINDOW;
+        }
+        if (longNanos > 2 * shortNanos) {
+            // Calls got faster for good: let the long average catch up rather than allow them to queue again
+            longNanos *= 0.95;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, settings.getTolerance() * longNanos / shortNanos));
+        double current = limit;
+        double target = current * gradient + Math.sqrt(current);
+        if (target < current || used) {
+            limit = Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(),
+                    current * (1 - SMOOTHING) + target * SMOOTHING));
+        }
+    }
+
+    @Value
+    @Builder(toBuilder = true)
+    public static class Settings {
+        @Builder.Default
+        int initialLimit = 20;
+        @Builder.Default
+        int minLimit = 1;
+        @Builder.Default
+        int maxLimit = 200;
+        /**
+         * Ratio of the short latency average to the long one from which the limit shrinks.
+         */
+        @Builder.Default
+        double tolerance = 1.5;
+        /**
+         * Longest wait of a call for the limit before it is rejected.
+         */
+        @NonNull
+        @Builder.Default
+        Duration queueWait = Duration.ofMillis(50);
+    }
+}
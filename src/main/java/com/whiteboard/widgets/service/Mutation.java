@@ -0,0 +1,50 @@
+package com.whiteboard.widgets.service;
+
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetPatch;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Write waiting in a {@link WritePipeline}, completed with the stored widget, or empty if there is no widget with
+ * the id or the widget was deleted.
+ */
+final class Mutation {
+    final Type type;
+    final String id;
+    final WidgetContent content;
+    final WidgetPatch patch;
+    final CompletableFuture<Optional<Widget>> result = new CompletableFuture<>();
+
+    private Mutation(Type type, String id, WidgetContent content, WidgetPatch patch) {
+        this.type = type;
+        this.id = id;
+        this.content = content;
+        this.patch = patch;
+    }
+
+    static Mutation create(String id, WidgetContent content) {
+        return new Mutation(Type.CREATE, id, content, null);
+    }
+
+    static Mutation update(String id, WidgetContent content) {
+        return new Mutation(Type.UPDATE, id, content, null);
+    }
+
+    static Mutation patch(String id, WidgetPatch patch) {
+        return new Mutation(Type.PATCH, id, null, patch);
+    }
+
+    static Mutation delete(String id) {
+        return new Mutation(Type.DELETE, id, null, null);
+    }
+
+    enum Type {
+        CREATE,
+        UPDATE,
+        PATCH,
+        DELETE
+    }
+}
@@ -0,0 +1,64 @@
+package com.whiteboard.widgets.service;
+
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Position after the last widget of a page: its id, and the z-index and last modification it was listed with.
+ *
+ * <p>The following page starts above the current z-index of that widget if it has not been modified since, which
+ * keeps pages contiguous when insertions below it shifted it up. If it has been updated or deleted, the following
+ * page starts above the z-index it was listed with.
+ *
+ * <p>Widgets imported without a last modification are encoded with an empty one, which decodes to null.
+ */
+@Value
+class PageCursor {
+    private static final String SEPARATOR = ",";
+
+    int z;
+    LocalDateTime lastModification;
+    String id;
+
+    static PageCursor after(Widget widget) {
+        return new PageCursor(widget.getZ(), widget.getLastModification(), widget.getId());
+    }
+
+    static Optional<PageCursor> decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split(SEPARATOR, 3);
+            if (parts.length != 3) {
+                return Optional.empty();
+            }
+            LocalDateTime lastModification = parts[1].isEmpty() ? null : LocalDateTime.parse(parts[1]);
+            return Optional.of(new PageCursor(Integer.parseInt(parts[0]), lastModification, parts[2]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (z + SEPARATOR + Objects.toString(lastModification, "") + SEPARATOR + id)
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Z-index of the last widget of the page on the board.
+     */
+    int lastZ(WidgetBoard board) {
+        return board.get(id)
+                .filter(widget -> Objects.equals(widget.getLastModification(), lastModification))
+                .map(Widget::getZ)
+                .orElse(z);
+    }
+}
@@ -0,0 +1,12 @@
+package com.whiteboard.widgets.service;
+
+import lombok.Value;
+
+/**
+ * Value read from the board with the given version.
+ */
+@Value
+public class Versioned<T> {
+    long version;
+    T value;
+}
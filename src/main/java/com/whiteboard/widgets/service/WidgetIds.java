@@ -0,0 +1,51 @@
+package com.whiteboard.widgets.service;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Widget ids laid out as version 7 UUIDs: 48 bits of Unix milliseconds, a 12-bit sequence and 62 random bits.
+ *
+ * <p>Every thread draws from its own state, without the lock {@link UUID#randomUUID()} takes on its shared
+ * {@code SecureRandom}. Ids of a thread increase strictly; ids of different threads are ordered by millisecond.
+ * The random bits only keep ids unique, they are not meant to be unguessable.
+ */
+public final class WidgetIds {
+    private static final int SEQUENCES = 1 << 12;
+    private static final long VERSION = 7L << 12;
+    private static final long VARIANT = 1L << 63;
+    private static final long RANDOM_BITS = -1L >>> 2;
+
+    private static final ThreadLocal<Clock> CLOCKS = ThreadLocal.withInitial(Clock::new);
+
+    private WidgetIds() {
+    }
+
+    public static String next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long high = CLOCKS.get().next(random);
+        long low = VARIANT | random.nextLong() & RANDOM_BITS;
+        return new UUID(high, low).toString();
+    }
+
+    /**
+     * Millisecond and sequence of the last id of a thread. The sequence starts at a random point of its lower half
+     * on every millisecond, and borrows the next millisecond when it runs out.
+     */
+    private static final class Clock {
+        private long millis;
+        private int sequence;
+
+        long next(ThreadLocalRandom random) {
+            long now = System.currentTimeMillis();
+            if (now > millis) {
+                millis = now;
+                sequence = random.nextInt(SEQUENCES / 2);
+            } else if (++sequence == SEQUENCES) {
+                millis++;
+                sequence = 0;
+            }
+            return millis << 16 | VERSION | sequence;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.whiteboard.widgets.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the hot paths of the {@link WidgetService}s of all boards, published under {@code /actuator/metrics}:
+ *
+ * <ul>
+ *     <li>{@code widgets.writes}: latency of writes by operation, including the wait for the change log,</li>
+ *     <li>{@code widgets.lock.wait}: time writers wait for the service monitor, for one write in
+ *     {@link #SAMPLING},</li>
+ *     <li>{@code widgets.cascade.length}: number of widgets shifted by each widget stored,</li>
+ *     <li>{@code widgets.board.size}: number of widgets of the boards published, for one board in
+ *     {@link #SAMPLING},</li>
+ *     <li>{@code widgets.pipeline.batch.size} and {@code widgets.pipeline.coalesced}: writes applied together by a
+ *     {@link WritePipeline}, and in-place replacements merged into a later one of the same widget,</li>
+ *     <li>{@code widgets.list.serialization} and {@code widgets.response.bytes}: time to serialize whole boards and
+ *     size of the responses listing them.</li>
+ * </ul>
+ *
+ * <p>Meters are looked up once, so recording only costs reading the clock and updating the meters. Only latencies
+ * and cascade lengths are kept as histograms, which cost about three times as much to update as a count, total and
+ * maximum. Lock waits and board sizes are sampled at random, so that a write updates two meters rather than four;
+ * their counts are a fraction of the writes, their distributions those of all writes. Latencies of all requests,
+ * reads included, are in {@code http.server.requests}.
+ */
+@Component
+public class WidgetMetrics {
+    /**
+     * Metrics recording nothing, registered nowhere.
+     */
+    public static final WidgetMetrics NONE = new WidgetMetrics(new CompositeMeterRegistry());
+    /**
+     * One in how many lock waits and published boards are recorded.
+     */
+    static final int SAMPLING = 16;
+
+    private final Timer creates;
+    private final Timer updates;
+    private final Timer patches;
+    private final Timer restores;
+    private final Timer imports;
+    private final Timer replicates;
+    private final Timer deletes;
+    private final Timer batches;
+    private final Timer lockWait;
+    private final DistributionSummary cascadeLength;
+    private final DistributionSummary boardSize;
+    private final DistributionSummary batchSize;
+    private final Counter coalesced;
+    private final Timer listSerialization;
+    private final DistributionSummary responseBytes;
+
+    public WidgetMetrics(MeterRegistry meterRegistry) {
+        creates = writes("create", meterRegistry);
+        updates = writes("update", meterRegistry);
+        patches = writes("patch", meterRegistry);
+        restores = writes("restore", meterRegistry);
+        imports = writes("import", meterRegistry);
+        replicates = writes("replicate", meterRegistry);
+        deletes = writes("delete", meterRegistry);
+        batches = writes("batch", meterRegistry);
+        lockWait = Timer.builder("widgets.lock.wait")
+                .description("Time writers wait for the board monitor, sampled")
+                .register(meterRegistry);
+        cascadeLength = DistributionSummary.builder("widgets.cascade.length")
+                .description("Widgets shifted up by a widget stored")
+                .baseUnit("widgets")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        boardSize = DistributionSummary.builder("widgets.board.size")
+                .description("Widgets on a board published by a write, sampled")
+                .baseUnit("widgets")
+                .register(meterRegistry);
+        batchSize = DistributionSummary.builder("widgets.pipeline.batch.size")
+                .description("Writes applied at once by the write pipeline")
+                .baseUnit("writes")
+                .register(meterRegistry);
+        coalesced = Counter.builder("widgets.pipeline.coalesced")
+                .description("In-place replacements merged into a later one within a batch")
+                .register(meterRegistry);
+        listSerialization = Timer.builder("widgets.list.serialization")
+                .description("Time to serialize the whole board")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        responseBytes = DistributionSummary.builder("widgets.response.bytes")
+                .description("Size of the responses listing the whole board")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer writes(String operation, MeterRegistry meterRegistry) {
+        return Timer.builder("widgets.writes")
+                .description("Latency of writes, until their changes are durable")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    void created(long startNanos) {
+        record(creates, startNanos);
+    }
+
+    void updated(long startNanos) {
+        record(updates, startNanos);
+    }
+
+    void patched(long startNanos) {
+        record(patches, startNanos);
+    }
+
+    void restored(long startNanos) {
+        record(restores, startNanos);
+    }
+
+    void imported(long startNanos) {
+        record(imports, startNanos);
+    }
+
+    void replicated(long startNanos) {
+        record(replicates, startNanos);
+    }
+
+    void deleted(long startNanos) {
+        record(deletes, startNanos);
+    }
+
+    void applied(long startNanos) {
+        record(batches, startNanos);
+    }
+
+    /**
+     * Records the wait of a writer which started waiting for the monitor at {@code startNanos} and just got it.
+     */
+    void lockAcquired(long startNanos) {
+        if (sampled()) {
+            record(lockWait, startNanos);
+        }
+    }
+
+    void stored(int shifted) {
+        cascadeLength.record(shifted);
+    }
+
+    void published(int size) {
+        if (sampled()) {
+            boardSize.record(size);
+        }
+    }
+
+    void batched(int writes, int superseded) {
+        batchSize.record(writes);
+        coalesced.increment(superseded);
+    }
+
+    public void serialized(long startNanos) {
+        record(listSerialization, startNanos);
+    }
+
+    /**
+     * Records the size of a response listing the whole board.
+     */
+    public void responded(long bytes) {
+        responseBytes.record(bytes);
+    }
+
+    private static boolean sampled() {
+        return ThreadLocalRandom.current().nextInt(SAMPLING) == 0;
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -1,63 +1,714 @@
 package com.whiteboard.widgets.service;
 
 import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.BoardStats;
 import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+import com.whiteboard.widgets.model.WidgetPage;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.request.Area;
 import com.whiteboard.widgets.service.request.WidgetContent;
-import lombok.AllArgsConstructor;
+import com.whiteboard.widgets.service.request.WidgetOperation;
+import com.whiteboard.widgets.service.request.WidgetPatch;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+/**
+ * Writers are serialized on the service monitor and publish a new immutable {@link WidgetBoard}; readers use
+ * whichever board is current at the time of the call, without locking.
+ *
+ * <p>Every mutation is recorded as a sequence of {@link WidgetChange}s, including the z-index shifts it causes, and
+ * appended to the {@link ChangeFeed}. The version of a published board is the sequence of its last change, so equal
+ * versions mean an unchanged board.
+ *
+ * <p>The changes are written to the {@link ChangeLog} before the board is published. Writers wait for them to be
+ * durable after leaving the monitor, so that writers arriving meanwhile share the same flush.
+ *
+ * <p>The most recent boards are kept in a {@link BoardHistory} to be read again or restored: at most
+ * {@link #HISTORY_BOARDS} of them, and no more than the changes kept by the feed, as long as the widgets rewritten
+ * since the oldest one do not exceed {@link #HISTORY_WIDGETS}. Since boards share their unchanged parts, keeping
+ * one only costs what the following writes copied.
+ *
+ * <p>Optionally, creations, updates, patches and deletions go through a {@link WritePipeline} instead: a single
+ * writer applies them in batches, publishing each batch as a whole and waiting once for its changes to be durable.
+ * Submissions are rejected while the pipeline is full. Batches of operations still take the monitor directly.
+ *
+ * <p>A service may instead replicate the board of a leader, applying the changes it numbered as they come and
+ * resetting to its snapshots when they no longer do; it must then take no writes of its own.
+ *
+ * <p>Writes, the waits for the monitor and the z-index shifts are recorded in the {@link WidgetMetrics}.
+ */
 @Service
-@AllArgsConstructor
 public class WidgetService {
-    private final Map<String, Widget> widgetsById;
-    private final SortedMap<Integer, Widget> widgetsByZIndex;
+    static final int HISTORY_BOARDS = 1_000;
+    static final int HISTORY_WIDGETS = 10_000;
 
-    public synchronized Widget create(WidgetContent input) {
-        return store(widgetBuilder(input).id(UUID.randomUUID().toString()).build());
+    private final ChangeFeed changeFeed;
+    private final ChangeLog changeLog;
+    private final WidgetMetrics metrics;
+    private final Optional<WritePipeline.Settings> pipelineSettings;
+    private final WritePipeline pipeline;
+    private final BoardHistory history;
+    private volatile WidgetBoard board;
+
+    public WidgetService(WidgetBoard board, ChangeFeed changeFeed, ChangeLog changeLog) {
+        this(board, changeFeed, changeLog, WidgetMetrics.NONE);
+    }
+
+    public WidgetService(WidgetBoard board, ChangeFeed changeFeed, ChangeLog changeLog, WidgetMetrics metrics) {
+        this(board, changeFeed, changeLog, metrics, Optional.empty());
+    }
+
+    @Autowired
+    public WidgetService(WidgetBoard board, ChangeFeed changeFeed, ChangeLog changeLog, WidgetMetrics metrics,
+                         Optional<WritePipeline.Settings> pipelineSettings) {
+        this.board = board;
+        this.changeFeed = changeFeed;
+        this.changeLog = changeLog;
+        this.metrics = metrics;
+        this.pipelineSettings = pipelineSettings;
+        changeFeed.reset(board.version());
+        this.history = new BoardHistory(Math.min(changeFeed.capacity(), HISTORY_BOARDS), HISTORY_WIDGETS);
+        history.add(board, 0);
+        this.pipeline = pipelineSettings.map(settings -> new WritePipeline(settings, this::applyMutations))
+                .orElse(null);
+    }
+
+    /**
+     * @throws RejectedExecutionException if the write pipeline is full
+     */
+    public Widget create(WidgetContent input) {
+        long start = System.nanoTime();
+        String id = WidgetIds.next();
+        if (pipeline != null) {
+            Widget created = submit(Mutation.create(id, input)).orElseThrow();
+            metrics.created(start);
+            return created;
+        }
+        Widget created;
+        synchronized (this) {
+            metrics.lockAcquired(start);
+            List<WidgetChange> changes = new ArrayList<>();
+            publish(store(board, id, input, changes), changes);
+            created = board.get(id).orElseThrow();
+        }
+        changeLog.sync();
+        metrics.created(start);
+        return created;
+    }
+
+    public Optional<Widget> update(String id, WidgetContent input) {
+        long start = System.nanoTime();
+        if (pipeline != null) {
+            Optional<Widget> updated = submit(Mutation.update(id, input));
+            metrics.updated(start);
+            return updated;
+        }
+        Optional<Widget> updated;
+        synchronized (this) {
+            metrics.lockAcquired(start);
+            updated = board.get(id)
+                    .map(stored -> {
+                        List<WidgetChange> changes = new ArrayList<>();
+                        publish(store(board, id, input, changes), changes);
+                        return board.get(id).orElseThrow();
+                    });
+        }
+        changeLog.sync();
+        metrics.updated(start);
+        return updated;
+    }
+
+    /**
+     * Changes the given fields of the widget with the id, if any. Unless its z-index changes, the widget is replaced
+     * in place, without touching the z order.
+     */
+    public Optional<Widget> patch(String id, WidgetPatch patch) {
+        long start = System.nanoTime();
+        if (pipeline != null) {
+            Optional<Widget> patched = submit(Mutation.patch(id, patch));
+            metrics.patched(start);
+            return patched;
+        }
+        Optional<Widget> patched;
+        synchronized (this) {
+            metrics.lockAcquired(start);
+            patched = board.get(id)
+                    .map(stored -> {
+                        List<WidgetChange> changes = new ArrayList<>();
+                        publish(store(board, id, patch.applyTo(stored), changes), changes);
+                        return board.get(id).orElseThrow();
+                    });
+        }
+        changeLog.sync();
+        metrics.patched(start);
+        return patched;
+    }
+
+    /**
+     * Applies the operations in order and publishes the resulting board at once, so that readers never see part of
+     * a batch. Nothing is applied if an update refers to an unknown widget.
+     *
+     * @return final state of the created and updated widgets which have not been deleted by the batch
+     */
+    public Optional<List<Widget>> apply(List<WidgetOperation> operations) {
+        long start = System.nanoTime();
+        Optional<List<Widget>> applied;
+        synchronized (this) {
+            metrics.lockAcquired(start);
+            applied = applyAtOnce(operations);
+        }
+        changeLog.sync();
+        metrics.applied(start);
+        return applied;
+    }
+
+    /**
+     * Replaces all the widgets of the board by the given ones, sorted by z-index once and built into a board at
+     * once instead of being stored one by one. Widgets keep their ids, z-indexes and dates; widgets without an id
+     * get one, and widgets sharing a z-index are stacked in the order given, pushing the following ones up as far
+     * as needed. The change feed sees the current widgets deleted, then the imported ones created in z order.
+     *
+     * @return version of the imported board
+     * @throws IllegalArgumentException if two widgets have the same id
+     */
+    public long importWidgets(List<Widget> widgets) {
+        long start = System.nanoTime();
+        List<Widget> sorted = new ArrayList<>(widgets.size());
+        for (Widget widget : widgets) {
+            sorted.add(widget.getId() == null ? widget.toBuilder().id(WidgetIds.next()).build() : widget);
+        }
+        sorted.sort(Comparator.comparingInt(Widget::getZ));
+        for (int index = 1; index < sorted.size(); index++) {
+            int below = sorted.get(index - 1).getZ();
+            if (sorted.get(index).getZ() <= below) {
+                sorted.set(index, sorted.get(index).toBuilder().z(below + 1).build());
+            }
+        }
+        WidgetBoard imported = WidgetBoard.of(sorted, 0, board.storage());
+        long version;
+        long locking = System.nanoTime();
+        synchronized (this) {
+            metrics.lockAcquired(locking);
+            List<WidgetChange> changes = new ArrayList<>(board.size() + sorted.size());
+            board.stream().forEach(widget -> changes.add(WidgetChange.builder()
+                    .type(WidgetChange.Type.DELETED)
+                    .id(widget.getId())
+                    .build()));
+            for (Widget widget : sorted) {
+                changes.add(WidgetChange.builder().type(WidgetChange.Type.CREATED).widget(widget).build());
+            }
+            publish(imported, changes);
+            version = board.version();
+        }
+        changeLog.sync();
+        metrics.imported(start);
+        return version;
+    }
+
+    private Optional<List<Widget>> applyAtOnce(List<WidgetOperation> operations) {
+        WidgetBoard updated = board;
+        List<WidgetChange> changes = new ArrayList<>();
+        Set<String> touched = new LinkedHashSet<>();
+        for (WidgetOperation operation : operations) {
+            switch (operation.getType()) {
+                case CREATE:
+                    String id = WidgetIds.next();
+                    updated = store(updated, id, operation.getContent(), changes);
+                    touched.add(id);
+                    break;
+                case UPDATE:
+                    if (updated.get(operation.getId()).isEmpty()) {
+                        return Optional.empty();
+                    }
+                    updated = store(updated, operation.getId(), operation.getContent(), changes);
+                    touched.add(operation.getId());
+                    break;
+                case DELETE:
+                    updated = remove(updated, operation.getId(), changes);
+                    touched.remove(operation.getId());
+                    break;
+            }
+        }
+        publish(updated, changes);
+        WidgetBoard result = updated;
+        return Optional.of(touched.stream()
+                .map(result::get)
+                .map(Optional::orElseThrow)
+                .collect(ImmutableList.toImmutableList()));
+    }
+
+    private Optional<Widget> submit(Mutation mutation) {
+        pipeline.submit(mutation);
+        try {
+            return mutation.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Applies a batch of the write pipeline in order, publishes the resulting board at once, and completes each
+     * mutation with the widget as it stored it.
+     *
+     * <p>In-place replacements are merged before they reach the board: successive ones of the same widget leave a
+     * single replacement and a single change, that of the last one, and they are all applied together once the
+     * batch moves a widget, deletes one or ends. Nothing in between depends on their content or can shift them.
+     */
+    private void applyMutations(List<Mutation> batch) {
+        long start = System.nanoTime();
+        List<Optional<Widget>> results = new ArrayList<>(batch.size());
+        int coalesced = 0;
+        synchronized (this) {
+            metrics.lockAcquired(start);
+            WidgetBoard updated = board;
+            List<WidgetChange> changes = new ArrayList<>();
+            Map<String, Integer> replacedAt = new HashMap<>();
+            for (Mutation mutation : batch) {
+                Integer replaced = replacedAt.get(mutation.id);
+                Optional<Widget> stored = replaced != null
+                        ? Optional.of(changes.get(replaced).getWidget())
+                        : updated.get(mutation.id);
+                if (mutation.type != Mutation.Type.CREATE && stored.isEmpty()) {
+                    results.add(Optional.empty());
+                    continue;
+                }
+                WidgetContent content = mutation.type == Mutation.Type.PATCH
+                        ? mutation.patch.applyTo(stored.orElseThrow())
+                        : mutation.content;
+                if (mutation.type != Mutation.Type.DELETE && stored.isPresent() && isInPlace(stored.get(), content)) {
+                    Widget widget = widgetBuilder(updated, content).id(mutation.id).build();
+                    WidgetChange change = WidgetChange.builder().type(WidgetChange.Type.UPDATED).widget(widget).build();
+                    metrics.stored(0);
+                    if (replaced == null) {
+                        replacedAt.put(mutation.id, changes.size());
+                        changes.add(change);
+                    } else {
+                        changes.set(replaced, change);
+                        coalesced++;
+                    }
+                    results.add(Optional.of(widget));
+                    continue;
+                }
+                updated = replaceAll(updated, changes, replacedAt);
+                if (mutation.type == Mutation.Type.DELETE) {
+                    updated = remove(updated, mutation.id, changes);
+                    results.add(Optional.empty());
+                    continue;
+                }
+                updated = store(updated, mutation.id, content, changes);
+                results.add(updated.get(mutation.id));
+            }
+            publish(replaceAll(updated, changes, replacedAt), changes);
+        }
+        changeLog.sync();
+        metrics.batched(batch.size(), coalesced);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(results.get(i));
+        }
+    }
+
+    /**
+     * Applies the pending in-place replacements, whose changes are at the given indexes, and forgets them.
+     */
+    private static WidgetBoard replaceAll(WidgetBoard board, List<WidgetChange> changes,
+                                          Map<String, Integer> replacedAt) {
+        WidgetBoard replaced = board;
+        for (int index : replacedAt.values()) {
+            replaced = replaced.replace(changes.get(index).getWidget());
+        }
+        replacedAt.clear();
+        return replaced;
+    }
+
+    /**
+     * Publishes again the board with the given version, as a new version.
+     *
+     * @return widgets of the restored board with its new version, or empty if the board with the version or the
+     * changes made since are no longer kept
+     */
+    public Optional<Versioned<List<Widget>>> restore(long version) {
+        return restore(current -> history.get(version));
+    }
+
+    /**
+     * Publishes again the board preceding the current one, as a new version. Undoing twice redoes.
+     *
+     * @return widgets of the restored board with its new version, or empty if the previous board or the changes
+     * made since are no longer kept
+     */
+    public Optional<Versioned<List<Widget>>> undo() {
+        return restore(current -> history.before(current.version()));
+    }
+
+    private Optional<Versioned<List<Widget>>> restore(Function<WidgetBoard, Optional<WidgetBoard>> target) {
+        long start = System.nanoTime();
+        Optional<WidgetBoard> restored;
+        synchronized (this) {
+            metrics.lockAcquired(start);
+            WidgetBoard current = board;
+            restored = target.apply(current)
+                    .flatMap(restoring -> changeFeed.since(restoring.version())
+                            .map(undone -> {
+                                List<WidgetChange> changes = revert(current, restoring, undone);
+                                publish(restoring, changes);
+                                return board;
+                            }));
+        }
+        changeLog.sync();
+        metrics.restored(start);
+        return restored.map(published -> new Versioned<>(published.version(), published.list()));
+    }
+
+    /**
+     * Changes turning the current board back into the target board, given the changes made since the target. Only
+     * the z-index range touched by those changes can differ: the widgets differing in it are deleted first, then
+     * those of the target are created again in z order, into z-indexes left free, so that nothing shifts.
+     */
+    private static List<WidgetChange> revert(WidgetBoard current, WidgetBoard target, List<WidgetChange> undone) {
+        int fromZ = Integer.MAX_VALUE;
+        int toZ = Integer.MIN_VALUE;
+        for (WidgetChange change : undone) {
+            List<Integer> touched = new ArrayList<>(3);
+            switch (change.getType()) {
+                case SHIFTED:
+                    touched.add(change.getFromZ());
+                    touched.add(change.getToZ() + 1);
+                    break;
+                case CREATED:
+                case UPDATED:
+                    touched.add(change.getWidget().getZ());
+                    target.get(change.getWidget().getId()).ifPresent(widget -> touched.add(widget.getZ()));
+                    break;
+                case DELETED:
+                    target.get(change.getId()).ifPresent(widget -> touched.add(widget.getZ()));
+                    break;
+            }
+            for (int z : touched) {
+                fromZ = Math.min(fromZ, z);
+                toZ = Math.max(toZ, z);
+            }
+        }
+        if (fromZ > toZ) {
+            return new ArrayList<>();
+        }
+        List<Widget> after = current.listBetween(fromZ, toZ);
+        List<Widget> before = target.listBetween(fromZ, toZ);
+        Set<Widget> kept = new HashSet<>(after);
+        kept.retainAll(before);
+        List<WidgetChange> changes = new ArrayList<>();
+        for (Widget widget : after) {
+            if (!kept.contains(widget)) {
+                changes.add(WidgetChange.builder().type(WidgetChange.Type.DELETED).id(widget.getId()).build());
+            }
+        }
+        for (Widget widget : before) {
+            if (!kept.contains(widget)) {
+                changes.add(WidgetChange.builder().type(WidgetChange.Type.CREATED).widget(widget).build());
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Applies changes numbered by the leader of a replicated board, skipping those the board already has, and
+     * publishes them with their sequences unchanged, so that versions mean the same on every replica.
+     *
+     * @throws IllegalStateException if a change is missing before them; nothing is applied then
+     */
+    public void replicate(List<WidgetChange> changes) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            metrics.lockAcquired(start);
+            WidgetBoard updated = board;
+            List<WidgetChange> applied = new ArrayList<>(changes.size());
+            for (WidgetChange change : changes) {
+                if (change.getSequence() <= updated.version()) {
+                    continue;
+                }
+                if (change.getSequence() != updated.version() + 1) {
+                    throw new IllegalStateException("Expected change " + (updated.version() + 1) + ", got "
+                            + change.getSequence());
+                }
+                updated = updated.apply(change);
+                applied.add(change);
+            }
+            if (applied.isEmpty()) {
+                return;
+            }
+            publishNumbered(updated, applied);
+        }
+        changeLog.sync();
+        metrics.replicated(start);
+    }
+
+    /**
+     * Replaces the board by a snapshot of the leader of a replicated board, its widgets in z order with the version
+     * they had, when the changes leading to it are no longer available. The feed restarts after the snapshot, so
+     * subscribers behind it are told their changes are gone. The change log cannot record the jump, so only services
+     * without one may be reset.
+     */
+    public void reset(List<Widget> widgets, long version) {
+        WidgetBoard snapshot = WidgetBoard.of(widgets, version, board.storage());
+        synchronized (this) {
+            history.add(snapshot, board.size());
+            board = snapshot;
+            metrics.published(snapshot.size());
+            changeFeed.reset(snapshot.version());
+        }
+    }
+
+    /**
+     * Numbers the changes leading to the updated board, logs them, and publishes both.
+     */
+    private void publish(WidgetBoard updated, List<WidgetChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        long sequence = board.version();
+        ImmutableList.Builder<WidgetChange> builder = ImmutableList.builderWithExpectedSize(changes.size());
+        for (WidgetChange change : changes) {
+            builder.add(change.toBuilder().sequence(++sequence).build());
+        }
+        publishNumbered(updated.withVersion(sequence), builder.build());
+    }
+
+    /**
+     * Logs and publishes a board together with the numbered changes leading to it.
+     */
+    private void publishNumbered(WidgetBoard published, List<WidgetChange> numbered) {
+        changeLog.append(numbered, published);
+        board = published;
+        history.add(published, numbered.size());
+        metrics.published(published.size());
+        changeFeed.append(numbered);
     }
 
-    public synchronized Optional<Widget> update(String id, WidgetContent input) {
-        return get(id)
-                .map(stored -> {
-                    widgetsByZIndex.remove(stored.getZ());
-                    return widgetBuilder(input).id(id).build();
-                }).map(this::store);
+    /**
+     * Replaces the widget with the id, if any, by a widget built from the input. A widget keeping its z-index is
+     * replaced in place; otherwise it is removed and inserted again, shifting the widgets above its new z-index.
+     */
+    private WidgetBoard store(WidgetBoard board, String id, WidgetContent input, List<WidgetChange> changes) {
+        Optional<Widget> stored = board.get(id);
+        if (stored.isPresent() && isInPlace(stored.get(), input)) {
+            Widget widget = widgetBuilder(board, input).id(id).build();
+            metrics.stored(0);
+            changes.add(WidgetChange.builder().type(WidgetChange.Type.UPDATED).widget(widget).build());
+            return board.replace(widget);
+        }
+        WidgetBoard remaining = board.remove(id);
+        Widget widget = widgetBuilder(remaining, input).id(id).build();
+        int shifted = remaining.contiguousFrom(widget.getZ());
+        metrics.stored(shifted);
+        if (shifted > 0) {
+            changes.add(WidgetChange.builder()
+                    .type(WidgetChange.Type.SHIFTED)
+                    .fromZ(widget.getZ())
+                    .toZ(widget.getZ() + shifted - 1)
+                    .build());
+        }
+        changes.add(WidgetChange.builder()
+                .type(remaining == board ? WidgetChange.Type.CREATED : WidgetChange.Type.UPDATED)
+                .widget(widget)
+                .build());
+        return remaining.insert(widget);
     }
 
-    private Widget store(Widget input) {
-        Optional<Widget> toInsert = Optional.of(input);
-        while (toInsert.isPresent()) {
-            Widget inserting = toInsert.get();
-            widgetsById.put(inserting.getId(), inserting);
-            toInsert = Optional.ofNullable(widgetsByZIndex.put(inserting.getZ(), inserting))
-                    .filter(replaced -> !replaced.getId().equals(inserting.getId()))
-                    .map(replaced -> replaced.toBuilder().z(replaced.getZ() + 1).build());
+    /**
+     * Whether storing the input replaces the widget in place, keeping its z-index.
+     */
+    private static boolean isInPlace(Widget stored, WidgetContent input) {
+        return input.getZ().equals(Optional.of(stored.getZ()));
+    }
+
+    private static WidgetBoard remove(WidgetBoard board, String id, List<WidgetChange> changes) {
+        WidgetBoard remaining = board.remove(id);
+        if (remaining != board) {
+            changes.add(WidgetChange.builder().type(WidgetChange.Type.DELETED).id(id).build());
         }
-        return input;
+        return remaining;
     }
 
-    private Widget.WidgetBuilder widgetBuilder(WidgetContent input) {
+    private static Widget.WidgetBuilder widgetBuilder(WidgetBoard board, WidgetContent input) {
         return Widget.builder()
                 .coordinates(input.getCoordinates())
                 .height(input.getHeight())
                 .width(input.getWidth())
-                .z(input.getZ().orElseGet(() -> widgetsByZIndex.isEmpty() ? 0 : widgetsByZIndex.lastKey() + 1))
+                .z(input.getZ().orElseGet(() -> board.isEmpty() ? 0 : board.lastZ() + 1))
                 .lastModification(LocalDateTime.now());
     }
 
-    public synchronized void delete(String id) {
-        widgetsByZIndex.remove(widgetsById.get(id).getZ());
-        widgetsById.remove(id);
+    public void delete(String id) {
+        long start = System.nanoTime();
+        if (pipeline != null) {
+            submit(Mutation.delete(id));
+            metrics.deleted(start);
+            return;
+        }
+        synchronized (this) {
+            metrics.lockAcquired(start);
+            List<WidgetChange> changes = new ArrayList<>();
+            publish(remove(board, id, changes), changes);
+        }
+        changeLog.sync();
+        metrics.deleted(start);
+    }
+
+    public long version() {
+        return board.version();
+    }
+
+    /**
+     * Changes made after the board with the given version, or empty if they are no longer all kept.
+     */
+    public Optional<List<WidgetChange>> changesSince(long version) {
+        return changeFeed.since(version);
+    }
+
+    /**
+     * Registers a listener called after changes have been published, on the writing thread.
+     */
+    public void addChangeListener(Runnable listener) {
+        changeFeed.addListener(listener);
+    }
+
+    public void removeChangeListener(Runnable listener) {
+        changeFeed.removeListener(listener);
+    }
+
+    public boolean hasChangeListeners() {
+        return changeFeed.hasListeners();
+    }
+
+    WidgetMetrics metrics() {
+        return metrics;
+    }
+
+    Optional<WritePipeline.Settings> pipelineSettings() {
+        return pipelineSettings;
+    }
+
+    /**
+     * Stops the write pipeline, if any, once the writes already submitted are applied.
+     */
+    @PreDestroy
+    public void close() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    public boolean isEmpty() {
+        return board.isEmpty();
     }
 
     public Optional<Widget> get(String id) {
-        return Optional.ofNullable(widgetsById.get(id));
+        return board.get(id);
+    }
+
+    /**
+     * Widget with the id, if any, along with the version of the board it was read from.
+     */
+    public Versioned<Optional<Widget>> getVersioned(String id) {
+        WidgetBoard current = board;
+        return new Versioned<>(current.version(), current.get(id));
     }
 
     public List<Widget> list() {
-        return widgetsByZIndex.values().stream().collect(ImmutableList.toImmutableList());
+        return board.list();
+    }
+
+    /**
+     * All widgets of the board with the given version, if it is still kept.
+     */
+    public Optional<List<Widget>> listAt(long version) {
+        return history.get(version).map(WidgetBoard::list);
+    }
+
+    /**
+     * All widgets in z order, along with the version of the board they were read from.
+     */
+    public Versioned<List<Widget>> listVersioned() {
+        WidgetBoard current = board;
+        return new Versioned<>(current.version(), current.list());
+    }
+
+    /**
+     * Widgets of the current board in z order, read lazily: later changes do not affect the stream.
+     */
+    public Stream<Widget> stream() {
+        return board.stream();
+    }
+
+    /**
+     * Page of at most {@code limit} widgets in z order, following the page whose cursor is {@code after}, or empty if
+     * the cursor is invalid.
+     */
+    public Optional<WidgetPage> list(Optional<String> after, int limit) {
+        WidgetBoard current = board;
+        if (after.isEmpty()) {
+            return Optional.of(page(current, Integer.MIN_VALUE, limit));
+        }
+        return after.flatMap(PageCursor::decode)
+                .map(cursor -> cursor.lastZ(current))
+                .map(lastZ -> lastZ == Integer.MAX_VALUE
+                        ? WidgetPage.builder().widgets(ImmutableList.of()).build()
+                        : page(current, lastZ + 1, limit));
+    }
+
+    private static WidgetPage page(WidgetBoard board, int fromZ, int limit) {
+        List<Widget> widgets = board.listFrom(fromZ, limit + 1);
+        if (widgets.size() <= limit) {
+            return WidgetPage.builder().widgets(widgets).build();
+        }
+        List<Widget> page = widgets.subList(0, limit);
+        return WidgetPage.builder()
+                .widgets(page)
+                .next(PageCursor.after(page.get(limit - 1)).encode())
+                .build();
+    }
+
+    /**
+     * Widgets with z-indexes from {@code fromZ} to {@code toZ}, bounds included, in z order, along with the version
+     * of the board they were read from. Only the widgets in the range are visited.
+     */
+    public Versioned<List<Widget>> listBetween(int fromZ, int toZ) {
+        WidgetBoard current = board;
+        return new Versioned<>(current.version(), current.listBetween(fromZ, toZ));
+    }
+
+    /**
+     * Count, z-index range and bounding box of the board, each kept up to date by the board itself, so reading them
+     * costs O(log n) however large the board.
+     */
+    public BoardStats stats() {
+        WidgetBoard current = board;
+        return BoardStats.builder()
+                .version(current.version())
+                .count(current.size())
+                .minZ(current.isEmpty() ? null : current.firstZ())
+                .maxZ(current.isEmpty() ? null : current.lastZ())
+                .bounds(current.bounds().orElse(null))
+                .build();
+    }
+
+    public List<Widget> list(Area area) {
+        return board.findIntersecting(area.getX1(), area.getY1(), area.getX2(), area.getY2());
+    }
+
+    public Optional<Widget> findTopmostAt(int x, int y) {
+        return board.findTopmostAt(x, y);
     }
 }
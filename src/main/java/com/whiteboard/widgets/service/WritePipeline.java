@@ -0,0 +1,154 @@
+package com.whiteboard.widgets.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded ring buffer of {@link Mutation}s drained by a single writer thread, which hands them over in batches of
+ * at most {@link Settings#getBatchSize()} in submission order.
+ *
+ * <p>Submitters claim a slot by advancing the tail, without locking; a submission finding the ring full is rejected
+ * rather than waiting. The writer parks while the ring is empty. On close, the mutations already submitted are
+ * still applied.
+ */
+public final class WritePipeline implements AutoCloseable {
+    private final AtomicReferenceArray<Mutation> slots;
+    private final int mask;
+    private final int batchSize;
+    private final Consumer<List<Mutation>> applier;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+    private volatile boolean finished;
+
+    WritePipeline(Settings settings, Consumer<List<Mutation>> applier) {
+        int capacity = Integer.highestOneBit(Math.max(settings.getCapacity() - 1, 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.batchSize = settings.getBatchSize();
+        this.applier = applier;
+        this.writer = new ThreadFactoryBuilder().setNameFormat("widget-writer-%d").setDaemon(true).build()
+                .newThread(this::drain);
+        writer.start();
+    }
+
+    /**
+     * @throws RejectedExecutionException if the ring is full or the pipeline closed
+     */
+    void submit(Mutation mutation) {
+        while (true) {
+            if (closed) {
+                throw new RejectedExecutionException("Write pipeline closed");
+            }
+            long claimed = tail.get();
+            if (claimed - head.get() > mask) {
+                throw new RejectedExecutionException("Write pipeline full");
+            }
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.set((int) claimed & mask, mutation);
+                if (finished) {
+                    reject((int) claimed & mask, mutation);
+                }
+                break;
+            }
+        }
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void drain() {
+        List<Mutation> batch = new ArrayList<>(batchSize);
+        while (true) {
+            long next = head.get();
+            while (batch.size() < batchSize) {
+                Mutation mutation = slots.get((int) next & mask);
+                if (mutation == null) {
+                    break;
+                }
+                slots.lazySet((int) next & mask, null);
+                head.set(++next);
+                batch.add(mutation);
+            }
+            if (!batch.isEmpty()) {
+                apply(batch);
+                batch.clear();
+            } else if (closed && tail.get() == next) {
+                finish(next);
+                return;
+            } else {
+                sleeping = true;
+                if (tail.get() == next && !closed) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Rejects the mutations submitted after the writer found the ring empty for the last time. A submitter which
+     * does not see the writer finished has filled its slot before, so the writer sees the mutation; when both see
+     * it, whichever clears the slot rejects it.
+     */
+    private void finish(long next) {
+        finished = true;
+        for (long claimed = next; claimed < tail.get(); claimed++) {
+            Mutation mutation = slots.get((int) claimed & mask);
+            if (mutation != null) {
+                reject((int) claimed & mask, mutation);
+            }
+        }
+    }
+
+    private void reject(int slot, Mutation mutation) {
+        if (slots.compareAndSet(slot, mutation, null)) {
+            mutation.result.completeExceptionally(new RejectedExecutionException("Write pipeline closed"));
+        }
+    }
+
+    private void apply(List<Mutation> batch) {
+        try {
+            applier.accept(batch);
+        } catch (RuntimeException | Error e) {
+            batch.forEach(mutation -> mutation.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Rejects further submissions and waits for the writer to apply the pending ones.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Value
+    @Builder
+    public static class Settings {
+        /**
+         * Mutations waiting at most, rounded up to a power of two.
+         */
+        @Builder.Default
+        int capacity = 4_096;
+        @Builder.Default
+        int batchSize = 256;
+    }
+}
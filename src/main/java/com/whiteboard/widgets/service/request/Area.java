@@ -0,0 +1,16 @@
+package com.whiteboard.widgets.service.request;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Rectangle between two opposite corners, borders included.
+ */
+@Value
+@Builder
+public class Area {
+    int x1;
+    int y1;
+    int x2;
+    int y2;
+}
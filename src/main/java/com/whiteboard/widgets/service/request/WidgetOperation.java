@@ -0,0 +1,37 @@
+package com.whiteboard.widgets.service.request;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * One mutation of a batch. Creations need content, updates an id and content, deletions an id.
+ */
+@Value
+@Builder
+@Jacksonized
+public class WidgetOperation {
+    Type type;
+    String id;
+    WidgetContent content;
+
+    public boolean isValid() {
+        if (type == null) {
+            return false;
+        }
+        switch (type) {
+            case CREATE:
+                return content != null;
+            case UPDATE:
+                return id != null && content != null;
+            default:
+                return id != null;
+        }
+    }
+
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+}
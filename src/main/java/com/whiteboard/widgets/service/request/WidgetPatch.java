@@ -0,0 +1,38 @@
+package com.whiteboard.widgets.service.request;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.util.Optional;
+
+/**
+ * Fields of a widget to change, the others being kept.
+ */
+@Value
+@Builder
+@Jacksonized
+public class WidgetPatch {
+    @Builder.Default
+    Optional<Coordinates> coordinates = Optional.empty();
+    @Builder.Default
+    Optional<Integer> z = Optional.empty();
+    @Builder.Default
+    Optional<Integer> width = Optional.empty();
+    @Builder.Default
+    Optional<Integer> height = Optional.empty();
+
+    /**
+     * Content of the widget once patched, with its z-index set.
+     */
+    public WidgetContent applyTo(Widget widget) {
+        return WidgetContent.builder()
+                .coordinates(coordinates.orElse(widget.getCoordinates()))
+                .z(Optional.of(z.orElse(widget.getZ())))
+                .width(width.orElse(widget.getWidth()))
+                .height(height.orElse(widget.getHeight()))
+                .build();
+    }
+}
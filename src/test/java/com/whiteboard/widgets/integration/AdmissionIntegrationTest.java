@@ -0,0 +1,68 @@
+package com.whiteboard.widgets.integration;
+
+import com.whiteboard.widgets.service.WidgetService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "widgets.limits.writes.initial=1",
+        "widgets.limits.writes.min=1",
+        "widgets.limits.writes.max=1",
+        "widgets.limits.queue-wait=20ms",
+        "widgets.limits.retry-after=2s"})
+@AutoConfigureMockMvc
+class AdmissionIntegrationTest {
+    private static final String CONTENT = "{\"width\":10,\"height\":10}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WidgetService widgetService;
+
+    @Test
+    void writeBudgetExhausted_writesShedReadsServed() throws Exception {
+        AtomicInteger heldStatus = new AtomicInteger();
+        Thread held;
+        synchronized (widgetService) {
+            held = new Thread(() -> {
+                try {
+                    heldStatus.set(mockMvc.perform(post("/widgets")
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .content(CONTENT))
+                            .andReturn().getResponse().getStatus());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            held.start();
+            while (held.getState() != Thread.State.BLOCKED) {
+                Thread.sleep(1);
+            }
+
+            mockMvc.perform(post("/widgets").contentType(MediaType.APPLICATION_JSON).content(CONTENT))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"));
+            mockMvc.perform(get("/widgets/stats"))
+                    .andExpect(status().isOk());
+        }
+        held.join();
+
+        assertEquals(200, heldStatus.get());
+        mockMvc.perform(post("/widgets").contentType(MediaType.APPLICATION_JSON).content(CONTENT))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,68 @@
+package com.whiteboard.widgets.integration;
+
+import com.whiteboard.widgets.api.ChangeSubscriptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.mvc.async.request-timeout=200ms", "widgets.changes.heartbeat=100ms"})
+class ChangesTimeoutIntegrationTest {
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void changes_outliveAsyncRequestTimeout() throws Exception {
+        HttpResponse<Stream<String>> changes = client.send(HttpRequest.newBuilder(uri("/widgets/changes"))
+                .header("Accept", "text/event-stream")
+                .build(), HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, changes.statusCode());
+        CompletableFuture<String> event = CompletableFuture.supplyAsync(() -> changes.body()
+                .filter(line -> line.startsWith("data:"))
+                .findFirst()
+                .orElse("stream ended"));
+
+        Thread.sleep(600);
+        HttpResponse<String> created = client.send(HttpRequest.newBuilder(uri("/widgets"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"width\":10,\"height\":10}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, created.statusCode());
+        String data = event.get(10, TimeUnit.SECONDS);
+        assertTrue(data.contains("CREATED"), data);
+    }
+
+    @Test
+    void changes_quiet_pinged() throws Exception {
+        HttpResponse<Stream<String>> changes = client.send(HttpRequest.newBuilder(uri("/widgets/changes"))
+                .header("Accept", "text/event-stream")
+                .build(), HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, changes.statusCode());
+
+        String ping = CompletableFuture.supplyAsync(() -> changes.body()
+                .filter(line -> line.equals(ChangeSubscriptions.PING))
+                .findFirst()
+                .orElse("stream ended"))
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(ChangeSubscriptions.PING, ping);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
@@ -1,22 +1,32 @@
 package com.whiteboard.widgets.integration;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.api.ChangeSubscriptions;
 import com.whiteboard.widgets.model.Coordinates;
 import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+import com.whiteboard.widgets.model.WidgetPage;
 import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetOperation;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -25,6 +35,8 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -39,11 +51,14 @@ class WidgetIntegrationTest {
 
     private final MockMvc mockMvc;
 
+    private final MeterRegistry meterRegistry;
+
     private final ObjectMapper objectMapper;
 
     @Autowired
-    public WidgetIntegrationTest(MockMvc mockMvc) {
+    public WidgetIntegrationTest(MockMvc mockMvc, MeterRegistry meterRegistry) {
         this.mockMvc = mockMvc;
+        this.meterRegistry = meterRegistry;
         objectMapper = new ObjectMapper();
         objectMapper.registerModule(new Jdk8Module());
         objectMapper.registerModule(new JavaTimeModule());
@@ -210,6 +225,362 @@ class WidgetIntegrationTest {
         deleteWidget(widgetNew2.getId());
     }
 
+    @Test
+    void list_notModified() throws Exception {
+        Widget widget = createWidget(Optional.of(1));
+
+        String etag = mockMvc.perform(get("/widgets"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/widgets").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/widgets/{id}", widget.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        Widget updated = updateWidget(widget.getId(), Optional.of(2));
+
+        mockMvc.perform(get("/widgets").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, Matchers.not(etag)))
+                .andExpect(content().string(Matchers.equalTo(
+                        objectMapper.writeValueAsString(ImmutableList.of(updated)))));
+        mockMvc.perform(get("/widgets/{id}", widget.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.equalTo(objectMapper.writeValueAsString(updated))));
+
+        deleteWidget(widget.getId());
+    }
+
+    @Test
+    void list_notModified_notSerialized() throws Exception {
+        mockMvc.perform(post("/boards/{boardId}/widgets", "not-modified")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(widgetContent(Optional.of(1)))))
+                .andExpect(status().isOk());
+        String etag = mockMvc.perform(get("/boards/{boardId}/widgets/stats", "not-modified"))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        long serialized = meterRegistry.get("widgets.list.serialization").timer().count();
+
+        mockMvc.perform(get("/boards/{boardId}/widgets", "not-modified").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        assertEquals(serialized, meterRegistry.get("widgets.list.serialization").timer().count());
+        mockMvc.perform(get("/boards/{boardId}/widgets", "not-modified"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+        assertEquals(serialized + 1, meterRegistry.get("widgets.list.serialization").timer().count());
+    }
+
+    @Test
+    void stream_ok() throws Exception {
+        Widget widget1 = createWidget(Optional.of(1));
+        Widget widget2 = createWidget(Optional.of(2));
+
+        MvcResult result = mockMvc.perform(get("/widgets").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.equalTo(objectMapper.writeValueAsString(widget1) + "\n"
+                        + objectMapper.writeValueAsString(widget2) + "\n")));
+
+        deleteWidget(widget1.getId());
+        deleteWidget(widget2.getId());
+    }
+
+    @Test
+    void list_wait_answersOnChange() throws Exception {
+        String etag = mockMvc.perform(get("/widgets"))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        MvcResult result = mockMvc.perform(get("/widgets").param("wait", "30")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        Widget widget = createWidget(Optional.of(1));
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, Matchers.not(etag)))
+                .andExpect(content().string(Matchers.equalTo(
+                        objectMapper.writeValueAsString(ImmutableList.of(widget)))));
+        mockMvc.perform(get("/widgets").param("wait", "0"))
+                .andExpect(status().isBadRequest());
+
+        deleteWidget(widget.getId());
+    }
+
+    @Test
+    void exportImport_sameWidgets() throws Exception {
+        Widget widget1 = createWidget(Optional.of(1));
+        Widget widget2 = createWidget(Optional.of(2));
+        MvcResult result = mockMvc.perform(get("/widgets:export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String exported = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        deleteWidget(widget1.getId());
+
+        mockMvc.perform(post("/widgets:import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(exported))
+                .andExpect(status().isNoContent())
+                .andExpect(header().exists(HttpHeaders.ETAG));
+        verifyList(List.of(widget1, widget2));
+
+        mockMvc.perform(post("/widgets:import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(objectMapper.writeValueAsString(widget1) + "\n"
+                                + objectMapper.writeValueAsString(widget1)))
+                .andExpect(status().isBadRequest());
+        verifyList(List.of(widget1, widget2));
+
+        deleteWidget(widget1.getId());
+        deleteWidget(widget2.getId());
+    }
+
+    @Test
+    void changes_ok() throws Exception {
+        Widget widget1 = createWidget(Optional.of(1));
+        String etag = mockMvc.perform(get("/widgets"))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        long version = Long.parseLong(etag.replace("\"", ""));
+        Widget widget2 = createWidget(Optional.of(1));
+
+        MvcResult result = mockMvc.perform(get("/widgets/changes").param("since", String.valueOf(version))
+                .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String expected = "id:" + (version + 1) + "\ndata:" + objectMapper.writeValueAsString(WidgetChange.builder()
+                .sequence(version + 1).type(WidgetChange.Type.SHIFTED).fromZ(1).toZ(1).build()) + "\n\n"
+                + "id:" + (version + 2) + "\ndata:" + objectMapper.writeValueAsString(WidgetChange.builder()
+                .sequence(version + 2).type(WidgetChange.Type.CREATED).widget(widget2).build()) + "\n\n"
+                + ChangeSubscriptions.CURRENT + "\n\n";
+        for (int attempt = 0; attempt < 100 && !result.getResponse().getContentAsString().equals(expected); attempt++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, result.getResponse().getContentAsString());
+        assertEquals(MediaType.TEXT_EVENT_STREAM_VALUE, result.getResponse().getContentType());
+
+        deleteWidget(widget1.getId());
+        deleteWidget(widget2.getId());
+    }
+
+    @Test
+    void changes_unknownVersion_gone() throws Exception {
+        mockMvc.perform(get("/widgets/changes").param("since", "-1").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isGone());
+        mockMvc.perform(get("/widgets/changes").param("since", String.valueOf(Long.MAX_VALUE))
+                .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isGone());
+    }
+
+    @Test
+    void listAtVersion_undo_ok() throws Exception {
+        Widget widget1 = createWidget(Optional.of(1));
+        String etag = mockMvc.perform(get("/widgets"))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        long version = Long.parseLong(etag.replace("\"", ""));
+        createWidget(Optional.of(1));
+
+        String expected = objectMapper.writeValueAsString(ImmutableList.of(widget1));
+        mockMvc.perform(get("/widgets").param("version", String.valueOf(version)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().string(Matchers.equalTo(expected)));
+        mockMvc.perform(get("/widgets").param("version", String.valueOf(Long.MAX_VALUE)))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/widgets:undo").param("version", String.valueOf(version)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, Matchers.not(etag)))
+                .andExpect(content().string(Matchers.equalTo(expected)));
+        verifyList(List.of(widget1));
+
+        deleteWidget(widget1.getId());
+    }
+
+    @Test
+    void list_paged_ok() throws Exception {
+        Widget widget1 = createWidget(Optional.of(1));
+        Widget widget2 = createWidget(Optional.of(2));
+
+        WidgetPage first = objectMapper.readValue(mockMvc.perform(get("/widgets").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(), WidgetPage.class);
+        assertEquals(ImmutableList.of(widget1), first.getWidgets());
+
+        mockMvc.perform(get("/widgets").param("limit", "1").param("after", first.getNext()))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.equalTo(objectMapper.writeValueAsString(
+                        WidgetPage.builder().widgets(ImmutableList.of(widget2)).build()))));
+
+        deleteWidget(widget1.getId());
+        deleteWidget(widget2.getId());
+    }
+
+    @Test
+    void list_invalidPage_badRequest() throws Exception {
+        mockMvc.perform(get("/widgets").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/widgets").param("limit", "1").param("after", "invalid"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void list_area_ok() throws Exception {
+        Widget widget1 = createWidget(Optional.of(1));
+        Widget widget2 = createWidget(Optional.of(2));
+
+        mockMvc.perform(get("/widgets")
+                .param("x1", "0").param("y1", "0").param("x2", String.valueOf(X)).param("y2", String.valueOf(Y)))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.equalTo(
+                        objectMapper.writeValueAsString(ImmutableList.of(widget1, widget2)))));
+
+        mockMvc.perform(get("/widgets")
+                .param("x1", "-100").param("y1", "-100").param("x2", "-1").param("y2", "-1"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+
+        deleteWidget(widget1.getId());
+        deleteWidget(widget2.getId());
+    }
+
+    @Test
+    void list_zRange_ok() throws Exception {
+        Widget widget1 = createWidget(Optional.of(1));
+        Widget widget2 = createWidget(Optional.of(2));
+        Widget widget3 = createWidget(Optional.of(3));
+
+        mockMvc.perform(get("/widgets").param("zFrom", "2").param("zTo", "3"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(content().string(Matchers.equalTo(
+                        objectMapper.writeValueAsString(ImmutableList.of(widget2, widget3)))));
+        mockMvc.perform(get("/widgets").param("zFrom", "3"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.equalTo(
+                        objectMapper.writeValueAsString(ImmutableList.of(widget3)))));
+        mockMvc.perform(get("/widgets").param("zTo", "1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.equalTo(
+                        objectMapper.writeValueAsString(ImmutableList.of(widget1)))));
+
+        deleteWidget(widget1.getId());
+        deleteWidget(widget2.getId());
+        deleteWidget(widget3.getId());
+    }
+
+    @Test
+    void stats_ok() throws Exception {
+        mockMvc.perform(get("/widgets/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"count\":0,\"minZ\":null,\"maxZ\":null,\"bounds\":null}"));
+        Widget widget1 = createWidget(Optional.of(1));
+        Widget widget2 = createWidget(Optional.of(5));
+
+        mockMvc.perform(get("/widgets/stats"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"count\":2,\"minZ\":1,\"maxZ\":5,\"bounds\":{\"minX\":" + X
+                        + ",\"minY\":" + Y + ",\"maxX\":" + (X + WIDTH) + ",\"maxY\":" + (Y + HEIGHT) + "}}"));
+
+        deleteWidget(widget1.getId());
+        deleteWidget(widget2.getId());
+    }
+
+    @Test
+    void topmost_ok() throws Exception {
+        Widget widget1 = createWidget(Optional.of(1));
+        Widget widget2 = createWidget(Optional.of(2));
+
+        mockMvc.perform(get("/widgets:topmost")
+                .param("x", String.valueOf(X + WIDTH)).param("y", String.valueOf(Y + HEIGHT)))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.equalTo(objectMapper.writeValueAsString(widget2))));
+
+        deleteWidget(widget1.getId());
+        deleteWidget(widget2.getId());
+    }
+
+    @Test
+    void topmost_nothingAtPoint_notFound() throws Exception {
+        mockMvc.perform(get("/widgets:topmost").param("x", "0").param("y", "0"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void batch_ok() throws Exception {
+        Widget stored = createWidget(Optional.of(1));
+
+        List<Widget> result = objectMapper.readValue(mockMvc
+                .perform(post("/widgets:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(ImmutableList.of(
+                                WidgetOperation.builder().type(WidgetOperation.Type.CREATE)
+                                        .content(widgetContent(Optional.of(1))).build(),
+                                WidgetOperation.builder().type(WidgetOperation.Type.CREATE)
+                                        .content(widgetContent(Optional.empty())).build()))))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(), new TypeReference<List<Widget>>() {
+        });
+
+        assertEquals(2, result.size());
+        assertEquals(1, result.get(0).getZ());
+        assertEquals(3, result.get(1).getZ());
+        verifyList(ImmutableList.of(result.get(0), buildWidget(stored.getId(), stored.getLastModification(), 2),
+                result.get(1)));
+
+        deleteWidget(stored.getId());
+        deleteWidget(result.get(0).getId());
+        deleteWidget(result.get(1).getId());
+    }
+
+    @Test
+    void batch_invalidOperation_badRequest() throws Exception {
+        mockMvc.perform(post("/widgets:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(ImmutableList.of(
+                        WidgetOperation.builder().type(WidgetOperation.Type.UPDATE).build()))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void batch_invalidWidgetId_notFound() throws Exception {
+        mockMvc.perform(post("/widgets:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(ImmutableList.of(
+                        WidgetOperation.builder().type(WidgetOperation.Type.UPDATE).id("invalidId")
+                                .content(widgetContent(Optional.empty())).build()))))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/widgets"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+    }
+
     @Test
     void get_invalidWidgetId_notFound() throws Exception {
         mockMvc.perform(get("/widgets/invalidId"))
@@ -225,6 +596,127 @@ class WidgetIntegrationTest {
         deleteWidget(widget.getId());
     }
 
+    @Test
+    void patch_coordinatesOnly_ok() throws Exception {
+        Widget widget = createWidget(Optional.of(Z));
+
+        Widget patched = objectMapper.readValue(mockMvc
+                .perform(patch("/widgets/{id}", widget.getId())
+                        .contentType("application/merge-patch+json")
+                        .content("{\"coordinates\": {\"x\": 1, \"y\": 2}}"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(), Widget.class);
+
+        assertEquals(widget.toBuilder()
+                .coordinates(Coordinates.builder().x(1).y(2).build())
+                .lastModification(patched.getLastModification())
+                .build(), patched);
+        verifyList(List.of(patched));
+
+        mockMvc.perform(patch("/widgets/{id}", "invalidId")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"z\": 1}"))
+                .andExpect(status().isNotFound());
+        deleteWidget(widget.getId());
+    }
+
+    @Test
+    void binaryFormats_sameWidgets() throws Exception {
+        ObjectMapper smileMapper = binaryMapper(new ObjectMapper(new SmileFactory()));
+        ObjectMapper cborMapper = binaryMapper(new ObjectMapper(new CBORFactory()));
+        Widget widget = smileMapper.readValue(mockMvc
+                .perform(post("/widgets")
+                        .contentType("application/x-jackson-smile")
+                        .accept("application/x-jackson-smile")
+                        .content(smileMapper.writeValueAsBytes(widgetContent(Optional.empty()))))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray(), Widget.class);
+
+        byte[] smileList = mockMvc.perform(get("/widgets").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+        assertEquals(List.of(widget), smileMapper.readValue(smileList, new TypeReference<List<Widget>>() {
+        }));
+        byte[] cborWidget = mockMvc.perform(get("/widgets/{id}", widget.getId()).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+        assertEquals(widget, cborMapper.readValue(cborWidget, Widget.class));
+        verifyList(List.of(widget));
+
+        deleteWidget(widget.getId());
+    }
+
+    @Test
+    void boards_separateFromEachOther() throws Exception {
+        Widget unnamed = createWidget(Optional.of(1));
+        Widget onBoard = objectMapper.readValue(mockMvc
+                .perform(post("/boards/{boardId}/widgets", "team-a")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(widgetContent(Optional.of(1)))))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(), Widget.class);
+
+        assertEquals(1, onBoard.getZ());
+        mockMvc.perform(get("/boards/{boardId}/widgets", "team-a"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.equalTo(
+                        objectMapper.writeValueAsString(ImmutableList.of(onBoard)))));
+        mockMvc.perform(get("/boards/{boardId}/widgets/{id}", "team-b", onBoard.getId()))
+                .andExpect(status().isNotFound());
+        verifyList(ImmutableList.of(unnamed));
+
+        mockMvc.perform(delete("/boards/{boardId}/widgets/{id}", "team-a", onBoard.getId()))
+                .andExpect(status().isOk());
+        deleteWidget(unnamed.getId());
+    }
+
+    @Test
+    void boards_neverWritten_readEmptyNotCreated() throws Exception {
+        mockMvc.perform(get("/boards/{boardId}/widgets", "never-written"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("[]"));
+        mockMvc.perform(get("/boards/{boardId}/widgets/changes", "never-written")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/boards/{boardId}/widgets", "never-written").param("wait", "1"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void boards_invalidId_badRequest() throws Exception {
+        mockMvc.perform(get("/boards/{boardId}/widgets", "a.b"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void metrics_recordWrites() throws Exception {
+        Widget widget = createWidget(Optional.empty());
+        deleteWidget(widget.getId());
+
+        mockMvc.perform(get("/actuator/metrics/widgets.writes").param("tag", "operation:delete"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(Matchers.containsString("\"COUNT\"")));
+    }
+
+    private static ObjectMapper binaryMapper(ObjectMapper objectMapper) {
+        objectMapper.registerModule(new Jdk8Module());
+        objectMapper.registerModule(new JavaTimeModule());
+        return objectMapper;
+    }
+
     private Widget buildWidget(String id, LocalDateTime lastModification, Integer zIndex) {
         return Widget.builder()
                 .id(id)
@@ -0,0 +1,69 @@
+package com.whiteboard.widgets.integration;
+
+import com.whiteboard.widgets.service.WidgetService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class WriteLimitIntegrationTest {
+    private static final String CONTENT = "{\"width\":10,\"height\":10}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private WidgetService widgetService;
+
+    @Test
+    void writesSlowDown_defaultWriteLimitShrinks() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            create();
+        }
+        double before = writeLimit();
+
+        for (int i = 0; i < 30; i++) {
+            CountDownLatch locked = new CountDownLatch(1);
+            Thread holder = new Thread(() -> {
+                synchronized (widgetService) {
+                    locked.countDown();
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            holder.start();
+            locked.await();
+            create();
+            holder.join();
+        }
+
+        assertTrue(writeLimit() < before / 2, "write limit " + writeLimit() + " from " + before);
+        assertTrue(writeLimit() >= 16);
+    }
+
+    private void create() throws Exception {
+        mockMvc.perform(post("/widgets").contentType(MediaType.APPLICATION_JSON).content(CONTENT))
+                .andExpect(status().isOk());
+    }
+
+    private double writeLimit() {
+        return meterRegistry.get("widgets.limiter.limit").tag("limiter", "writes").gauge().value();
+    }
+}
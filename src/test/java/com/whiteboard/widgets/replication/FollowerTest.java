@@ -0,0 +1,198 @@
+package com.whiteboard.widgets.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.whiteboard.widgets.api.ChangeSubscriptions;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "widgets.changes.capacity=16")
+class FollowerTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WidgetService leader;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void follower_snapshotThenChanges_sameBoard() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            create(Optional.of(0));
+        }
+        WidgetService replica = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(16), ChangeLog.NONE);
+
+        try (Follower follower = new Follower(replica, objectMapper, settings())) {
+            follower.start();
+            awaitVersion(replica, leader.version());
+            awaitCurrent(follower);
+            create(Optional.of(0));
+            leader.delete(leader.list().get(5).getId());
+            awaitVersion(replica, leader.version());
+
+            assertEquals(leader.list(), replica.list());
+            assertEquals(leader.changesSince(leader.version() - 3), replica.changesSince(leader.version() - 3));
+        }
+    }
+
+    @Test
+    void follower_leaderSilent_staleAndReconnecting() throws Exception {
+        WidgetService replica = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(16), ChangeLog.NONE);
+        try (SilentLeader silentLeader = new SilentLeader();
+             Follower follower = new Follower(replica, objectMapper, Follower.Settings.builder()
+                     .leader(silentLeader.uri())
+                     .reconnectDelay(Duration.ofMillis(50))
+                     .maxStaleness(Duration.ofMillis(300))
+                     .build())) {
+            follower.start();
+            awaitCurrent(follower);
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (silentLeader.subscriptions.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(silentLeader.subscriptions.get() >= 2);
+            assertTrue(follower.staleness().compareTo(Duration.ofMillis(300)) > 0);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            assertFalse(new FollowerInterceptor(follower)
+                    .preHandle(new MockHttpServletRequest("GET", "/widgets"), response, new Object()));
+            assertEquals(503, response.getStatus());
+        }
+    }
+
+    @Test
+    void interceptor_write_redirectedToLeader() throws Exception {
+        WidgetService replica = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(16), ChangeLog.NONE);
+        try (Follower follower = new Follower(replica, objectMapper, settings())) {
+            MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/widgets/a");
+            request.setQueryString("x=1");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            assertFalse(new FollowerInterceptor(follower).preHandle(request, response, new Object()));
+            assertEquals(307, response.getStatus());
+            assertEquals("http://localhost:" + port + "/widgets/a?x=1", response.getHeader("Location"));
+        }
+    }
+
+    @Test
+    void interceptor_readBeforeSnapshot_unavailable() throws Exception {
+        WidgetService replica = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(16), ChangeLog.NONE);
+        try (Follower follower = new Follower(replica, objectMapper, settings())) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            assertFalse(new FollowerInterceptor(follower)
+                    .preHandle(new MockHttpServletRequest("GET", "/widgets"), response, new Object()));
+            assertEquals(503, response.getStatus());
+            assertEquals("1", response.getHeader("Retry-After"));
+        }
+    }
+
+    private Follower.Settings settings() {
+        return Follower.Settings.builder().leader(URI.create("http://localhost:" + port)).build();
+    }
+
+    private void create(Optional<Integer> z) {
+        leader.create(WidgetContent.builder().z(z).width(10).height(10).build());
+    }
+
+    private static void awaitCurrent(Follower follower) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!follower.staleness().isZero() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Duration.ZERO, follower.staleness());
+    }
+
+    /**
+     * Leader whose first change stream goes silent after {@code :current} with the connection left open, as when
+     * its host is lost, and which refuses the following subscriptions.
+     */
+    private static final class SilentLeader implements AutoCloseable {
+        final AtomicInteger subscriptions = new AtomicInteger();
+        private final ServerSocket server = new ServerSocket(0);
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        SilentLeader() throws IOException {
+            Thread thread = new Thread(this::serve, "silent-leader");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        URI uri() {
+            return URI.create("http://localhost:" + server.getLocalPort());
+        }
+
+        private void serve() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    sockets.add(socket);
+                    String request = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                            StandardCharsets.US_ASCII)).readLine();
+                    OutputStream output = socket.getOutputStream();
+                    if (!request.startsWith("GET /widgets/changes")) {
+                        output.write(("HTTP/1.1 200 OK\r\nETag: \"0\"\r\nContent-Type: application/json\r\n"
+                                + "Content-Length: 2\r\nConnection: close\r\n\r\n[]")
+                                .getBytes(StandardCharsets.US_ASCII));
+                    } else if (subscriptions.incrementAndGet() == 1) {
+                        output.write(("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\n\r\n"
+                                + ChangeSubscriptions.CURRENT + "\n\n").getBytes(StandardCharsets.US_ASCII));
+                    } else {
+                        output.write(("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\n"
+                                + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    }
+                    output.flush();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private static void awaitVersion(WidgetService replica, long version) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (replica.version() != version && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(version, replica.version());
+    }
+}
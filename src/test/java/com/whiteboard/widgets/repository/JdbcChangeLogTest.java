@@ -0,0 +1,249 @@
+package com.whiteboard.widgets.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetOperation;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs against an in-memory H2 database kept until the JVM exits, so that logs left open simulate a crash of the
+ * service but not of the database.
+ */
+class JdbcChangeLogTest {
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+
+    @Test
+    void close_reopen_sameBoard() throws IOException {
+        JdbcChangeLog log = JdbcChangeLog.open(settings(), "");
+        WidgetService widgetService = service(log);
+        List<Widget> widgets = randomOperations(widgetService, 2_000);
+        log.close();
+
+        JdbcChangeLog reopened = JdbcChangeLog.open(settings(), "");
+
+        assertEquals(widgets, reopened.recovered().list());
+        assertEquals(widgetService.version(), reopened.recovered().version());
+        reopened.close();
+    }
+
+    @Test
+    void crash_committed_sameBoard() throws IOException {
+        JdbcChangeLog.Settings settings = settings().toBuilder().writeBehind(false).build();
+        JdbcChangeLog log = JdbcChangeLog.open(settings, "");
+        WidgetService widgetService = service(log);
+        List<Widget> widgets = randomOperations(widgetService, 500);
+
+        JdbcChangeLog reopened = JdbcChangeLog.open(settings, "");
+
+        assertEquals(widgets, reopened.recovered().list());
+        assertEquals(widgetService.version(), reopened.recovered().version());
+        reopened.close();
+    }
+
+    @Test
+    void shift_oneStatementMovesRange() throws IOException, SQLException {
+        JdbcChangeLog log = JdbcChangeLog.open(settings().toBuilder().writeBehind(false).build(), "");
+        WidgetService widgetService = service(log);
+        for (int i = 0; i < 100; i++) {
+            widgetService.create(content(0));
+        }
+
+        assertEquals(widgetService.list().stream().map(Widget::getZ).collect(Collectors.toList()), zIndexes(""));
+        log.close();
+    }
+
+    @Test
+    void shifts_manyInOneBatch_sameBoard() throws IOException, SQLException {
+        JdbcChangeLog log = JdbcChangeLog.open(settings().toBuilder()
+                .flushInterval(Duration.ofHours(1))
+                .rowsPerStatement(4)
+                .build(), "");
+        WidgetService widgetService = service(log);
+        List<Widget> widgets = randomOperations(widgetService, 2_000);
+        log.close();
+
+        JdbcChangeLog reopened = JdbcChangeLog.open(settings(), "");
+
+        assertEquals(widgets, reopened.recovered().list());
+        assertEquals(widgets.stream().map(Widget::getZ).collect(Collectors.toList()), zIndexes(""));
+        reopened.close();
+    }
+
+    @Test
+    void shiftRanges_sameAsShiftsOneByOne() {
+        Random random = new Random(5);
+        for (int sequence = 0; sequence < 1_000; sequence++) {
+            int[] zIndexes = new int[100];
+            for (int i = 0; i < zIndexes.length; i++) {
+                zIndexes[i] = random.nextInt(200) - 10;
+            }
+            int[] shifted = zIndexes.clone();
+            JdbcChangeLog.ShiftRanges ranges = new JdbcChangeLog.ShiftRanges();
+            for (int shift = random.nextInt(20); shift > 0; shift--) {
+                int fromZ = random.nextInt(220) - 10;
+                int toZ = fromZ + random.nextInt(30);
+                ranges.shift(fromZ, toZ);
+                for (int i = 0; i < shifted.length; i++) {
+                    if (shifted[i] >= fromZ && shifted[i] <= toZ) {
+                        shifted[i]++;
+                    }
+                }
+            }
+
+            int[] moved = zIndexes.clone();
+            for (long[] range : ranges.moved()) {
+                for (int i = 0; i < moved.length; i++) {
+                    if (zIndexes[i] >= range[0] && zIndexes[i] <= range[1]) {
+                        moved[i] += (int) range[2];
+                    }
+                }
+            }
+            assertArrayEquals(shifted, moved);
+        }
+    }
+
+    @Test
+    void crash_committedFromManyWriters_sameBoard() throws Exception {
+        JdbcChangeLog.Settings settings = settings().toBuilder().writeBehind(false).build();
+        JdbcChangeLog log = JdbcChangeLog.open(settings, "");
+        WidgetService widgetService = service(log);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    widgetService.create(content(i % 50));
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+
+        JdbcChangeLog reopened = JdbcChangeLog.open(settings, "");
+
+        assertEquals(widgetService.list(), reopened.recovered().list());
+        assertEquals(widgetService.version(), reopened.recovered().version());
+        reopened.close();
+    }
+
+    @Test
+    void importWidgets_reopen_sameBoard() throws IOException {
+        JdbcChangeLog log = JdbcChangeLog.open(settings().toBuilder().rowsPerStatement(7).build(), "");
+        WidgetService widgetService = service(log);
+        randomOperations(widgetService, 100);
+        List<Widget> imported = new ArrayList<>();
+        for (int z = 0; z < 50; z++) {
+            imported.add(Widget.builder().id("w" + z).z(z * 2).width(1).height(1).build());
+        }
+        widgetService.importWidgets(imported);
+        log.close();
+
+        JdbcChangeLog reopened = JdbcChangeLog.open(settings(), "");
+
+        assertEquals(imported, reopened.recovered().list());
+        reopened.close();
+    }
+
+    @Test
+    void boards_separateFromEachOther() throws IOException {
+        JdbcChangeLog first = JdbcChangeLog.open(settings(), "first");
+        JdbcChangeLog second = JdbcChangeLog.open(settings(), "second");
+        List<Widget> firstWidgets = randomOperations(service(first), 200);
+        service(second).create(content(5));
+        List<Widget> secondWidgets = service(second).list();
+        first.close();
+        second.close();
+
+        JdbcChangeLog reopenedFirst = JdbcChangeLog.open(settings(), "first");
+        JdbcChangeLog reopenedSecond = JdbcChangeLog.open(settings(), "second");
+
+        assertEquals(firstWidgets, reopenedFirst.recovered().list());
+        assertEquals(1, reopenedSecond.recovered().size());
+        assertEquals(5, reopenedSecond.recovered().list().get(0).getZ());
+        reopenedFirst.close();
+        reopenedSecond.close();
+    }
+
+    private List<Integer> zIndexes(String board) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT z FROM widget WHERE board = '" + board
+                     + "' ORDER BY z")) {
+            List<Integer> zIndexes = new ArrayList<>();
+            while (rows.next()) {
+                zIndexes.add(rows.getInt(1));
+            }
+            return zIndexes;
+        }
+    }
+
+    /**
+     * Board after the operations, which shift widgets often.
+     */
+    private static List<Widget> randomOperations(WidgetService widgetService, int count) {
+        Random random = new Random(3);
+        List<String> ids = widgetService.list().stream().map(Widget::getId).collect(Collectors.toList());
+        for (int i = 0; i < count; i++) {
+            int operation = random.nextInt(10);
+            if (ids.isEmpty() || operation < 5) {
+                ids.add(widgetService.create(content(random.nextInt(100))).getId());
+            } else if (operation < 7) {
+                widgetService.update(ids.get(random.nextInt(ids.size())), content(random.nextInt(100)));
+            } else if (operation < 9) {
+                widgetService.delete(ids.remove(random.nextInt(ids.size())));
+            } else {
+                widgetService.apply(ImmutableList.of(
+                        WidgetOperation.builder().type(WidgetOperation.Type.CREATE)
+                                .content(content(random.nextInt(100))).build(),
+                        WidgetOperation.builder().type(WidgetOperation.Type.UPDATE)
+                                .id(ids.get(random.nextInt(ids.size()))).content(content(random.nextInt(100)))
+                                .build()))
+                        .ifPresent(widgets -> ids.add(widgets.get(0).getId()));
+            }
+        }
+        return widgetService.list();
+    }
+
+    private JdbcChangeLog.Settings settings() {
+        return JdbcChangeLog.Settings.builder().url(url).build();
+    }
+
+    private static WidgetService service(ChangeLog log) {
+        return new WidgetService(log.recovered(), new ChangeFeed(10), log);
+    }
+
+    private static WidgetContent content(int z) {
+        return WidgetContent.builder()
+                .coordinates(Coordinates.builder().x(z).y(-z).build())
+                .z(Optional.of(z))
+                .width(10)
+                .height(20)
+                .build();
+    }
+}
@@ -0,0 +1,318 @@
+package com.whiteboard.widgets.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.service.ChangeFeed;
+import com.whiteboard.widgets.service.WidgetService;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetOperation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Logs are left open where a test simulates a crash, since closing would flush and write a snapshot.
+ */
+class MappedChangeLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void close_reopen_sameBoard() throws IOException {
+        MappedChangeLog log = open(settings());
+        List<Widget> widgets = randomOperations(service(log), 2_000).get(1_999);
+        long version = log.recovered().version();
+        log.close();
+
+        MappedChangeLog reopened = open(settings());
+
+        assertEquals(widgets, reopened.recovered().list());
+        assertTrue(reopened.recovered().version() > version);
+        assertEquals(1, files(".dat").size());
+        reopened.close();
+    }
+
+    @Test
+    void crash_replaysLog() throws IOException {
+        MappedChangeLog log = open(settings());
+        WidgetService widgetService = service(log);
+        List<Widget> widgets = randomOperations(widgetService, 2_000).get(1_999);
+
+        MappedChangeLog reopened = open(settings());
+
+        assertEquals(widgets, reopened.recovered().list());
+        assertEquals(widgetService.version(), reopened.recovered().version());
+        assertEquals(0, files(".dat").size());
+        reopened.close();
+    }
+
+    @Test
+    void crash_afterSnapshots_replaysTail() throws IOException {
+        MappedChangeLog.Settings settings = settings().toBuilder().segmentSize(4_096).snapshotEvery(300).build();
+        MappedChangeLog log = open(settings);
+        List<Widget> widgets = randomOperations(service(log), 2_000).get(1_999);
+
+        MappedChangeLog reopened = open(settings);
+
+        assertEquals(widgets, reopened.recovered().list());
+        assertTrue(files(".wal").size() < 100);
+        reopened.close();
+    }
+
+    @Test
+    void crash_tornLastRecord_previousCommitKept() throws IOException {
+        MappedChangeLog log = open(settings());
+        List<List<Widget>> states = randomOperations(service(log), 500);
+        Path segment = files(".wal").get(0);
+        int last = lastRecord(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(16), last + 20);
+        }
+
+        MappedChangeLog reopened = open(settings());
+
+        assertEquals(states.get(498), reopened.recovered().list());
+        continueAfterRecovery(reopened);
+    }
+
+    @Test
+    void crash_damagedLastRecord_previousCommitKept() throws IOException {
+        MappedChangeLog log = open(settings());
+        List<List<Widget>> states = randomOperations(service(log), 500);
+        Path segment = files(".wal").get(0);
+        int damaged = end(segment) - 6;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, damaged);
+            value.put(0, (byte) (value.get(0) ^ 0x40)).rewind();
+            channel.write(value, damaged);
+        }
+
+        MappedChangeLog reopened = open(settings());
+
+        assertEquals(states.get(498), reopened.recovered().list());
+        continueAfterRecovery(reopened);
+    }
+
+    @Test
+    void crash_garbageAfterLastRecord_ignored() throws IOException {
+        MappedChangeLog log = open(settings());
+        List<List<Widget>> states = randomOperations(service(log), 500);
+        Path segment = files(".wal").get(0);
+        int end = end(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 5, 1, 2, 3, 4, 5, 6, 7, 8, 9}), end);
+        }
+
+        MappedChangeLog reopened = open(settings());
+
+        assertEquals(states.get(499), reopened.recovered().list());
+        continueAfterRecovery(reopened);
+    }
+
+    @Test
+    void crash_batchTorn_nothingOfItKept() throws IOException {
+        MappedChangeLog log = open(settings());
+        WidgetService widgetService = service(log);
+        Widget widget = widgetService.create(content(1));
+        widgetService.apply(ImmutableList.of(
+                WidgetOperation.builder().type(WidgetOperation.Type.CREATE).content(content(1)).build(),
+                WidgetOperation.builder().type(WidgetOperation.Type.CREATE).content(content(1)).build(),
+                WidgetOperation.builder().type(WidgetOperation.Type.DELETE).id(widget.getId()).build()));
+        Path segment = files(".wal").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8), end(segment) - 8);
+        }
+
+        MappedChangeLog reopened = open(settings());
+
+        assertEquals(ImmutableList.of(widget), reopened.recovered().list());
+        reopened.close();
+    }
+
+    @Test
+    void fsyncPolicies_sameBoard() throws IOException {
+        for (MappedChangeLog.FsyncPolicy policy : MappedChangeLog.FsyncPolicy.values()) {
+            Path policyDirectory = directory.resolve(policy.name());
+            MappedChangeLog.Settings settings = settings().toBuilder().directory(policyDirectory).fsyncPolicy(policy)
+                    .build();
+            MappedChangeLog log = open(settings);
+            List<Widget> widgets = randomOperations(service(log), 200).get(199);
+            log.close();
+
+            MappedChangeLog reopened = open(settings);
+
+            assertEquals(widgets, reopened.recovered().list(), policy.name());
+            reopened.close();
+        }
+    }
+
+    @Test
+    void sync_laterFlushFails_ownChangesDurable() throws Exception {
+        CountDownLatch firstFlush = new CountDownLatch(1);
+        AtomicInteger flushes = new AtomicInteger();
+        MappedChangeLog log = MappedChangeLog.open(settings().toBuilder().syncTimeout(Duration.ofMillis(200)).build(),
+                buffer -> {
+                    if (flushes.incrementAndGet() > 1) {
+                        throw new UncheckedIOException(new IOException("disk failure"));
+                    }
+                    try {
+                        firstFlush.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    buffer.force();
+                });
+        WidgetService widgetService = service(log);
+        FutureTask<Widget> first = new FutureTask<>(() -> widgetService.create(content(1)));
+        Thread firstWriter = new Thread(first);
+        firstWriter.start();
+        while (firstWriter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        FutureTask<Widget> second = new FutureTask<>(() -> widgetService.create(content(2)));
+        new Thread(second).start();
+        while (widgetService.version() < 2) {
+            Thread.sleep(1);
+        }
+
+        firstFlush.countDown();
+
+        assertEquals(1, first.get(10, TimeUnit.SECONDS).getZ());
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof UncheckedIOException);
+        assertTrue(flushes.get() > 2);
+        log.close();
+    }
+
+    @Test
+    void sync_flushFailsThenRecovers_waitsForRetry() throws IOException {
+        AtomicInteger failures = new AtomicInteger(2);
+        MappedChangeLog log = MappedChangeLog.open(settings(), buffer -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new UncheckedIOException(new IOException("disk failure"));
+            }
+            buffer.force();
+        });
+
+        Widget widget = service(log).create(content(1));
+
+        assertTrue(failures.get() < 0);
+        log.close();
+        MappedChangeLog reopened = open(settings());
+        assertEquals(ImmutableList.of(widget), reopened.recovered().list());
+        reopened.close();
+    }
+
+    /**
+     * Checks that the log accepts and keeps changes after being recovered, then closes it.
+     */
+    private void continueAfterRecovery(MappedChangeLog log) throws IOException {
+        List<Widget> widgets = randomOperations(service(log), 100).get(99);
+        log.close();
+
+        MappedChangeLog reopened = open(settings());
+        assertEquals(widgets, reopened.recovered().list());
+        reopened.close();
+    }
+
+    /**
+     * Board after each operation.
+     */
+    private static List<List<Widget>> randomOperations(WidgetService widgetService, int count) {
+        Random random = new Random(3);
+        List<String> ids = widgetService.list().stream().map(Widget::getId).collect(Collectors.toList());
+        List<List<Widget>> states = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int operation = random.nextInt(10);
+            if (ids.isEmpty() || operation < 5) {
+                ids.add(widgetService.create(content(random.nextInt(100))).getId());
+            } else if (operation < 7) {
+                widgetService.update(ids.get(random.nextInt(ids.size())), content(random.nextInt(100)));
+            } else if (operation < 9) {
+                widgetService.delete(ids.remove(random.nextInt(ids.size())));
+            } else {
+                widgetService.apply(ImmutableList.of(
+                        WidgetOperation.builder().type(WidgetOperation.Type.CREATE)
+                                .content(content(random.nextInt(100))).build(),
+                        WidgetOperation.builder().type(WidgetOperation.Type.UPDATE)
+                                .id(ids.get(random.nextInt(ids.size()))).content(content(random.nextInt(100)))
+                                .build()))
+                        .ifPresent(widgets -> ids.add(widgets.get(0).getId()));
+            }
+            states.add(widgetService.list());
+        }
+        return states;
+    }
+
+    /**
+     * Position of the last record of the segment.
+     */
+    private static int lastRecord(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int last = 0;
+        for (int position = 0; buffer.getInt(position) != 0; position += 8 + buffer.getInt(position)) {
+            last = position;
+        }
+        return last;
+    }
+
+    private static int end(Path segment) throws IOException {
+        int last = lastRecord(segment);
+        return last + 8 + ByteBuffer.wrap(Files.readAllBytes(segment)).getInt(last);
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private MappedChangeLog.Settings settings() {
+        return MappedChangeLog.Settings.builder()
+                .directory(directory)
+                .segmentSize(1 << 20)
+                .build();
+    }
+
+    private static MappedChangeLog open(MappedChangeLog.Settings settings) throws IOException {
+        return MappedChangeLog.open(settings);
+    }
+
+    private static WidgetService service(ChangeLog log) {
+        return new WidgetService(log.recovered(), new ChangeFeed(10), log);
+    }
+
+    private static WidgetContent content(int z) {
+        return WidgetContent.builder()
+                .coordinates(Coordinates.builder().x(z).y(-z).build())
+                .z(Optional.of(z))
+                .width(10)
+                .height(20)
+                .build();
+    }
+}
@@ -0,0 +1,97 @@
+package com.whiteboard.widgets.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PersistentHashMapTest {
+
+    @Test
+    void put_previousMapUnchanged() {
+        PersistentHashMap<String, Integer> first = PersistentHashMap.<String, Integer>empty().put("a", 1);
+        PersistentHashMap<String, Integer> second = first.put("a", 2).put("b", 3);
+
+        assertEquals(1, first.get("a"));
+        assertNull(first.get("b"));
+        assertEquals(1, first.size());
+        assertEquals(2, second.get("a"));
+        assertEquals(3, second.get("b"));
+        assertEquals(2, second.size());
+    }
+
+    @Test
+    void remove_missingKey_sameMap() {
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().put("a", 1);
+
+        assertSame(map, map.remove("b"));
+    }
+
+    @Test
+    void randomOperations_sameAsHashMap() {
+        Random random = new Random(7);
+        Map<Key, Integer> expected = new HashMap<>();
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+
+        for (int i = 0; i < 100_000; i++) {
+            Key key = new Key(random.nextInt(5_000));
+            if (random.nextInt(3) > 0) {
+                expected.put(key, i);
+                map = map.put(key, i);
+            } else {
+                expected.remove(key);
+                map = map.remove(key);
+            }
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        assertEquals(expected.size(), map.size());
+        Map<Key, Integer> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void builder_sameAsPuts() {
+        Random random = new Random(11);
+        PersistentHashMap.Builder<Key, Integer> builder = new PersistentHashMap.Builder<>();
+        PersistentHashMap<Key, Integer> expected = PersistentHashMap.empty();
+
+        for (int i = 0; i < 20_000; i++) {
+            Key key = new Key(random.nextInt(5_000));
+            builder.put(key, i);
+            expected = expected.put(key, i);
+        }
+        PersistentHashMap<Key, Integer> built = builder.build();
+
+        assertEquals(expected.size(), built.size());
+        expected.forEach((key, value) -> assertEquals(value, built.get(key)));
+        assertEquals(expected.size(), built.put(new Key(0), -1).remove(new Key(0)).size() + 1);
+    }
+
+    /**
+     * Key with a weak hash, so that full hash collisions are common.
+     */
+    private static final class Key {
+        private final int value;
+
+        Key(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value % 1_000;
+        }
+    }
+}
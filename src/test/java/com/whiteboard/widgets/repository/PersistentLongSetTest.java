@@ -0,0 +1,89 @@
+package com.whiteboard.widgets.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentLongSetTest {
+
+    @Test
+    void add_previousSetUnchanged() {
+        PersistentLongSet first = PersistentLongSet.EMPTY.add(1);
+        PersistentLongSet second = first.add(1).add(2);
+
+        assertTrue(first.contains(1));
+        assertFalse(first.contains(2));
+        assertEquals(1, first.size());
+        assertTrue(second.contains(2));
+        assertEquals(2, second.size());
+    }
+
+    @Test
+    void remove_missingElement_sameSet() {
+        PersistentLongSet set = PersistentLongSet.EMPTY.add(1);
+
+        assertSame(set, set.remove(2));
+        assertSame(set, set.add(1));
+    }
+
+    @Test
+    void add_negative_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> PersistentLongSet.EMPTY.add(-1));
+    }
+
+    @Test
+    void randomOperations_sameAsTreeSet() {
+        Random random = new Random(7);
+        TreeSet<Long> expected = new TreeSet<>();
+        PersistentLongSet set = PersistentLongSet.EMPTY;
+
+        for (int i = 0; i < 200_000; i++) {
+            long value = random.nextInt(i < 100_000 ? 50_000 : 5_000) * 3L;
+            if (random.nextInt(i < 100_000 ? 3 : 2) > 0) {
+                expected.add(value);
+                set = set.add(value);
+            } else {
+                expected.remove(value);
+                set = set.remove(value);
+            }
+            assertEquals(expected.contains(value), set.contains(value));
+            Long ceiling = expected.ceiling(value - 1);
+            assertEquals(ceiling == null ? -1 : ceiling, set.ceiling(value - 1));
+        }
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<>(expected), elements(set));
+    }
+
+    @Test
+    void of_sameAsAdds() {
+        Random random = new Random(11);
+        long[] values = new long[20_000];
+        PersistentLongSet expected = PersistentLongSet.EMPTY;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(15_000);
+            expected = expected.add(values[i]);
+        }
+
+        PersistentLongSet built = PersistentLongSet.of(values);
+
+        assertEquals(expected.size(), built.size());
+        assertEquals(elements(expected), elements(built));
+        assertEquals(expected.size(), built.add(15_000).remove(15_000).size());
+    }
+
+    private static List<Long> elements(PersistentLongSet set) {
+        List<Long> elements = new ArrayList<>();
+        set.forEach(elements::add);
+        return elements;
+    }
+}
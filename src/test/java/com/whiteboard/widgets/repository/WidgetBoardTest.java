@@ -0,0 +1,425 @@
+package com.whiteboard.widgets.repository;
+
+import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.BoundingBox;
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WidgetBoardTest {
+    private WidgetBoard board;
+
+    @BeforeEach
+    void setUp() {
+        board = WidgetBoard.EMPTY;
+    }
+
+    @Test
+    void insert_freeZIndex_nothingShifted() {
+        Widget widget1 = insert(widget("id1", 1));
+        Widget widget3 = insert(widget("id3", 3));
+
+        assertEquals(ImmutableList.of(widget1, widget3), board.list());
+        assertEquals(3, board.lastZ());
+    }
+
+    @Test
+    void insert_occupiedZIndex_shiftsContiguousRun() {
+        insert(widget("id1", 1));
+        insert(widget("id2", 2));
+        insert(widget("id3", 3));
+        insert(widget("id5", 5));
+        insert(widget("id7", 7));
+
+        insert(widget("new", 2));
+
+        assertEquals(ImmutableList.of(
+                widget("id1", 1),
+                widget("new", 2),
+                widget("id2", 3),
+                widget("id3", 4),
+                widget("id5", 5),
+                widget("id7", 7)), board.list());
+        assertEquals(Optional.of(widget("id5", 5)), board.get("id5"));
+        assertEquals(Optional.of(widget("id3", 4)), board.get("id3"));
+        assertEquals(5, board.contiguousFrom(1));
+        assertEquals(4, board.contiguousFrom(2));
+        assertEquals(0, board.contiguousFrom(6));
+        assertEquals(1, board.contiguousFrom(7));
+        assertEquals(0, board.contiguousFrom(8));
+    }
+
+    @Test
+    void remove_ok() {
+        insert(widget("id1", 1));
+        insert(widget("id2", 2));
+
+        assertEquals(Optional.of(widget("id1", 1)), remove("id1"));
+        assertEquals(Optional.empty(), remove("id1"));
+        assertEquals(Optional.empty(), board.get("id1"));
+        assertEquals(ImmutableList.of(widget("id2", 2)), board.list());
+    }
+
+    @Test
+    void insert_repeatedlyAtSameZIndex_keepsOrder() {
+        insert(widget("bottom", 0));
+        insert(widget("top", 1));
+
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            insert(widget("id" + i, 1));
+        }
+
+        List<Widget> widgets = board.list();
+        assertEquals(count + 2, widgets.size());
+        assertEquals(widget("bottom", 0), widgets.get(0));
+        for (int i = 0; i < count; i++) {
+            assertEquals(widget("id" + (count - 1 - i), i + 1), widgets.get(i + 1));
+        }
+        assertEquals(widget("top", count + 1), widgets.get(count + 1));
+        assertEquals(Optional.of(widget("id0", count)), board.get("id0"));
+    }
+
+    @Test
+    void listFrom_ok() {
+        insert(widget("id1", 1));
+        insert(widget("id3", 3));
+        insert(widget("id4", 4));
+        insert(widget("id2", 3));
+
+        assertEquals(ImmutableList.of(widget("id2", 3), widget("id3", 4)), board.listFrom(2, 2));
+        assertEquals(ImmutableList.of(widget("id4", 5)), board.listFrom(5, 10));
+        assertEquals(ImmutableList.of(), board.listFrom(6, 10));
+        assertEquals(ImmutableList.of(), board.listFrom(0, 0));
+    }
+
+    @Test
+    void findIntersecting_zOrder() {
+        Widget top = insert(widget("top", 5, 0, 0, 100, 100));
+        Widget bottom = insert(widget("bottom", 1, 50, 50, 10, 10));
+        insert(widget("far", 3, 10_000, 10_000, 10, 10));
+        insert(widget("noCoordinates", 4));
+
+        assertEquals(ImmutableList.of(bottom, top), board.findIntersecting(55, 55, 40, 40));
+        assertEquals(ImmutableList.of(top), board.findIntersecting(0, 0, 10, 10));
+        assertEquals(ImmutableList.of(), board.findIntersecting(-10, -10, -1, -1));
+    }
+
+    @Test
+    void findIntersecting_shiftedAndRemoved() {
+        insert(widget("id1", 1, 0, 0, 10, 10));
+        insert(widget("id2", 2, 0, 0, 10, 10));
+        insert(widget("new", 1, 0, 0, 10, 10));
+        remove("id1");
+
+        assertEquals(ImmutableList.of(widget("new", 1, 0, 0, 10, 10), widget("id2", 3, 0, 0, 10, 10)),
+                board.findIntersecting(0, 0, 1000, 1000));
+    }
+
+    @Test
+    void findIntersecting_oversizedWidget() {
+        Widget background = insert(widget("background", 0, -1_000_000, -1_000_000, 2_000_000, 2_000_000));
+        Widget small = insert(widget("small", 1, 5, 5, 10, 10));
+
+        assertEquals(ImmutableList.of(background, small), board.findIntersecting(0, 0, 10, 10));
+        assertEquals(ImmutableList.of(background), board.findIntersecting(500_000, 500_000, 500_001, 500_001));
+
+        remove("background");
+
+        assertEquals(ImmutableList.of(small), board.findIntersecting(0, 0, 10, 10));
+    }
+
+    @Test
+    void findTopmostAt_ok() {
+        insert(widget("bottom", 1, 0, 0, 100, 100));
+        Widget top = insert(widget("top", 2, 50, 50, 100, 100));
+
+        assertEquals(Optional.of(top), board.findTopmostAt(50, 50));
+        assertEquals(Optional.of(widget("bottom", 1, 0, 0, 100, 100)), board.findTopmostAt(10, 10));
+        assertEquals(Optional.empty(), board.findTopmostAt(-1, 10));
+    }
+
+    @Test
+    void replace_sameZIndex_movedInPlace() {
+        insert(widget("id1", 1, 0, 0, 10, 10));
+        insert(widget("id2", 2, 0, 0, 10, 10));
+        insert(widget("new", 1, 0, 0, 10, 10));
+        WidgetBoard previous = board;
+
+        board = board.replace(widget("id1", 2, 1_000, 1_000, 10, 10));
+        board = board.replace(widget("new", 1, 5, 5, 10, 10));
+
+        assertEquals(ImmutableList.of(widget("new", 1, 5, 5, 10, 10), widget("id1", 2, 1_000, 1_000, 10, 10),
+                widget("id2", 3, 0, 0, 10, 10)), board.list());
+        assertEquals(Optional.of(widget("id1", 2, 1_000, 1_000, 10, 10)), board.get("id1"));
+        assertEquals(ImmutableList.of(widget("new", 1, 5, 5, 10, 10), widget("id2", 3, 0, 0, 10, 10)),
+                board.findIntersecting(0, 0, 100, 100));
+        assertEquals(ImmutableList.of(widget("id1", 2, 1_000, 1_000, 10, 10)),
+                board.findIntersecting(900, 900, 1_100, 1_100));
+        assertEquals(ImmutableList.of(widget("new", 1, 0, 0, 10, 10), widget("id1", 2, 0, 0, 10, 10),
+                widget("id2", 3, 0, 0, 10, 10)), previous.list());
+    }
+
+    @Test
+    void insert_previousBoardUnchanged() {
+        insert(widget("id1", 1));
+        insert(widget("id2", 2));
+        WidgetBoard previous = board;
+
+        insert(widget("new", 1));
+        remove("id2");
+
+        assertEquals(ImmutableList.of(widget("id1", 1), widget("id2", 2)), previous.list());
+        assertEquals(Optional.of(widget("id2", 2)), previous.get("id2"));
+        assertEquals(Optional.empty(), previous.get("new"));
+        assertEquals(ImmutableList.of(widget("new", 1), widget("id1", 2)), board.list());
+    }
+
+    @Test
+    void randomOperations_sameAsCascadingMaps() {
+        Random random = new Random(42);
+        Map<String, Widget> widgetsById = new HashMap<>();
+        SortedMap<Integer, Widget> widgetsByZIndex = new TreeMap<>();
+        List<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            if (ids.isEmpty() || random.nextInt(4) > 0) {
+                Widget widget = widget("id" + i, random.nextInt(30_000));
+                ids.add(widget.getId());
+                int run = 0;
+                while (widgetsByZIndex.containsKey(widget.getZ() + run)) {
+                    run++;
+                }
+                assertEquals(run, board.contiguousFrom(widget.getZ()));
+                insert(widget);
+                cascade(widgetsById, widgetsByZIndex, widget);
+            } else {
+                String id = ids.remove(random.nextInt(ids.size()));
+                assertEquals(Optional.of(widgetsById.remove(id)), remove(id));
+                widgetsByZIndex.values().removeIf(widget -> widget.getId().equals(id));
+            }
+            if (i % 1_000 == 0) {
+                assertEquals(ImmutableList.copyOf(widgetsByZIndex.values()), board.list());
+            }
+        }
+
+        assertEquals(ImmutableList.copyOf(widgetsByZIndex.values()), board.list());
+        assertEquals(ImmutableList.copyOf(widgetsByZIndex.values()), board.stream().collect(Collectors.toList()));
+        assertEquals(widgetsByZIndex.size(), board.size());
+        assertTrue(widgetsById.values().stream().allMatch(widget -> board.get(widget.getId()).equals(Optional.of(widget))));
+    }
+
+    @Test
+    void randomOperations_columnsSameAsObjects() {
+        Random random = new Random(5);
+        WidgetBoard columns = WidgetBoard.empty(WidgetStorage.COLUMNS);
+        List<String> ids = new ArrayList<>();
+        WidgetBoard previousObjects = board;
+        WidgetBoard previousColumns = columns;
+
+        for (int i = 0; i < 5_000; i++) {
+            if (ids.isEmpty() || random.nextInt(4) > 0) {
+                Widget widget = Widget.builder()
+                        .id(id(random, i))
+                        .z(random.nextInt(6_000))
+                        .coordinates(random.nextBoolean()
+                                ? Coordinates.builder().x(random.nextInt(2_000) - 1_000).y(random.nextInt(2_000))
+                                        .build()
+                                : null)
+                        .width(random.nextInt(300))
+                        .height(random.nextInt(300))
+                        .lastModification(random.nextBoolean()
+                                ? LocalDateTime.of(2021, 3, 1, 12, 0).plusNanos(random.nextLong() >>> 20)
+                                : null)
+                        .build();
+                ids.add(widget.getId());
+                insert(widget);
+                columns = columns.insert(widget);
+            } else {
+                String id = ids.remove(random.nextInt(ids.size()));
+                remove(id);
+                columns = columns.remove(id);
+            }
+            if (i == 2_500) {
+                previousObjects = board;
+                previousColumns = columns;
+            }
+        }
+
+        assertEquals(board.list(), columns.list());
+        assertEquals(previousObjects.list(), previousColumns.list());
+        assertEquals(board.findIntersecting(-200, 0, 300, 700), columns.findIntersecting(-200, 0, 300, 700));
+        for (String id : ids) {
+            assertEquals(board.get(id), columns.get(id));
+        }
+        assertEquals(board.list(), WidgetBoard.of(board.list(), 0, WidgetStorage.COLUMNS).list());
+    }
+
+    @Test
+    void get_idsWithSameHash_eachFound() {
+        for (WidgetStorage storage : WidgetStorage.values()) {
+            board = WidgetBoard.empty(storage);
+            String uuid = UUID.randomUUID().toString();
+            insert(widget("Aa", 1));
+            insert(widget("BB", 2));
+            insert(widget(uuid, 3));
+
+            assertEquals("Aa".hashCode(), "BB".hashCode());
+            assertEquals(Optional.of(widget("BB", 2)), board.get("BB"));
+            assertEquals(Optional.of(widget(uuid, 3)), board.get(uuid));
+            assertEquals(Optional.empty(), board.get(uuid.toUpperCase(Locale.ROOT)));
+            remove("Aa");
+            assertEquals(Optional.empty(), board.get("Aa"));
+            assertEquals(Optional.of(widget("BB", 2)), board.get("BB"));
+        }
+    }
+
+    @Test
+    void randomOperations_statsSameAsScan() {
+        for (WidgetStorage storage : WidgetStorage.values()) {
+            Random random = new Random(11);
+            WidgetBoard stored = WidgetBoard.empty(storage);
+            List<String> ids = new ArrayList<>();
+
+            for (int i = 0; i < 6_000; i++) {
+                int operation = random.nextInt(10);
+                if (ids.isEmpty() || operation < 5) {
+                    Widget widget = randomWidget(random, "id" + i, random.nextInt(3_000));
+                    ids.add(widget.getId());
+                    stored = stored.insert(widget);
+                } else if (operation < 7) {
+                    String id = ids.get(random.nextInt(ids.size()));
+                    stored = stored.replace(randomWidget(random, id, stored.get(id).orElseThrow().getZ()));
+                } else {
+                    stored = stored.remove(ids.remove(random.nextInt(ids.size())));
+                }
+                if (i % 250 == 0) {
+                    assertStatsSameAsScan(stored);
+                }
+            }
+            while (!ids.isEmpty()) {
+                stored = stored.remove(ids.remove(random.nextInt(ids.size())));
+                if (ids.size() % 100 == 0) {
+                    assertStatsSameAsScan(stored);
+                }
+            }
+
+            assertEquals(Optional.empty(), stored.bounds());
+        }
+    }
+
+    @Test
+    void bounds_extremeWidgetRemoved_shrinks() {
+        insert(widget("low", 0, -50, -60, 10, 10));
+        insert(widget("high", 0, 100, 200, 30, 40));
+        insert(widget("nowhere", 0));
+
+        assertEquals(Optional.of(BoundingBox.builder().minX(-50).minY(-60).maxX(130).maxY(240).build()),
+                board.bounds());
+        assertEquals(0, board.firstZ());
+        assertEquals(2, board.lastZ());
+
+        remove("high");
+
+        assertEquals(Optional.of(BoundingBox.builder().minX(-50).minY(-60).maxX(-40).maxY(-50).build()),
+                board.bounds());
+        assertEquals(ImmutableList.of(board.get("low").orElseThrow()), board.listBetween(2, 5));
+    }
+
+    private static void assertStatsSameAsScan(WidgetBoard board) {
+        List<Widget> widgets = board.list();
+        assertEquals(widgets.size(), board.size());
+        if (!widgets.isEmpty()) {
+            assertEquals(widgets.get(0).getZ(), board.firstZ());
+            assertEquals(widgets.get(widgets.size() - 1).getZ(), board.lastZ());
+        }
+        BoundingBox bounds = null;
+        for (Widget widget : widgets) {
+            bounds = BoundingBox.union(bounds, BoundingBox.of(widget));
+        }
+        assertEquals(Optional.ofNullable(bounds), board.bounds());
+        assertEquals(Optional.ofNullable(bounds), WidgetBoard.of(widgets, 0, board.storage()).bounds());
+        assertEquals(widgets.stream().filter(widget -> widget.getZ() >= 500 && widget.getZ() <= 900)
+                .collect(Collectors.toList()), board.listBetween(500, 900));
+    }
+
+    private static Widget randomWidget(Random random, String id, int z) {
+        return Widget.builder()
+                .id(id)
+                .z(z)
+                .coordinates(random.nextInt(5) > 0
+                        ? Coordinates.builder().x(random.nextInt(20_000) - 10_000).y(random.nextInt(20_000) - 10_000)
+                                .build()
+                        : null)
+                .width(random.nextInt(500))
+                .height(random.nextInt(500))
+                .build();
+    }
+
+    /**
+     * Id stored as text, or as a UUID whose text is kept by the columns only when it is not in canonical form.
+     */
+    private static String id(Random random, int i) {
+        String uuid = new UUID(random.nextLong(), random.nextLong()).toString();
+        switch (random.nextInt(3)) {
+            case 0:
+                return uuid;
+            case 1:
+                return uuid.toUpperCase(Locale.ROOT);
+            default:
+                return "id" + i;
+        }
+    }
+
+    private Widget insert(Widget widget) {
+        board = board.insert(widget);
+        return widget;
+    }
+
+    private Optional<Widget> remove(String id) {
+        Optional<Widget> removed = board.get(id);
+        board = board.remove(id);
+        return removed;
+    }
+
+    private static void cascade(Map<String, Widget> widgetsById, SortedMap<Integer, Widget> widgetsByZIndex,
+                                Widget input) {
+        Widget inserting = input;
+        while (inserting != null) {
+            widgetsById.put(inserting.getId(), inserting);
+            Widget replaced = widgetsByZIndex.put(inserting.getZ(), inserting);
+            inserting = replaced == null ? null : replaced.toBuilder().z(replaced.getZ() + 1).build();
+        }
+    }
+
+    private static Widget widget(String id, int z) {
+        return Widget.builder().id(id).z(z).build();
+    }
+
+    private static Widget widget(String id, int z, int x, int y, int width, int height) {
+        return Widget.builder()
+                .id(id)
+                .z(z)
+                .coordinates(Coordinates.builder().x(x).y(y).build())
+                .width(width)
+                .height(height)
+                .build();
+    }
+}
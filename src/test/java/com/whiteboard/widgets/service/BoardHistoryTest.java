@@ -0,0 +1,76 @@
+package com.whiteboard.widgets.service;
+
+import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoardHistoryTest {
+
+    @Test
+    void add_capacityReached_oldestDropped() {
+        BoardHistory history = new BoardHistory(3, 1_000);
+        for (int version = 1; version <= 4; version++) {
+            history.add(board(version, 1), 1);
+        }
+
+        assertEquals(Optional.empty(), history.get(1));
+        assertEquals(2, history.get(2).orElseThrow().version());
+        assertEquals(3, history.before(4).orElseThrow().version());
+    }
+
+    @Test
+    void add_boardReplacedAsWhole_previousReleasedAfterNextBoard() throws Exception {
+        BoardHistory history = new BoardHistory(100, 1_000);
+        history.add(board(1, 1), 0);
+        WeakReference<WidgetBoard> replaced = addReplaced(history);
+
+        history.add(board(3, 2_000), 2_001);
+
+        assertEquals(2, history.before(3).orElseThrow().version());
+        assertEquals(Optional.empty(), history.get(1));
+
+        history.add(board(4, 2_000), 1);
+
+        assertEquals(Optional.empty(), history.get(2));
+        assertEquals(3, history.before(4).orElseThrow().version());
+        for (int attempt = 0; attempt < 10 && replaced.get() != null; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(replaced.get());
+    }
+
+    @Test
+    void add_smallWrites_keptUpToCapacity() {
+        BoardHistory history = new BoardHistory(100, 1_000);
+        for (int version = 1; version <= 100; version++) {
+            history.add(board(version, 10), 1);
+        }
+
+        assertTrue(history.get(1).isPresent());
+    }
+
+    private static WeakReference<WidgetBoard> addReplaced(BoardHistory history) {
+        WidgetBoard board = board(2, 1_000);
+        history.add(board, 1);
+        return new WeakReference<>(board);
+    }
+
+    private static WidgetBoard board(long version, int size) {
+        List<Widget> widgets = new ArrayList<>(size);
+        for (int z = 0; z < size; z++) {
+            widgets.add(Widget.builder().id(version + "-" + z).z(z).build());
+        }
+        return WidgetBoard.of(ImmutableList.copyOf(widgets), version);
+    }
+}
@@ -0,0 +1,144 @@
+package com.whiteboard.widgets.service;
+
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.ChangeLogFactory;
+import com.whiteboard.widgets.repository.MappedChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.repository.WidgetStorage;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoardRegistryTest {
+    private static final int CHANGE_CAPACITY = 1_000;
+
+    private final WidgetService defaultBoard =
+            new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(CHANGE_CAPACITY), ChangeLog.NONE);
+    private BoardRegistry boardRegistry;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        boardRegistry.close();
+    }
+
+    @Test
+    void boards_ownZIndexes() {
+        boardRegistry = registry(ChangeLogFactory.none(WidgetStorage.OBJECTS));
+
+        Widget a = create(Optional.of("a"));
+        Widget b = create(Optional.of("b"));
+        Widget unnamed = create(Optional.empty());
+
+        assertEquals(0, a.getZ());
+        assertEquals(0, b.getZ());
+        assertEquals(0, unnamed.getZ());
+        assertEquals(Optional.empty(), get(Optional.of("a"), b.getId()));
+        assertEquals(1, defaultBoard.list().size());
+        assertEquals(2, boardRegistry.size());
+    }
+
+    @Test
+    void evictIdle_notDurable_onlyEmptyBoards() {
+        boardRegistry = registry(ChangeLogFactory.none(WidgetStorage.OBJECTS));
+        Widget widget = create(Optional.of("a"));
+        boardRegistry.withBoard(Optional.of("b"), WidgetService::list);
+
+        boardRegistry.evictIdle();
+
+        assertEquals(1, boardRegistry.size());
+        assertEquals(Optional.of(widget), get(Optional.of("a"), widget.getId()));
+    }
+
+    @Test
+    void evictIdle_durable_boardRestored() {
+        boardRegistry = registry(ChangeLogFactory.mapped(MappedChangeLog.Settings.builder()
+                .directory(directory)
+                .build()));
+        Widget widget = create(Optional.of("a"));
+
+        boardRegistry.evictIdle();
+
+        assertEquals(0, boardRegistry.size());
+        assertEquals(Optional.of(widget), get(Optional.of("a"), widget.getId()));
+        assertEquals(1, boardRegistry.size());
+    }
+
+    @Test
+    void readBoard_unknown_emptyAndNotCreated() {
+        boardRegistry = registry(ChangeLogFactory.mapped(MappedChangeLog.Settings.builder()
+                .directory(directory)
+                .build()));
+
+        assertEquals(0, boardRegistry.readBoard(Optional.of("a"), WidgetService::list).size());
+        assertEquals("missing", boardRegistry.withExistingBoard(Optional.of("a"), service -> "found",
+                () -> "missing"));
+
+        assertEquals(0, boardRegistry.size());
+        assertFalse(Files.exists(directory.resolve("boards").resolve("a")));
+    }
+
+    @Test
+    void evictIdle_twice_restoredEachTime() {
+        boardRegistry = registry(ChangeLogFactory.mapped(MappedChangeLog.Settings.builder()
+                .directory(directory)
+                .build()));
+        Widget first = create(Optional.of("a"));
+        boardRegistry.evictIdle();
+        Widget second = create(Optional.of("a"));
+
+        boardRegistry.evictIdle();
+
+        assertEquals(Optional.of(first), get(Optional.of("a"), first.getId()));
+        assertEquals(Optional.of(second), get(Optional.of("a"), second.getId()));
+    }
+
+    @Test
+    void evictIdle_inUse_kept() {
+        boardRegistry = registry(ChangeLogFactory.none(WidgetStorage.OBJECTS));
+
+        boardRegistry.withBoard(Optional.of("a"), service -> {
+            boardRegistry.evictIdle();
+            return null;
+        });
+
+        assertEquals(1, boardRegistry.size());
+    }
+
+    @Test
+    void withBoard_invalidId_throws() {
+        boardRegistry = registry(ChangeLogFactory.none(WidgetStorage.OBJECTS));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> boardRegistry.withBoard(Optional.of("../a"), WidgetService::list));
+    }
+
+    private BoardRegistry registry(ChangeLogFactory changeLogFactory) {
+        return new BoardRegistry(defaultBoard, changeLogFactory, CHANGE_CAPACITY, Duration.ZERO);
+    }
+
+    private Optional<Widget> get(Optional<String> boardId, String id) {
+        return boardRegistry.readBoard(boardId, service -> service.get(id));
+    }
+
+    private Widget create(Optional<String> boardId) {
+        return boardRegistry.withBoard(boardId, service -> service.create(WidgetContent.builder()
+                .z(Optional.empty())
+                .width(1)
+                .height(1)
+                .build()));
+    }
+}
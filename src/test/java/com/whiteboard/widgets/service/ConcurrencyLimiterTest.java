@@ -0,0 +1,144 @@
+package com.whiteboard.widgets.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+
+    @Test
+    void call_limitReached_rejectedAfterQueueWait() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", fixed(1, Duration.ofMillis(20)));
+        limiter.bindTo(meterRegistry);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> held = hold(limiter, running, release);
+        running.await();
+
+        long start = System.nanoTime();
+        assertThrows(RejectedExecutionException.class, () -> limiter.call(() -> "rejected"));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        release.countDown();
+        held.join();
+        assertEquals("admitted", limiter.call(() -> "admitted"));
+        assertEquals(2, meterRegistry.get("widgets.limiter.calls").tag("outcome", "admitted").counter().count());
+        assertEquals(1, meterRegistry.get("widgets.limiter.calls").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void call_freedWhileQueued_runs() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", fixed(1, Duration.ofSeconds(10)));
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> held = hold(limiter, running, release);
+        running.await();
+
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> limiter.call(() -> "queued"));
+        while (limiter.queued() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("queued", queued.get(10, TimeUnit.SECONDS));
+        held.join();
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void call_concurrent_neverAboveLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", fixed(4, Duration.ofSeconds(10)));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<?>> callers = new ArrayList<>();
+        for (int caller = 0; caller < 16; caller++) {
+            callers.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    limiter.call(() -> {
+                        mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        Thread.yield();
+                        return running.decrementAndGet();
+                    });
+                }
+            }));
+        }
+        for (Future<?> caller : callers) {
+            caller.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertTrue(mostRunning.get() <= 4, "most running " + mostRunning.get());
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void call_slower_limitShrinks() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", ConcurrencyLimiter.Settings.builder()
+                .initialLimit(50)
+                .minLimit(2)
+                .maxLimit(100)
+                .build());
+        for (int i = 0; i < 1_000; i++) {
+            limiter.call(() -> "fast");
+        }
+        assertEquals(50, limiter.limit());
+
+        for (int i = 0; i < 30; i++) {
+            limiter.call(() -> {
+                sleep(5);
+                return null;
+            });
+        }
+
+        assertTrue(limiter.limit() < 10, "limit " + limiter.limit());
+        assertTrue(limiter.limit() >= 2);
+    }
+
+    private static CompletableFuture<Void> hold(ConcurrencyLimiter limiter, CountDownLatch running,
+                                                CountDownLatch release) {
+        return CompletableFuture.runAsync(() -> limiter.call(() -> {
+            running.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+    }
+
+    private static ConcurrencyLimiter.Settings fixed(int limit, Duration queueWait) {
+        return ConcurrencyLimiter.Settings.builder()
+                .initialLimit(limit)
+                .minLimit(limit)
+                .maxLimit(limit)
+                .queueWait(queueWait)
+                .build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.whiteboard.widgets.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WidgetIdsTest {
+
+    @Test
+    void next_version7Uuid() {
+        UUID id = UUID.fromString(WidgetIds.next());
+
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        assertTrue(Math.abs(System.currentTimeMillis() - (id.getMostSignificantBits() >>> 16)) < 60_000);
+    }
+
+    @Test
+    void next_increasing() {
+        String previous = WidgetIds.next();
+        for (int i = 0; i < 100_000; i++) {
+            String id = WidgetIds.next();
+            assertTrue(id.compareTo(previous) > 0, id + " after " + previous);
+            previous = id;
+        }
+    }
+}
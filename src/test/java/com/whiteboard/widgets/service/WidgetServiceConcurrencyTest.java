@@ -0,0 +1,136 @@
+package com.whiteboard.widgets.service;
+
+import com.whiteboard.widgets.model.Coordinates;
+import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
+import com.whiteboard.widgets.service.request.WidgetContent;
+import com.whiteboard.widgets.service.request.WidgetPatch;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Mixes writers and readers on one service and checks that every read sees a consistent board.
+ */
+class WidgetServiceConcurrencyTest {
+    private static final int OPERATIONS = 20_000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4, 8, 16, 32, 64})
+    void mixedOperations_consistentBoard(int threads) throws Exception {
+        WidgetService widgetService = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(OPERATIONS), ChangeLog.NONE);
+        run(widgetService, threads);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 8, 64})
+    void mixedOperations_pipeline_changesReplayToBoard(int threads) throws Exception {
+        WidgetService widgetService = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(OPERATIONS), ChangeLog.NONE,
+                WidgetMetrics.NONE, Optional.of(WritePipeline.Settings.builder().capacity(OPERATIONS).build()));
+        try {
+            run(widgetService, threads);
+        } finally {
+            widgetService.close();
+        }
+
+        WidgetBoard replayed = WidgetBoard.EMPTY;
+        for (WidgetChange change : widgetService.changesSince(0).orElseThrow()) {
+            switch (change.getType()) {
+                case CREATED:
+                case UPDATED:
+                    replayed = replayed.remove(change.getWidget().getId()).insert(change.getWidget());
+                    break;
+                case DELETED:
+                    replayed = replayed.remove(change.getId());
+                    break;
+                default:
+                    break;
+            }
+        }
+        assertEquals(widgetService.list(), replayed.list());
+    }
+
+    private static void run(WidgetService widgetService, int threads) throws Exception {
+        List<String> ids = new CopyOnWriteArrayList<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            Future<?> checker = executor.submit(() -> {
+                while (running.get()) {
+                    verifyList(widgetService.list());
+                }
+            });
+            List<Future<?>> workers = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                workers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERATIONS / threads; i++) {
+                        int operation = random.nextInt(10);
+                        if (operation < 3 || ids.isEmpty()) {
+                            ids.add(widgetService.create(content(random)).getId());
+                        } else if (operation < 4) {
+                            widgetService.update(ids.get(random.nextInt(ids.size())), content(random));
+                        } else if (operation < 5) {
+                            widgetService.patch(ids.get(random.nextInt(ids.size())), WidgetPatch.builder()
+                                    .coordinates(Optional.of(Coordinates.builder().x(random.nextInt(10_000)).build()))
+                                    .build());
+                        } else if (operation < 6) {
+                            widgetService.delete(ids.get(random.nextInt(ids.size())));
+                        } else {
+                            widgetService.get(ids.get(random.nextInt(ids.size())));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(1, TimeUnit.MINUTES);
+            }
+            running.set(false);
+            checker.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Widget> widgets = widgetService.list();
+        verifyList(widgets);
+        for (Widget widget : widgets) {
+            assertEquals(Optional.of(widget), widgetService.get(widget.getId()));
+        }
+    }
+
+    private static void verifyList(List<Widget> widgets) {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < widgets.size(); i++) {
+            assertTrue(ids.add(widgets.get(i).getId()));
+            if (i > 0) {
+                assertTrue(widgets.get(i - 1).getZ() < widgets.get(i).getZ());
+            }
+        }
+    }
+
+    private static WidgetContent content(ThreadLocalRandom random) {
+        return WidgetContent.builder()
+                .coordinates(Coordinates.builder().x(random.nextInt(10_000)).y(random.nextInt(10_000)).build())
+                .width(100)
+                .height(100)
+                .z(random.nextBoolean() ? Optional.empty() : Optional.of(random.nextInt(1_000)))
+                .build();
+    }
+}
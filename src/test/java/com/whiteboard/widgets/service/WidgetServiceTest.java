@@ -1,55 +1,49 @@
 package com.whiteboard.widgets.service;
 
 import com.google.common.collect.ImmutableList;
+import com.whiteboard.widgets.model.BoardStats;
+import com.whiteboard.widgets.model.BoundingBox;
+import com.whiteboard.widgets.model.Coordinates;
 import com.whiteboard.widgets.model.Widget;
+import com.whiteboard.widgets.model.WidgetChange;
+import com.whiteboard.widgets.model.WidgetPage;
+import com.whiteboard.widgets.repository.ChangeLog;
+import com.whiteboard.widgets.repository.WidgetBoard;
 import com.whiteboard.widgets.service.request.WidgetContent;
-import org.junit.jupiter.api.AfterEach;
+import com.whiteboard.widgets.service.request.WidgetOperation;
+import com.whiteboard.widgets.service.request.WidgetPatch;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.SortedMap;
+import java.util.Random;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.mockito.Mockito.*;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-@ExtendWith(MockitoExtension.class)
 class WidgetServiceTest {
     private static final String ID_1 = "id1";
-    private static final String ID_2 = "id2";
-    private static final String ID_3 = "id3";
 
     private static final int Z_INDEX = 10;
 
-    @Mock
-    private Map<String, Widget> widgetsById;
-
-    @Mock
-    private SortedMap<Integer, Widget> widgetsByZIndex;
+    private static final int CHANGE_CAPACITY = 1_000;
 
     private WidgetService widgetService;
 
-    @Captor
-    private ArgumentCaptor<String> idCaptor;
-
-    @Captor
-    private ArgumentCaptor<Integer> zCaptor;
-
-    @Captor
-    private ArgumentCaptor<Widget> widgetByIdCaptor;
-
-    @Captor
-    private ArgumentCaptor<Widget> widgetByZCaptor;
-
     @BeforeEach
     void setUp() {
-        widgetService = new WidgetService(widgetsById, widgetsByZIndex);
+        widgetService = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(CHANGE_CAPACITY), ChangeLog.NONE);
     }
 
     @Test
@@ -59,90 +53,629 @@ class WidgetServiceTest {
 
     @Test
     void get_exists_ok() {
-        Widget widget = widget(ID_1);
-        when(widgetsById.get(ID_1)).thenReturn(widget);
+        Widget widget = create(Optional.of(Z_INDEX));
 
-        assertEquals(Optional.of(widget), widgetService.get(ID_1));
+        assertEquals(Optional.of(widget), widgetService.get(widget.getId()));
     }
 
     @Test
     void list_empty_ok() {
-        when(widgetsByZIndex.values()).thenReturn(ImmutableList.of());
-
         assertEquals(ImmutableList.of(), widgetService.list());
     }
 
     @Test
     void list_withValues_ok() {
-        when(widgetsByZIndex.values()).thenReturn(ImmutableList.of(widget(ID_1), widget(ID_2), widget(ID_3)));
+        Widget widget3 = create(Optional.of(3));
+        Widget widget1 = create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+
+        assertEquals(ImmutableList.of(widget1, widget2, widget3), widgetService.list());
+    }
+
+    @Test
+    void list_pages_ok() {
+        Widget widget1 = create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+        Widget widget3 = create(Optional.of(3));
 
-        assertEquals(ImmutableList.of(widget(ID_1), widget(ID_2), widget(ID_3)), widgetService.list());
+        WidgetPage first = widgetService.list(Optional.empty(), 2).orElseThrow();
+        assertEquals(ImmutableList.of(widget1, widget2), first.getWidgets());
+
+        WidgetPage second = widgetService.list(Optional.of(first.getNext()), 2).orElseThrow();
+        assertEquals(ImmutableList.of(widget3), second.getWidgets());
+        assertNull(second.getNext());
+    }
+
+    @Test
+    void list_pageAfterInsertionBelow_continuesAfterLastWidget() {
+        create(Optional.of(1));
+        create(Optional.of(2));
+        Widget widget3 = create(Optional.of(3));
+        WidgetPage first = widgetService.list(Optional.empty(), 2).orElseThrow();
+
+        create(Optional.of(1));
+
+        WidgetPage second = widgetService.list(Optional.of(first.getNext()), 2).orElseThrow();
+        assertEquals(ImmutableList.of(widgetService.get(widget3.getId()).orElseThrow()), second.getWidgets());
     }
 
+    @Test
+    void list_pageAfterLastWidgetDeleted_continuesAfterItsZIndex() {
+        create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+        Widget widget3 = create(Optional.of(3));
+        WidgetPage first = widgetService.list(Optional.empty(), 2).orElseThrow();
+
+        widgetService.delete(widget2.getId());
+
+        WidgetPage second = widgetService.list(Optional.of(first.getNext()), 2).orElseThrow();
+        assertEquals(ImmutableList.of(widget3), second.getWidgets());
+    }
+
+    @Test
+    void list_pagesOfImportedWidgets_ok() {
+        Widget widget1 = Widget.builder().id("a").z(1).build();
+        Widget widget2 = Widget.builder().id("b").z(2).build();
+        Widget widget3 = Widget.builder().id("c").z(3).build();
+        widgetService.importWidgets(ImmutableList.of(widget1, widget2, widget3));
+
+        WidgetPage first = widgetService.list(Optional.empty(), 2).orElseThrow();
+        assertEquals(ImmutableList.of(widget1, widget2), first.getWidgets());
+
+        WidgetPage second = widgetService.list(Optional.of(first.getNext()), 2).orElseThrow();
+        assertEquals(ImmutableList.of(widget3), second.getWidgets());
+        assertNull(second.getNext());
+    }
+
+    @Test
+    void list_invalidCursor_empty() {
+        assertEquals(Optional.empty(), widgetService.list(Optional.of("invalid"), 2));
+    }
 
     @Test
     void delete_ok() {
-        when(widgetsById.get(eq(ID_1))).thenReturn(widget(ID_1));
+        Widget widget = create(Optional.of(Z_INDEX));
+
+        widgetService.delete(widget.getId());
+
+        assertEquals(Optional.empty(), widgetService.get(widget.getId()));
+        assertEquals(ImmutableList.of(), widgetService.list());
+    }
+
+    @Test
+    void delete_doesNotExist_ignored() {
+        Widget widget = create(Optional.of(Z_INDEX));
 
         widgetService.delete(ID_1);
 
-        verify(widgetsById).remove(ID_1);
-        verify(widgetsByZIndex).remove(Z_INDEX);
+        assertEquals(ImmutableList.of(widget), widgetService.list());
     }
 
     @Test
     void create_withZIndex_ok() {
-        widgetService.create(WidgetContent.builder().z(Optional.of(Z_INDEX)).build());
+        Widget inserted = create(Optional.of(Z_INDEX));
 
-        verify(widgetsById).put(idCaptor.capture(), widgetByIdCaptor.capture());
-        verify(widgetsByZIndex).put(eq(Z_INDEX), widgetByZCaptor.capture());
+        assertEquals(Z_INDEX, inserted.getZ());
+        assertEquals(Optional.of(inserted), widgetService.get(inserted.getId()));
+    }
 
-        Widget insertedById = widgetByIdCaptor.getValue();
-        Widget insertedByZ = widgetByZCaptor.getValue();
+    @Test
+    void create_noZIndexEmptyMap_0ZIndex() {
+        Widget inserted = create(Optional.empty());
 
-        assertEquals(insertedById, insertedByZ);
-        assertEquals(idCaptor.getValue(), insertedById.getId());
-        assertEquals(Z_INDEX, insertedById.getZ());
+        assertEquals(0, inserted.getZ());
     }
 
     @Test
-    void create_noZIndexEmptyMap_0ZIndex() {
-        when(widgetsByZIndex.isEmpty()).thenReturn(true);
+    void create_noZIndexNonEmptyMap_0ZIndex() {
+        create(Optional.of(15));
 
-        widgetService.create(WidgetContent.builder().z(Optional.empty()).build());
+        Widget inserted = create(Optional.empty());
 
-        verify(widgetsById).put(idCaptor.capture(), widgetByIdCaptor.capture());
-        verify(widgetsByZIndex).put(zCaptor.capture(), widgetByZCaptor.capture());
+        assertEquals(16, inserted.getZ());
+    }
 
-        Widget insertedById = widgetByIdCaptor.getValue();
-        Widget insertedByZ = widgetByZCaptor.getValue();
+    @Test
+    void create_occupiedZIndex_shiftsUpToGap() {
+        Widget widget1 = create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+        Widget widget4 = create(Optional.of(4));
+        Widget widget6 = create(Optional.of(6));
+
+        Widget inserted = create(Optional.of(1));
+
+        assertEquals(ImmutableList.of(1, 2, 3, 4, 6), zIndexes(widgetService.list()));
+        assertEquals(2, widgetService.get(widget1.getId()).orElseThrow().getZ());
+        assertEquals(3, widgetService.get(widget2.getId()).orElseThrow().getZ());
+        assertEquals(4, widgetService.get(widget4.getId()).orElseThrow().getZ());
+        assertEquals(6, widgetService.get(widget6.getId()).orElseThrow().getZ());
+        assertEquals(1, widgetService.get(inserted.getId()).orElseThrow().getZ());
+    }
 
-        assertEquals(insertedById, insertedByZ);
-        assertEquals(idCaptor.getValue(), insertedById.getId());
-        assertEquals(zCaptor.getValue(), insertedById.getZ());
-        assertEquals(0, insertedById.getZ());
+    @Test
+    void create_occupiedZIndex_recordsCascade() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        widgetService = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(CHANGE_CAPACITY), ChangeLog.NONE,
+                new WidgetMetrics(meterRegistry));
+        create(Optional.of(1));
+        create(Optional.of(2));
+        create(Optional.of(4));
+
+        create(Optional.of(1));
+
+        assertEquals(4, meterRegistry.get("widgets.writes").tag("operation", "create").timer().count());
+        assertEquals(2, meterRegistry.get("widgets.cascade.length").summary().max());
     }
 
     @Test
-    void create_noZIndexNonEmptyMap_0ZIndex() {
-        when(widgetsByZIndex.isEmpty()).thenReturn(false);
-        when(widgetsByZIndex.lastKey()).thenReturn(15);
+    void create_many_lockWaitsAndBoardSizesSampled() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        widgetService = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(CHANGE_CAPACITY), ChangeLog.NONE,
+                new WidgetMetrics(meterRegistry));
+        int writes = 100 * WidgetMetrics.SAMPLING;
+        for (int i = 0; i < writes; i++) {
+            create(Optional.empty());
+        }
+
+        long lockWaits = meterRegistry.get("widgets.lock.wait").timer().count();
+        long boardSizes = meterRegistry.get("widgets.board.size").summary().count();
+        assertTrue(lockWaits > 50 && lockWaits < 150, "lock waits " + lockWaits);
+        assertTrue(boardSizes > 50 && boardSizes < 150, "board sizes " + boardSizes);
+        assertTrue(meterRegistry.get("widgets.board.size").summary().max() <= writes);
+    }
+
+    @Test
+    void stats_cascadeAndDelete_exact() {
+        assertEquals(BoardStats.builder().build(), widgetService.stats());
+        Widget far = widgetService.create(WidgetContent.builder()
+                .coordinates(Coordinates.builder().x(-100).y(50).build()).z(Optional.of(2)).width(10).height(20)
+                .build());
+        create(Optional.of(3));
+        Widget near = widgetService.create(WidgetContent.builder()
+                .coordinates(Coordinates.builder().x(0).y(0).build()).z(Optional.of(2)).width(5).height(5).build());
+
+        assertEquals(BoardStats.builder()
+                .version(widgetService.version())
+                .count(3)
+                .minZ(2)
+                .maxZ(4)
+                .bounds(BoundingBox.builder().minX(-100).minY(0).maxX(5).maxY(70).build())
+                .build(), widgetService.stats());
+
+        widgetService.delete(far.getId());
+        widgetService.delete(near.getId());
+
+        assertEquals(BoardStats.builder().version(widgetService.version()).count(1).minZ(4).maxZ(4).build(),
+                widgetService.stats());
+    }
+
+    @Test
+    void listBetween_onlyRange() {
+        Widget widget1 = create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+        create(Optional.of(4));
+
+        Widget inserted = create(Optional.of(1));
+
+        assertEquals(new Versioned<>(widgetService.version(), ImmutableList.of(inserted, widget1.toBuilder().z(2)
+                .build(), widget2.toBuilder().z(3).build())), widgetService.listBetween(0, 3));
+    }
+
+    @Test
+    void patch_coordinatesOnly_keepsOtherFields() {
+        Widget widget1 = create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+        long version = widgetService.version();
+        Coordinates moved = Coordinates.builder().x(5).y(6).build();
+
+        Widget patched = widgetService.patch(widget1.getId(), WidgetPatch.builder()
+                .coordinates(Optional.of(moved))
+                .build()).orElseThrow();
+
+        assertEquals(widget1.toBuilder().coordinates(moved).lastModification(patched.getLastModification()).build(),
+                patched);
+        assertEquals(ImmutableList.of(patched, widget2), widgetService.list());
+        assertEquals(Optional.of(ImmutableList.of(WidgetChange.builder()
+                .sequence(version + 1)
+                .type(WidgetChange.Type.UPDATED)
+                .widget(patched)
+                .build())), widgetService.changesSince(version));
+    }
+
+    @Test
+    void patch_occupiedZIndex_shifts() {
+        Widget widget1 = create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+
+        Widget patched = widgetService.patch(widget1.getId(), WidgetPatch.builder().z(Optional.of(2)).build())
+                .orElseThrow();
+
+        assertEquals(2, patched.getZ());
+        assertEquals(ImmutableList.of(patched, widget2.toBuilder().z(3).build()), widgetService.list());
+    }
+
+    @Test
+    void patch_doesNotExist_empty() {
+        assertEquals(Optional.empty(), widgetService.patch(ID_1, WidgetPatch.builder().build()));
+    }
+
+    @Test
+    void update_noZIndex_movesToTop() {
+        Widget widget1 = create(Optional.of(1));
+        create(Optional.of(2));
+
+        Widget updated = widgetService.update(widget1.getId(), content(Optional.empty())).orElseThrow();
 
-        widgetService.create(WidgetContent.builder().z(Optional.empty()).build());
+        assertEquals(3, updated.getZ());
+        assertEquals(Optional.of(updated), widgetService.get(widget1.getId()));
+    }
+
+    @Test
+    void update_pipelinedTogether_mergedAndOwnWidgetReturned() throws Exception {
+        widgetService = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(CHANGE_CAPACITY), ChangeLog.NONE,
+                WidgetMetrics.NONE, Optional.of(WritePipeline.Settings.builder().build()));
+        Widget widget = create(Optional.of(Z_INDEX));
+        long version = widgetService.version();
+        List<FutureTask<Optional<Widget>>> updates = new ArrayList<>();
+
+        synchronized (widgetService) {
+            // the writer blocks on the monitor with the first updates while the others queue up behind them
+            for (int x = 0; x < 4; x++) {
+                WidgetContent content = WidgetContent.builder()
+                        .z(Optional.of(Z_INDEX))
+                        .coordinates(Coordinates.builder().x(x).y(0).build())
+                        .build();
+                FutureTask<Optional<Widget>> update = new FutureTask<>(
+                        () -> widgetService.update(widget.getId(), content));
+                Thread thread = new Thread(update);
+                thread.start();
+                while (thread.getState() != Thread.State.WAITING) {
+                    Thread.sleep(1);
+                }
+                updates.add(update);
+            }
+        }
+
+        for (int x = 0; x < 4; x++) {
+            assertEquals(x, updates.get(x).get().orElseThrow().getCoordinates().getX());
+        }
+        Widget stored = widgetService.get(widget.getId()).orElseThrow();
+        assertEquals(3, stored.getCoordinates().getX());
+        List<WidgetChange> changes = widgetService.changesSince(version).orElseThrow();
+        assertTrue(changes.size() < 4, "changes " + changes);
+        assertEquals(stored, changes.get(changes.size() - 1).getWidget());
+    }
+
+    @Test
+    void update_doesNotExist_empty() {
+        assertEquals(Optional.empty(), widgetService.update(ID_1, content(Optional.empty())));
+    }
+
+    @Test
+    void apply_ok() {
+        Widget widget1 = create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+
+        List<Widget> result = widgetService.apply(ImmutableList.of(
+                WidgetOperation.builder().type(WidgetOperation.Type.CREATE).content(content(Optional.of(1))).build(),
+                WidgetOperation.builder().type(WidgetOperation.Type.UPDATE).id(widget1.getId())
+                        .content(content(Optional.of(1))).build(),
+                WidgetOperation.builder().type(WidgetOperation.Type.DELETE).id(widget2.getId()).build()))
+                .orElseThrow();
+
+        assertEquals(2, result.size());
+        assertEquals(2, result.get(0).getZ());
+        assertEquals(widget1.getId(), result.get(1).getId());
+        assertEquals(1, result.get(1).getZ());
+        assertEquals(ImmutableList.of(result.get(1), result.get(0)), widgetService.list());
+    }
+
+    @Test
+    void apply_unknownWidget_nothingApplied() {
+        Widget widget = create(Optional.of(1));
 
-        verify(widgetsById).put(idCaptor.capture(), widgetByIdCaptor.capture());
-        verify(widgetsByZIndex).put(zCaptor.capture(), widgetByZCaptor.capture());
+        assertEquals(Optional.empty(), widgetService.apply(ImmutableList.of(
+                WidgetOperation.builder().type(WidgetOperation.Type.CREATE).content(content(Optional.of(1))).build(),
+                WidgetOperation.builder().type(WidgetOperation.Type.UPDATE).id(ID_1)
+                        .content(content(Optional.empty())).build())));
 
-        Widget insertedById = widgetByIdCaptor.getValue();
-        Widget insertedByZ = widgetByZCaptor.getValue();
+        assertEquals(ImmutableList.of(widget), widgetService.list());
+    }
+
+    @Test
+    void version_changesOnEveryMutation() {
+        long initial = widgetService.version();
+        Widget widget = create(Optional.of(1));
+        long created = widgetService.version();
+        widgetService.update(widget.getId(), content(Optional.of(2)));
+        long updated = widgetService.version();
+        widgetService.delete(widget.getId());
+        long deleted = widgetService.version();
+
+        assertTrue(initial < created && created < updated && updated < deleted);
+    }
+
+    @Test
+    void version_nothingChanged_same() {
+        create(Optional.of(1));
+        long version = widgetService.version();
+
+        widgetService.delete(ID_1);
+        widgetService.update(ID_1, content(Optional.empty()));
+
+        assertEquals(version, widgetService.version());
+        assertEquals(new Versioned<>(version, widgetService.list()), widgetService.listVersioned());
+    }
+
+    @Test
+    void changesSince_includeShifts() {
+        Widget widget1 = create(Optional.of(1));
+        Widget widget2 = create(Optional.of(2));
+        long version = widgetService.version();
+
+        Widget created = create(Optional.of(1));
+        Widget updated = widgetService.update(widget2.getId(), content(Optional.of(5))).orElseThrow();
+        widgetService.delete(widget1.getId());
+
+        assertEquals(Optional.of(ImmutableList.of(
+                WidgetChange.builder().sequence(version + 1).type(WidgetChange.Type.SHIFTED).fromZ(1).toZ(2).build(),
+                WidgetChange.builder().sequence(version + 2).type(WidgetChange.Type.CREATED).widget(created).build(),
+                WidgetChange.builder().sequence(version + 3).type(WidgetChange.Type.UPDATED).widget(updated).build(),
+                WidgetChange.builder().sequence(version + 4).type(WidgetChange.Type.DELETED).id(widget1.getId())
+                        .build())), widgetService.changesSince(version));
+        assertEquals(version + 4, widgetService.version());
+    }
+
+    @Test
+    void changesSince_replayedGiveBoard() {
+        Random random = new Random(7);
+        Map<String, Widget> replayed = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            long version = widgetService.version();
+            if (ids.isEmpty() || random.nextInt(3) > 0) {
+                ids.add(create(Optional.of(random.nextInt(500))).getId());
+            } else if (random.nextBoolean()) {
+                widgetService.update(ids.get(random.nextInt(ids.size())), content(Optional.of(random.nextInt(500))));
+            } else {
+                widgetService.delete(ids.remove(random.nextInt(ids.size())));
+            }
+            widgetService.changesSince(version).orElseThrow().forEach(change -> replay(replayed, change));
+        }
+
+        assertEquals(widgetService.list(), replayed.values().stream()
+                .sorted(Comparator.comparingInt(Widget::getZ))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void changesSince_dropped_empty() {
+        for (int i = 0; i <= CHANGE_CAPACITY; i++) {
+            create(Optional.empty());
+        }
+
+        assertEquals(Optional.empty(), widgetService.changesSince(0));
+        assertEquals(CHANGE_CAPACITY, widgetService.changesSince(1).orElseThrow().size());
+        assertEquals(Optional.empty(), widgetService.changesSince(widgetService.version() + 1));
+    }
+
+    @Test
+    void listAt_previousVersion_boardAsItWas() {
+        Widget widget1 = create(Optional.of(1));
+        long version = widgetService.version();
+
+        create(Optional.of(1));
+        widgetService.delete(widget1.getId());
+
+        assertEquals(Optional.of(ImmutableList.of(widget1)), widgetService.listAt(version));
+        assertEquals(Optional.of(ImmutableList.of()), widgetService.listAt(0));
+    }
+
+    @Test
+    void listAt_dropped_empty() {
+        for (int i = 0; i <= CHANGE_CAPACITY; i++) {
+            create(Optional.empty());
+        }
+
+        assertEquals(Optional.empty(), widgetService.listAt(0));
+        assertEquals(CHANGE_CAPACITY + 1, widgetService.listAt(widgetService.version()).orElseThrow().size());
+    }
+
+    @Test
+    void undo_occupiedZIndex_previousBoard() {
+        create(Optional.of(1));
+        create(Optional.of(2));
+        create(Optional.of(4));
+        List<Widget> before = widgetService.list();
+        long version = widgetService.version();
+
+        create(Optional.of(1));
+        Versioned<List<Widget>> restored = widgetService.undo().orElseThrow();
+
+        assertEquals(before, restored.getValue());
+        assertEquals(before, widgetService.list());
+        assertEquals(widgetService.version(), restored.getVersion());
+        assertTrue(restored.getVersion() > version + 2);
+    }
+
+    @Test
+    void undo_twice_redoes() {
+        create(Optional.of(1));
+        create(Optional.of(1));
+        List<Widget> done = widgetService.list();
+
+        widgetService.undo();
+        widgetService.undo();
+
+        assertEquals(done, widgetService.list());
+    }
+
+    @Test
+    void restore_changesReplayedGiveBoard() {
+        Random random = new Random(11);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ids.add(create(Optional.of(random.nextInt(100))).getId());
+        }
+        List<Widget> before = widgetService.list();
+        long version = widgetService.version();
+        for (int i = 0; i < 100; i++) {
+            if (random.nextBoolean()) {
+                ids.add(create(Optional.of(random.nextInt(100))).getId());
+            } else if (random.nextBoolean()) {
+                widgetService.update(ids.get(random.nextInt(ids.size())), content(Optional.of(random.nextInt(100))));
+            } else {
+                widgetService.delete(ids.remove(random.nextInt(ids.size())));
+            }
+        }
+        Map<String, Widget> replayed = new HashMap<>();
+        widgetService.changesSince(0).orElseThrow().forEach(change -> replay(replayed, change));
+        long restoring = widgetService.version();
+
+        widgetService.restore(version).orElseThrow();
+        widgetService.changesSince(restoring).orElseThrow().forEach(change -> replay(replayed, change));
+
+        assertEquals(before, widgetService.list());
+        assertEquals(before, replayed.values().stream()
+                .sorted(Comparator.comparingInt(Widget::getZ))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void restore_dropped_empty() {
+        for (int i = 0; i <= CHANGE_CAPACITY; i++) {
+            create(Optional.empty());
+        }
+
+        assertEquals(Optional.empty(), widgetService.restore(0));
+    }
+
+    @Test
+    void importWidgets_sortedAndStacked() {
+        Widget widget1 = Widget.builder().id("a").z(5).build();
+        Widget widget2 = Widget.builder().id("b").z(1).build();
+        Widget widget3 = Widget.builder().id("c").z(5).build();
+        Widget widget4 = Widget.builder().id("d").z(6).build();
+
+        widgetService.importWidgets(ImmutableList.of(widget1, widget2, widget3, widget4));
+
+        assertEquals(ImmutableList.of(widget2, widget1, widget3.toBuilder().z(6).build(),
+                widget4.toBuilder().z(7).build()), widgetService.list());
+    }
+
+    @Test
+    void importWidgets_replacesBoard_changesReplayedGiveBoard() {
+        create(Optional.of(1));
+        create(Optional.of(2));
+        Map<String, Widget> replayed = new HashMap<>();
+        widgetService.changesSince(0).orElseThrow().forEach(change -> replay(replayed, change));
+        long version = widgetService.version();
+
+        long imported = widgetService.importWidgets(ImmutableList.of(
+                Widget.builder().z(3).build(),
+                Widget.builder().id("kept").z(1).build()));
+        widgetService.changesSince(version).orElseThrow().forEach(change -> replay(replayed, change));
+
+        assertEquals(widgetService.version(), imported);
+        assertEquals(ImmutableList.of(1, 3), zIndexes(widgetService.list()));
+        assertEquals(Optional.of(Widget.builder().id("kept").z(1).build()), widgetService.get("kept"));
+        assertEquals(widgetService.list(), replayed.values().stream()
+                .sorted(Comparator.comparingInt(Widget::getZ))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void importWidgets_thenWrite_previousBoardNoLongerKept() {
+        for (int z = 0; z < WidgetService.HISTORY_WIDGETS; z++) {
+            create(Optional.of(z));
+        }
+        long beforeImport = widgetService.version();
+        widgetService.importWidgets(ImmutableList.of(Widget.builder().z(1).build()));
+
+        assertTrue(widgetService.listAt(beforeImport).isPresent());
+
+        create(Optional.of(2));
+
+        assertEquals(Optional.empty(), widgetService.listAt(beforeImport));
+    }
+
+    @Test
+    void importWidgets_duplicateIds_nothingImported() {
+        Widget widget = create(Optional.of(1));
+
+        assertThrows(IllegalArgumentException.class, () -> widgetService.importWidgets(ImmutableList.of(
+                Widget.builder().id("a").z(1).build(),
+                Widget.builder().id("a").z(2).build())));
+        assertEquals(ImmutableList.of(widget), widgetService.list());
+    }
+
+    @Test
+    void replicate_leaderChanges_sameBoardAndVersion() {
+        WidgetService replica = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(CHANGE_CAPACITY), ChangeLog.NONE);
+        Widget widget = create(Optional.of(1));
+        create(Optional.of(1));
+        replica.replicate(widgetService.changesSince(0).orElseThrow());
+        long version = replica.version();
+        widgetService.delete(widget.getId());
+        create(Optional.of(2));
+
+        replica.replicate(widgetService.changesSince(0).orElseThrow());
+
+        assertEquals(widgetService.version(), replica.version());
+        assertEquals(widgetService.list(), replica.list());
+        assertEquals(widgetService.changesSince(version), replica.changesSince(version));
+    }
+
+    @Test
+    void replicate_missingChange_nothingReplicated() {
+        WidgetService replica = new WidgetService(WidgetBoard.EMPTY, new ChangeFeed(CHANGE_CAPACITY), ChangeLog.NONE);
+        create(Optional.of(1));
+        create(Optional.of(2));
+
+        assertThrows(IllegalStateException.class, () -> replica.replicate(widgetService.changesSince(1).orElseThrow()));
+        assertEquals(0, replica.version());
+        assertEquals(ImmutableList.of(), replica.list());
+    }
+
+    @Test
+    void reset_snapshot_changesBeforeItGone() {
+        create(Optional.of(1));
+        Widget widget = Widget.builder().id(ID_1).z(Z_INDEX).build();
+
+        widgetService.reset(ImmutableList.of(widget), 5);
+
+        assertEquals(5, widgetService.version());
+        assertEquals(ImmutableList.of(widget), widgetService.list());
+        assertEquals(Optional.empty(), widgetService.changesSince(0));
+        assertEquals(Optional.of(ImmutableList.of()), widgetService.changesSince(5));
+    }
+
+    private static void replay(Map<String, Widget> widgets, WidgetChange change) {
+        switch (change.getType()) {
+            case SHIFTED:
+                widgets.replaceAll((id, widget) -> widget.getZ() >= change.getFromZ() && widget.getZ() <= change.getToZ()
+                        ? widget.toBuilder().z(widget.getZ() + 1).build()
+                        : widget);
+                break;
+            case CREATED:
+            case UPDATED:
+                widgets.put(change.getWidget().getId(), change.getWidget());
+                break;
+            case DELETED:
+                widgets.remove(change.getId());
+                break;
+        }
+    }
+
+    private Widget create(Optional<Integer> z) {
+        return widgetService.create(content(z));
+    }
 
-        assertEquals(insertedById, insertedByZ);
-        assertEquals(idCaptor.getValue(), insertedById.getId());
-        assertEquals(zCaptor.getValue(), insertedById.getZ());
-        assertEquals(16, insertedById.getZ());
+    private WidgetContent content(Optional<Integer> z) {
+        return WidgetContent.builder().z(z).build();
     }
 
-    private Widget widget(String id) {
-        return Widget.builder().id(id).z(Z_INDEX).build();
+    private List<Integer> zIndexes(List<Widget> widgets) {
+        return widgets.stream().map(Widget::getZ).collect(Collectors.toList());
     }
-}
\ No newline at end of file
+}
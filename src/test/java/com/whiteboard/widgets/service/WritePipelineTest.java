@@ -0,0 +1,85 @@
+package com.whiteboard.widgets.service;
+
+import com.whiteboard.widgets.service.request.WidgetContent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WritePipelineTest {
+
+    @Test
+    void submit_inOrderAndBatched() {
+        List<List<String>> batches = new ArrayList<>();
+        WritePipeline pipeline = new WritePipeline(WritePipeline.Settings.builder().batchSize(3).build(),
+                batch -> {
+                    List<String> ids = new ArrayList<>();
+                    batch.forEach(mutation -> ids.add(mutation.id));
+                    batches.add(ids);
+                    batch.forEach(mutation -> mutation.result.complete(Optional.empty()));
+                });
+        List<Mutation> mutations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Mutation mutation = Mutation.delete("id" + i);
+            mutations.add(mutation);
+            pipeline.submit(mutation);
+        }
+        mutations.forEach(mutation -> mutation.result.join());
+        pipeline.close();
+
+        List<String> applied = new ArrayList<>();
+        batches.forEach(batch -> {
+            assertTrue(batch.size() <= 3);
+            applied.addAll(batch);
+        });
+        assertEquals(List.of("id0", "id1", "id2", "id3", "id4", "id5", "id6", "id7", "id8", "id9"), applied);
+    }
+
+    @Test
+    void submit_full_rejected() throws Exception {
+        CountDownLatch applying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WritePipeline pipeline = new WritePipeline(WritePipeline.Settings.builder().capacity(2).batchSize(1).build(),
+                batch -> {
+                    applying.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    batch.forEach(mutation -> mutation.result.complete(Optional.empty()));
+                });
+        pipeline.submit(Mutation.delete("applying"));
+        assertTrue(applying.await(1, TimeUnit.MINUTES));
+        pipeline.submit(Mutation.delete("waiting1"));
+        pipeline.submit(Mutation.delete("waiting2"));
+
+        assertThrows(RejectedExecutionException.class, () -> pipeline.submit(Mutation.delete("rejected")));
+
+        release.countDown();
+        pipeline.close();
+        assertThrows(RejectedExecutionException.class, () -> pipeline.submit(Mutation.delete("closed")));
+    }
+
+    @Test
+    void apply_fails_completedExceptionally() {
+        WritePipeline pipeline = new WritePipeline(WritePipeline.Settings.builder().build(), batch -> {
+            throw new IllegalStateException("failed");
+        });
+        Mutation mutation = Mutation.create("id", WidgetContent.builder().z(Optional.empty()).build());
+        pipeline.submit(mutation);
+
+        CompletionException thrown = assertThrows(CompletionException.class, () -> mutation.result.join());
+        assertTrue(thrown.getCause() instanceof IllegalStateException);
+        pipeline.close();
+    }
+}